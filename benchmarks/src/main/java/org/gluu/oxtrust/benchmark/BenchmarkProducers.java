@@ -0,0 +1,52 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+package org.gluu.oxtrust.benchmark;
+
+import org.gluu.oxtrust.model.scim2.BaseScimResource;
+import org.gluu.oxtrust.model.scim2.extensions.Extension;
+import org.gluu.oxtrust.model.scim2.user.UserResource;
+import org.gluu.oxtrust.service.scim2.ExtensionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Produces;
+import javax.enterprise.inject.spi.InjectionPoint;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Supplies the beans SCIM services depend on. Extensions are taken from {@link ScimFixtures} instead of LDAP
+ */
+@ApplicationScoped
+public class BenchmarkProducers {
+
+    @Produces
+    public Logger getLogger(InjectionPoint injectionPoint) {
+        return LoggerFactory.getLogger(injectionPoint.getMember().getDeclaringClass());
+    }
+
+    @Produces
+    @ApplicationScoped
+    public ExtensionService getExtensionService() {
+        return new FixedExtensionService();
+    }
+
+    /**
+     * An ExtensionService whose User extension is fixed
+     */
+    public static class FixedExtensionService extends ExtensionService {
+
+        private final List<Extension> userExtensions = Collections.singletonList(ScimFixtures.userExtension());
+
+        @Override
+        public List<Extension> getResourceExtensions(Class<? extends BaseScimResource> cls) {
+            return cls.equals(UserResource.class) ? userExtensions : Collections.<Extension>emptyList();
+        }
+
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+package org.gluu.oxtrust.benchmark;
+
+import org.gluu.oxtrust.model.scim2.user.UserResource;
+import org.gluu.oxtrust.service.antlr.scimFilter.ScimFilterParserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.gluu.oxtrust.model.scim2.Constants.USER_EXT_SCHEMA_ID;
+
+/**
+ * Measures parsing of SCIM filters and their translation into LDAP filters
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FilterBenchmark {
+
+    private static final Map<String, String> FILTERS = new HashMap<String, String>();
+
+    static {
+        FILTERS.put("simple", "userName eq \"user1\"");
+        FILTERS.put("logical", "(userName sw \"user\" and active eq true) or displayName co \"Bench\"");
+        FILTERS.put("multivalued", "emails[type eq \"work\" and value ew \"example.com\"] and name.familyName pr");
+        FILTERS.put("extension", USER_EXT_SCHEMA_ID + ":department eq \"Research\" and meta.lastModified gt \"2017-01-01T00:00:00Z\"");
+    }
+
+    @Param({"simple", "logical", "multivalued", "extension"})
+    private String filterName;
+
+    private String filter;
+
+    private ScimFilterParserService filterService;
+
+    @Setup
+    public void setup() {
+        filter = FILTERS.get(filterName);
+        filterService = ScimContainer.bean(ScimFilterParserService.class);
+    }
+
+    @Benchmark
+    public Object parse() throws Exception {
+        return filterService.getParseTree(filter);
+    }
+
+    @Benchmark
+    public Object toLdapFilter() throws Exception {
+        return filterService.createLdapFilter(filter, "inum=*", UserResource.class);
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+package org.gluu.oxtrust.benchmark;
+
+import org.gluu.oxtrust.model.scim2.patch.PatchOperation;
+import org.gluu.oxtrust.model.scim2.user.UserResource;
+import org.gluu.oxtrust.service.scim2.Scim2PatchService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures application of a PATCH request to a user. Patching works on a copy of the resource, so the same user can
+ * be reused across invocations
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PatchBenchmark {
+
+    private Scim2PatchService patchService;
+    private UserResource user;
+    private List<PatchOperation> operations;
+
+    @Setup
+    public void setup() {
+        patchService = ScimContainer.bean(Scim2PatchService.class);
+        user = ScimFixtures.user(0);
+        operations = ScimFixtures.patchOperations();
+    }
+
+    @Benchmark
+    public Object applyPatch() throws Exception {
+        return patchService.applyPatchOperations(user, operations);
+    }
+
+}
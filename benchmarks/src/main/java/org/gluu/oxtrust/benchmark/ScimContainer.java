@@ -0,0 +1,41 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+package org.gluu.oxtrust.benchmark;
+
+import org.gluu.oxtrust.service.antlr.scimFilter.ScimFilterParserService;
+import org.gluu.oxtrust.service.scim2.Scim2PatchService;
+import org.gluu.oxtrust.service.scim2.ScimMetricsService;
+import org.gluu.oxtrust.service.scim2.serialization.ScimResourceSerializer;
+import org.jboss.weld.environment.se.Weld;
+import org.jboss.weld.environment.se.WeldContainer;
+
+/**
+ * Boots a Weld SE container holding the SCIM services exercised by benchmarks. Bean discovery is disabled so that only
+ * the services listed here (and the fixtures of {@link BenchmarkProducers}) are deployed; no LDAP connection is needed.
+ */
+public final class ScimContainer {
+
+    private static WeldContainer container;
+
+    private ScimContainer() {
+    }
+
+    public static synchronized WeldContainer get() {
+
+        if (container == null)
+            container = new Weld().disableDiscovery()
+                    .addBeanClasses(BenchmarkProducers.class, ScimFilterParserService.class, ScimResourceSerializer.class,
+                            Scim2PatchService.class, ScimMetricsService.class)
+                    .initialize();
+        return container;
+
+    }
+
+    public static <T> T bean(Class<T> clazz) {
+        return get().select(clazz).get();
+    }
+
+}
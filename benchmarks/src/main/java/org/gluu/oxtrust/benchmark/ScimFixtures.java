@@ -0,0 +1,167 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+package org.gluu.oxtrust.benchmark;
+
+import org.gluu.oxtrust.model.scim2.Meta;
+import org.gluu.oxtrust.model.scim2.extensions.Extension;
+import org.gluu.oxtrust.model.scim2.extensions.ExtensionField;
+import org.gluu.oxtrust.model.scim2.patch.PatchOperation;
+import org.gluu.oxtrust.model.scim2.user.Email;
+import org.gluu.oxtrust.model.scim2.user.Group;
+import org.gluu.oxtrust.model.scim2.user.Name;
+import org.gluu.oxtrust.model.scim2.user.UserResource;
+import org.gluu.oxtrust.model.scim2.util.ScimResourceUtil;
+import org.xdi.model.GluuAttributeDataType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.gluu.oxtrust.model.scim2.Constants.USER_EXT_SCHEMA_ID;
+
+/**
+ * Builds the data benchmarks operate on. Users resemble those found in real deployments: they carry a name, 20 e-mail
+ * addresses, membership to 50 groups and a handful of attributes of the Gluu User extension.
+ */
+public final class ScimFixtures {
+
+    public static final int EMAILS_PER_USER = 20;
+    public static final int GROUPS_PER_USER = 50;
+
+    private ScimFixtures() {
+    }
+
+    public static Extension userExtension() {
+
+        Map<String, ExtensionField> fields = new HashMap<String, ExtensionField>();
+        fields.put("department", field("department", GluuAttributeDataType.STRING, false));
+        fields.put("costCenter", field("costCenter", GluuAttributeDataType.STRING, false));
+        fields.put("skills", field("skills", GluuAttributeDataType.STRING, true));
+        fields.put("level", field("level", GluuAttributeDataType.NUMERIC, false));
+        fields.put("hireDate", field("hireDate", GluuAttributeDataType.DATE, false));
+
+        Extension extension = new Extension(USER_EXT_SCHEMA_ID);
+        extension.setName("GluuUserCustomExtension");
+        extension.setFields(fields);
+        return extension;
+
+    }
+
+    private static ExtensionField field(String name, GluuAttributeDataType type, boolean multiValued) {
+        ExtensionField field = new ExtensionField();
+        field.setName(name);
+        field.setType(type);
+        field.setMultiValued(multiValued);
+        return field;
+    }
+
+    public static UserResource user(int index) {
+
+        String id = String.format("@!1111.2222.3333.4444!0000!1000.%04d", index);
+        UserResource user = new UserResource();
+        user.setSchemas(new HashSet<String>(Arrays.asList(ScimResourceUtil.getDefaultSchemaUrn(UserResource.class), USER_EXT_SCHEMA_ID)));
+        user.setId(id);
+        user.setExternalId("ext-" + index);
+        user.setUserName("user" + index);
+        user.setDisplayName("Benchmark User " + index);
+        user.setNickName("bench" + index);
+        user.setTitle("Engineer");
+        user.setUserType("Employee");
+        user.setPreferredLanguage("en-US");
+        user.setLocale("en-US");
+        user.setTimezone("America/Chicago");
+        user.setActive(true);
+
+        Name name = new Name();
+        name.setGivenName("Benchmark");
+        name.setMiddleName("J");
+        name.setFamilyName("User " + index);
+        name.setHonorificPrefix("Mr.");
+        name.setFormatted(name.computeFormattedName());
+        user.setName(name);
+
+        List<Email> emails = new ArrayList<Email>();
+        for (int i = 0; i < EMAILS_PER_USER; i++) {
+            Email email = new Email();
+            email.setValue("user" + index + ".mail" + i + "@example.com");
+            email.setType(i % 2 == 0 ? Email.Type.WORK : Email.Type.HOME);
+            email.setPrimary(i == 0);
+            emails.add(email);
+        }
+        user.setEmails(emails);
+
+        List<Group> groups = new ArrayList<Group>();
+        for (int i = 0; i < GROUPS_PER_USER; i++) {
+            String inum = String.format("@!1111.2222.3333.4444!0003!%04d", i);
+            Group group = new Group();
+            group.setValue(inum);
+            group.setDisplay("Group " + i);
+            group.setRef("https://idp.example.com/identity/restv1/scim/v2/Groups/" + inum);
+            groups.add(group);
+        }
+        user.setGroups(groups);
+
+        Map<String, Object> extended = new LinkedHashMap<String, Object>();
+        extended.put("department", "Research");
+        extended.put("costCenter", "CC-" + (index % 17));
+        extended.put("skills", Arrays.asList("java", "ldap", "scim", "oauth"));
+        extended.put("level", 3);
+        extended.put("hireDate", "2015-03-12T10:15:30Z");
+        user.addCustomAttributes(USER_EXT_SCHEMA_ID, extended);
+
+        Meta meta = new Meta();
+        meta.setResourceType("User");
+        meta.setCreated("2017-01-10T08:00:00Z");
+        meta.setLastModified("2017-06-21T17:45:00Z");
+        meta.setLocation("https://idp.example.com/identity/restv1/scim/v2/Users/" + id);
+        user.setMeta(meta);
+
+        return user;
+
+    }
+
+    public static List<UserResource> users(int count) {
+        List<UserResource> users = new ArrayList<UserResource>();
+        for (int i = 0; i < count; i++)
+            users.add(user(i));
+        return users;
+    }
+
+    /**
+     * Builds a PATCH request touching simple, complex, multi-valued and extended attributes
+     * @return List of operations
+     */
+    public static List<PatchOperation> patchOperations() {
+
+        List<PatchOperation> operations = new ArrayList<PatchOperation>();
+        operations.add(operation("replace", "displayName", "Patched User"));
+        operations.add(operation("replace", "name.givenName", "Patched"));
+
+        Map<String, Object> email = new HashMap<String, Object>();
+        email.put("value", "patched@example.com");
+        email.put("type", "other");
+        operations.add(operation("add", "emails", Arrays.asList(email)));
+
+        operations.add(operation("remove", "emails[type eq \"home\"]", null));
+        operations.add(operation("replace", USER_EXT_SCHEMA_ID + ":department", "Operations"));
+        operations.add(operation("add", USER_EXT_SCHEMA_ID + ":skills", Arrays.asList("saml")));
+        return operations;
+
+    }
+
+    private static PatchOperation operation(String type, String path, Object value) {
+        PatchOperation operation = new PatchOperation();
+        operation.setOperation(type);
+        operation.setPath(path);
+        operation.setValue(value);
+        return operation;
+    }
+
+}
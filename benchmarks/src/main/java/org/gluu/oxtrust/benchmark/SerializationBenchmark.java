@@ -0,0 +1,81 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+package org.gluu.oxtrust.benchmark;
+
+import org.codehaus.jackson.Version;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.module.SimpleModule;
+import org.gluu.oxtrust.model.scim2.ListResponse;
+import org.gluu.oxtrust.model.scim2.user.UserResource;
+import org.gluu.oxtrust.service.scim2.serialization.ListResponseJsonSerializer;
+import org.gluu.oxtrust.service.scim2.serialization.ScimResourceSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures serialization of a single user and of a page of users (as returned by searches) under different
+ * projections (<code>attributes</code> and <code>excludedAttributes</code> query parameters)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializationBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"all", "attributes", "excludedAttributes"})
+    private String projection;
+
+    private String attributes;
+    private String excludedAttributes;
+
+    private ScimResourceSerializer serializer;
+    private ObjectMapper listMapper;
+
+    private UserResource user;
+    private ListResponse page;
+
+    @Setup
+    public void setup() {
+
+        if (projection.equals("attributes"))
+            attributes = "userName,name.givenName,emails.value,urn:ietf:params:scim:schemas:extension:gluu:2.0:User:department";
+        else if (projection.equals("excludedAttributes"))
+            excludedAttributes = "groups,emails.display,meta";
+
+        serializer = ScimContainer.bean(ScimResourceSerializer.class);
+
+        SimpleModule module = new SimpleModule("ListResponseModule", Version.unknownVersion());
+        module.addSerializer(ListResponse.class, new ListResponseJsonSerializer(serializer, attributes, excludedAttributes, false));
+        listMapper = new ObjectMapper();
+        listMapper.registerModule(module);
+
+        user = ScimFixtures.user(0);
+        page = new ListResponse(1, PAGE_SIZE, PAGE_SIZE);
+        for (UserResource resource : ScimFixtures.users(PAGE_SIZE))
+            page.addResource(resource);
+
+    }
+
+    @Benchmark
+    public String serializeUser() throws Exception {
+        return serializer.serialize(user, attributes, excludedAttributes);
+    }
+
+    @Benchmark
+    public String serializeListResponse() throws Exception {
+        return listMapper.writeValueAsString(page);
+    }
+
+}
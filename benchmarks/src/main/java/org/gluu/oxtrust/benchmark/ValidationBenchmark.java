@@ -0,0 +1,53 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+package org.gluu.oxtrust.benchmark;
+
+import org.gluu.oxtrust.model.scim2.extensions.Extension;
+import org.gluu.oxtrust.model.scim2.user.UserResource;
+import org.gluu.oxtrust.model.scim2.util.ResourceValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the validations applied to users received in create and replace requests
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ValidationBenchmark {
+
+    private UserResource user;
+    private List<Extension> extensions;
+
+    @Setup
+    public void setup() {
+        user = ScimFixtures.user(0);
+        extensions = Collections.singletonList(ScimFixtures.userExtension());
+    }
+
+    @Benchmark
+    public ResourceValidator validateUser() throws Exception {
+
+        ResourceValidator validator = new ResourceValidator(user, extensions);
+        validator.validateRequiredAttributes();
+        validator.validateValidableAttributes();
+        validator.validateCanonicalizedAttributes();
+        validator.validateSchemasAttribute();
+        validator.validateExtendedAttributes();
+        return validator;
+
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+package org.gluu.oxtrust.benchmark.load;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.Response;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An AsyncResponse that lets the caller wait for the response of an asynchronous resource method, playing the role of
+ * the JAX-RS container
+ */
+public class BlockingAsyncResponse implements AsyncResponse {
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private volatile Response response;
+
+    /**
+     * Waits until the response is resumed or cancelled
+     * @param timeout Maximum time to wait, in seconds
+     * @return The response, or null if none was supplied in time
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public Response await(long timeout) throws InterruptedException {
+        latch.await(timeout, TimeUnit.SECONDS);
+        return response;
+    }
+
+    private boolean complete(Response value) {
+        if (latch.getCount() == 0)
+            return false;
+        response = value;
+        latch.countDown();
+        return true;
+    }
+
+    public boolean resume(Object response) {
+        return complete(response instanceof Response ? (Response) response : Response.ok(response).build());
+    }
+
+    public boolean resume(Throwable response) {
+        return complete(response instanceof WebApplicationException ? ((WebApplicationException) response).getResponse() :
+                Response.serverError().build());
+    }
+
+    public boolean cancel() {
+        return complete(Response.status(Response.Status.SERVICE_UNAVAILABLE).build());
+    }
+
+    public boolean cancel(int retryAfter) {
+        return cancel();
+    }
+
+    public boolean cancel(Date retryAfter) {
+        return cancel();
+    }
+
+    public boolean isSuspended() {
+        return latch.getCount() > 0;
+    }
+
+    public boolean isCancelled() {
+        return false;
+    }
+
+    public boolean isDone() {
+        return latch.getCount() == 0;
+    }
+
+    public boolean setTimeout(long time, TimeUnit unit) {
+        return true;
+    }
+
+    public void setTimeoutHandler(TimeoutHandler handler) {
+    }
+
+    public Collection<Class<?>> register(Class<?> callback) {
+        return Collections.emptyList();
+    }
+
+    public Map<Class<?>, Collection<Class<?>>> register(Class<?> callback, Class<?>... callbacks) {
+        return Collections.emptyMap();
+    }
+
+    public Collection<Class<?>> register(Object callback) {
+        return Collections.emptyList();
+    }
+
+    public Map<Class<?>, Collection<Class<?>>> register(Object callback, Object... callbacks) {
+        return Collections.emptyMap();
+    }
+
+}
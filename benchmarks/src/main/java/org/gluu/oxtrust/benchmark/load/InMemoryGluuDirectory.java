@@ -0,0 +1,188 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+package org.gluu.oxtrust.benchmark.load;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.schema.Schema;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * An UnboundID in-memory LDAP server laid out as the directory of a Gluu Server: the organization entry under the
+ * base DN and the people and groups branches below it, seeded with synthetic users and groups.
+ */
+public class InMemoryGluuDirectory {
+
+    public static final String BIND_DN = "cn=directory manager";
+    private static final String BIND_PASSWORD = "secret";
+
+    //Groups every seeded user is member of (at most)
+    private static final int GROUPS_PER_USER = 5;
+
+    private final String baseDn;
+    private final String orgInum;
+    private final String orgDn;
+
+    private InMemoryDirectoryServer server;
+
+    private List<String> userInums = new ArrayList<String>();
+    private List<String> groupInums = new ArrayList<String>();
+
+    public InMemoryGluuDirectory(String baseDn, String orgInum) {
+        this.baseDn = baseDn;
+        this.orgInum = orgInum;
+        this.orgDn = String.format("o=%s,%s", orgInum, baseDn);
+    }
+
+    /**
+     * Starts the server
+     * @param port Port to listen on (0 for any free port)
+     * @param schemaFile LDIF file or directory with the Gluu schema, merged with the standard schema. If null, schema
+     *                   checking is disabled
+     * @throws Exception When the server fails to start or the schema cannot be read
+     */
+    public void start(int port, File schemaFile) throws Exception {
+
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(baseDn);
+        config.addAdditionalBindCredentials(BIND_DN, BIND_PASSWORD);
+        config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("default", port));
+        config.setSchema(schemaFile == null ? null : Schema.mergeSchemas(Schema.getDefaultStandardSchema(), readSchema(schemaFile)));
+
+        server = new InMemoryDirectoryServer(config);
+        server.startListening();
+
+        server.add(new Entry(baseDn, attr("objectClass", "top", "organization"), attr("o", "gluu")));
+        server.add(new Entry(orgDn, attr("objectClass", "top", "gluuOrganization"), attr("o", orgInum),
+                attr("displayName", "Load test")));
+        server.add(new Entry("ou=people," + orgDn, attr("objectClass", "top", "organizationalUnit"), attr("ou", "people")));
+        server.add(new Entry("ou=groups," + orgDn, attr("objectClass", "top", "organizationalUnit"), attr("ou", "groups")));
+
+    }
+
+    private Schema readSchema(File file) throws Exception {
+
+        File[] files = file.isDirectory() ? file.listFiles() : new File[]{file};
+        List<File> ldifs = new ArrayList<File>();
+        for (File f : files)
+            if (f.getName().endsWith(".ldif"))
+                ldifs.add(f);
+
+        //Schema files are numbered so that dependencies come first
+        Collections.sort(ldifs);
+        return Schema.getSchema(ldifs);
+
+    }
+
+    /**
+     * Adds the users and groups the load test works on. Every user belongs to a few groups
+     * @param users Number of users
+     * @param groups Number of groups
+     * @throws LDAPException Upon failure to add an entry
+     */
+    public void seed(int users, int groups) throws LDAPException {
+
+        for (int i = 0; i < users; i++)
+            userInums.add(String.format("%s!0000!%04X.%04X", orgInum, i >> 16, i & 0xFFFF));
+        for (int i = 0; i < groups; i++)
+            groupInums.add(String.format("%s!0003!%04X", orgInum, i));
+
+        List<List<String>> members = new ArrayList<List<String>>();
+        for (int i = 0; i < groups; i++)
+            members.add(new ArrayList<String>());
+
+        for (int i = 0; i < users; i++) {
+            String inum = userInums.get(i);
+            List<String> memberOf = new ArrayList<String>();
+
+            for (int j = 0; j < Math.min(GROUPS_PER_USER, groups); j++) {
+                int group = (i + j * 7) % groups;
+                memberOf.add(getGroupDn(groupInums.get(group)));
+                members.get(group).add(getUserDn(inum));
+            }
+
+            Entry entry = new Entry(getUserDn(inum));
+            entry.addAttribute("objectClass", "top", "gluuPerson", "gluuCustomPerson");
+            entry.addAttribute("inum", inum);
+            entry.addAttribute("uid", "user" + i);
+            entry.addAttribute("givenName", "User");
+            entry.addAttribute("sn", "Number " + i);
+            entry.addAttribute("displayName", "User Number " + i);
+            entry.addAttribute("mail", "user" + i + "@example.com");
+            entry.addAttribute("gluuStatus", "active");
+            entry.addAttribute("department", "Research");
+            entry.addAttribute(new Attribute("memberOf", memberOf));
+            server.add(entry);
+        }
+
+        for (int i = 0; i < groups; i++) {
+            Entry entry = new Entry(getGroupDn(groupInums.get(i)));
+            entry.addAttribute("objectClass", "top", "gluuGroup");
+            entry.addAttribute("inum", groupInums.get(i));
+            entry.addAttribute("displayName", "Group " + i);
+            entry.addAttribute("gluuStatus", "active");
+            entry.addAttribute("o", orgDn);
+            if (!members.get(i).isEmpty())
+                entry.addAttribute(new Attribute("member", members.get(i)));
+            server.add(entry);
+        }
+
+    }
+
+    public void shutDown() {
+        if (server != null)
+            server.shutDown(true);
+    }
+
+    /**
+     * Builds the properties of a connection to this server, as expected by an LDAPConnectionProvider
+     * @param maxConnections Size of connection pool
+     * @return Properties instance
+     */
+    public Properties getConnectionProperties(int maxConnections) {
+        Properties properties = new Properties();
+        properties.put("servers", "localhost:" + server.getListenPort());
+        properties.put("maxconnections", Integer.toString(maxConnections));
+        properties.put("useSSL", "false");
+        properties.put("bindDN", BIND_DN);
+        properties.put("bindPassword", BIND_PASSWORD);
+        return properties;
+    }
+
+    public int getEntryCount() {
+        return server.countEntries();
+    }
+
+    public List<String> getUserInums() {
+        return userInums;
+    }
+
+    public List<String> getGroupInums() {
+        return groupInums;
+    }
+
+    private String getUserDn(String inum) {
+        return String.format("inum=%s,ou=people,%s", inum, orgDn);
+    }
+
+    private String getGroupDn(String inum) {
+        return String.format("inum=%s,ou=groups,%s", inum, orgDn);
+    }
+
+    private static Attribute attr(String name, String... values) {
+        return new Attribute(name, Arrays.asList(values));
+    }
+
+}
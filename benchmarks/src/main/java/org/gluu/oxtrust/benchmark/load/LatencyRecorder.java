@@ -0,0 +1,85 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+package org.gluu.oxtrust.benchmark.load;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.UniformReservoir;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accumulates latencies and outcomes of requests per kind of operation and prints them as a table. Latencies are kept
+ * in microseconds in uniform reservoirs large enough to hold every sample of typical runs
+ */
+public class LatencyRecorder {
+
+    private static final int RESERVOIR_SIZE = 1 << 18;
+
+    private final Map<ScimOperation, Histogram> latencies = new EnumMap<ScimOperation, Histogram>(ScimOperation.class);
+    private final Map<ScimOperation, AtomicLong> errors = new EnumMap<ScimOperation, AtomicLong>(ScimOperation.class);
+    private final Histogram total = new Histogram(new UniformReservoir(RESERVOIR_SIZE));
+    private final AtomicLong totalErrors = new AtomicLong();
+
+    public LatencyRecorder() {
+        for (ScimOperation operation : ScimOperation.values()) {
+            latencies.put(operation, new Histogram(new UniformReservoir(RESERVOIR_SIZE)));
+            errors.put(operation, new AtomicLong());
+        }
+    }
+
+    /**
+     * Records the outcome of a request
+     * @param operation Kind of request
+     * @param nanos Time elapsed since the request was due to be issued until it completed
+     * @param success Whether the request was successful
+     */
+    public void record(ScimOperation operation, long nanos, boolean success) {
+
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        latencies.get(operation).update(micros);
+        total.update(micros);
+        if (!success) {
+            errors.get(operation).incrementAndGet();
+            totalErrors.incrementAndGet();
+        }
+
+    }
+
+    /**
+     * Prints a summary of the requests recorded
+     * @param out Stream to print to
+     * @param seconds Duration of the measurement, used to compute throughput
+     */
+    public void print(PrintStream out, double seconds) {
+
+        out.println(String.format(Locale.US, "%-10s %10s %8s %12s %10s %10s %10s %10s",
+                "operation", "requests", "errors", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+
+        for (ScimOperation operation : ScimOperation.values()) {
+            Histogram histogram = latencies.get(operation);
+            if (histogram.getCount() > 0)
+                printRow(out, operation.getName(), histogram, errors.get(operation).get(), seconds);
+        }
+        printRow(out, "total", total, totalErrors.get(), seconds);
+
+    }
+
+    private void printRow(PrintStream out, String name, Histogram histogram, long errorCount, double seconds) {
+
+        Snapshot snapshot = histogram.getSnapshot();
+        out.println(String.format(Locale.US, "%-10s %10d %8d %12.1f %10.2f %10.2f %10.2f %10.2f", name,
+                histogram.getCount(), errorCount, histogram.getCount() / seconds, snapshot.getMedian() / 1000,
+                snapshot.get95thPercentile() / 1000, snapshot.get99thPercentile() / 1000, snapshot.getMax() / 1000.0));
+
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+package org.gluu.oxtrust.benchmark.load;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command line options of {@link LoadTestRunner}
+ */
+public class LoadTestOptions {
+
+    public static final String USAGE = "Options:\n" +
+            "  --users <n>          Users seeded in the directory (default 10000)\n" +
+            "  --groups <n>         Groups seeded in the directory (default 100)\n" +
+            "  --rate <n>           Target rate of requests per second (default 200)\n" +
+            "  --duration <s>       Seconds of measurement (default 60)\n" +
+            "  --warmup <s>         Seconds of warm up, not measured (default 15)\n" +
+            "  --threads <n>        Threads issuing requests (default 32)\n" +
+            "  --mix <op=w,...>     Weights of operations create, get, search, patch and bulk\n" +
+            "                       (default create=10,get=40,search=30,patch=15,bulk=5)\n" +
+            "  --bulk-size <n>      Operations per bulk request (default 10)\n" +
+            "  --port <n>           Port of the in-memory LDAP server (default: any free port)\n" +
+            "  --schema <path>      LDIF schema file or directory (eg. Gluu's OpenDJ schema). When absent, schema\n" +
+            "                       checking is disabled\n";
+
+    private int users = 10000;
+    private int groups = 100;
+    private int rate = 200;
+    private int durationSeconds = 60;
+    private int warmupSeconds = 15;
+    private int threads = 32;
+    private int bulkSize = 10;
+    private int port = 0;
+    private File schema;
+    private Map<ScimOperation, Integer> mix = parseMix("create=10,get=40,search=30,patch=15,bulk=5");
+
+    public static LoadTestOptions parse(String[] args) {
+
+        LoadTestOptions options = new LoadTestOptions();
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i];
+            if (i + 1 == args.length)
+                throw new IllegalArgumentException("Missing value of option " + name);
+
+            String value = args[++i];
+            if (name.equals("--users"))
+                options.users = Integer.parseInt(value);
+            else if (name.equals("--groups"))
+                options.groups = Integer.parseInt(value);
+            else if (name.equals("--rate"))
+                options.rate = Integer.parseInt(value);
+            else if (name.equals("--duration"))
+                options.durationSeconds = Integer.parseInt(value);
+            else if (name.equals("--warmup"))
+                options.warmupSeconds = Integer.parseInt(value);
+            else if (name.equals("--threads"))
+                options.threads = Integer.parseInt(value);
+            else if (name.equals("--mix"))
+                options.mix = parseMix(value);
+            else if (name.equals("--bulk-size"))
+                options.bulkSize = Integer.parseInt(value);
+            else if (name.equals("--port"))
+                options.port = Integer.parseInt(value);
+            else if (name.equals("--schema"))
+                options.schema = new File(value);
+            else
+                throw new IllegalArgumentException("Unknown option " + name);
+        }
+
+        if (options.users < 1 || options.groups < 1 || options.rate < 1 || options.threads < 1 || options.bulkSize < 1)
+            throw new IllegalArgumentException("users, groups, rate, threads and bulk-size must be positive");
+        return options;
+
+    }
+
+    private static Map<ScimOperation, Integer> parseMix(String value) {
+
+        Map<ScimOperation, Integer> mix = new EnumMap<ScimOperation, Integer>(ScimOperation.class);
+        for (String item : value.split(",")) {
+            String[] pair = item.split("=");
+            if (pair.length != 2)
+                throw new IllegalArgumentException("Malformed mix item " + item);
+
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight > 0)
+                mix.put(ScimOperation.fromName(pair[0]), weight);
+        }
+        if (mix.isEmpty())
+            throw new IllegalArgumentException("Mix has no operations");
+        return mix;
+
+    }
+
+    /**
+     * Expands the mix into a list where every operation appears as many times as its weight, so that picking an
+     * element at random honors the weights
+     * @return List of operations
+     */
+    public List<ScimOperation> getWeightedOperations() {
+        List<ScimOperation> list = new ArrayList<ScimOperation>();
+        for (Map.Entry<ScimOperation, Integer> entry : mix.entrySet())
+            for (int i = 0; i < entry.getValue(); i++)
+                list.add(entry.getKey());
+        return list;
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public int getGroups() {
+        return groups;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getBulkSize() {
+        return bulkSize;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public File getSchema() {
+        return schema;
+    }
+
+    public Map<ScimOperation, Integer> getMix() {
+        return mix;
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+package org.gluu.oxtrust.benchmark.load;
+
+import org.codehaus.jackson.map.DeserializationConfig;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.gluu.oxtrust.ldap.service.AttributeService;
+import org.gluu.oxtrust.ldap.service.OrganizationService;
+import org.gluu.oxtrust.service.external.ExternalIdGeneratorService;
+import org.gluu.oxtrust.service.external.ExternalScimService;
+import org.gluu.site.ldap.LDAPConnectionProvider;
+import org.gluu.site.ldap.OperationsFacade;
+import org.gluu.site.ldap.persistence.LdapEntryManager;
+import org.xdi.config.oxtrust.AppConfiguration;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Disposes;
+import javax.enterprise.inject.Produces;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Supplies the configuration and LDAP access SCIM services need in the load test, in place of the ones oxTrust sets up
+ * at startup. Services that require a complete Gluu Server (custom scripts, attributes registry) are replaced by
+ * minimal implementations. {@link #configure(AppConfiguration, Properties)} must be called before booting the container
+ */
+@ApplicationScoped
+public class LoadTestProducers {
+
+    private static final String CONFIGURATION_RESOURCE = "/load-test-configuration.json";
+
+    private static AppConfiguration appConfiguration;
+    private static Properties connectionProperties;
+
+    public static AppConfiguration loadConfiguration() throws IOException {
+
+        InputStream is = LoadTestProducers.class.getResourceAsStream(CONFIGURATION_RESOURCE);
+        try {
+            ObjectMapper mapper = new ObjectMapper();
+            mapper.configure(DeserializationConfig.Feature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+            return mapper.readValue(is, AppConfiguration.class);
+        }
+        finally {
+            is.close();
+        }
+
+    }
+
+    public static void configure(AppConfiguration configuration, Properties properties) {
+        appConfiguration = configuration;
+        connectionProperties = properties;
+    }
+
+    @Produces
+    @ApplicationScoped
+    public AppConfiguration getAppConfiguration() {
+        return appConfiguration;
+    }
+
+    @Produces
+    @ApplicationScoped
+    public LdapEntryManager getLdapEntryManager() {
+        return new LdapEntryManager(new OperationsFacade(new LDAPConnectionProvider(connectionProperties)));
+    }
+
+    public void closeLdapEntryManager(@Disposes LdapEntryManager ldapEntryManager) {
+        ldapEntryManager.destroy();
+    }
+
+    @Produces
+    @ApplicationScoped
+    public OrganizationService getOrganizationService() {
+        return new OrganizationService() {
+            @Override
+            public String getOrganizationInum() {
+                return appConfiguration.getOrgInum();
+            }
+
+            @Override
+            public String getInumForOrganization() {
+                return appConfiguration.getOrgInum();
+            }
+
+            @Override
+            public String getBaseDn() {
+                return appConfiguration.getBaseDN();
+            }
+
+            @Override
+            public String getDnForOrganization(String inum) {
+                return String.format("o=%s,%s", inum, appConfiguration.getBaseDN());
+            }
+        };
+    }
+
+    @Produces
+    @ApplicationScoped
+    public AttributeService getAttributeService() {
+        return new AttributeService() {
+            @Override
+            public String getCustomOrigin() {
+                return appConfiguration.getPersonCustomObjectClass();
+            }
+        };
+    }
+
+    //No custom scripts are run
+    @Produces
+    @ApplicationScoped
+    public ExternalScimService getExternalScimService() {
+        return new ExternalScimService() {
+            @Override
+            public boolean isEnabled() {
+                return false;
+            }
+        };
+    }
+
+    @Produces
+    @ApplicationScoped
+    public ExternalIdGeneratorService getExternalIdGeneratorService() {
+        return new ExternalIdGeneratorService() {
+            @Override
+            public boolean isEnabled() {
+                return false;
+            }
+        };
+    }
+
+}
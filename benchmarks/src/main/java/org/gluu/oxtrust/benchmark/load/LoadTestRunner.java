@@ -0,0 +1,179 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+package org.gluu.oxtrust.benchmark.load;
+
+import org.gluu.oxtrust.benchmark.BenchmarkProducers;
+import org.gluu.oxtrust.ldap.service.FidoDeviceService;
+import org.gluu.oxtrust.ldap.service.GroupService;
+import org.gluu.oxtrust.ldap.service.IdGenService;
+import org.gluu.oxtrust.ldap.service.InumGeneratorService;
+import org.gluu.oxtrust.ldap.service.MemberService;
+import org.gluu.oxtrust.ldap.service.PersonService;
+import org.gluu.oxtrust.service.antlr.scimFilter.ScimFilterParserService;
+import org.gluu.oxtrust.service.scim2.Scim2GroupService;
+import org.gluu.oxtrust.service.scim2.Scim2PatchService;
+import org.gluu.oxtrust.service.scim2.Scim2UserService;
+import org.gluu.oxtrust.service.scim2.ScimCountCache;
+import org.gluu.oxtrust.service.scim2.ScimCursorService;
+import org.gluu.oxtrust.service.scim2.ScimETagService;
+import org.gluu.oxtrust.service.scim2.ScimExecutorService;
+import org.gluu.oxtrust.service.scim2.ScimMetricsService;
+import org.gluu.oxtrust.service.scim2.interceptor.FidoDeviceWebServiceDecorator;
+import org.gluu.oxtrust.service.scim2.interceptor.GroupWebServiceDecorator;
+import org.gluu.oxtrust.service.scim2.interceptor.ReferenceURIInterceptor;
+import org.gluu.oxtrust.service.scim2.interceptor.ScimMetricsInterceptor;
+import org.gluu.oxtrust.service.scim2.interceptor.UserWebServiceDecorator;
+import org.gluu.oxtrust.service.scim2.serialization.ScimResourceSerializer;
+import org.gluu.oxtrust.util.ServiceUtil;
+import org.gluu.oxtrust.ws.rs.scim2.BulkWebService;
+import org.gluu.oxtrust.ws.rs.scim2.FidoDeviceWebService;
+import org.gluu.oxtrust.ws.rs.scim2.GroupWebService;
+import org.gluu.oxtrust.ws.rs.scim2.UserWebService;
+import org.jboss.weld.environment.se.Weld;
+import org.jboss.weld.environment.se.WeldContainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xdi.config.oxtrust.AppConfiguration;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test of the SCIM service that runs on a single machine without a Gluu Server. It starts an in-memory LDAP
+ * server seeded with synthetic users and groups, deploys the SCIM web services and the services below them in a CDI
+ * SE container, and issues a configurable mix of requests at a fixed rate. Latency percentiles and throughput are
+ * reported per kind of request.
+ * <p>Requests are issued at the target rate regardless of how long previous ones take, and latency is measured from
+ * the time a request was due, so queueing caused by a saturated service is reflected in the figures.</p>
+ * <p>Run with <code>java -cp benchmarks.jar org.gluu.oxtrust.benchmark.load.LoadTestRunner [options]</code>; see
+ * {@link LoadTestOptions#USAGE} for options.</p>
+ */
+public class LoadTestRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadTestRunner.class);
+
+    private static final long TERMINATION_TIMEOUT_MINUTES = 5;
+
+    public static void main(String[] args) throws Exception {
+
+        LoadTestOptions options;
+        try {
+            options = LoadTestOptions.parse(args);
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(LoadTestOptions.USAGE);
+            System.exit(1);
+            return;
+        }
+
+        AppConfiguration appConfiguration = LoadTestProducers.loadConfiguration();
+        InMemoryGluuDirectory directory = new InMemoryGluuDirectory(appConfiguration.getBaseDN(), appConfiguration.getOrgInum());
+        WeldContainer container = null;
+
+        try {
+            directory.start(options.getPort(), options.getSchema());
+            long start = System.nanoTime();
+            directory.seed(options.getUsers(), options.getGroups());
+            log.info("Directory seeded with {} entries in {} ms", directory.getEntryCount(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+            LoadTestProducers.configure(appConfiguration, directory.getConnectionProperties(options.getThreads()));
+            container = bootContainer();
+
+            ScimLoadDriver driver = new ScimLoadDriver(container.select(UserWebService.class).get(),
+                    container.select(BulkWebService.class).get(), directory.getUserInums(), options.getBulkSize());
+            List<ScimOperation> operations = options.getWeightedOperations();
+
+            log.info("Warming up for {} seconds", options.getWarmupSeconds());
+            run(driver, operations, options, options.getWarmupSeconds(), new LatencyRecorder());
+
+            log.info("Running mix {} at {} requests per second for {} seconds", options.getMix(), options.getRate(),
+                    options.getDurationSeconds());
+            LatencyRecorder recorder = new LatencyRecorder();
+            double elapsed = run(driver, operations, options, options.getDurationSeconds(), recorder);
+
+            recorder.print(System.out, elapsed);
+        }
+        finally {
+            if (container != null)
+                container.shutdown();
+            directory.shutDown();
+        }
+
+    }
+
+    private static WeldContainer bootContainer() {
+
+        return new Weld().disableDiscovery()
+                .addBeanClasses(BenchmarkProducers.class, LoadTestProducers.class,
+                        //Web services and their interceptors and decorators
+                        UserWebService.class, GroupWebService.class, FidoDeviceWebService.class, BulkWebService.class,
+                        UserWebServiceDecorator.class, GroupWebServiceDecorator.class, FidoDeviceWebServiceDecorator.class,
+                        ScimMetricsInterceptor.class, ReferenceURIInterceptor.class,
+                        //SCIM services
+                        Scim2UserService.class, Scim2GroupService.class, Scim2PatchService.class,
+                        ScimFilterParserService.class, ScimResourceSerializer.class, ScimExecutorService.class,
+                        ScimMetricsService.class, ScimCountCache.class, ScimCursorService.class, ScimETagService.class,
+                        //LDAP services
+                        PersonService.class, GroupService.class, MemberService.class, FidoDeviceService.class,
+                        IdGenService.class, InumGeneratorService.class, ServiceUtil.class)
+                .initialize();
+
+    }
+
+    /**
+     * Issues requests at the rate given in options for the time specified
+     * @return Seconds elapsed until all requests issued completed
+     */
+    private static double run(final ScimLoadDriver driver, List<ScimOperation> operations, LoadTestOptions options,
+                              int seconds, final LatencyRecorder recorder) throws InterruptedException {
+
+        ExecutorService pool = Executors.newFixedThreadPool(options.getThreads());
+        final AtomicBoolean errorLogged = new AtomicBoolean();
+        Random random = new Random();
+
+        long interval = TimeUnit.SECONDS.toNanos(1) / options.getRate();
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+
+        for (long due = start; due < end; due += interval) {
+            long wait = due - System.nanoTime();
+            if (wait > 0)
+                LockSupport.parkNanos(wait);
+
+            final ScimOperation operation = operations.get(random.nextInt(operations.size()));
+            final long dueTime = due;
+            pool.execute(new Runnable() {
+                public void run() {
+                    boolean success;
+                    try {
+                        success = driver.execute(operation) < 400;
+                    }
+                    catch (Exception e) {
+                        success = false;
+                        if (errorLogged.compareAndSet(false, true))
+                            log.error("Request failed (further failures are only counted)", e);
+                    }
+                    recorder.record(operation, System.nanoTime() - dueTime, success);
+                }
+            });
+        }
+
+        pool.shutdown();
+        if (!pool.awaitTermination(TERMINATION_TIMEOUT_MINUTES, TimeUnit.MINUTES))
+            log.warn("Some requests did not complete within {} minutes", TERMINATION_TIMEOUT_MINUTES);
+
+        return (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+package org.gluu.oxtrust.benchmark.load;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.ObjectNode;
+import org.gluu.oxtrust.benchmark.ScimFixtures;
+import org.gluu.oxtrust.model.scim2.patch.PatchOperation;
+import org.gluu.oxtrust.model.scim2.patch.PatchRequest;
+import org.gluu.oxtrust.model.scim2.user.UserResource;
+import org.gluu.oxtrust.ws.rs.scim2.BulkWebService;
+import org.gluu.oxtrust.ws.rs.scim2.UserWebService;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.gluu.oxtrust.model.scim2.Constants.BULK_REQUEST_SCHEMA_ID;
+import static org.gluu.oxtrust.model.scim2.Constants.USER_EXT_SCHEMA_ID;
+
+/**
+ * Issues SCIM requests to the web service beans. Requests go straight to the resource methods, so the JAX-RS
+ * authorization filter is not involved. Gets and patches target users picked at random among the ones seeded and the
+ * ones created during the test
+ */
+public class ScimLoadDriver {
+
+    private static final int BULK_TIMEOUT_SECONDS = 120;
+
+    //Discards output of streamed responses
+    private static final OutputStream NULL_OUTPUT = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private final UserWebService userWS;
+    private final BulkWebService bulkWS;
+    private final int bulkSize;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final List<String> ids;
+    private final List<PatchOperation> patchOperations;
+
+    public ScimLoadDriver(UserWebService userWS, BulkWebService bulkWS, List<String> seededIds, int bulkSize) {
+
+        this.userWS = userWS;
+        this.bulkWS = bulkWS;
+        this.bulkSize = bulkSize;
+        this.ids = Collections.synchronizedList(new ArrayList<String>(seededIds));
+
+        patchOperations = new ArrayList<PatchOperation>();
+        patchOperations.add(operation("replace", "displayName", "Patched user"));
+        patchOperations.add(operation("replace", "title", "Manager"));
+        patchOperations.add(operation("replace", USER_EXT_SCHEMA_ID + ":department", "Operations"));
+
+    }
+
+    /**
+     * Issues a request
+     * @param operation Kind of request
+     * @return HTTP status code of the response
+     * @throws Exception If the request could not be completed
+     */
+    public int execute(ScimOperation operation) throws Exception {
+
+        Response response;
+        switch (operation) {
+            case CREATE:
+                UserResource user = newUser();
+                response = userWS.createUser(user, null, null);
+                if (user.getId() != null)
+                    ids.add(user.getId());
+                break;
+            case GET:
+                response = userWS.getUserById(randomId(), null, null);
+                break;
+            case SEARCH:
+                String filter = String.format("userName sw \"user%d\" and displayName pr", ThreadLocalRandom.current().nextInt(100));
+                response = userWS.searchUsers(filter, 1, 20, null, null, "userName,displayName,emails", null);
+                break;
+            case PATCH:
+                PatchRequest request = new PatchRequest();
+                request.setOperations(patchOperations);
+                response = userWS.patchUser(request, randomId(), null, null);
+                break;
+            default:
+                response = bulk();
+        }
+        consume(response);
+        return response.getStatus();
+
+    }
+
+    private Response bulk() throws Exception {
+
+        ObjectNode request = mapper.createObjectNode();
+        request.putArray("schemas").add(BULK_REQUEST_SCHEMA_ID);
+        ArrayNode operations = request.putArray("Operations");
+
+        for (int i = 0; i < bulkSize; i++) {
+            ObjectNode operation = operations.addObject();
+            operation.put("method", "POST");
+            operation.put("path", "/Users");
+            operation.put("bulkId", "user" + i);
+            operation.put("data", mapper.valueToTree(newUser()));
+        }
+
+        BlockingAsyncResponse asyncResponse = new BlockingAsyncResponse();
+        bulkWS.processBulkOperations(new ByteArrayInputStream(mapper.writeValueAsBytes(request)), asyncResponse);
+        Response response = asyncResponse.await(BULK_TIMEOUT_SECONDS);
+        if (response == null)
+            throw new IllegalStateException("Bulk request did not complete in " + BULK_TIMEOUT_SECONDS + " seconds");
+        return response;
+
+    }
+
+    //Streamed entities are written when the container sends the response, so this accounts for that work
+    private void consume(Response response) throws IOException {
+        if (response.getEntity() instanceof StreamingOutput)
+            ((StreamingOutput) response.getEntity()).write(NULL_OUTPUT);
+    }
+
+    private UserResource newUser() {
+
+        int n = sequence.getAndIncrement();
+        UserResource user = ScimFixtures.user(n);
+        user.setId(null);
+        user.setMeta(null);
+        user.setGroups(null);   //groups is a read-only attribute
+        user.setUserName("load" + n);
+        return user;
+
+    }
+
+    private String randomId() {
+        Random random = ThreadLocalRandom.current();
+        synchronized (ids) {
+            return ids.get(random.nextInt(ids.size()));
+        }
+    }
+
+    private static PatchOperation operation(String type, String path, Object value) {
+        PatchOperation operation = new PatchOperation();
+        operation.setOperation(type);
+        operation.setPath(path);
+        operation.setValue(value);
+        return operation;
+    }
+
+}
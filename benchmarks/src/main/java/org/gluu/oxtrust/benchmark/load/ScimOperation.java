@@ -0,0 +1,22 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+package org.gluu.oxtrust.benchmark.load;
+
+/**
+ * Kinds of SCIM requests issued by the load test
+ */
+public enum ScimOperation {
+    CREATE, GET, SEARCH, PATCH, BULK;
+
+    public String getName() {
+        return name().toLowerCase();
+    }
+
+    public static ScimOperation fromName(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+
+}
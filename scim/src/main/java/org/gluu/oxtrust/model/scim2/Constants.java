@@ -99,6 +99,12 @@ public interface Constants {
      */
     String QUERY_PARAM_COUNT = "count";
 
+    /**
+     * The HTTP query parameter used to request cursor-based pagination. An empty value asks for the first page, while
+     * subsequent pages are obtained by passing the <code>nextCursor</code> value of the previous {@link ListResponse}.
+     */
+    String QUERY_PARAM_CURSOR = "cursor";
+
     int MAX_COUNT = 200;    //Do not remove. This is used in SCIM-client project
 
     int MAX_BULK_OPERATIONS = 30;
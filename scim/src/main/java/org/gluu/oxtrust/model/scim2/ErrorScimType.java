@@ -26,7 +26,8 @@ public enum ErrorScimType {
     NO_TARGET ("noTarget"),
     INVALID_VALUE ("invalidValue"),
     INVALID_VERSION ("invalidVers"),
-    SENSITIVE ("sensitive");
+    SENSITIVE ("sensitive"),
+    INVALID_CURSOR ("invalidCursor");
 
     private String value;
 
@@ -25,6 +25,7 @@ public class ListResponse {
     private int totalResults;
     private int startIndex;
     private int itemsPerPage;
+    private String nextCursor;
 
     @JsonProperty("Resources")
     private List<BaseScimResource> resources;
@@ -76,6 +77,19 @@ public class ListResponse {
         return itemsPerPage;
     }
 
+    /**
+     * Retrieves the opaque value to pass in the <code>cursor</code> parameter to obtain the next page of results. This
+     * is only populated when the search was issued in cursor mode and more results remain.
+     * @return A String or null
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
     /**
      * Retrieves a list with all resources contained in this <code>ListResponse</code>.
      * @return A List of BaseScimResource objects
@@ -36,6 +36,7 @@ public class SearchRequest {
     private String sortOrder;
     private Integer startIndex;
     private Integer count;
+    private String cursor;
 
     @JsonIgnore
     private String attributesStr;
@@ -170,6 +171,19 @@ public class SearchRequest {
         this.count = count;
     }
 
+    public String getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Requests cursor-based pagination instead of index-based. When a cursor is supplied, <code>startIndex</code> and
+     * <code>sortBy</code> are ignored.
+     * @param cursor An empty string to obtain the first page, or the <code>nextCursor</code> value of a previous response
+     */
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
     public String getAttributesStr() {
         return attributes==null ? null : Joiner.on(",").join(attributes.toArray());
     }
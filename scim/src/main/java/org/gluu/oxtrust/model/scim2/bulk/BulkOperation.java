@@ -71,7 +71,18 @@ public class BulkOperation {
     }
 
     public String getDataStr() {
+
+        //Computed lazily: the server side does not need a string representation of data
+        if (dataStr==null && data!=null) {
+            try {
+                dataStr = mapper.writeValueAsString(data);
+            }
+            catch (Exception e){
+                dataStr=null;
+            }
+        }
         return dataStr;
+
     }
 
     @JsonSerialize(include=JsonSerialize.Inclusion.NON_EMPTY)
@@ -80,15 +91,8 @@ public class BulkOperation {
     }
 
     public void setData(Map<String, Object> map) {
-
-        try {
-            data=map;
-            dataStr = mapper.writeValueAsString(map);
-        }
-        catch (Exception e){
-            dataStr=null;
-        }
-
+        data=map;
+        dataStr=null;
     }
 
     @JsonSerialize(include=JsonSerialize.Inclusion.NON_EMPTY)
@@ -5,6 +5,7 @@
  */
 package org.gluu.oxtrust.model.scim2.bulk;
 
+import org.codehaus.jackson.annotate.JsonPropertyOrder;
 import org.gluu.oxtrust.model.scim2.Constants;
 
 import java.util.Collections;
@@ -16,6 +17,8 @@ import java.util.Collections;
 /*
  * Updated by jgomer on 2017-11-21.
  */
+//failOnErrors goes first: the service provider runs every operation as soon as it is read
+@JsonPropertyOrder({"schemas", "failOnErrors", "Operations"})
 public class BulkRequest extends BulkBase {
 
     private Integer failOnErrors;
@@ -64,7 +64,7 @@ public class ServiceProviderConfig extends BaseScimResource {
             isRequired = true,
             mutability = AttributeDefinition.Mutability.READ_ONLY,
             type = AttributeDefinition.Type.COMPLEX)
-	private ETagConfig etag = new ETagConfig(false);
+	private ETagConfig etag = new ETagConfig(true);
 
     @Attribute(description = "A multi-valued complex type that specifies supported authentication scheme properties. " +
             "To enable seamless discovery of configurations, the service provider SHOULD, with the appropriate " +
@@ -28,6 +28,7 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Provides miscelaneous routines to query classes/objects properties using reflection mechanisms. Additionally, this
@@ -41,6 +42,15 @@ public class IntrospectUtil {
 
     private static Logger log = LogManager.getLogger(IntrospectUtil.class);
 
+    /*
+     * Reflective lookups are done once per class and cached: Class.getDeclaredFields and Introspector.getBeanInfo copy
+     * arrays on every call, and the methods below are used on every attribute of every resource processed. The number of
+     * entries is bounded by the number of classes inspected
+     */
+    private static Map<Class<?>, Map<String, Field>> fieldsCache = new ConcurrentHashMap<Class<?>, Map<String, Field>>();
+
+    private static Map<Class<?>, Map<String, PropertyDescriptor>> propertiesCache = new ConcurrentHashMap<Class<?>, Map<String, PropertyDescriptor>>();
+
     private IntrospectUtil() {}
 
     /**
@@ -54,17 +64,35 @@ public class IntrospectUtil {
      */
     private static Field findField(final Class<?> cls, final String fieldName){
 
-        Class<?> currentClass = cls;
+        Map<String, Field> fields = fieldsCache.get(cls);
+        if (fields == null) {
+            fields = new HashMap<String, Field>();
+            //Visit from top of hierarchy down, so fields of subclasses take precedence over those of super classes
+            List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+            for (Class<?> currentClass = cls; currentClass != null; currentClass = currentClass.getSuperclass())
+                hierarchy.add(0, currentClass);
 
-        while(currentClass != null){
-            Field fields[] = currentClass.getDeclaredFields();
-            for (Field field : fields){
-                if(field.getName().equals(fieldName))
-                    return field;
-            }
-            currentClass = currentClass.getSuperclass();
+            for (Class<?> currentClass : hierarchy)
+                for (Field field : currentClass.getDeclaredFields())
+                    fields.put(field.getName(), field);
+
+            fieldsCache.put(cls, fields);
+        }
+        return fields.get(fieldName);
+
+    }
+
+    private static PropertyDescriptor findProperty(String fieldName, Class clazz) throws Exception{
+
+        Map<String, PropertyDescriptor> props = propertiesCache.get(clazz);
+        if (props == null) {
+            props = new HashMap<String, PropertyDescriptor>();
+            for (PropertyDescriptor p : Introspector.getBeanInfo(clazz).getPropertyDescriptors())
+                props.put(p.getName(), p);
+
+            propertiesCache.put(clazz, props);
         }
-        return null;
+        return props.get(fieldName);
 
     }
 
@@ -139,44 +167,40 @@ public class IntrospectUtil {
      * @return List of values. They are collected by scanning the getter list from beginning to end. If no values could
      * be collected at all, an empty list is returned
      */
-    public static List<Object> getAttributeValues(BaseScimResource bean, final List<Method> getters){
-
-        final List<Object> results=new ArrayList<Object>();
+    public static List<Object> getAttributeValues(BaseScimResource bean, List<Method> getters){
 
-        class traversalClass{
+        List<Object> results=new ArrayList<Object>();
+        traverseGetters(bean, getters, 0, results);
+        return results;
 
-            void traverse(Object value, int index){
+    }
 
-                try {
-                    if (value!=null && index < getters.size()) {
-                        if (IntrospectUtil.isCollection(value.getClass())) {
+    private static void traverseGetters(Object value, List<Method> getters, int index, List<Object> results){
 
-                            Collection collection=(Collection)value;
-                            if (collection.isEmpty())
-                                traverse(null, index);    //stops branching...
-                            else {
-                                for (Object val : collection)
-                                    traverse(val, index);
-                            }
-                        }
-                        else {
-                            Object val=getters.get(index).invoke(value);
-                            traverse(val, index+1);
-                        }
+        try {
+            if (value!=null && index < getters.size()) {
+                if (value instanceof Collection) {
+
+                    Collection collection=(Collection)value;
+                    if (collection.isEmpty())
+                        traverseGetters(null, getters, index, results);    //stops branching...
+                    else {
+                        for (Object val : collection)
+                            traverseGetters(val, getters, index, results);
                     }
-                    //Add result only if we are at the deepest level (tree tip)
-                    if (index==getters.size())
-                        results.add(value);
                 }
-                catch (Exception e){
-                    log.error(e.getMessage(), e);
+                else {
+                    Object val=getters.get(index).invoke(value);
+                    traverseGetters(val, getters, index+1, results);
                 }
             }
-
+            //Add result only if we are at the deepest level (tree tip)
+            if (index==getters.size())
+                results.add(value);
+        }
+        catch (Exception e){
+            log.error(e.getMessage(), e);
         }
-
-        new traversalClass().traverse(bean, 0);
-        return results;
 
     }
 
@@ -189,11 +213,8 @@ public class IntrospectUtil {
      * @throws Exception Upon introspection error
      */
     public static Method getSetter(String fieldName, Class clazz) throws Exception{
-        PropertyDescriptor[] props = Introspector.getBeanInfo(clazz).getPropertyDescriptors();
-        for (PropertyDescriptor p : props)
-            if (p.getName().equals(fieldName))
-                return p.getWriteMethod();
-        return null;
+        PropertyDescriptor p = findProperty(fieldName, clazz);
+        return p==null ? null : p.getWriteMethod();
     }
 
     /**
@@ -205,11 +226,8 @@ public class IntrospectUtil {
      * @throws Exception Upon introspection error
      */
     public static Method getGetter(String fieldName, Class clazz) throws Exception{
-        PropertyDescriptor[] props = Introspector.getBeanInfo(clazz).getPropertyDescriptors();
-        for (PropertyDescriptor p : props)
-            if (p.getName().equals(fieldName))
-                return p.getReadMethod();
-        return null;
+        PropertyDescriptor p = findProperty(fieldName, clazz);
+        return p==null ? null : p.getReadMethod();
     }
 
     /**
@@ -396,6 +414,8 @@ public class IntrospectUtil {
 
             for (String prop : attrName.split("\\.")) {
                 Method method=getGetter(prop, clazz);
+                //Skips access checks upon every invocation
+                method.setAccessible(true);
                 list.add(method);
 
                 if (isCollection(method.getReturnType())) {  //Use class of parameter in collection
@@ -407,7 +427,7 @@ public class IntrospectUtil {
                 else
                     clazz=method.getReturnType();
             }
-            map.put(attrName, list);
+            map.put(attrName, Collections.unmodifiableList(list));
         }
         return map;
 
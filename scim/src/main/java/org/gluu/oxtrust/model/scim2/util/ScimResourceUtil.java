@@ -243,16 +243,35 @@ public class ScimResourceUtil {
         Map<String, Object> fromMap = mapper.convertValue(origin, new TypeReference<Map<String,Object>>(){});
         Map<String, Object> toMap = mapper.convertValue(destination, new TypeReference<Map<String,Object>>(){});
 
-        log.debug("transferToResource. Recursive traversal of resource is taking place");
-        traversalClass tclass=new traversalClass(origin.getClass());
-        tclass.traverse("", fromMap, toMap, replacing);
-        attachExtensionInfo(fromMap, toMap, extensions, replacing);
+        transferToMap(fromMap, toMap, origin.getClass(), extensions, replacing);
+        return mapper.convertValue(toMap, origin.getClass());
 
-        if (tclass.error==null)
-            return mapper.convertValue(toMap, origin.getClass());
-        else
+    }
+
+    /**
+     * Does the same as {@link #transferToResourceReplace(BaseScimResource, BaseScimResource, List) transferToResourceReplace}
+     * (or {@link #transferToResourceAdd(BaseScimResource, BaseScimResource, List) transferToResourceAdd}) but operating
+     * over the generic map representations of the resources involved. <code>destination</code> is modified in place,
+     * so several transfers can be applied to it without converting back and forth from resource objects
+     * @param source Generic map (as obtained by Jackson's <code>convertValue</code>) with the information to be incorporated
+     * @param destination Generic map that holds the original data and receives the result
+     * @param cls Class of the resources represented by the maps
+     * @param extensions A list of <code>Extensions</code> associated to <code>cls</code>
+     * @param replacing Whether multi-valued attributes have to be replaced (true) or added to (false)
+     * @throws InvalidAttributeValueException If the rule of immutable attribute was not fulfilled
+     */
+    public static void transferToMap(Map<String, Object> source, Map<String, Object> destination, Class<? extends BaseScimResource> cls,
+                                     List<Extension> extensions, boolean replacing) throws InvalidAttributeValueException{
+
+        log.debug("transferToMap. Recursive traversal of resource is taking place");
+        traversalClass tclass=new traversalClass(cls);
+        tclass.traverse("", source, destination, replacing);
+
+        if (tclass.error!=null)
             throw new InvalidAttributeValueException(tclass.error);
 
+        attachExtensionInfo(source, destination, extensions, replacing);
+
     }
 
     /**
@@ -322,22 +341,36 @@ public class ScimResourceUtil {
     public static BaseScimResource deleteFromResource(BaseScimResource origin, String path, List<Extension> extensions)
             throws InvalidAttributeValueException {
 
-        Field f=IntrospectUtil.findFieldFromPath(origin.getClass(), path);
+        Map<String, Object> map = mapper.convertValue(origin, new TypeReference<Map<String,Object>>(){});
+        deleteFromMap(map, origin.getClass(), path, extensions);
+        return mapper.convertValue(map, origin.getClass());
+
+    }
+
+    /**
+     * Does the same as {@link #deleteFromResource(BaseScimResource, String, List) deleteFromResource} but operating over
+     * the generic map representation of a resource, which is modified in place
+     * @param map Generic map (as obtained by Jackson's <code>convertValue</code>) holding the data of a resource
+     * @param cls Class of the resource represented by the map
+     * @param path An attribute path (in dot notation)
+     * @param extensions A list of <code>Extension</code>s associated to <code>cls</code>
+     * @throws InvalidAttributeValueException If there is an attempt to remove an attribute annotated as {@link Attribute#isRequired()
+     * required} or {@link org.gluu.oxtrust.model.scim2.AttributeDefinition.Mutability#READ_ONLY read-only}
+     */
+    public static void deleteFromMap(Map<String, Object> map, Class<? extends BaseScimResource> cls, String path,
+                                     List<Extension> extensions) throws InvalidAttributeValueException {
+
+        Field f=IntrospectUtil.findFieldFromPath(cls, path);
         if (f!=null){
             Attribute attrAnnot = f.getAnnotation(Attribute.class);
             if (attrAnnot != null && (attrAnnot.mutability().equals(READ_ONLY) || attrAnnot.isRequired()))
                 throw new InvalidAttributeValueException("Cannot remove read-only or required attribute " + path);
         }
 
-        Map<String, Object> map = mapper.convertValue(origin, new TypeReference<Map<String,Object>>(){});
-        traversalClass tclass=new traversalClass(origin.getClass());
-
         if (f==null)    //Extensions stuff
             deleteCustomAttribute(map, path, extensions);
         else
-            tclass.traverseDelete(map, path);
-
-        return mapper.convertValue(map, origin.getClass());
+            new traversalClass(cls).traverseDelete(map, path);
 
     }
 
@@ -146,7 +146,10 @@ public interface IGroupWebService {
      * @param excludedAttrsList See notes about <a href="#attrsList">excludedAttributes</a> query param
      * @return An object abstracting the response obtained from the server to this request.
      * A succesful response for this operation should contain a status code of 200 and a {@link org.gluu.oxtrust.model.scim2.ListResponse
-     * ListResponse} in the entity body (holding a collection of SCIM resources)
+     * ListResponse} in the entity body (holding a collection of SCIM resources).
+     * <p>The server also accepts a <code>cursor</code> query param to request cursor-based pagination (see
+     * {@link org.gluu.oxtrust.model.scim2.SearchRequest#setCursor(String) SearchRequest.setCursor}). To use it from
+     * this interface, issue the search with POST instead.</p>
      */
     @Path("/scim/v2/Groups")
     @GET
@@ -165,7 +168,7 @@ public interface IGroupWebService {
      * Sends a search query for Group resources using POST (see section 3.4.3 of RFC 7644).
      * @param searchRequest An object containing the parameters for the query to execute. These are the same parameters
      *                      passed in the URL for searches, for example in
-     *                      {@link #searchGroups(String, Integer, Integer, String, String, String, String) searchDevices}
+     *                      {@link #searchGroups(String, Integer, Integer, String, String, String, String) searchGroups}
      * @return An object abstracting the response obtained from the server to this request.
      * A succesful response for this request should contain a status code of 200 and a {@link org.gluu.oxtrust.model.scim2.ListResponse
      * ListResponse} in the entity body (holding a collection of SCIM resources)
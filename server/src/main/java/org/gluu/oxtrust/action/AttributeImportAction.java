@@ -20,6 +20,7 @@ import javax.inject.Named;
 import org.apache.commons.io.IOUtils;
 import org.gluu.jsf2.message.FacesMessages;
 import org.gluu.jsf2.service.ConversationService;
+import org.gluu.oxtrust.ldap.load.LdifImportStatus;
 import org.gluu.oxtrust.ldap.service.AttributeService;
 import org.gluu.oxtrust.ldap.service.LdifService;
 import org.gluu.oxtrust.util.OxTrustConstants;
@@ -83,22 +84,23 @@ public class AttributeImportAction implements Serializable {
 		}
 
 		InputStream is = new ByteArrayInputStream(fileDataToImport.getData());
-		ResultCode result = null;
+		LdifImportStatus status = new LdifImportStatus();
 		try {
-			result = ldifService.importLdifFileInLdap(is);
-		} catch (LDAPException ex) {
-			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Failed to import LDIF file");
+			ldifService.importLdifFileInLdap(is, status);
 		} finally {
 			IOUtils.closeQuietly(is);
 		}
 		
 		removeFileToImport();
 
-		if ((result != null) && result.equals(ResultCode.SUCCESS)) {
+		if (status.getFailedCount() == 0) {
 			facesMessages.add(FacesMessage.SEVERITY_INFO,"Attributes added successfully");
 			return OxTrustConstants.RESULT_SUCCESS;
 		} else {
-			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Failed to import LDIF file");
+			for (LdifImportStatus.RecordError error : status.getErrors()) {
+				log.error("Failed to import LDIF record: {}", error);
+			}
+			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Failed to import %s of %s LDIF records", status.getFailedCount(), status.getReadCount());
 			return OxTrustConstants.RESULT_FAILURE;
 		}
 	}
@@ -209,7 +209,10 @@ public class ConfigureCacheRefreshAction implements SimplePropertiesListModel, S
 		fixLdapConfiguration(this.cacheRefreshConfiguration.getTargetConfig());
 		
 		try {
-			jsonConfigurationService.saveOxTrustCacheRefreshConfiguration(this.cacheRefreshConfiguration);
+			if (!jsonConfigurationService.saveOxTrustCacheRefreshConfiguration(this.cacheRefreshConfiguration)) {
+				facesMessages.add(FacesMessage.SEVERITY_ERROR, "Configuration was changed by someone else meanwhile. Please reload it and apply your changes again");
+				return OxTrustConstants.RESULT_FAILURE;
+			}
 
 			updateAppliance();
 		} catch (Exception ex) {
@@ -129,7 +129,10 @@ public class JsonConfigurationAction implements Serializable {
 			// Trim all URI properties
 			trimUriProperties();
 			
-			jsonConfigurationService.saveOxTrustappConfiguration(this.oxTrustappConfiguration);
+			if (!jsonConfigurationService.saveOxTrustappConfiguration(this.oxTrustappConfiguration)) {
+				facesMessages.add(FacesMessage.SEVERITY_ERROR, "Configuration was changed by someone else meanwhile. Please reload it and apply your changes again");
+				return OxTrustConstants.RESULT_FAILURE;
+			}
 			facesMessages.add(FacesMessage.SEVERITY_INFO, "oxTrust Configuration is updated.");
 
 			return OxTrustConstants.RESULT_SUCCESS;
@@ -170,7 +173,10 @@ public class JsonConfigurationAction implements Serializable {
 		try {
 			log.debug("Saving oxtrust-import-person.json:" + this.oxTrustImportPersonConfigJson);
 			this.oxTrustImportPersonConfiguration = convertToOxTrustImportPersonConfiguration(this.oxTrustImportPersonConfigJson);
-			jsonConfigurationService.saveOxTrustImportPersonConfiguration(this.oxTrustImportPersonConfiguration);
+			if (!jsonConfigurationService.saveOxTrustImportPersonConfiguration(this.oxTrustImportPersonConfiguration)) {
+				facesMessages.add(FacesMessage.SEVERITY_ERROR, "Configuration was changed by someone else meanwhile. Please reload it and apply your changes again");
+				return OxTrustConstants.RESULT_FAILURE;
+			}
 			facesMessages.add(FacesMessage.SEVERITY_INFO, "oxTrust Import Person Configuration is updated.");
 
 			return OxTrustConstants.RESULT_SUCCESS;
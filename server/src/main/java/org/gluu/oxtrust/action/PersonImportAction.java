@@ -6,55 +6,40 @@
 
 package org.gluu.oxtrust.action;
 
-import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import javax.annotation.PreDestroy;
 import javax.enterprise.context.ConversationScoped;
 import javax.faces.application.FacesMessage;
+import javax.faces.context.FacesContext;
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang.RandomStringUtils;
 import org.gluu.jsf2.message.FacesMessages;
 import org.gluu.jsf2.service.ConversationService;
+import org.gluu.oxtrust.ldap.load.PersonImportJob;
+import org.gluu.oxtrust.ldap.load.RowReader;
 import org.gluu.oxtrust.ldap.load.conf.ImportPersonConfiguration;
-import org.gluu.oxtrust.ldap.service.AttributeService;
-import org.gluu.oxtrust.ldap.service.ExcelService;
-import org.gluu.oxtrust.ldap.service.IPersonService;
-import org.gluu.oxtrust.ldap.service.OrganizationService;
-import org.gluu.oxtrust.model.GluuCustomAttribute;
-import org.gluu.oxtrust.model.GluuCustomPerson;
-import org.gluu.oxtrust.model.table.Table;
-import org.gluu.oxtrust.service.external.ExternalUpdateUserService;
+import org.gluu.oxtrust.ldap.service.PersonImportService;
 import org.gluu.oxtrust.util.OxTrustConstants;
-import org.gluu.site.ldap.persistence.AttributeData;
-import org.gluu.site.ldap.persistence.exception.EntryPersistenceException;
 import org.richfaces.event.FileUploadEvent;
 import org.richfaces.model.UploadedFile;
 import org.slf4j.Logger;
-import org.xdi.config.oxtrust.AppConfiguration;
-import org.xdi.ldap.model.GluuBoolean;
-import org.xdi.ldap.model.GluuStatus;
 import org.xdi.model.GluuAttribute;
-import org.xdi.model.GluuAttributeDataType;
-import org.xdi.model.GluuUserRole;
 import org.xdi.service.security.Secure;
-import org.xdi.util.StringHelper;
+import org.xdi.util.io.ResponseHelper;
 
 /**
- * Action class for load persons from Excel file
+ * Action class for load persons from CSV and Excel files
  * 
  * @author Yuriy Movchan Date: 02.14.2011
  */
@@ -65,29 +50,13 @@ public class PersonImportAction implements Serializable {
 
 	private static final long serialVersionUID = -1270460481895022468L;
 
-	private static final String[] PERSON_IMPORT_PERSON_LOCKUP_RETURN_ATTRIBUTES = { "uid", "displayName","mail" };
-	public static final String PERSON_PASSWORD_ATTRIBUTE = "userPassword";
+	private static final String ERROR_REPORT_FILE_NAME = "person-import-errors.csv";
 
 	@Inject
 	private Logger log;
-	
-	@Inject
-	private OrganizationService organizationService;
-
-	@Inject
-	private IPersonService personService;
-	
-	@Inject
-	private AttributeService attributeService;
-	
-	@Inject
-	private AppConfiguration appConfiguration;
-	
-	@Inject
-	private ExternalUpdateUserService externalUpdateUserService;
 
 	@Inject
-	private ExcelService excelService;
+	private PersonImportService personImportService;
 
 	@Inject
 	private FacesMessages facesMessages;
@@ -97,21 +66,14 @@ public class PersonImportAction implements Serializable {
 
 	@Inject
 	private transient ImportPersonConfiguration importPersonConfiguration;
-	
-	@Inject
-	private CustomAttributeAction customAttributeAction;
 
 	private UploadedFile uploadedFile;
 	private FileDataToImport fileDataToImport;
 	private List<GluuAttribute> attributes;
-	private Map<String, GluuAttribute> attributesDisplayNameMap;
-	private byte[] fileData;
 
 	private boolean isInitialized;
 
-	private GluuCustomPerson person;
-
-	private String inum;
+	private String importJobId;
 
 	public String init() {
 		if (this.isInitialized) {
@@ -119,7 +81,6 @@ public class PersonImportAction implements Serializable {
 		}
 
 		this.attributes = importPersonConfiguration.getAttributes();
-		this.attributesDisplayNameMap = getAttributesDisplayNameMap(this.attributes);
 
 		this.fileDataToImport = new FileDataToImport();
 
@@ -128,75 +89,62 @@ public class PersonImportAction implements Serializable {
 		return OxTrustConstants.RESULT_SUCCESS;
 	}
 
-	public String importPersons() throws Exception {
+	public String importPersons() {
 		if (!fileDataToImport.isReady()) {
 			facesMessages.add(FacesMessage.SEVERITY_ERROR, "File to import is invalid");
 			return OxTrustConstants.RESULT_FAILURE;
 		}
 
-		log.info("Attempting to add {} persons", fileDataToImport.getPersons().size());
-		try {
-			for (GluuCustomPerson person : fileDataToImport.getPersons()) {
-				
-				this.person=person;
-				String result = initializePerson();
-				if(result.equals(OxTrustConstants.RESULT_SUCCESS)){
-					result = save();
-				}
-				if(result.equals(OxTrustConstants.RESULT_SUCCESS)){
-					log.debug("Added new person: {}", person.getUid());
-				}
-				else{
-					log.debug("Failed to add new person: {}", person.getUid());
-					facesMessages.add(FacesMessage.SEVERITY_ERROR, "Failed to add new person: '%s'", person.getUid());
-				}
-			}
-		} catch (EntryPersistenceException ex) {
-			log.error("Failed to add new person", ex);
-			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Failed to import users");
-
-			return OxTrustConstants.RESULT_FAILURE;
-		}
+		// The job removes the file once the import finishes
+		PersonImportJob job = personImportService.createJob(fileDataToImport.getFileName(), fileDataToImport.getFile(), this.attributes);
+		this.fileDataToImport.setFile(null);
+		removeFileToImport();
 
-		log.info("All {} persons added successfully", fileDataToImport.getPersons().size());
-		facesMessages.add(FacesMessage.SEVERITY_INFO, "Users successfully imported");
+		personImportService.importPersons(job);
+		this.importJobId = job.getId();
 
-		removeFileToImport();
+		log.info("Started import of persons from file '{}'", job.getFileName());
+		facesMessages.add(FacesMessage.SEVERITY_INFO, "Import of users started");
 
 		return OxTrustConstants.RESULT_SUCCESS;
 	}
 
-	public void validateFileToImport() throws Exception {
+	public void validateFileToImport() {
 		removeFileDataToImport();
 
-		if (uploadedFile == null) {
+		if ((uploadedFile == null) || (fileDataToImport.getFile() == null)) {
 			return;
 		}
 
-		Table table;
-		InputStream is = new ByteArrayInputStream(this.fileData);
-		try {
-			table = excelService.readExcelFile(is);
-		} finally {
-			IOUtils.closeQuietly(is);
-		}
-
-		this.fileDataToImport.setTable(table);
-
-		if (table != null) {
-			this.fileDataToImport.setFileName(FilenameUtils.getName(uploadedFile.getName()));
-			this.fileDataToImport.setImportAttributes(getAttributesForImport(table));
-			this.fileDataToImport.setReady(true);
+		String fileName = fileDataToImport.getFileName();
+		if (!personImportService.isSupportedFile(fileName)) {
+			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Import failed. Only CSV, XLSX and XLS files are supported");
+			return;
 		}
 
-		if (this.fileDataToImport.isReady()) {
-			boolean valid = prepareAndValidateImportData(this.fileDataToImport.getTable(), this.fileDataToImport.getImportAttributes());
-			this.fileDataToImport.setReady(valid);
+		RowReader reader = null;
+		try {
+			reader = personImportService.openReader(fileDataToImport.getFile(), fileName);
+			Map<Integer, GluuAttribute> columnAttributes = personImportService.getColumnAttributes(reader.readRow(), this.attributes);
+			if (!personImportService.getMissingAttributes(columnAttributes, this.attributes).isEmpty()) {
+				facesMessages.add(FacesMessage.SEVERITY_ERROR, "Import failed. Required columns: %s", getAttributesString(this.attributes));
+				return;
+			}
 
-			if (!valid) {
-				removeFileDataToImport();
+			if (reader.readRow() == null) {
+				facesMessages.add(FacesMessage.SEVERITY_ERROR, "Import failed. No data found");
+				return;
 			}
+		} catch (IOException ex) {
+			log.error("Failed to read file '{}'", fileName, ex);
+			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Import failed. Failed to read file");
+			return;
+		} finally {
+			IOUtils.closeQuietly(reader);
 		}
+
+		// Rows are validated while they are imported, see the error report of the import
+		this.fileDataToImport.setReady(true);
 	}
 
 	public String cancel() {
@@ -214,8 +162,13 @@ public class PersonImportAction implements Serializable {
 
 	@PreDestroy
 	public void destroy() {
-		removeFileDataToImport();
 		removeFileToImport();
+
+		// Running imports continue in background
+		PersonImportJob job = getImportJob();
+		if ((job != null) && !job.isRunning()) {
+			personImportService.removeJob(this.importJobId);
+		}
 	}
 
 	public UploadedFile getUploadedFile() {
@@ -226,248 +179,83 @@ public class PersonImportAction implements Serializable {
 		return this.fileDataToImport;
 	}
 
-	public void removeFileDataToImport() {
-		this.fileDataToImport.reset();
-	}
-
-	public void uploadFile(FileUploadEvent event) {
-		removeFileToImport();
-
-		this.uploadedFile = event.getUploadedFile();
-		this.fileData = this.uploadedFile.getData();
+	public PersonImportJob getImportJob() {
+		return personImportService.getJob(this.importJobId);
 	}
 
-	public void removeFileToImport() {
-		if (uploadedFile != null) {
-			try {
-				uploadedFile.delete();
-			} catch (IOException ex) {
-				log.error("Failed to remove temporary file", ex);
-			}
-
-			this.uploadedFile = null;
+	public void cancelImport() {
+		PersonImportJob job = getImportJob();
+		if (job != null) {
+			job.cancel();
 		}
-		removeFileDataToImport();
 	}
 
-	private boolean prepareAndValidateImportData(Table table, List<ImportAttribute> importAttributes) throws Exception {
-		String attributesString = getAttributesString(this.attributes);
-		if ((table == null) || (importAttributes == null)) {
-			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Import failed. Missing columns: %s", attributesString);
-			return false;
-		}
-
-		List<GluuAttribute> mandatoryAttributes = getMandatoryAttributes(this.attributes);
-		List<ImportAttribute> mandatoryImportAttributes = getMandatoryImportAttributes(importAttributes);
-		if (mandatoryAttributes.size() != mandatoryImportAttributes.size()) {
-			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Import failed. Required columns: %s", attributesString);
-			return false;
-		}
-
-		if (table.getCountRows() < 1) {
-			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Import failed. No data found");
-			return false;
-		}
-
-		// Convert Excel table to GluuCustomPersons
-		List<GluuCustomPerson> persons = convertTableToPersons(table, importAttributes);
-		if (persons == null) {
-			return false;
-		}
-
-		// Check if person already exist
-		if (!validatePersons(persons)) {
-			return false;
+	/**
+	 * Forgets the last import, so that another file can be imported
+	 */
+	public void resetImport() {
+		PersonImportJob job = getImportJob();
+		if ((job != null) && !job.isRunning()) {
+			personImportService.removeJob(this.importJobId);
+			this.importJobId = null;
 		}
-
-		// Fill persons with default values
-		if (!setDefaultPersonAttributes(persons, importAttributes)) {
-			return false;
-		}
-
-		// Store persons
-		log.info("Prepared {} persons for creation", persons.size());
-		this.fileDataToImport.setPersons(persons);
-
-		return true;
 	}
 
-	private List<ImportAttribute> getMandatoryImportAttributes(List<ImportAttribute> importAttributes) {
-		List<ImportAttribute> result = new ArrayList<ImportAttribute>();
-		for (ImportAttribute importAttribute : importAttributes) {
-			if ((importAttribute.getCol() != -1) && importAttribute.getAttribute().isRequred()) {
-				result.add(importAttribute);
-			}
+	public String downloadErrorReport() {
+		PersonImportJob job = getImportJob();
+		if (job == null) {
+			facesMessages.add(FacesMessage.SEVERITY_ERROR, "There is no import report");
+			return OxTrustConstants.RESULT_FAILURE;
 		}
 
-		return result;
-	}
+		FacesContext facesContext = FacesContext.getCurrentInstance();
+		boolean result = ResponseHelper.downloadFile(ERROR_REPORT_FILE_NAME, "text/csv;charset=UTF-8", job.getErrorReport(), facesContext);
 
-	private List<GluuAttribute> getMandatoryAttributes(List<GluuAttribute> attributes) {
-		List<GluuAttribute> result = new ArrayList<GluuAttribute>();
-		for (GluuAttribute attribute : attributes) {
-			if (attribute.isRequred()) {
-				result.add(attribute);
-			}
-		}
-
-		return result;
+		return result ? OxTrustConstants.RESULT_SUCCESS : OxTrustConstants.RESULT_FAILURE;
 	}
 
-	private boolean setDefaultPersonAttributes(List<GluuCustomPerson> persons, List<ImportAttribute> importAttributes) throws Exception {
-		boolean isGeneratePassword = false;
-		for (ImportAttribute importAttribute : importAttributes) {
-			if (importAttribute.getAttribute().getName().equalsIgnoreCase(PERSON_PASSWORD_ATTRIBUTE)
-					&& !importAttribute.getAttribute().isRequred()) {
-				isGeneratePassword = true;
-				break;
-			}
-		}
-
-		for (GluuCustomPerson person : persons) {
-			if (StringHelper.isEmpty(person.getCommonName())) {
-				person.setCommonName(person.getGivenName() + " " + person.getSurname());
-			} else {
-				person.setCommonName(person.getCommonName() + " " + person.getGivenName() + " " + person.getSurname());
-			}
-			person.setDisplayName(person.getCommonName());
-
-			String iname = personService.generateInameForNewPerson(person.getUid());
-			person.setIname(iname);
-
-			if (isGeneratePassword && StringHelper.isEmpty(person.getUserPassword())) {
-				person.setUserPassword(RandomStringUtils.randomAlphanumeric(16));
-			}
-
-		}
-
-		return true;
+	public void removeFileDataToImport() {
+		this.fileDataToImport.setReady(false);
 	}
 
-	private boolean validatePersons(List<GluuCustomPerson> persons) throws Exception {
-		Set<String> uids = new HashSet<String>();
-		Set<String> mails = new HashSet<String>();
-		for (GluuCustomPerson person : persons) {
-			uids.add(person.getUid());
-			mails.add(person.getMail());
-		}
+	public void uploadFile(FileUploadEvent event) {
+		removeFileToImport();
 
-		if (uids.size() != persons.size()) {
-			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Import failed. There are persons with simular uid(s) in input file");
-			return false;
-		}
-		
-		if (mails.size() != persons.size()) {
-			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Import failed. There are persons with simular mail(s) in input file");
-			return false;
-		}
+		this.uploadedFile = event.getUploadedFile();
 
-		List<GluuCustomPerson> existPersons = personService.findPersonsByUids(new ArrayList<String>(uids),
-				PERSON_IMPORT_PERSON_LOCKUP_RETURN_ATTRIBUTES);
-		if (existPersons.size() > 0) {
-			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Import failed. There are persons with existing uid(s): %s",
-					personService.getPersonUids(existPersons));
-			return false;
-		}
-		
-		List<GluuCustomPerson> existEmailPersons = personService.findPersonsByMailids(new ArrayList<String>(mails),
-				PERSON_IMPORT_PERSON_LOCKUP_RETURN_ATTRIBUTES);
-		if (existEmailPersons.size() > 0) {
-			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Import failed. There are persons with existing mailid(s): %s",
-					personService.getPersonMailids(existEmailPersons));
-			return false;
+		// Keep upload on disk, so that it can be read a row at a time
+		String fileName = FilenameUtils.getName(uploadedFile.getName());
+		InputStream is = null;
+		try {
+			File file = File.createTempFile("person-import", "." + FilenameUtils.getExtension(fileName));
+			is = uploadedFile.getInputStream();
+			FileUtils.copyInputStreamToFile(is, file);
+
+			this.fileDataToImport.setFile(file);
+			this.fileDataToImport.setFileName(fileName);
+		} catch (IOException ex) {
+			log.error("Failed to store uploaded file", ex);
+			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Failed to store uploaded file");
+		} finally {
+			IOUtils.closeQuietly(is);
 		}
-
-		return true;
 	}
 
-	protected List<GluuCustomPerson> convertTableToPersons(Table table, List<ImportAttribute> importAttributes) throws Exception {
-		// Prepare for conversion to list of GluuCustomPerson and check data
-		// type
-		Map<String, List<AttributeData>> entriesAttributes = new HashMap<String, List<AttributeData>>();
-		int rows = table.getCountRows();
-		boolean validTable = true;
-		for (int i = 1; i <= rows; i++) {
-			List<AttributeData> attributeDataList = new ArrayList<AttributeData>();
-			for (ImportAttribute importAttribute : importAttributes) {
-				if (importAttribute.getCol() == -1) {
-					continue;
-				}
-
-				GluuAttribute attribute = importAttribute.getAttribute();
-				String cellValue = table.getCellValue(importAttribute.getCol(), i);
-				if (StringHelper.isEmpty(cellValue)) {
-					if (attribute.isRequred()) {
-						facesMessages.add(FacesMessage.SEVERITY_ERROR, "Import failed. Empty '%s' not allowed", attribute.getDisplayName());
-						validTable = false;
-					}
-					continue;
-				}
-				
-				String ldapValue = getTypedValue(attribute, cellValue);
-				if (StringHelper.isEmpty(ldapValue)) {
-					facesMessages.add(FacesMessage.SEVERITY_ERROR, "Invalid value '%s' in column '%s' at row %s were specified", cellValue,
-							attribute.getDisplayName(), i + 1);
-					validTable = false;
-					continue;
-				}
-
-				AttributeData attributeData = new AttributeData(attribute.getName(), ldapValue);
-				attributeDataList.add(attributeData);
+	public void removeFileToImport() {
+		if (uploadedFile != null) {
+			try {
+				uploadedFile.delete();
+			} catch (IOException ex) {
+				log.error("Failed to remove temporary file", ex);
 			}
-			entriesAttributes.put(Integer.toString(i), attributeDataList);
-		}
-
-		if (!validTable) {
-			return null;
-		}
 
-		// Convert to GluuCustomPerson and set right DN
-		List<GluuCustomPerson> persons = personService.createEntities(entriesAttributes);
-		log.info("Found {} persons in input Excel file", persons.size());
-		
-		for(GluuCustomPerson person  : persons){
-			for (String key : entriesAttributes.keySet()){
-				boolean flag = false;
-				for(AttributeData AttributeData : entriesAttributes.get(key) ){
-					if(AttributeData.getName().equalsIgnoreCase("uid")){
-						if(person.getUid().equalsIgnoreCase(AttributeData.getValue())){
-							for(AttributeData AttributeData1 : entriesAttributes.get(key) ){
-								if(AttributeData1.getName().equalsIgnoreCase("userPassword")){
-									person.setUserPassword(AttributeData1.getValue());
-									flag=true;
-									break;
-								} else if(AttributeData1.getName().equalsIgnoreCase("gluuStatus")){
-									
-									person.setStatus(GluuStatus.getByValue(AttributeData1.getValue()));
-									flag=true;
-									break;
-								}
-							}						
-						}
-					}else{
-						if(flag)break;
-					}
-				}
-				if(flag)break;
-			}
-			
+			this.uploadedFile = null;
 		}
 
-		return persons;
-	}
-
-	private String getTypedValue(GluuAttribute attribute, String value) {
-		if (GluuAttributeDataType.STRING.equals(attribute.getDataType())) {
-			return value;
-		} else if (GluuAttributeDataType.BOOLEAN.equals(attribute.getDataType())) {
-			GluuBoolean gluuBoolean = GluuBoolean.getByValue(value);
-			if (gluuBoolean != null) {
-				return GluuBoolean.getByValue(value).toString();
-			}
+		if (this.fileDataToImport.getFile() != null) {
+			FileUtils.deleteQuietly(this.fileDataToImport.getFile());
 		}
-		
-		return null;
+		this.fileDataToImport.reset();
 	}
 
 	private String getAttributesString(List<GluuAttribute> attributes) {
@@ -488,168 +276,17 @@ public class PersonImportAction implements Serializable {
 		return sb.toString();
 	}
 
-	private List<ImportAttribute> getAttributesForImport(Table table) {
-		List<ImportAttribute> importAttributes = new ArrayList<ImportAttribute>();
-		if ((table == null) || (table.getCountCols() < 1) || (table.getCountRows() < 1)) {
-			return importAttributes;
-		}
-
-		int cols = table.getCountCols();
-		List<String> addedAttributes = new ArrayList<String>(this.attributes.size());
-		for (int i = 0; i <= cols; i++) {
-			String cellValue = table.getCellValue(i, 0);
-			if (StringHelper.isEmpty(cellValue)) {
-				continue;
-			}
-
-			String attributeName = cellValue.toLowerCase();
-			GluuAttribute attribute = attributesDisplayNameMap.get(attributeName);
-			if (attribute != null) {
-				addedAttributes.add(attributeName);
-				ImportAttribute importAttribute = new ImportAttribute(i, attribute);
-				importAttributes.add(importAttribute);
-			}
-		}
-
-		for (GluuAttribute attribute : this.attributes) {
-			if (!addedAttributes.contains(attribute.getName())) {
-				ImportAttribute importAttribute = new ImportAttribute(-1, attribute);
-				importAttributes.add(importAttribute);
-			}
-		}
-
-		return importAttributes;
-	}
-
-	private Map<String, GluuAttribute> getAttributesDisplayNameMap(List<GluuAttribute> attributes) {
-		Map<String, GluuAttribute> result = new HashMap<String, GluuAttribute>();
-		for (GluuAttribute attribute : attributes) {
-			result.put(attribute.getDisplayName().toLowerCase(), attribute);
-		}
-
-		return result;
-	}
-	
-	private void initAttributes() {
-		List<GluuAttribute> attributes = attributeService.getAllPersonAttributes(GluuUserRole.ADMIN);
-		List<String> origins = attributeService.getAllAttributeOrigins(attributes);
-
-		List<GluuCustomAttribute> customAttributes = this.person.getCustomAttributes();
-		boolean newPerson = (customAttributes == null) || customAttributes.isEmpty();
-		if (newPerson) {
-			customAttributes = new ArrayList<GluuCustomAttribute>();
-			this.person.setCustomAttributes(customAttributes);
-		}
-
-		customAttributeAction.initCustomAttributes(attributes, customAttributes, origins, appConfiguration
-				.getPersonObjectClassTypes(), appConfiguration.getPersonObjectClassDisplayNames());
-
-		if (newPerson) {
-			customAttributeAction.addCustomAttributes(personService.getMandatoryAtributes());
-		}
-	}
-	
-	public String save() {
-		if (!organizationService.isAllowPersonModification()) {
-			return OxTrustConstants.RESULT_FAILURE;
-		}
-
-		personService.addCustomObjectClass(this.person);
-		
-			if (personService.getPersonByUid(this.person.getUid()) != null) {
-				return OxTrustConstants.RESULT_DUPLICATE;
-			}
-
-			this.inum = personService.generateInumForNewPerson();
-			String iname = personService.generateInameForNewPerson(this.person.getUid());
-			String dn = personService.getDnForPerson(this.inum);
-
-			// Save person
-			this.person.setDn(dn);
-			this.person.setInum(this.inum);
-			this.person.setIname(iname);
-
-			List<GluuCustomAttribute> personAttributes = this.person.getCustomAttributes();
-			if (!personAttributes.contains(new GluuCustomAttribute("cn", ""))) {
-				List<GluuCustomAttribute> changedAttributes = new ArrayList<GluuCustomAttribute>();
-				changedAttributes.addAll(personAttributes);
-				changedAttributes.add(new GluuCustomAttribute("cn", this.person.getGivenName() + " " + this.person.getDisplayName()));
-				this.person.setCustomAttributes(changedAttributes);
-			} else {
-				this.person.setCommonName(this.person.getCommonName() + " " + this.person.getGivenName());
-			}
-
-			try {
-				boolean runScript = externalUpdateUserService.isEnabled();
-				if (runScript) {
-					externalUpdateUserService.executeExternalAddUserMethods(this.person);
-                }
-
-				personService.addPerson(this.person);
-
-				if (runScript) {
-					externalUpdateUserService.executeExternalPostAddUserMethods(this.person);
-                }
-			} catch (Exception ex) {
-				log.error("Failed to add new person {}", this.person.getInum(), ex);
-
-				return OxTrustConstants.RESULT_FAILURE;
-			}
-		return OxTrustConstants.RESULT_SUCCESS;
-	}
-
-	
-	public String initializePerson() {
-		if (!organizationService.isAllowPersonModification()) {
-			return OxTrustConstants.RESULT_FAILURE;
-		}
-
-		if (this.person != null) {
-			return OxTrustConstants.RESULT_SUCCESS;
-		}
-		this.person = new GluuCustomPerson();
-
-		initAttributes();
-
-		return OxTrustConstants.RESULT_SUCCESS;
-	}
-
-	
-	
-
 	public static class FileDataToImport implements Serializable {
 
 		private static final long serialVersionUID = 7334362213305310293L;
 
 		private String fileName;
-		private Table table;
-		private List<ImportAttribute> importAttributes;
-		private List<GluuCustomPerson> persons;
+		private File file;
 		private boolean ready;
 
 		public FileDataToImport() {
 		}
 
-		public FileDataToImport(Table table) {
-			this.table = table;
-		}
-
-		public List<ImportAttribute> getImportAttributes() {
-			return importAttributes;
-		}
-
-		public void setImportAttributes(List<ImportAttribute> importAttributes) {
-			this.importAttributes = importAttributes;
-		}
-
-		public Table getTable() {
-			return table;
-		}
-
-		public void setTable(Table table) {
-			this.table = table;
-		}
-
 		public String getFileName() {
 			return fileName;
 		}
@@ -658,12 +295,12 @@ public class PersonImportAction implements Serializable {
 			this.fileName = fileName;
 		}
 
-		public List<GluuCustomPerson> getPersons() {
-			return persons;
+		public File getFile() {
+			return file;
 		}
 
-		public void setPersons(List<GluuCustomPerson> persons) {
-			this.persons = persons;
+		public void setFile(File file) {
+			this.file = file;
 		}
 
 		public boolean isReady() {
@@ -676,40 +313,9 @@ public class PersonImportAction implements Serializable {
 
 		public void reset() {
 			this.fileName = null;
-			this.table = null;
-			this.importAttributes = null;
-			this.persons = null;
+			this.file = null;
 			this.ready = false;
 		}
 	}
 
-	public static class ImportAttribute implements Serializable {
-
-		private static final long serialVersionUID = -5640983196565086530L;
-
-		private GluuAttribute attribute;
-		private int col;
-
-		public ImportAttribute(int col, GluuAttribute attribute) {
-			this.col = col;
-			this.attribute = attribute;
-		}
-
-		public int getCol() {
-			return col;
-		}
-
-		public void setCol(int col) {
-			this.col = col;
-		}
-
-		public GluuAttribute getAttribute() {
-			return attribute;
-		}
-
-		public void setAttribute(GluuAttribute attribute) {
-			this.attribute = attribute;
-		}
-	}
-
-}
\ No newline at end of file
+}
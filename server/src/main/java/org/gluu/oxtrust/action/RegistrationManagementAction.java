@@ -223,7 +223,10 @@ public class RegistrationManagementAction implements SimpleCustomPropertiesListM
 		org.setOxRegistrationConfiguration(config);
 		organizationService.updateOrganization(org);
 
-		jsonConfigurationService.saveOxTrustappConfiguration(this.oxTrustappConfiguration);
+		if (!jsonConfigurationService.saveOxTrustappConfiguration(this.oxTrustappConfiguration)) {
+			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Configuration was changed by someone else meanwhile. Please reload it and apply your changes again");
+			return OxTrustConstants.RESULT_FAILURE;
+		}
 
 		facesMessages.add(FacesMessage.SEVERITY_INFO, "Registration configuration updated successfully");
 
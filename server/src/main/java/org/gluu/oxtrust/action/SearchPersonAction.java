@@ -7,21 +7,28 @@
 package org.gluu.oxtrust.action;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.enterprise.context.ConversationScoped;
 import javax.faces.application.FacesMessage;
+import javax.faces.context.FacesContext;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 
+import org.ajax4jsf.model.DataVisitor;
+import org.ajax4jsf.model.ExtendedDataModel;
+import org.ajax4jsf.model.Range;
+import org.ajax4jsf.model.SequenceRange;
 import org.gluu.jsf2.message.FacesMessages;
 import org.gluu.jsf2.service.ConversationService;
 import org.gluu.oxtrust.ldap.service.IPersonService;
 import org.gluu.oxtrust.model.GluuCustomPerson;
 import org.gluu.oxtrust.util.OxTrustConstants;
 import org.slf4j.Logger;
+import org.xdi.ldap.model.VirtualListViewResponse;
 import org.xdi.service.security.Secure;
 import org.xdi.util.Util;
 
@@ -37,6 +44,21 @@ public class SearchPersonAction implements Serializable {
 
 	private static final long serialVersionUID = -4672682869487324438L;
 
+	public static final int PAGE_SIZE = 20;
+
+	// Results beyond this number are not listed. Search should be refined instead
+	public static final int MAX_RESULTS = 1000;
+
+	// One more than listed, so that truncated results can be reported
+	private static final int SEARCH_SIZE_LIMIT = MAX_RESULTS + 1;
+
+	// Patterns shorter than this are too unselective for substring search
+	private static final int MIN_SUBSTRING_PATTERN_LENGTH = 3;
+
+	// Attributes shown in persons list
+	private static final String[] LIST_ATTRIBUTES = new String[] { OxTrustConstants.inum, OxTrustConstants.uid,
+			OxTrustConstants.displayName, OxTrustConstants.iname, OxTrustConstants.mail, OxTrustConstants.gluuStatus };
+
 	@Inject
 	private Logger log;
 
@@ -52,7 +74,11 @@ public class SearchPersonAction implements Serializable {
 
 	private String oldSearchPattern;
 
-	private List<GluuCustomPerson> personList;
+	private boolean substringSearch;
+
+	private int resultCount;
+
+	private PersonDataModel personDataModel;
 
 	@Inject
 	private IPersonService personService;
@@ -67,7 +93,29 @@ public class SearchPersonAction implements Serializable {
 		}
 
 		try {
-			this.personList = personService.searchPersons(this.searchPattern);
+			// Try prefix search first. It can use indexes while substring search usually can't
+			boolean substring = false;
+			VirtualListViewResponse vlvResponse = new VirtualListViewResponse();
+			List<GluuCustomPerson> firstPage = personService.searchPersons(this.searchPattern, substring, 1, PAGE_SIZE, SEARCH_SIZE_LIMIT,
+					vlvResponse, LIST_ATTRIBUTES);
+
+			if ((vlvResponse.getTotalResults() == 0) && (this.searchPattern != null)
+					&& (this.searchPattern.length() >= MIN_SUBSTRING_PATTERN_LENGTH)) {
+				substring = true;
+				vlvResponse = new VirtualListViewResponse();
+				firstPage = personService.searchPersons(this.searchPattern, substring, 1, PAGE_SIZE, SEARCH_SIZE_LIMIT, vlvResponse,
+						LIST_ATTRIBUTES);
+			}
+
+			int totalResults = vlvResponse.getTotalResults();
+			if (totalResults > MAX_RESULTS) {
+				facesMessages.add(FacesMessage.SEVERITY_WARN, "Found more than %s persons. Only the first %s are listed, please refine search",
+						MAX_RESULTS, MAX_RESULTS);
+			}
+
+			this.substringSearch = substring;
+			this.resultCount = Math.min(totalResults, MAX_RESULTS);
+			this.personDataModel = new PersonDataModel(firstPage);
 			this.oldSearchPattern = this.searchPattern;
 		} catch (Exception ex) {
 			log.error("Failed to find persons", ex);
@@ -89,8 +137,125 @@ public class SearchPersonAction implements Serializable {
 		this.searchPattern = searchPattern;
 	}
 
-	public List<GluuCustomPerson> getPersonList() {
-		return personList;
+	public PersonDataModel getPersonDataModel() {
+		return personDataModel;
+	}
+
+	public int getResultCount() {
+		return resultCount;
+	}
+
+	public int getPageSize() {
+		return PAGE_SIZE;
+	}
+
+	/**
+	 * Loads from LDAP only the page of persons shown by the table
+	 */
+	public class PersonDataModel extends ExtendedDataModel<GluuCustomPerson> implements Serializable {
+
+		private static final long serialVersionUID = -2613519846733092470L;
+
+		private Integer rowKey;
+
+		private int pageStart;
+		private List<GluuCustomPerson> page;
+
+		public PersonDataModel(List<GluuCustomPerson> firstPage) {
+			this.pageStart = 0;
+			this.page = firstPage;
+		}
+
+		@Override
+		public void walk(FacesContext context, DataVisitor visitor, Range range, Object argument) {
+			int firstRow = ((SequenceRange) range).getFirstRow();
+			int rows = ((SequenceRange) range).getRows();
+			if ((rows <= 0) || (firstRow + rows > resultCount)) {
+				rows = resultCount - firstRow;
+			}
+
+			if (rows <= 0) {
+				return;
+			}
+
+			loadPage(firstRow, rows);
+			for (int i = 0; i < page.size(); i++) {
+				visitor.process(context, pageStart + i, argument);
+			}
+		}
+
+		private void loadPage(int firstRow, int rows) {
+			if ((firstRow == pageStart) && (page.size() >= rows)) {
+				return;
+			}
+
+			List<GluuCustomPerson> result;
+			try {
+				result = personService.searchPersons(oldSearchPattern, substringSearch, firstRow + 1, rows,
+						SEARCH_SIZE_LIMIT, new VirtualListViewResponse(), LIST_ATTRIBUTES);
+			} catch (Exception ex) {
+				log.error("Failed to load persons page", ex);
+				result = new ArrayList<GluuCustomPerson>();
+			}
+
+			this.pageStart = firstRow;
+			this.page = (result.size() > rows) ? new ArrayList<GluuCustomPerson>(result.subList(0, rows)) : result;
+		}
+
+		@Override
+		public void setRowKey(Object key) {
+			this.rowKey = (Integer) key;
+		}
+
+		@Override
+		public Object getRowKey() {
+			return rowKey;
+		}
+
+		@Override
+		public boolean isRowAvailable() {
+			return getRowData() != null;
+		}
+
+		@Override
+		public int getRowCount() {
+			return resultCount;
+		}
+
+		@Override
+		public GluuCustomPerson getRowData() {
+			if (rowKey == null) {
+				return null;
+			}
+
+			int index = rowKey - pageStart;
+			if ((index < 0) || (index >= page.size())) {
+				return null;
+			}
+
+			return page.get(index);
+		}
+
+		@Override
+		public int getRowIndex() {
+			return (rowKey == null) ? -1 : rowKey;
+		}
+
+		@Override
+		public void setRowIndex(int rowIndex) {
+			this.rowKey = (rowIndex < 0) ? null : rowIndex;
+		}
+
+		@Override
+		public Object getWrappedData() {
+			return page;
+		}
+
+		@Override
+		public void setWrappedData(Object data) {
+			// Nothing to do, pages are loaded from LDAP by walk()
+		}
+
 	}
 
 }
@@ -26,6 +26,7 @@ import org.gluu.jsf2.service.ConversationService;
 import org.gluu.oxtrust.ldap.service.IGroupService;
 import org.gluu.oxtrust.ldap.service.IPersonService;
 import org.gluu.oxtrust.ldap.service.OrganizationService;
+import org.gluu.oxtrust.ldap.service.PersonTypeaheadIndex;
 import org.gluu.oxtrust.model.GluuCustomPerson;
 import org.gluu.oxtrust.model.GluuGroup;
 import org.gluu.oxtrust.model.GluuOrganization;
@@ -91,6 +92,9 @@ public class UpdateGroupAction implements Serializable {
 	@Inject
 	private IPersonService personService;
 
+	@Inject
+	private PersonTypeaheadIndex personTypeaheadIndex;
+
 	@Inject
 	private AppConfiguration appConfiguration;
 
@@ -287,7 +291,13 @@ public class UpdateGroupAction implements Serializable {
 		}
 
 		try {
-			this.availableMembers = personService.searchPersons(this.searchAvailableMemberPattern, OxTrustConstants.searchGroupSizeLimit);
+			PersonTypeaheadIndex.Page page = personTypeaheadIndex.searchPersons(this.searchAvailableMemberPattern, 0,
+					OxTrustConstants.searchGroupSizeLimit);
+			if (page == null) {
+				this.availableMembers = personService.searchPersons(this.searchAvailableMemberPattern, OxTrustConstants.searchGroupSizeLimit);
+			} else {
+				this.availableMembers = page.getPersons();
+			}
 			this.oldSearchAvailableMemberPattern = this.searchAvailableMemberPattern;
 			selectAddedMembers();
 		} catch (Exception ex) {
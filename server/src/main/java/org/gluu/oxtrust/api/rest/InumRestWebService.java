@@ -6,16 +6,23 @@
 
 package org.gluu.oxtrust.api.rest;
 
+import java.util.List;
+
 import javax.inject.Inject;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 
 import org.gluu.oxtrust.ldap.service.InumService;
 
 //Sets the path to base URL + /inum
+//The text, XML and JSON variants accept an optional count query parameter to obtain a block of inums in one call.
+//Blocks of inums of an unsupported type are answered with a 400, and failures to generate them with a 500
 @Path("/inum")
 public class InumRestWebService {
 
@@ -25,7 +32,15 @@ public class InumRestWebService {
 	@GET
 	@Path("/{type}/")
 	@Produces(MediaType.TEXT_PLAIN)
-	public String generateTextInum(@PathParam("type") String type) {
+	public String generateTextInum(@PathParam("type") String type, @QueryParam("count") Integer count) {
+		if (count != null) {
+			StringBuilder sb = new StringBuilder();
+			for (String inum : generateInums(type, count)) {
+				sb.append(inum).append('\n');
+			}
+			return sb.toString();
+		}
+
 		String inum = "";
 		inum = inumService.generateInums(type);
 		return inum;
@@ -34,13 +49,25 @@ public class InumRestWebService {
 	@GET
 	@Path("/{type}/")
 	@Produces(MediaType.TEXT_XML)
-	public String generateXmlInum(@PathParam("type") String type) {
+	public String generateXmlInum(@PathParam("type") String type, @QueryParam("count") Integer count) {
+		if (count != null) {
+			StringBuilder sb = new StringBuilder("<?xml version=\"1.0\"?>" + "<inums type='" + xmlType(type) + "'>");
+			for (String inum : generateInums(type, count)) {
+				sb.append("<inum>").append(inum).append("</inum>");
+			}
+			return sb.append("</inums>").toString();
+		}
+
 		String inum = "";
 		inum = inumService.generateInums(type);
 		return xmlText(type, inum);
 	}
 
 	private String xmlText(String type, String inum) {
+		return "<?xml version=\"1.0\"?>" + "<inum type='" + xmlType(type) + "'>" + inum + "</inum>";
+	}
+
+	private String xmlType(String type) {
 		String typeText = "";
 		if ("people".equals(type)) {
 			typeText = "people";
@@ -57,7 +84,7 @@ public class InumRestWebService {
 		} else if ("trelationship".equals(type)) {
 			typeText = "trustRelationship";
 		}
-		return "<?xml version=\"1.0\"?>" + "<inum type='" + typeText + "'>" + inum + "</inum>";
+		return typeText;
 	}
 
 	@GET
@@ -92,10 +119,44 @@ public class InumRestWebService {
 	@GET
 	@Path("/{type}/")
 	@Produces(MediaType.APPLICATION_JSON)
-	public String generateJsonInum(@PathParam("type") String type) {
+	public String generateJsonInum(@PathParam("type") String type, @QueryParam("count") Integer count) {
+		if (count != null) {
+			StringBuilder sb = new StringBuilder("{\"inums\":[");
+			List<String> inums = generateInums(type, count);
+			for (int i = 0; i < inums.size(); i++) {
+				sb.append(i == 0 ? "" : ",").append('"').append(inums.get(i)).append('"');
+			}
+			return sb.append("]}").toString();
+		}
+
 		String inum = "";
 		inum = inumService.generateInums(type);
 		return "{\"inum\":\"" + inum + "\"}";
 	}
 
+	/**
+	 * Generates a block of inums. Requests for more than {@link InumService#MAX_BATCH_SIZE} inums are capped to that size
+	 */
+	private List<String> generateInums(String type, int count) {
+		if (count < 1) {
+			throw error(Response.Status.BAD_REQUEST, "count must be a positive number");
+		}
+
+		List<String> inums;
+		try {
+			inums = inumService.generateInums(type, Math.min(count, InumService.MAX_BATCH_SIZE));
+		} catch (IllegalArgumentException ex) {
+			throw error(Response.Status.BAD_REQUEST, ex.getMessage());
+		}
+
+		if (inums.isEmpty()) {
+			throw error(Response.Status.INTERNAL_SERVER_ERROR, "Failed to generate inums");
+		}
+		return inums;
+	}
+
+	private WebApplicationException error(Response.Status status, String message) {
+		return new WebApplicationException(Response.status(status).entity(message).type(MediaType.TEXT_PLAIN).build());
+	}
+
 }
@@ -112,19 +112,21 @@ public class ConfigurationFactory {
 	private boolean loaded = false;
 	private FileConfiguration ldapConfiguration;
 	private FileConfiguration ldapCentralConfiguration;
-	private AppConfiguration appConfiguration;
-	private CacheRefreshConfiguration cacheRefreshConfiguration;
-	private ImportPersonConfig importPersonConfig;
-	private AttributeResolverConfiguration attributeResolverConfiguration;
+	private volatile AppConfiguration appConfiguration;
+	private volatile CacheRefreshConfiguration cacheRefreshConfiguration;
+	private volatile ImportPersonConfig importPersonConfig;
+	private volatile AttributeResolverConfiguration attributeResolverConfiguration;
 	private String cryptoConfigurationSalt;
 
 	private AtomicBoolean isActive;
+	// Held while configuration is reloaded, so that a refresh waits for a reload in progress
+	private final Object reloadLock = new Object();
 
 	private String prevLdapFileName;
 	private long ldapFileLastModifiedTime = -1;
 	private long ldapCentralFileLastModifiedTime = -1;
 
-	private long loadedRevision = -1;
+	private volatile long loadedRevision = -1;
 	private boolean loadedFromLdap = true;
 
 	@PostConstruct
@@ -178,7 +180,9 @@ public class ConfigurationFactory {
 		}
 
 		try {
-			reloadConfiguration();
+			synchronized (reloadLock) {
+				reloadConfiguration();
+			}
 		} catch (Throwable ex) {
 			log.error("Exception happened while reloading application configuration", ex);
 		} finally {
@@ -217,10 +221,37 @@ public class ConfigurationFactory {
 					.fire(LDAP_CENTRAL_CONFIGUARION_RELOAD_EVENT_TYPE);
 		}
 
+		reloadConfigurationFromLdap();
+	}
+
+	/**
+	 * Checks the revision of the configuration stored in LDAP and reloads it right away if it's newer than the loaded one.
+	 * This allows services that update configuration to make changes visible without waiting for the next timer event.
+	 * If a reload is already taking place, waits for it to finish before checking the revision
+	 */
+	public void refreshConfiguration() {
+		try {
+			synchronized (reloadLock) {
+				reloadConfigurationFromLdap();
+			}
+		} catch (Throwable ex) {
+			log.error("Exception happened while refreshing application configuration", ex);
+		}
+	}
+
+	/**
+	 * Checks if the given revision of the configuration stored in LDAP is newer than the loaded configuration
+	 */
+	public boolean isOutdated(long revision) {
+		return this.loadedFromLdap && (revision > this.loadedRevision);
+	}
+
+	private void reloadConfigurationFromLdap() {
 		if (!loadedFromLdap) {
 			return;
 		}
 
+		// Only the revision attribute is read. Configuration is parsed only if it has changed
 		final LdapOxTrustConfiguration conf = loadConfigurationFromLdap("oxRevision");
 		if (conf == null) {
 			return;
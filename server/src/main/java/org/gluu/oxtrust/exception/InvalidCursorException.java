@@ -0,0 +1,15 @@
+package org.gluu.oxtrust.exception;
+
+/**
+ * Thrown when a pagination cursor supplied by a SCIM client is unknown, already consumed, expired, or does not
+ * correspond to the query it is being used with
+ */
+public class InvalidCursorException extends Exception {
+
+    private static final long serialVersionUID = -3127484702652383522L;
+
+    public InvalidCursorException(String message) {
+        super(message);
+    }
+
+}
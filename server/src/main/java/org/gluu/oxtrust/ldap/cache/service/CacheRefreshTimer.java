@@ -125,6 +125,9 @@ public class CacheRefreshTimer {
 	@Inject
 	private InumService inumService;
 
+	@Inject
+	private EntityCountService entityCountService;
+
 	@Inject
 	private AppConfiguration appConfiguration;
 	
@@ -728,6 +731,7 @@ public class CacheRefreshTimer {
 			// Remove person from target server
 			try {
 				targetLdapEntryManager.removeWithSubtree(removedPerson.getDn());
+				entityCountService.personRemoved();
 				result1.add(inum);
 			} catch (LdapMappingException ex) {
 				log.error("Failed to remove person entry with inum '{}' and DN: {}", inum, removedPerson.getDn(), ex);
@@ -0,0 +1,103 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.load;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Row reader of CSV files (RFC 4180). Values may be enclosed in double quotes, in which case they can contain separators,
+ * line breaks and escaped ("") quotes
+ */
+public class CsvRowReader implements RowReader {
+
+	private static final char QUOTE = '"';
+
+	private final BufferedReader reader;
+	private final char separator;
+
+	private int rowNumber;
+
+	public CsvRowReader(Reader reader) {
+		this(reader, ',');
+	}
+
+	public CsvRowReader(Reader reader, char separator) {
+		this.reader = new BufferedReader(reader);
+		this.separator = separator;
+	}
+
+	@Override
+	public List<String> readRow() throws IOException {
+		int ch = reader.read();
+		// Skip byte order mark
+		if ((rowNumber == 0) && (ch == '\uFEFF')) {
+			ch = reader.read();
+		}
+		if (ch == -1) {
+			return null;
+		}
+
+		List<String> row = new ArrayList<String>();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		while (true) {
+			if (quoted) {
+				if (ch == -1) {
+					throw new IOException(String.format("Unterminated quoted value at row %d", rowNumber + 1));
+				}
+				if (ch == QUOTE) {
+					reader.mark(1);
+					int next = reader.read();
+					if (next == QUOTE) {
+						value.append(QUOTE);
+					} else {
+						quoted = false;
+						reader.reset();
+					}
+				} else {
+					value.append((char) ch);
+				}
+			} else if ((ch == -1) || (ch == '\n') || (ch == '\r')) {
+				if (ch == '\r') {
+					reader.mark(1);
+					if (reader.read() != '\n') {
+						reader.reset();
+					}
+				}
+				row.add(value.toString());
+				break;
+			} else if (ch == separator) {
+				row.add(value.toString());
+				value.setLength(0);
+			} else if ((ch == QUOTE) && (value.length() == 0)) {
+				quoted = true;
+			} else {
+				value.append((char) ch);
+			}
+			ch = reader.read();
+		}
+
+		rowNumber++;
+
+		return row;
+	}
+
+	@Override
+	public int getRowNumber() {
+		return rowNumber;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+}
@@ -0,0 +1,86 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Progress and errors of an import. Counters can be read from other threads while the import runs, and only the first
+ * errors are kept so that a file full of bad entries can't exhaust the memory
+ *
+ * @param <E>
+ *            Type of the errors recorded
+ */
+public abstract class ImportStatus<E> {
+
+	private final int maxReportedErrors;
+
+	private final AtomicInteger readCount = new AtomicInteger();
+	private final AtomicInteger processedCount = new AtomicInteger();
+	private final AtomicInteger failedCount = new AtomicInteger();
+
+	private final List<E> errors = new ArrayList<E>();
+
+	/**
+	 * @param maxReportedErrors
+	 *            Errors beyond this number are counted but not kept
+	 */
+	protected ImportStatus(int maxReportedErrors) {
+		this.maxReportedErrors = maxReportedErrors;
+	}
+
+	/**
+	 * @return Number of entries read from the file
+	 */
+	public int getReadCount() {
+		return readCount.get();
+	}
+
+	/**
+	 * @return Number of entries imported successfully
+	 */
+	public int getProcessedCount() {
+		return processedCount.get();
+	}
+
+	public int getFailedCount() {
+		return failedCount.get();
+	}
+
+	public void incrementReadCount() {
+		readCount.incrementAndGet();
+	}
+
+	public void incrementProcessedCount() {
+		processedCount.incrementAndGet();
+	}
+
+	protected void addError(E error) {
+		failedCount.incrementAndGet();
+		synchronized (errors) {
+			if (errors.size() < maxReportedErrors) {
+				errors.add(error);
+			}
+		}
+	}
+
+	public List<E> getErrors() {
+		synchronized (errors) {
+			return new ArrayList<E>(errors);
+		}
+	}
+
+	/**
+	 * @return Number of failures which were counted but not kept
+	 */
+	public int getOmittedErrorCount() {
+		return Math.max(failedCount.get() - maxReportedErrors, 0);
+	}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.load;
+
+import java.util.List;
+
+import com.unboundid.ldap.sdk.ResultCode;
+
+/**
+ * Progress and errors of an LDIF import. Counters can be read from other threads while the import runs
+ */
+public class LdifImportStatus extends ImportStatus<LdifImportStatus.RecordError> {
+
+	// Errors beyond this number are counted but not kept
+	public static final int MAX_REPORTED_ERRORS = 1000;
+
+	public LdifImportStatus() {
+		super(MAX_REPORTED_ERRORS);
+	}
+
+	/**
+	 * Records a record which couldn't be applied
+	 *
+	 * @param record
+	 *            Number (starting at 1) of record in file
+	 * @param dn
+	 *            DN of record, if known
+	 * @param resultCode
+	 *            Result of operation
+	 * @param message
+	 *            Description of the problem
+	 */
+	public void addError(int record, String dn, ResultCode resultCode, String message) {
+		addError(new RecordError(record, dn, resultCode, message));
+	}
+
+	/**
+	 * @return Result of the first failure recorded, or SUCCESS if all records were applied
+	 */
+	public ResultCode getResultCode() {
+		List<RecordError> errors = getErrors();
+		if (!errors.isEmpty()) {
+			return errors.get(0).getResultCode();
+		}
+
+		return (getFailedCount() == 0) ? ResultCode.SUCCESS : ResultCode.OTHER;
+	}
+
+	public static class RecordError {
+
+		private final int record;
+		private final String dn;
+		private final ResultCode resultCode;
+		private final String message;
+
+		public RecordError(int record, String dn, ResultCode resultCode, String message) {
+			this.record = record;
+			this.dn = dn;
+			this.resultCode = resultCode;
+			this.message = message;
+		}
+
+		public int getRecord() {
+			return record;
+		}
+
+		public String getDn() {
+			return dn;
+		}
+
+		public ResultCode getResultCode() {
+			return resultCode;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Record %d (%s): %s", record, dn, message);
+		}
+	}
+
+}
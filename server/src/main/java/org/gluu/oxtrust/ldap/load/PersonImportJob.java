@@ -0,0 +1,185 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.load;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import org.xdi.model.GluuAttribute;
+
+/**
+ * State and progress of a person import running in background. Counters can be read at any time while the import runs
+ */
+public class PersonImportJob extends ImportStatus<PersonImportJob.ImportError> {
+
+	public enum Status {
+		PENDING, RUNNING, COMPLETED, CANCELLED, FAILED
+	}
+
+	// Errors beyond this number are counted but not kept for the report
+	public static final int MAX_REPORTED_ERRORS = 10000;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final String id;
+	private final String fileName;
+	private final File file;
+	private final List<GluuAttribute> attributes;
+
+	private volatile Status status = Status.PENDING;
+	private volatile String message;
+	private volatile boolean cancelRequested;
+
+	private volatile Date startDate;
+	private volatile Date endDate;
+
+	public PersonImportJob(String fileName, File file, List<GluuAttribute> attributes) {
+		super(MAX_REPORTED_ERRORS);
+		this.id = UUID.randomUUID().toString();
+		this.fileName = fileName;
+		this.file = file;
+		this.attributes = attributes;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public List<GluuAttribute> getAttributes() {
+		return attributes;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public Date getStartDate() {
+		return startDate;
+	}
+
+	public Date getEndDate() {
+		return endDate;
+	}
+
+	public boolean isRunning() {
+		return (status == Status.PENDING) || (status == Status.RUNNING);
+	}
+
+	public boolean isCancelRequested() {
+		return cancelRequested;
+	}
+
+	public void cancel() {
+		this.cancelRequested = true;
+	}
+
+	public void start() {
+		this.startDate = new Date();
+		this.status = Status.RUNNING;
+	}
+
+	public void finish(Status status, String message) {
+		this.endDate = new Date();
+		this.message = message;
+		this.status = status;
+	}
+
+	/**
+	 * @return Number of persons imported per second since the import started
+	 */
+	public double getThroughput() {
+		if (startDate == null) {
+			return 0;
+		}
+
+		long end = (endDate == null) ? System.currentTimeMillis() : endDate.getTime();
+		long elapsed = Math.max(end - startDate.getTime(), 1);
+
+		return getProcessedCount() * 1000.0 / elapsed;
+	}
+
+	/**
+	 * Records a row which couldn't be imported
+	 *
+	 * @param row
+	 *            Number of row in file
+	 * @param uid
+	 *            Uid of person, if known
+	 * @param error
+	 *            Description of the problem
+	 */
+	public void addError(int row, String uid, String error) {
+		addError(new ImportError(row, uid, error));
+	}
+
+	/**
+	 * @return CSV file with the rows which couldn't be imported and the reason
+	 */
+	public byte[] getErrorReport() {
+		StringBuilder sb = new StringBuilder("row,uid,error\r\n");
+		for (ImportError error : getErrors()) {
+			sb.append(error.getRow()).append(',').append(csvValue(error.getUid())).append(',')
+					.append(csvValue(error.getError())).append("\r\n");
+		}
+
+		int omitted = getOmittedErrorCount();
+		if (omitted > 0) {
+			sb.append(",,").append(csvValue(String.format("%d more errors were omitted", omitted))).append("\r\n");
+		}
+
+		return sb.toString().getBytes(UTF8);
+	}
+
+	private String csvValue(String value) {
+		if (value == null) {
+			return "";
+		}
+
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+
+	public static class ImportError {
+
+		private final int row;
+		private final String uid;
+		private final String error;
+
+		public ImportError(int row, String uid, String error) {
+			this.row = row;
+			this.uid = uid;
+			this.error = error;
+		}
+
+		public int getRow() {
+			return row;
+		}
+
+		public String getUid() {
+			return uid;
+		}
+
+		public String getError() {
+			return error;
+		}
+	}
+
+}
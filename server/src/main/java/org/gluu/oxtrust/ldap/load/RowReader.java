@@ -0,0 +1,31 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.load;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Reads a tabular file one row at a time, so that files of any size can be processed without loading them in memory
+ */
+public interface RowReader extends Closeable {
+
+	/**
+	 * Reads the next row of the file
+	 *
+	 * @return Values of the cells of the row, or null when the end of file is reached. Empty cells are returned as empty
+	 *         strings
+	 */
+	List<String> readRow() throws IOException;
+
+	/**
+	 * @return Number (starting at 1) of the row last returned by {@link #readRow()}
+	 */
+	int getRowNumber();
+
+}
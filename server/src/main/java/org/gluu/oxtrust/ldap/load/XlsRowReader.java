@@ -0,0 +1,64 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import jxl.Cell;
+import jxl.Sheet;
+import jxl.Workbook;
+import jxl.read.biff.BiffException;
+
+/**
+ * Row reader of the first sheet of Excel 97-2003 (xls) workbooks. The binary format can't be parsed as a stream, so the
+ * workbook is loaded by jxl, but rows are still converted one at a time. Prefer CSV or xlsx files for large imports
+ */
+public class XlsRowReader implements RowReader {
+
+	private final Workbook workbook;
+	private final Sheet sheet;
+
+	private int rowNumber;
+
+	public XlsRowReader(File file) throws IOException {
+		try {
+			this.workbook = Workbook.getWorkbook(file);
+		} catch (BiffException ex) {
+			throw new IOException("Failed to parse workbook", ex);
+		}
+		this.sheet = workbook.getSheet(0);
+	}
+
+	@Override
+	public List<String> readRow() throws IOException {
+		if (rowNumber >= sheet.getRows()) {
+			return null;
+		}
+
+		Cell[] cells = sheet.getRow(rowNumber++);
+		List<String> row = new ArrayList<String>(cells.length);
+		for (Cell cell : cells) {
+			row.add(cell.getContents());
+		}
+
+		return row;
+	}
+
+	@Override
+	public int getRowNumber() {
+		return rowNumber;
+	}
+
+	@Override
+	public void close() throws IOException {
+		workbook.close();
+	}
+
+}
@@ -0,0 +1,256 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.io.IOUtils;
+import org.xdi.util.StringHelper;
+
+/**
+ * Row reader of the first sheet of Office Open XML (xlsx) workbooks. The sheet is parsed with a streaming (StAX) parser,
+ * so only the shared strings table of the workbook is kept in memory
+ */
+public class XlsxRowReader implements RowReader {
+
+	private static final String RELATIONSHIPS_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+	private static final String WORKBOOK = "xl/workbook.xml";
+	private static final String WORKBOOK_RELATIONSHIPS = "xl/_rels/workbook.xml.rels";
+	private static final String SHARED_STRINGS = "xl/sharedStrings.xml";
+	private static final String DEFAULT_SHEET = "xl/worksheets/sheet1.xml";
+
+	private final ZipFile zipFile;
+	private final XMLInputFactory xmlInputFactory;
+	private final List<String> sharedStrings;
+
+	private InputStream sheetStream;
+	private XMLStreamReader sheetReader;
+
+	private int rowNumber;
+
+	public XlsxRowReader(File file) throws IOException {
+		this.zipFile = new ZipFile(file);
+		this.xmlInputFactory = XMLInputFactory.newInstance();
+		this.xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		this.xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+
+		try {
+			this.sharedStrings = readSharedStrings();
+
+			ZipEntry sheetEntry = zipFile.getEntry(getFirstSheetPath());
+			if (sheetEntry == null) {
+				throw new IOException("Workbook doesn't contain sheets");
+			}
+			this.sheetStream = zipFile.getInputStream(sheetEntry);
+			this.sheetReader = xmlInputFactory.createXMLStreamReader(sheetStream);
+		} catch (XMLStreamException ex) {
+			close();
+			throw new IOException("Failed to parse workbook", ex);
+		} catch (IOException ex) {
+			close();
+			throw ex;
+		}
+	}
+
+	@Override
+	public List<String> readRow() throws IOException {
+		try {
+			while (sheetReader.hasNext()) {
+				if ((sheetReader.next() == XMLStreamConstants.START_ELEMENT) && "row".equals(sheetReader.getLocalName())) {
+					String ref = sheetReader.getAttributeValue(null, "r");
+					rowNumber = StringHelper.isEmpty(ref) ? rowNumber + 1 : Integer.parseInt(ref);
+
+					return readCells();
+				}
+			}
+		} catch (XMLStreamException ex) {
+			throw new IOException(String.format("Failed to parse row %d of sheet", rowNumber + 1), ex);
+		}
+
+		return null;
+	}
+
+	private List<String> readCells() throws XMLStreamException {
+		List<String> row = new ArrayList<String>();
+		while (sheetReader.hasNext()) {
+			int event = sheetReader.next();
+			if ((event == XMLStreamConstants.END_ELEMENT) && "row".equals(sheetReader.getLocalName())) {
+				break;
+			}
+			if ((event != XMLStreamConstants.START_ELEMENT) || !"c".equals(sheetReader.getLocalName())) {
+				continue;
+			}
+
+			String ref = sheetReader.getAttributeValue(null, "r");
+			String type = sheetReader.getAttributeValue(null, "t");
+
+			// Empty cells are omitted from the sheet
+			int col = StringHelper.isEmpty(ref) ? row.size() : getColumnIndex(ref);
+			while (row.size() < col) {
+				row.add("");
+			}
+			row.add(getCellValue(type, readCellText()));
+		}
+
+		return row;
+	}
+
+	private String readCellText() throws XMLStreamException {
+		StringBuilder sb = new StringBuilder();
+		while (sheetReader.hasNext()) {
+			int event = sheetReader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				String name = sheetReader.getLocalName();
+				if ("v".equals(name) || "t".equals(name)) {
+					sb.append(sheetReader.getElementText());
+				}
+			} else if ((event == XMLStreamConstants.END_ELEMENT) && "c".equals(sheetReader.getLocalName())) {
+				break;
+			}
+		}
+
+		return sb.toString();
+	}
+
+	private String getCellValue(String type, String text) {
+		if ("s".equals(type)) {
+			int index = Integer.parseInt(text.trim());
+			return (index < sharedStrings.size()) ? sharedStrings.get(index) : "";
+		} else if ("b".equals(type)) {
+			return "1".equals(text) ? "true" : "false";
+		}
+
+		return text;
+	}
+
+	private int getColumnIndex(String ref) {
+		int col = 0;
+		for (int i = 0; i < ref.length(); i++) {
+			char ch = Character.toUpperCase(ref.charAt(i));
+			if ((ch < 'A') || (ch > 'Z')) {
+				break;
+			}
+			col = col * 26 + (ch - 'A' + 1);
+		}
+
+		return col - 1;
+	}
+
+	private List<String> readSharedStrings() throws IOException, XMLStreamException {
+		ZipEntry entry = zipFile.getEntry(SHARED_STRINGS);
+		if (entry == null) {
+			return Collections.emptyList();
+		}
+
+		List<String> result = new ArrayList<String>();
+		InputStream is = zipFile.getInputStream(entry);
+		XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(is);
+		try {
+			StringBuilder sb = new StringBuilder();
+			boolean phonetic = false;
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					String name = reader.getLocalName();
+					if ("si".equals(name)) {
+						sb.setLength(0);
+					} else if ("rPh".equals(name)) {
+						phonetic = true;
+					} else if ("t".equals(name) && !phonetic) {
+						sb.append(reader.getElementText());
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					String name = reader.getLocalName();
+					if ("si".equals(name)) {
+						result.add(sb.toString());
+					} else if ("rPh".equals(name)) {
+						phonetic = false;
+					}
+				}
+			}
+		} finally {
+			reader.close();
+			IOUtils.closeQuietly(is);
+		}
+
+		return result;
+	}
+
+	private String getFirstSheetPath() throws IOException, XMLStreamException {
+		String relationshipId = null;
+		ZipEntry workbookEntry = zipFile.getEntry(WORKBOOK);
+		if (workbookEntry != null) {
+			InputStream is = zipFile.getInputStream(workbookEntry);
+			XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(is);
+			try {
+				while (reader.hasNext() && (relationshipId == null)) {
+					if ((reader.next() == XMLStreamConstants.START_ELEMENT) && "sheet".equals(reader.getLocalName())) {
+						relationshipId = reader.getAttributeValue(RELATIONSHIPS_NS, "id");
+					}
+				}
+			} finally {
+				reader.close();
+				IOUtils.closeQuietly(is);
+			}
+		}
+
+		ZipEntry relationshipsEntry = zipFile.getEntry(WORKBOOK_RELATIONSHIPS);
+		if ((relationshipId == null) || (relationshipsEntry == null)) {
+			return DEFAULT_SHEET;
+		}
+
+		InputStream is = zipFile.getInputStream(relationshipsEntry);
+		XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(is);
+		try {
+			while (reader.hasNext()) {
+				if ((reader.next() == XMLStreamConstants.START_ELEMENT) && "Relationship".equals(reader.getLocalName())
+						&& relationshipId.equals(reader.getAttributeValue(null, "Id"))) {
+					String target = reader.getAttributeValue(null, "Target");
+					// Targets are relative to the folder of the workbook, unless absolute
+					return target.startsWith("/") ? target.substring(1) : "xl/" + target;
+				}
+			}
+		} finally {
+			reader.close();
+			IOUtils.closeQuietly(is);
+		}
+
+		return DEFAULT_SHEET;
+	}
+
+	@Override
+	public int getRowNumber() {
+		return rowNumber;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (sheetReader != null) {
+			try {
+				sheetReader.close();
+			} catch (XMLStreamException ex) {
+				// Nothing to do, the stream is closed below
+			}
+		}
+		IOUtils.closeQuietly(sheetStream);
+		zipFile.close();
+	}
+
+}
@@ -127,6 +127,12 @@ public class AppInitializer {
     @Inject
     private StatusCheckerDaily statusCheckerDaily;
 
+    @Inject
+    private EntityCountService entityCountService;
+
+    @Inject
+    private InumGeneratorService inumGeneratorService;
+
     @Inject
     private StatusCheckerTimer statusCheckerTimer;
 
@@ -203,6 +209,9 @@ public class AppInitializer {
         configurationFactory.create();
         LdapEntryManager localLdapEntryManager = ldapEntryManagerInstance.get();
 
+        // Resolve the node id of the inum generator now, so that a wrong value makes startup fail
+        inumGeneratorService.getNode();
+
         // Initialize central LDAP connection provider
         createCentralConnectionProvider();
 
@@ -234,6 +243,7 @@ public class AppInitializer {
         entityIDMonitoringService.initTimer();
         cacheRefreshTimer.initTimer();
         customScriptManager.initTimer(supportedCustomScriptTypes);
+        entityCountService.initTimer();
         statusCheckerDaily.initTimer();
         statusCheckerTimer.initTimer();
         svnSyncTimer.initTimer();
@@ -26,7 +26,6 @@ import org.gluu.site.ldap.persistence.LdapEntryManager;
 import org.slf4j.Logger;
 import org.xdi.config.oxtrust.AppConfiguration;
 import org.xdi.ldap.model.GluuBoolean;
-import org.xdi.util.INumGenerator;
 import org.xdi.util.StringHelper;
 
 import com.unboundid.ldap.sdk.Filter;
@@ -57,6 +56,9 @@ public class ClientService implements Serializable {
     @Inject
     private OrganizationService organizationService;
 
+    @Inject
+    private IdGenService idGenService;
+
     public boolean contains(String clientDn) {
         return ldapEntryManager.contains(OxAuthClient.class, clientDn);
     }
@@ -149,26 +151,19 @@ public class ClientService implements Serializable {
      * @return New inum for client
      */
     public String generateInumForNewClient() {
-        OxAuthClient client = new OxAuthClient();
-        String newInum = null;
-        do {
-            newInum = generateInumForNewClientImpl();
-            String newDn = getDnForClient(newInum);
-            client.setDn(newDn);
-        } while (ldapEntryManager.contains(client));
-
-        return newInum;
-    }
-
-    /**
-     * Generate new inum for client
-     *
-     * @return New inum for client
-     */
-    private String generateInumForNewClientImpl() {
         String orgInum = organizationService.getInumForOrganization();
-        return orgInum + OxTrustConstants.inumDelimiter + "0008" + OxTrustConstants.inumDelimiter + INumGenerator.generate(4);
-
+        String newInum = idGenService.generateId(orgInum, "0008");
+
+        // Inums supplied by an id generation script are not guaranteed to be unique
+        if (idGenService.isIdGeneratorScriptEnabled()) {
+            OxAuthClient client = new OxAuthClient();
+            client.setDn(getDnForClient(newInum));
+            while (ldapEntryManager.contains(client)) {
+                newInum = idGenService.generateId(orgInum, "0008");
+                client.setDn(getDnForClient(newInum));
+            }
+        }
+        return newInum;
     }
 
     /**
@@ -0,0 +1,187 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Event;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.gluu.oxtrust.service.cdi.event.EntityCountReconcileEvent;
+import org.slf4j.Logger;
+import org.xdi.service.cdi.async.Asynchronous;
+import org.xdi.service.cdi.event.Scheduled;
+import org.xdi.service.timer.event.TimerEvent;
+import org.xdi.service.timer.schedule.TimerSchedule;
+
+/**
+ * Keeps the number of persons and groups without counting them in LDAP on every read. Counts are taken once at
+ * startup and then every {@link #RECONCILE_INTERVAL} seconds; in between they are adjusted by the services which add
+ * and remove persons and groups.
+ */
+@ApplicationScoped
+@Named("entityCountService")
+public class EntityCountService {
+
+	public static final int RECONCILE_INTERVAL = 60 * 60 * 6;
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private Event<TimerEvent> timerEvent;
+
+	@Inject
+	private IPersonService personService;
+
+	@Inject
+	private IGroupService groupService;
+
+	private AtomicBoolean isActive = new AtomicBoolean(false);
+
+	// Sum of additions (+1) and removals (-1) since startup
+	private final AtomicLong personChanges = new AtomicLong();
+	private final AtomicLong groupChanges = new AtomicLong();
+
+	private volatile Snapshot personSnapshot;
+	private volatile Snapshot groupSnapshot;
+
+	public void initTimer() {
+		log.info("Initializing Entity Count Reconcile Timer");
+
+		final int delay = 30;
+		final int interval = RECONCILE_INTERVAL;
+
+		timerEvent.fire(new TimerEvent(new TimerSchedule(delay, interval), new EntityCountReconcileEvent(),
+				Scheduled.Literal.INSTANCE));
+	}
+
+	@Asynchronous
+	public void process(@Observes @Scheduled EntityCountReconcileEvent entityCountReconcileEvent) {
+		reconcile();
+	}
+
+	/**
+	 * Counts persons and groups in LDAP. Does nothing if counting is already in progress
+	 */
+	public void reconcile() {
+		if (!this.isActive.compareAndSet(false, true)) {
+			return;
+		}
+
+		try {
+			long start = System.currentTimeMillis();
+
+			// Changes made while counting may or may not be included in the count
+			long changes = personChanges.get();
+			int count = personService.countPersons();
+			this.personSnapshot = new Snapshot(count, changes, new Date());
+
+			changes = groupChanges.get();
+			count = groupService.countGroups();
+			this.groupSnapshot = new Snapshot(count, changes, new Date());
+
+			log.debug("Counted {} persons and {} groups in {} ms", personSnapshot.count, groupSnapshot.count,
+					System.currentTimeMillis() - start);
+		} catch (Exception ex) {
+			log.error("Failed to count persons and groups", ex);
+		} finally {
+			this.isActive.set(false);
+		}
+	}
+
+	/**
+	 * @return Number of persons, or null if they weren't counted yet
+	 */
+	public EntityCount getPersonCount() {
+		return getCount(personSnapshot, personChanges);
+	}
+
+	/**
+	 * @return Number of groups, or null if they weren't counted yet
+	 */
+	public EntityCount getGroupCount() {
+		return getCount(groupSnapshot, groupChanges);
+	}
+
+	public void personAdded() {
+		personChanges.incrementAndGet();
+	}
+
+	public void personRemoved() {
+		personChanges.decrementAndGet();
+	}
+
+	public void groupAdded() {
+		groupChanges.incrementAndGet();
+	}
+
+	public void groupRemoved() {
+		groupChanges.decrementAndGet();
+	}
+
+	private EntityCount getCount(Snapshot snapshot, AtomicLong changes) {
+		if (snapshot == null) {
+			return null;
+		}
+
+		long count = Math.max(snapshot.count + changes.get() - snapshot.changes, 0);
+
+		return new EntityCount(count, snapshot.countDate);
+	}
+
+	private static class Snapshot {
+
+		private final long count;
+		private final long changes;
+		private final Date countDate;
+
+		Snapshot(long count, long changes, Date countDate) {
+			this.count = count;
+			this.changes = changes;
+			this.countDate = countDate;
+		}
+	}
+
+	/**
+	 * Number of entities with the time of the last full count it was derived from
+	 */
+	public static class EntityCount {
+
+		private final long count;
+		private final Date countDate;
+
+		public EntityCount(long count, Date countDate) {
+			this.count = count;
+			this.countDate = countDate;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return Date of last count in LDAP. Later changes made through oxTrust are included in count
+		 */
+		public Date getCountDate() {
+			return countDate;
+		}
+
+		/**
+		 * @return Minutes since last count in LDAP
+		 */
+		public long getAgeMinutes() {
+			return (System.currentTimeMillis() - countDate.getTime()) / 60000;
+		}
+	}
+
+}
@@ -0,0 +1,151 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.gluu.oxtrust.config.ConfigurationFactory;
+import org.slf4j.Logger;
+import org.xdi.util.StringHelper;
+
+/**
+ * Keeps the results of {@link GroupService#isMemberOrOwner(String[], String)} for a short time, so that the checks
+ * made on login and by group screens for the same person don't search LDAP again. Entries are keyed by person DN and
+ * set of group DNs, and are all dropped when a group is changed through {@link GroupService}.
+ * <p>Results are kept for <code>groupMembershipCacheTtlSeconds</code> (default 30) set in the LDAP configuration
+ * properties. Membership changes made elsewhere (eg. by cache refresh or in another node of a cluster) may grant or
+ * revoke access that late; set it to 0 to disable the cache.</p>
+ */
+@ApplicationScoped
+@Named("groupMembershipCache")
+public class GroupMembershipCache {
+
+	static final String TTL_PROPERTY = "groupMembershipCacheTtlSeconds";
+
+	static final int DEFAULT_TTL_SECONDS = 30;
+
+	private static final int MAX_ENTRIES = 10000;
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private ConfigurationFactory configurationFactory;
+
+	private volatile long ttl = TimeUnit.SECONDS.toMillis(DEFAULT_TTL_SECONDS);
+
+	// Insertion-ordered: the eldest entries are dropped first when the cache is full
+	private final LinkedHashMap<String, CachedResult> results = new LinkedHashMap<String, CachedResult>() {
+
+		private static final long serialVersionUID = -2840326716374285419L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	@PostConstruct
+	public void init() {
+		int ttlSeconds = StringHelper.toInteger(configurationFactory.getLdapConfiguration().getString(TTL_PROPERTY, null),
+				DEFAULT_TTL_SECONDS);
+		configure(TimeUnit.SECONDS.toMillis(ttlSeconds));
+
+		log.info("Group membership results are cached for {} seconds", Math.max(ttlSeconds, 0));
+	}
+
+	void configure(long ttl) {
+		this.ttl = ttl;
+		clear();
+	}
+
+	public boolean isEnabled() {
+		return ttl > 0;
+	}
+
+	/**
+	 * @return Cached result, or null if there is none, it expired or the cache is disabled
+	 */
+	public Boolean get(String[] groupDNs, String personDN) {
+		if (!isEnabled()) {
+			return null;
+		}
+
+		String key = getKey(groupDNs, personDN);
+		synchronized (results) {
+			CachedResult result = results.get(key);
+			if (result == null) {
+				return null;
+			}
+
+			if (result.expiresAt <= currentTimeMillis()) {
+				results.remove(key);
+				return null;
+			}
+
+			return result.memberOrOwner;
+		}
+	}
+
+	public void put(String[] groupDNs, String personDN, boolean memberOrOwner) {
+		if (!isEnabled()) {
+			return;
+		}
+
+		String key = getKey(groupDNs, personDN);
+		synchronized (results) {
+			results.remove(key);
+			results.put(key, new CachedResult(memberOrOwner, currentTimeMillis() + ttl));
+		}
+	}
+
+	public void clear() {
+		synchronized (results) {
+			results.clear();
+		}
+	}
+
+	long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	private String getKey(String[] groupDNs, String personDN) {
+		String[] sortedDNs = new String[groupDNs.length];
+		for (int i = 0; i < groupDNs.length; i++) {
+			sortedDNs[i] = (groupDNs[i] == null) ? "" : groupDNs[i].toLowerCase(Locale.ENGLISH);
+		}
+		Arrays.sort(sortedDNs);
+
+		StringBuilder key = new StringBuilder(String.valueOf(personDN).toLowerCase(Locale.ENGLISH));
+		for (String groupDN : sortedDNs) {
+			key.append('\n').append(groupDN);
+		}
+
+		return key.toString();
+	}
+
+	private static class CachedResult {
+
+		private final boolean memberOrOwner;
+		private final long expiresAt;
+
+		CachedResult(boolean memberOrOwner, long expiresAt) {
+			this.memberOrOwner = memberOrOwner;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+}
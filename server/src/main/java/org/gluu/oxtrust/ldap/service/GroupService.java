@@ -8,6 +8,7 @@ package org.gluu.oxtrust.ldap.service;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.ejb.Stateless;
@@ -17,6 +18,7 @@ import javax.inject.Named;
 import org.gluu.oxtrust.model.GluuCustomPerson;
 import org.gluu.oxtrust.model.GluuGroup;
 import org.gluu.oxtrust.model.GluuGroupVisibility;
+import org.gluu.oxtrust.model.User;
 import org.gluu.oxtrust.util.OxTrustConstants;
 import org.gluu.site.ldap.exception.DuplicateEntryException;
 import org.gluu.site.ldap.persistence.LdapEntryManager;
@@ -24,10 +26,12 @@ import org.gluu.site.ldap.persistence.exception.EntryPersistenceException;
 import org.slf4j.Logger;
 import org.xdi.config.oxtrust.AppConfiguration;
 import org.xdi.util.ArrayHelper;
-import org.xdi.util.INumGenerator;
 import org.xdi.util.StringHelper;
 
+import com.unboundid.ldap.sdk.DN;
 import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.RDN;
 
 /**
  * Provides operations with groups
@@ -55,6 +59,15 @@ public class GroupService implements Serializable, IGroupService {
 	@Inject
 	private PersonService personService;
 
+	@Inject
+	private IdGenService idGenService;
+
+	@Inject
+	private EntityCountService entityCountService;
+
+	@Inject
+	private GroupMembershipCache groupMembershipCache;
+
 	/* (non-Javadoc)
 	 * @see org.gluu.oxtrust.ldap.service.IGroupService#addGroup(org.gluu.oxtrust.model.GluuGroup)
 	 */
@@ -65,6 +78,8 @@ public class GroupService implements Serializable, IGroupService {
 		List<GluuGroup> groups= findGroups(displayNameGroup, 1);
 		if (groups == null || groups.size() == 0) {
 			ldapEntryManager.persist(group);
+			entityCountService.groupAdded();
+			groupMembershipCache.clear();
 		} else {
 			throw new DuplicateEntryException("Duplicate displayName: " + group.getDisplayName());
 		}
@@ -76,6 +91,7 @@ public class GroupService implements Serializable, IGroupService {
 	@Override
 	public void updateGroup(GluuGroup group) throws Exception {
 		ldapEntryManager.merge(group);
+		groupMembershipCache.clear();
 
 	}
 
@@ -98,6 +114,8 @@ public class GroupService implements Serializable, IGroupService {
 		}
 
 		ldapEntryManager.remove(group);
+		entityCountService.groupRemoved();
+		groupMembershipCache.clear();
 		// clear references in gluuPerson entries
 	}
 
@@ -114,19 +132,7 @@ public class GroupService implements Serializable, IGroupService {
 	 */
 	@Override
 	public boolean isMemberOrOwner(String groupDN, String personDN) {
-		Filter ownerFilter = Filter.createEqualityFilter(OxTrustConstants.owner, personDN);
-		Filter memberFilter = Filter.createEqualityFilter(OxTrustConstants.member, personDN);
-		Filter searchFilter = Filter.createORFilter(ownerFilter, memberFilter);
-
-		boolean isMemberOrOwner = false;
-		try {
-			isMemberOrOwner = ldapEntryManager.findEntries(groupDN, GluuGroup.class, searchFilter, 0, 1).size() > 0;
-
-		} catch (EntryPersistenceException ex) {
-			log.error("Failed to determine if person '{}' memeber or owner of group '{}'", personDN, groupDN, ex);
-		}
-
-		return isMemberOrOwner;
+		return isMemberOrOwner(new String[] { groupDN }, personDN);
 	}
 
 	/* (non-Javadoc)
@@ -173,27 +179,30 @@ public class GroupService implements Serializable, IGroupService {
 	 */
 	@Override
 	public String generateInumForNewGroup() throws Exception {
-		GluuGroup group = new GluuGroup();
-		String newInum = null;
-		do {
-			newInum = generateInumForNewGroupImpl();
-			String newDn = getDnForGroup(newInum);
-			group.setDn(newDn);
-		} while (containsGroup(group));
-
+		String orgInum = organizationService.getInumForOrganization();
+		String newInum = idGenService.generateId(orgInum, OxTrustConstants.INUM_GROUP_OBJECTTYPE);
+
+		// Inums supplied by an id generation script are not guaranteed to be unique
+		if (idGenService.isIdGeneratorScriptEnabled()) {
+			GluuGroup group = new GluuGroup();
+			group.setDn(getDnForGroup(newInum));
+			while (containsGroup(group)) {
+				newInum = idGenService.generateId(orgInum, OxTrustConstants.INUM_GROUP_OBJECTTYPE);
+				group.setDn(getDnForGroup(newInum));
+			}
+		}
 		return newInum;
 	}
 
-    private boolean containsGroup(GluuGroup group) {
-        boolean result=false;
-        try {
-            result = ldapEntryManager.contains(group);
-        }
-        catch (Exception e){
-            log.debug(e.getMessage(), e);
-        }
-        return result;
-    }
+	private boolean containsGroup(GluuGroup group) {
+		boolean result = false;
+		try {
+			result = ldapEntryManager.contains(group);
+		} catch (Exception e) {
+			log.debug(e.getMessage(), e);
+		}
+		return result;
+	}
 
 	/* (non-Javadoc)
 	 * @see org.gluu.oxtrust.ldap.service.IGroupService#generateInameForNewGroup(java.lang.String)
@@ -232,17 +241,6 @@ public class GroupService implements Serializable, IGroupService {
 		return GluuGroupVisibility.values();
 	}
 
-	/**
-	 * Generate new inum for group
-	 * 
-	 * @return New inum for group
-	 */
-	private String generateInumForNewGroupImpl() throws Exception {
-		String orgInum = organizationService.getInumForOrganization();
-		return orgInum + OxTrustConstants.inumDelimiter + OxTrustConstants.INUM_GROUP_OBJECTTYPE + OxTrustConstants.inumDelimiter
-				+ INumGenerator.generate(2);
-	}
-
 	/* (non-Javadoc)
 	 * @see org.gluu.oxtrust.ldap.service.IGroupService#getAllGroupsList()
 	 */
@@ -267,6 +265,14 @@ public class GroupService implements Serializable, IGroupService {
 		return result;
 	}
 
+	/* (non-Javadoc)
+	 * @see org.gluu.oxtrust.ldap.service.IGroupService#findGroupByDn(java.lang.String, java.lang.String[])
+	 */
+	@Override
+	public GluuGroup findGroupByDn(String dn, String... returnAttributes) {
+		return ldapEntryManager.find(GluuGroup.class, dn, returnAttributes);
+	}
+
 	/* (non-Javadoc)
 	 * @see org.gluu.oxtrust.ldap.service.IGroupService#getGroupByIname(java.lang.String)
 	 */
@@ -320,24 +326,121 @@ public class GroupService implements Serializable, IGroupService {
 	 * @see org.gluu.oxtrust.ldap.service.IPersonService#isMemberOrOwner(java.lang.String[], java.lang.String)
 	 */
 	@Override
-	public boolean isMemberOrOwner(String[] groupDNs, String personDN) throws Exception {
-		boolean result = false;
-		if (ArrayHelper.isEmpty(groupDNs)) {
-			return result;
+	public boolean isMemberOrOwner(String[] groupDNs, String personDN) {
+		if (ArrayHelper.isEmpty(groupDNs) || StringHelper.isEmpty(personDN)) {
+			return false;
+		}
+
+		Boolean cachedResult = groupMembershipCache.get(groupDNs, personDN);
+		if (cachedResult != null) {
+			return cachedResult;
+		}
+
+		boolean isMemberOrOwner = false;
+		try {
+			isMemberOrOwner = findMemberOrOwner(groupDNs, personDN);
+			groupMembershipCache.put(groupDNs, personDN, isMemberOrOwner);
+		} catch (EntryPersistenceException ex) {
+			log.error("Failed to determine if person '{}' memeber or owner of groups '{}'", personDN, Arrays.toString(groupDNs), ex);
+		}
+
+		return isMemberOrOwner;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.gluu.oxtrust.ldap.service.IGroupService#isMemberOrOwner(java.lang.String[], org.gluu.oxtrust.model.User)
+	 */
+	@Override
+	public boolean isMemberOrOwner(String[] groupDNs, User person) {
+		if (ArrayHelper.isEmpty(groupDNs) || (person == null)) {
+			return false;
 		}
 
+		// memberOf can only confirm membership. Ownership isn't listed in it
+		String[] memberOf = person.getAttributes("memberOf");
+		if (memberOf != null) {
+			for (String groupDN : groupDNs) {
+				for (String memberOfDN : memberOf) {
+					if (StringHelper.equalsIgnoreCase(groupDN, memberOfDN)) {
+						return true;
+					}
+				}
+			}
+		}
+
+		return isMemberOrOwner(groupDNs, person.getDn());
+	}
+
+	private boolean findMemberOrOwner(String[] groupDNs, String personDN) {
+		Filter ownerFilter = Filter.createEqualityFilter(OxTrustConstants.owner, personDN);
+		Filter memberFilter = Filter.createEqualityFilter(OxTrustConstants.member, personDN);
+		Filter memberOrOwnerFilter = Filter.createORFilter(ownerFilter, memberFilter);
+
+		String groupsDN = getDnForGroup(null);
+		List<String> otherGroupDNs = new ArrayList<String>();
+		Filter inumsFilter = createGroupInumsFilter(groupDNs, groupsDN, otherGroupDNs);
+
+		// Groups in groups branch are checked with one search
+		if (inumsFilter != null) {
+			Filter searchFilter = Filter.createANDFilter(memberOrOwnerFilter, inumsFilter);
+			if (ldapEntryManager.countEntries(groupsDN, GluuGroup.class, searchFilter) > 0) {
+				return true;
+			}
+		}
+
+		for (String groupDN : otherGroupDNs) {
+			if (ldapEntryManager.findEntries(groupDN, GluuGroup.class, memberOrOwnerFilter, 0, 1).size() > 0) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @param otherGroupDNs
+	 *            Receives the DNs of groups which aren't directly under groups branch
+	 * @return OR filter of the inums of groups directly under groups branch, or null if there are none
+	 */
+	Filter createGroupInumsFilter(String[] groupDNs, String groupsDN, List<String> otherGroupDNs) {
+		List<Filter> inumFilters = new ArrayList<Filter>();
 		for (String groupDN : groupDNs) {
 			if (StringHelper.isEmpty(groupDN)) {
 				continue;
 			}
 
-			result = isMemberOrOwner(groupDN, personDN);
-			if (result) {
-				break;
+			String inum = getGroupInum(groupDN, groupsDN);
+			if (inum == null) {
+				otherGroupDNs.add(groupDN);
+			} else {
+				inumFilters.add(Filter.createEqualityFilter(OxTrustConstants.inum, inum));
 			}
 		}
 
-		return result;
+		return inumFilters.isEmpty() ? null : Filter.createORFilter(inumFilters);
+	}
+
+	/**
+	 * @return Inum of group if its DN is inum=&lt;inum&gt; under groups branch, otherwise null
+	 */
+	private String getGroupInum(String groupDN, String groupsDN) {
+		try {
+			DN dn = new DN(groupDN);
+			RDN rdn = dn.getRDN();
+			if ((rdn == null) || (rdn.getAttributeNames().length != 1)
+					|| !OxTrustConstants.inum.equalsIgnoreCase(rdn.getAttributeNames()[0])) {
+				return null;
+			}
+
+			if (!new DN(groupsDN).equals(dn.getParent())) {
+				return null;
+			}
+
+			return rdn.getAttributeValues()[0];
+		} catch (LDAPException ex) {
+			log.debug("Invalid group DN '{}'", groupDN, ex);
+			return null;
+		}
 	}
 
 }
@@ -9,6 +9,7 @@ import java.util.List;
 
 import org.gluu.oxtrust.model.GluuGroup;
 import org.gluu.oxtrust.model.GluuGroupVisibility;
+import org.gluu.oxtrust.model.User;
 
 public interface IGroupService {
 
@@ -125,6 +126,8 @@ public interface IGroupService {
 
 	public abstract GluuGroup getGroupByDn(String Dn);
 
+	public abstract GluuGroup findGroupByDn(String dn, String... returnAttributes);
+
 	/**
 	 * Get Group by iname
 	 * 
@@ -153,4 +156,16 @@ public interface IGroupService {
 	List<GluuGroup> getAllGroups(int sizeLimit);
 
 	public abstract boolean isMemberOrOwner(String[] groupDNs, String personDN) throws Exception;
+
+	/**
+	 * Check if person is a member or owner of any of the groups. Membership is
+	 * taken from memberOf attribute of person when it lists one of the groups
+	 * 
+	 * @param groupDNs
+	 *            Group DNs
+	 * @param person
+	 *            Person
+	 * @return True if person is a member or owner of any of the groups
+	 */
+	public abstract boolean isMemberOrOwner(String[] groupDNs, User person);
 }
\ No newline at end of file
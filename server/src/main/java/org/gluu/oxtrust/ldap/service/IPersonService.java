@@ -5,6 +5,7 @@
  */
 package org.gluu.oxtrust.ldap.service;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -13,6 +14,9 @@ import org.gluu.oxtrust.model.GluuCustomPerson;
 import org.gluu.oxtrust.model.User;
 import org.gluu.site.ldap.exception.DuplicateEntryException;
 import org.gluu.site.ldap.persistence.AttributeData;
+import org.xdi.ldap.model.VirtualListViewResponse;
+
+import com.unboundid.ldap.sdk.LDAPException;
 
 public interface IPersonService {
 
@@ -29,6 +33,15 @@ public interface IPersonService {
 	// method
 	public abstract void addPerson(GluuCustomPerson person) throws Exception;
 
+	/**
+	 * Add new person without checking if its uid is already in use. To be used
+	 * when uniqueness was verified before, eg. in bulk by an import
+	 * 
+	 * @param person
+	 *            Person
+	 */
+	public abstract void addValidatedPerson(GluuCustomPerson person) throws Exception;
+
 	/**
 	 * Add person entry
 	 * 
@@ -37,6 +50,17 @@ public interface IPersonService {
 	 */
 	public abstract void updatePerson(GluuCustomPerson person);
 
+	/**
+	 * Update the attributes passed of a person entry, taking their values from the person. The entry is not read to
+	 * work out the changes, as {@link #updatePerson(GluuCustomPerson)} does
+	 * 
+	 * @param person
+	 *            Person
+	 * @param attributeNames
+	 *            Names of the custom attributes to write. Attributes without values are removed
+	 */
+	public abstract void updatePersonAttributes(GluuCustomPerson person, Collection<String> attributeNames) throws LDAPException;
+
 	/**
 	 * Remove person with persona and contacts branches
 	 * 
@@ -65,6 +89,32 @@ public interface IPersonService {
 	 */
 	public abstract List<GluuCustomPerson> searchPersons(String pattern) ;	
 
+	/**
+	 * Search one page of persons by pattern, sorted by display name. Prefix
+	 * search matches the beginning of uid, mail, display name and iname or the
+	 * whole inum or PPID, and can be served by equality and substring indexes.
+	 * Substring search matches the pattern anywhere in these attributes. An
+	 * empty pattern matches all persons
+	 * 
+	 * @param pattern
+	 *            Pattern
+	 * @param substring
+	 *            Match pattern anywhere instead of at the beginning
+	 * @param startIndex
+	 *            Index (starting at 1) of first result
+	 * @param count
+	 *            Maximum count of results in page
+	 * @param sizeLimit
+	 *            Maximum count of matching persons considered by the search, as the maxCount of SCIM searches
+	 * @param vlvResponse
+	 *            Receives total number of results
+	 * @param returnAttributes
+	 *            Attributes to load. All attributes are loaded if null
+	 * @return List of persons
+	 */
+	public abstract List<GluuCustomPerson> searchPersons(String pattern, boolean substring, int startIndex, int count,
+			int sizeLimit, VirtualListViewResponse vlvResponse, String[] returnAttributes);
+
 	/**
 	 * Search persons by sample object
 	 * 
@@ -14,7 +14,6 @@ import javax.inject.Named;
 import org.gluu.oxtrust.service.external.ExternalIdGeneratorService;
 import org.gluu.oxtrust.util.OxTrustConstants;
 import org.slf4j.Logger;
-import org.xdi.util.INumGenerator;
 import org.xdi.util.StringHelper;
 
 /**
@@ -32,6 +31,17 @@ public class IdGenService {
     @Inject
     private ExternalIdGeneratorService externalIdGenerationService;
 
+    @Inject
+    private InumGeneratorService inumGeneratorService;
+
+    /**
+     * Generates an inum made of the organization inum, the prefix of the object type and a unique value. If an id
+     * generation custom script is enabled, it is given the chance to supply the inum
+     * @param orgInum Inum of organization
+     * @param prefix Prefix of the object type (eg. 0000 for people)
+     * @return New inum. Values of the default generator are unique, so no LDAP lookup is needed to verify they are not
+     *         in use. This does not hold for values supplied by a script (see {@link #isIdGeneratorScriptEnabled()})
+     */
     public String generateId(String orgInum, String prefix) {
 		if (StringHelper.isEmptyString(orgInum) || StringHelper.isEmptyString(prefix)) {
 			return "";
@@ -50,7 +60,15 @@ public class IdGenService {
     	return generateDefaultId(newPrefix);
     }
 	public String generateDefaultId(String newPrefix) {
-		return newPrefix + OxTrustConstants.inumDelimiter + INumGenerator.generate(2);
+		return newPrefix + OxTrustConstants.inumDelimiter + inumGeneratorService.generate();
+	}
+
+	/**
+	 * @return True if an id generation custom script is enabled. Callers must then check the inums obtained from
+	 *         {@link #generateId(String, String)} are not in use yet
+	 */
+	public boolean isIdGeneratorScriptEnabled() {
+		return externalIdGenerationService.isEnabled();
 	}
 
 }
@@ -0,0 +1,130 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.security.SecureRandom;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.slf4j.Logger;
+import org.xdi.util.StringHelper;
+
+/**
+ * Generates the random part of inums (eg. <code>2DD7.3392.F903.69C2</code>) so that they are unique without having to
+ * look them up in LDAP. Every value is made of:
+ * <ul>
+ *     <li>a node id (16 bits) that tells apart oxTrust instances of a cluster,</li>
+ *     <li>a timestamp in seconds (32 bits), and</li>
+ *     <li>a sequence number (16 bits) of the values generated by this node in that second.</li>
+ * </ul>
+ * <p>The node id is taken from system property <code>oxtrust.inum.node</code> (one to four hexadecimal digits, eg.
+ * <code>-Doxtrust.inum.node=1A</code>). <b>In a cluster, every oxTrust node must be given a distinct value</b>: when the
+ * property is not set, the node id is derived from the host name and the process id, and the ids of two nodes may
+ * collide, and so may the inums they generate. A loud warning is logged at startup in that case, and an invalid value
+ * makes startup fail. When more than 65536 values are requested in a second, the timestamp is moved ahead, so values
+ * are never repeated by the same node.</p>
+ */
+@ApplicationScoped
+@Named
+public class InumGeneratorService {
+
+    public static final String NODE_PROPERTY = "oxtrust.inum.node";
+
+    private static final int MAX_SEQUENCE = 0xFFFF;
+
+    @Inject
+    private Logger log;
+
+    private int node;
+
+    private long lastSecond;
+
+    private int sequence;
+
+    @PostConstruct
+    public void init() {
+        node = computeNode();
+        //Start at a random point so that a restart within the same second does not reproduce values already handed out
+        sequence = new SecureRandom().nextInt(MAX_SEQUENCE + 1);
+        lastSecond = currentTimeMillis() / 1000;
+        log.info("Inums generated by this node are qualified with node id {}", String.format("%04X", node));
+    }
+
+    /**
+     * Generates a new value
+     * @return A string consisting of four blocks of four hexadecimal digits separated by dots
+     */
+    public String generate() {
+
+        long second;
+        int seq;
+        synchronized (this) {
+            long now = currentTimeMillis() / 1000;
+            if (now > lastSecond) {
+                lastSecond = now;
+                sequence = 0;
+            } else if (sequence == MAX_SEQUENCE) {
+                lastSecond++;
+                sequence = 0;
+            } else {
+                sequence++;
+            }
+            second = lastSecond;
+            seq = sequence;
+        }
+        return String.format("%04X.%04X.%04X.%04X", node, (second >>> 16) & 0xFFFF, second & 0xFFFF, seq);
+
+    }
+
+    public int getNode() {
+        return node;
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private int computeNode() {
+
+        String configured = System.getProperty(NODE_PROPERTY);
+        if (StringHelper.isNotEmpty(configured)) {
+            int value = -1;
+            try {
+                value = Integer.parseInt(configured.trim(), 16);
+            } catch (NumberFormatException e) {
+                log.debug(e.getMessage());
+            }
+            if ((value < 0) || (value > 0xFFFF)) {
+                throw new IllegalStateException(String.format("Invalid value of system property %s: '%s'. It must be a "
+                        + "hexadecimal number between 0 and FFFF, distinct for every oxTrust node", NODE_PROPERTY, configured));
+            }
+            return value;
+        }
+
+        String name;
+        try {
+            name = InetAddress.getLocalHost().getHostName() + "/" + ManagementFactory.getRuntimeMXBean().getName();
+        } catch (Exception e) {
+            name = ManagementFactory.getRuntimeMXBean().getName();
+        }
+        int hash = name.hashCode();
+        int derived = (hash ^ (hash >>> 16)) & 0xFFFF;
+
+        log.warn("System property {} is not set, node id {} was derived from the host name and process id. IF THIS oxTrust "
+                + "INSTANCE IS PART OF A CLUSTER, set a distinct value on every node (eg. -D{}=1): otherwise the inums of "
+                + "people, groups, clients and scopes created on different nodes may collide",
+                NODE_PROPERTY, String.format("%04X", derived), NODE_PROPERTY);
+        return derived;
+
+    }
+
+}
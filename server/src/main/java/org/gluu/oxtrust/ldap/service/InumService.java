@@ -7,7 +7,13 @@
 package org.gluu.oxtrust.ldap.service;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.ejb.Stateless;
 import javax.inject.Inject;
@@ -25,7 +31,9 @@ import org.slf4j.Logger;
 import org.xdi.config.oxtrust.AppConfiguration;
 import org.xdi.ldap.model.InumEntry;
 import org.xdi.model.GluuAttribute;
-import org.xdi.util.INumGenerator;
+import org.xdi.util.StringHelper;
+
+import com.unboundid.ldap.sdk.Filter;
 
 /* 
 
@@ -72,6 +80,10 @@ public class InumService implements Serializable {
 
 	private static final int MAX = 100;
 
+	public static final int MAX_BATCH_SIZE = 1000;
+
+	private static final List<String> BATCH_TYPES = Arrays.asList("people", "group", "attribute", "trelationship");
+
 	@Inject
 	private Logger log;
 
@@ -84,6 +96,9 @@ public class InumService implements Serializable {
 	@Inject
 	private AppConfiguration appConfiguration;
 
+	@Inject
+	private IdGenService idGenService;
+
 	public boolean contains(String inum, String gluuInum, String type) {
 		boolean contains = false;
 		if ("attribute".equals(type)) {
@@ -174,10 +189,23 @@ public class InumService implements Serializable {
 		return String.format("inum=%s,ou=inums,%s", inum, baseDn);
 	}
 
+	/**
+	 * Generates a new inum of the type given. Inums of the default generator are unique by construction (see
+	 * {@link InumGeneratorService}), so they are only looked up in LDAP when an id generation script is enabled
+	 * @param type Type of object (people, group, attribute or trelationship)
+	 * @return New inum, or an empty string if the type is not supported
+	 */
 	public String generateInums(String type) {
-		return generateInums(type, true);
+		return generateInums(type, idGenService.isIdGeneratorScriptEnabled());
 	}
 
+	/**
+	 * Generates a new inum of the type given
+	 * @param type Type of object (people, group, attribute or trelationship)
+	 * @param checkInDb Whether to verify the inum is not in use already. This is only needed when objects of the type
+	 *                  may have been given inums generated by other means (eg. an id generation custom script)
+	 * @return New inum, or an empty string if the type is not supported
+	 */
 	public String generateInums(String type, boolean checkInDb) {
 		String inum = "";
 		int counter = 0;
@@ -208,34 +236,88 @@ public class InumService implements Serializable {
 		return inum;
 	}
 
+	/**
+	 * Generates a block of inums of the type given, none of which is in use. Candidates are checked against the
+	 * directory with a single search per block (plus one per retry, if any candidate happens to be taken)
+	 * @param type Type of object (people, group, attribute or trelationship)
+	 * @param count Number of inums to generate (at most {@link #MAX_BATCH_SIZE})
+	 * @return List of inums, or an empty list if generation failed
+	 * @throws IllegalArgumentException If the type is not supported or the count is out of range
+	 */
+	public List<String> generateInums(String type, int count) {
+		if (!BATCH_TYPES.contains(type)) {
+			throw new IllegalArgumentException("Unsupported type: " + type);
+		}
+		if (count < 1 || count > MAX_BATCH_SIZE) {
+			throw new IllegalArgumentException("Number of inums must be between 1 and " + MAX_BATCH_SIZE);
+		}
+
+		Set<String> inums = new LinkedHashSet<String>();
+		String gluu = organizationService.getInumForOrganization();
+		try {
+			for (int round = 0; inums.size() < count; round++) {
+				/* Just to make sure it doesn't get into an infinite loop */
+				if (round > MAX) {
+					log.error("Infinite loop problem while generating a block of new inums");
+					return Collections.emptyList();
+				}
+
+				Set<String> candidates = new LinkedHashSet<String>();
+				for (int i = 0; i < (count - inums.size()) * 2 && candidates.size() < count - inums.size(); i++) {
+					String inum = getInum(type, gluu);
+					if (StringHelper.isEmpty(inum)) {
+						log.error("Failed to generate inum of type {}", type);
+						return Collections.emptyList();
+					}
+					if (!inums.contains(inum)) {
+						candidates.add(inum);
+					}
+				}
+
+				candidates.removeAll(findExistingInums(candidates));
+				inums.addAll(candidates);
+			}
+		} catch (Exception ex) {
+			log.error("Failed to generate inums", ex);
+			return Collections.emptyList();
+		}
+		return new ArrayList<String>(inums);
+	}
+
+	/**
+	 * Finds which of the inums given are assigned to an entry in the directory
+	 * @param inums Inums to look up
+	 * @return Set of inums in use
+	 */
+	private Set<String> findExistingInums(Set<String> inums) {
+		Set<String> existing = new HashSet<String>();
+		if (inums.isEmpty()) {
+			return existing;
+		}
+
+		List<Filter> filters = new ArrayList<Filter>();
+		for (String inum : inums) {
+			filters.add(Filter.createEqualityFilter("inum", inum));
+		}
+
+		List<InumEntry> entries = ldapEntryManager.findEntries(appConfiguration.getBaseDN(), InumEntry.class,
+				Filter.createORFilter(filters), 0, inums.size());
+		for (InumEntry entry : entries) {
+			existing.add(entry.getInum());
+		}
+		return existing;
+	}
+
 	private String getInum(String type, String gluu) {
 		String inum = "";
 		if ("people".equals(type)) {
-			inum = gluu + SEPARATOR + PEOPLE + SEPARATOR + generateInum(2);
+			inum = idGenService.generateId(gluu, PEOPLE);
 		} else if ("group".equals(type)) {
-			inum = gluu + SEPARATOR + GROUP + SEPARATOR + generateInum(2);
+			inum = idGenService.generateId(gluu, GROUP);
 		} else if ("attribute".equals(type)) {
-			inum = gluu + SEPARATOR + ATTRIBUTE + SEPARATOR + generateInum(2);
+			inum = idGenService.generateId(gluu, ATTRIBUTE);
 		} else if ("trelationship".equals(type)) {
-			inum = gluu + SEPARATOR + TRUST_RELATIONSHIP + SEPARATOR + generateInum(2);
-		}
-		return inum;
-	}
-
-	private String generateInum(int size) {
-		String inum = "";
-		long value;
-		while (true) {
-			inum = INumGenerator.generate(size);
-			try {
-				value = Long.parseLong(inum.replace(".", ""), 16);
-				if (value < 7) {
-					continue;
-				}
-			} catch (Exception ex) {
-				log.error("Error generating inum: " + ex.getMessage());
-			}
-			break;
+			inum = idGenService.generateId(gluu, TRUST_RELATIONSHIP);
 		}
 		return inum;
 	}
@@ -59,9 +59,21 @@ public class JsonConfigurationService implements Serializable {
 	@Inject
 	private ApplianceService applianceService;
 
+	/**
+	 * Returns the oxTrust application configuration. The configuration is taken from the snapshot kept by
+	 * {@link ConfigurationFactory}, which is refreshed by its reload timer and right after the save methods of this
+	 * service, so no LDAP request is made here. The object returned is a copy, so callers are free to modify it (eg.
+	 * before calling {@link #saveOxTrustappConfiguration(AppConfiguration)}). Read-only callers on hot paths should
+	 * inject {@link AppConfiguration} instead. As the snapshot may lag behind LDAP, the save methods refuse to overwrite a
+	 * configuration that was changed since the snapshot was loaded
+	 */
 	public AppConfiguration getOxTrustappConfiguration() {
-		LdapOxTrustConfiguration ldapOxTrustConfiguration = getOxTrustConfiguration();
-		return ldapOxTrustConfiguration.getApplication();
+		AppConfiguration copy = copyOf(configurationFactory.getAppConfiguration(), AppConfiguration.class);
+		if (copy == null) {
+			LdapOxTrustConfiguration ldapOxTrustConfiguration = getOxTrustConfiguration();
+			copy = ldapOxTrustConfiguration.getApplication();
+		}
+		return copy;
 	}
 	
 	public CacheConfiguration getOxMemCacheConfiguration() {
@@ -77,13 +89,35 @@ public class JsonConfigurationService implements Serializable {
 	}
 
 	public ImportPersonConfig getOxTrustImportPersonConfiguration() {
-		LdapOxTrustConfiguration ldapOxTrustConfiguration = getOxTrustConfiguration();
-		return ldapOxTrustConfiguration.getImportPersonConfig();
+		ImportPersonConfig copy = copyOf(configurationFactory.getImportPersonConfig(), ImportPersonConfig.class);
+		if (copy == null) {
+			LdapOxTrustConfiguration ldapOxTrustConfiguration = getOxTrustConfiguration();
+			copy = ldapOxTrustConfiguration.getImportPersonConfig();
+		}
+		return copy;
 	}
 
 	public CacheRefreshConfiguration getOxTrustCacheRefreshConfiguration() {
-		LdapOxTrustConfiguration ldapOxTrustConfiguration = getOxTrustConfiguration();
-		return ldapOxTrustConfiguration.getCacheRefresh();
+		CacheRefreshConfiguration copy = copyOf(configurationFactory.getCacheRefreshConfiguration(), CacheRefreshConfiguration.class);
+		if (copy == null) {
+			LdapOxTrustConfiguration ldapOxTrustConfiguration = getOxTrustConfiguration();
+			copy = ldapOxTrustConfiguration.getCacheRefresh();
+		}
+		return copy;
+	}
+
+	private <T> T copyOf(T configuration, Class<T> clazz) {
+		if (configuration == null) {
+			return null;
+		}
+
+		try {
+			return jsonService.jsonToObject(jsonService.objectToJson(configuration), clazz);
+		} catch (Exception ex) {
+			log.error("Failed to copy configuration snapshot", ex);
+		}
+
+		return null;
 	}
 
 	private LdapOxTrustConfiguration getOxTrustConfiguration() {
@@ -93,6 +127,25 @@ public class JsonConfigurationService implements Serializable {
 		return ldapOxTrustConfiguration;
 	}
 
+	/**
+	 * Loads the configuration entry to update. Returns null if it was changed since the configuration snapshot was
+	 * loaded, as the object being saved was then copied from outdated data. The snapshot is refreshed in that case
+	 */
+	private LdapOxTrustConfiguration getOxTrustConfigurationForUpdate() {
+		LdapOxTrustConfiguration ldapOxTrustConfiguration = getOxTrustConfiguration();
+		if (ldapOxTrustConfiguration == null) {
+			return null;
+		}
+
+		if (configurationFactory.isOutdated(ldapOxTrustConfiguration.getRevision())) {
+			log.warn("Configuration was changed in LDAP since it was loaded (revision {}), refusing to overwrite it", ldapOxTrustConfiguration.getRevision());
+			configurationFactory.refreshConfiguration();
+			return null;
+		}
+
+		return ldapOxTrustConfiguration;
+	}
+
 	public String getOxAuthDynamicConfigJson() throws JsonGenerationException, JsonMappingException, IOException {
 		String configurationDn = configurationFactory.getConfigurationDn();
 
@@ -105,26 +158,41 @@ public class JsonConfigurationService implements Serializable {
 	}
 
 	public boolean saveOxTrustappConfiguration(AppConfiguration oxTrustappConfiguration) {
-		LdapOxTrustConfiguration ldapOxTrustConfiguration = getOxTrustConfiguration();
+		LdapOxTrustConfiguration ldapOxTrustConfiguration = getOxTrustConfigurationForUpdate();
+		if (ldapOxTrustConfiguration == null) {
+			return false;
+		}
+
 		ldapOxTrustConfiguration.setApplication(oxTrustappConfiguration);
 		ldapOxTrustConfiguration.setRevision(ldapOxTrustConfiguration.getRevision() + 1);
 		ldapEntryManager.merge(ldapOxTrustConfiguration);
+		configurationFactory.refreshConfiguration();
 		return true;
 	}
 
 	public boolean saveOxTrustImportPersonConfiguration(ImportPersonConfig oxTrustImportPersonConfiguration) {
-		LdapOxTrustConfiguration ldapOxTrustConfiguration = getOxTrustConfiguration();
+		LdapOxTrustConfiguration ldapOxTrustConfiguration = getOxTrustConfigurationForUpdate();
+		if (ldapOxTrustConfiguration == null) {
+			return false;
+		}
+
 		ldapOxTrustConfiguration.setImportPersonConfig(oxTrustImportPersonConfiguration);
 		ldapOxTrustConfiguration.setRevision(ldapOxTrustConfiguration.getRevision() + 1);
 		ldapEntryManager.merge(ldapOxTrustConfiguration);
+		configurationFactory.refreshConfiguration();
 		return true;
 	}
 
 	public boolean saveOxTrustCacheRefreshConfiguration(CacheRefreshConfiguration oxTrustCacheRefreshConfiguration) {
-		LdapOxTrustConfiguration ldapOxTrustConfiguration = getOxTrustConfiguration();
+		LdapOxTrustConfiguration ldapOxTrustConfiguration = getOxTrustConfigurationForUpdate();
+		if (ldapOxTrustConfiguration == null) {
+			return false;
+		}
+
 		ldapOxTrustConfiguration.setCacheRefresh(oxTrustCacheRefreshConfiguration);
 		ldapOxTrustConfiguration.setRevision(ldapOxTrustConfiguration.getRevision() + 1);
 		ldapEntryManager.merge(ldapOxTrustConfiguration);
+		configurationFactory.refreshConfiguration();
 		return true;
 	}
 
@@ -8,30 +8,79 @@ package org.gluu.oxtrust.ldap.service;
 
 import static org.gluu.oxtrust.ldap.service.AppInitializer.LDAP_ENTRY_MANAGER_NAME;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
-import java.util.Calendar;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
-import javax.annotation.PostConstruct;
-import javax.ejb.Stateless;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
+import org.apache.commons.io.IOUtils;
 import org.gluu.site.ldap.persistence.DeleteNotifier;
 import org.gluu.site.ldap.persistence.LdapEntryManager;
 import org.slf4j.Logger;
 import org.xdi.config.oxtrust.AppConfiguration;
 
-@Stateless
+/**
+ * Keeps a copy of entries removed from LDAP. Entries are read before removal and queued; a background thread appends
+ * them to gzip compressed LDIF archives (<code>archive-&lt;timestamp&gt;.ldif.gz</code> in the LDIF store), which are
+ * rolled when they reach {@link #MAX_ARCHIVE_SIZE} or get older than {@link #MAX_ARCHIVE_AGE_MILLIS}. An index file
+ * lists the archive of every removed DN, see {@link #findArchivedEntries(String)}. Whenever the queue is drained the
+ * archive is flushed, then the index, so that indexed records can be read back while the archive is still being written.
+ * <p>When the queue is full, removals wait for room for a while (back-pressure) before giving up on archiving the entry.
+ * Statistics are published over JMX as <code>org.gluu.oxtrust:type=LdifArchiver</code></p>
+ */
+@ApplicationScoped
 @Named
-public class LdifArchiver implements DeleteNotifier {
+public class LdifArchiver implements DeleteNotifier, LdifArchiverStatsMBean {
+
+	private static final String ARCHIVE_PREFIX = "archive-";
+	private static final String ARCHIVE_SUFFIX = ".ldif.gz";
+	private static final String INDEX_FILE = "archive.index";
+
+	// Marks the start of a record in archives
+	private static final String RECORD_HEADER = "# Removed ";
+
+	private static final int QUEUE_CAPACITY = 10000;
+	private static final long QUEUE_WAIT_SECONDS = 30;
+
+	// Size of uncompressed LDIF
+	private static final long MAX_ARCHIVE_SIZE = 64L * 1024 * 1024;
+	private static final long MAX_ARCHIVE_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+	private static final String MBEAN_NAME = "org.gluu.oxtrust:type=LdifArchiver";
 
 	@Inject
 	private Logger log;
 
 	@Inject
-	private LdapEntryManager ldapEntryManager;	
+	private LdapEntryManager ldapEntryManager;
 	@Inject
 	private AppConfiguration appConfiguration;
 
@@ -39,43 +88,371 @@ public class LdifArchiver implements DeleteNotifier {
 
 	private boolean disable;
 
-	public void init() {
+	private BlockingQueue<ArchiveRecord> queue;
+
+	private Thread writerThread;
+
+	private volatile boolean running;
+
+	private final AtomicLong archivedCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+	private final AtomicLong backPressureCount = new AtomicLong();
+
+	// Used only by the writer thread
+	private Writer archiveWriter;
+	private Writer indexWriter;
+	private long archiveSize;
+	private long archiveCreated;
+
+	private volatile String currentArchive;
+
+	public synchronized void init() {
+		if (writerThread != null) {
+			return;
+		}
+
 		storeDir = appConfiguration.getLdifStore();
 		if (storeDir != null) {
 			File store = new File(storeDir);
 			store.mkdirs();
 		} else {
 			disable = true;
+			return;
+		}
+
+		queue = new ArrayBlockingQueue<ArchiveRecord>(QUEUE_CAPACITY);
+		running = true;
+		writerThread = new Thread(new Runnable() {
+			public void run() {
+				processQueue();
+			}
+		}, "ldif-archiver");
+		writerThread.setDaemon(true);
+		writerThread.start();
+
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(MBEAN_NAME);
+			if (!server.isRegistered(objectName)) {
+				server.registerMBean(new StandardMBean(this, LdifArchiverStatsMBean.class), objectName);
+			}
+		} catch (Exception ex) {
+			log.warn("Failed to register statistics of LDIF archiver in JMX", ex);
+		}
+	}
+
+	@PreDestroy
+	public void destroy() {
+		if (writerThread == null) {
+			return;
+		}
+
+		// Let the writer drain the queue
+		running = false;
+		try {
+			writerThread.join(TimeUnit.SECONDS.toMillis(QUEUE_WAIT_SECONDS));
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		if (!queue.isEmpty()) {
+			log.error("LDIF archiver stopped with {} entries not archived", queue.size());
+		}
+
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(MBEAN_NAME);
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+		} catch (Exception ex) {
+			log.debug(ex.getMessage());
 		}
 	}
 
 	public void onBeforeRemove(String dn) {
-		if (!disable) {
-			String dnForRemoval = dn;
-			int dnForRemovalLenght = dnForRemoval.length();
-			if (dnForRemovalLenght > 200) {
-				dnForRemoval = dn.substring(dnForRemovalLenght - 200, dnForRemovalLenght);
+		if (disable || !running) {
+			return;
+		}
+
+		// The entry is gone once removed, so it has to be read here
+		String[] ldif = ldapEntryManager.getLDIF(dn);
+		if (ldif == null) {
+			return;
+		}
+
+		ArchiveRecord record = new ArchiveRecord(dn, new Date(), ldif);
+		if (queue.offer(record)) {
+			return;
+		}
+
+		backPressureCount.incrementAndGet();
+		try {
+			if (queue.offer(record, QUEUE_WAIT_SECONDS, TimeUnit.SECONDS)) {
+				return;
 			}
-			File file = new File(storeDir + File.separator + dnForRemoval + Calendar.getInstance().getTimeInMillis());
-			PrintWriter writer = null;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+
+		failedCount.incrementAndGet();
+		log.error("LDIF archive queue is full, entry '{}' wasn't archived", dn);
+	}
+
+	public void onAfterRemove(String dn) {
+		// TODO Auto-generated method stub
+
+	}
+
+	/**
+	 * Finds the archived copies of an entry. The archive being written, or one which was not closed properly, is read up
+	 * to its last complete record
+	 *
+	 * @param dn
+	 *            DN of removed entry
+	 * @return LDIF of the entry, once per removal, oldest first
+	 */
+	public List<String[]> findArchivedEntries(String dn) throws IOException {
+		List<String[]> result = new ArrayList<String[]>();
+		if (disable) {
+			return result;
+		}
+
+		File indexFile = new File(storeDir, INDEX_FILE);
+		if (!indexFile.exists()) {
+			return result;
+		}
+
+		// Index lines are: archive, record number in archive, removal time, DN
+		Set<String> archives = new LinkedHashSet<String>();
+		List<String> records = new ArrayList<String>();
+		BufferedReader indexReader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"));
+		try {
+			String line;
+			while ((line = indexReader.readLine()) != null) {
+				String[] fields = line.split("\t", 4);
+				if ((fields.length == 4) && fields[3].equalsIgnoreCase(dn)) {
+					archives.add(fields[0]);
+					records.add(fields[0] + "\t" + fields[1]);
+				}
+			}
+		} finally {
+			IOUtils.closeQuietly(indexReader);
+		}
+
+		for (String archive : archives) {
+			FileInputStream fileStream = new FileInputStream(new File(storeDir, archive));
+			TruncatedGzipInputStream archiveStream;
+			try {
+				archiveStream = new TruncatedGzipInputStream(fileStream);
+			} catch (EOFException ex) {
+				// Not even the gzip header was written
+				IOUtils.closeQuietly(fileStream);
+				continue;
+			}
+			BufferedReader archiveReader = new BufferedReader(new InputStreamReader(archiveStream, "UTF-8"));
 			try {
-				writer = new PrintWriter(file);
-			} catch (FileNotFoundException e) {
+				int recordNumber = 0;
+				List<String> lines = null;
+				// Records end with an empty line
+				boolean complete = false;
+				String line;
+				while ((line = archiveReader.readLine()) != null) {
+					if (line.startsWith(RECORD_HEADER)) {
+						addRecord(result, lines);
+						recordNumber++;
+						lines = records.contains(archive + "\t" + recordNumber) ? new ArrayList<String>() : null;
+					} else if ((lines != null) && (line.length() > 0)) {
+						lines.add(line);
+					}
+					complete = line.length() == 0;
+				}
+				if (archiveStream.isTruncated()) {
+					log.debug("LDIF archive {} is truncated in record {}", archive, recordNumber);
+				}
+				if (complete) {
+					addRecord(result, lines);
+				}
+			} finally {
+				IOUtils.closeQuietly(archiveReader);
+			}
+		}
 
-				log.error("Failed to write into log file", e);
+		return result;
+	}
+
+	private void addRecord(List<String[]> result, List<String> lines) {
+		if (lines != null) {
+			result.add(lines.toArray(new String[lines.size()]));
+		}
+	}
+
+	private void processQueue() {
+		long recordNumber = 0;
+		while (running || !queue.isEmpty()) {
+			try {
+				ArchiveRecord record = queue.poll(1, TimeUnit.SECONDS);
+				if (record != null) {
+					if (archiveWriter == null) {
+						openArchive();
+						recordNumber = 0;
+					}
+					recordNumber++;
+					writeRecord(record, recordNumber);
+				}
+
+				// Records have to be in the archive before the index points to them
+				if (queue.isEmpty() && (archiveWriter != null)) {
+					archiveWriter.flush();
+					indexWriter.flush();
+				}
+
+				if ((archiveWriter != null)
+						&& ((archiveSize >= MAX_ARCHIVE_SIZE) || (System.currentTimeMillis() - archiveCreated >= MAX_ARCHIVE_AGE_MILLIS))) {
+					closeArchive();
+				}
+			} catch (InterruptedException ex) {
+				log.warn("LDIF archiver was interrupted");
+				break;
+			} catch (Exception ex) {
+				failedCount.incrementAndGet();
+				log.error("Failed to write into LDIF archive", ex);
+				// Start over with a new archive
+				closeArchive();
 			}
-			String[] ldif = ldapEntryManager.getLDIF(dn);
-			for (String ldifValue : ldif) {
-				writer.println(ldifValue);
+		}
+
+		closeArchive();
+	}
+
+	private void openArchive() throws IOException {
+		String name = ARCHIVE_PREFIX + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date()) + ARCHIVE_SUFFIX;
+		File file = new File(storeDir, name);
+
+		archiveWriter = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file), true), "UTF-8"));
+		if (indexWriter == null) {
+			indexWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(storeDir, INDEX_FILE), true), "UTF-8"));
+		}
+		archiveSize = 0;
+		archiveCreated = System.currentTimeMillis();
+		currentArchive = name;
+
+		log.debug("Opened LDIF archive {}", file);
+	}
+
+	private void writeRecord(ArchiveRecord record, long recordNumber) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		sb.append(RECORD_HEADER).append(record.getRemoved().getTime()).append('\n');
+		for (String line : record.getLdif()) {
+			sb.append(line).append('\n');
+		}
+		sb.append('\n');
+
+		archiveWriter.write(sb.toString());
+		archiveSize += sb.length();
+
+		indexWriter.write(currentArchive + "\t" + recordNumber + "\t" + record.getRemoved().getTime() + "\t" + record.getDn() + "\n");
+		archivedCount.incrementAndGet();
+	}
+
+	private void closeArchive() {
+		if (archiveWriter != null) {
+			try {
+				archiveWriter.close();
+			} catch (IOException ex) {
+				log.error("Failed to close LDIF archive {}", currentArchive, ex);
+			}
+			archiveWriter = null;
+			currentArchive = null;
+		}
+
+		if (indexWriter != null) {
+			try {
+				indexWriter.close();
+			} catch (IOException ex) {
+				log.error("Failed to close LDIF archive index", ex);
 			}
-			writer.flush();
+			indexWriter = null;
 		}
+	}
 
+	public int getQueueSize() {
+		return (queue == null) ? 0 : queue.size();
 	}
 
-	public void onAfterRemove(String dn) {
-		// TODO Auto-generated method stub
+	public int getQueueCapacity() {
+		return QUEUE_CAPACITY;
+	}
+
+	public long getArchivedCount() {
+		return archivedCount.get();
+	}
 
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	public long getBackPressureCount() {
+		return backPressureCount.get();
+	}
+
+	public String getCurrentArchive() {
+		return currentArchive;
+	}
+
+	/**
+	 * Reads an archive which may still be written, or which wasn't closed properly. The data missing at the end is
+	 * treated as the end of the archive
+	 */
+	private static class TruncatedGzipInputStream extends GZIPInputStream {
+
+		private boolean truncated;
+
+		TruncatedGzipInputStream(InputStream in) throws IOException {
+			super(in);
+		}
+
+		@Override
+		public int read(byte[] buf, int off, int len) throws IOException {
+			if (truncated) {
+				return -1;
+			}
+
+			try {
+				return super.read(buf, off, len);
+			} catch (EOFException ex) {
+				truncated = true;
+				return -1;
+			}
+		}
+
+		boolean isTruncated() {
+			return truncated;
+		}
+	}
+
+	private static class ArchiveRecord {
+
+		private final String dn;
+		private final Date removed;
+		private final String[] ldif;
+
+		ArchiveRecord(String dn, Date removed, String[] ldif) {
+			this.dn = dn;
+			this.removed = removed;
+			this.ldif = ldif;
+		}
+
+		String getDn() {
+			return dn;
+		}
+
+		Date getRemoved() {
+			return removed;
+		}
+
+		String[] getLdif() {
+			return ldif;
+		}
 	}
 
 }
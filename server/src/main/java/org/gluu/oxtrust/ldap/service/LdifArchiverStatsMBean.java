@@ -0,0 +1,29 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+/**
+ * JMX view of the statistics of {@link LdifArchiver}
+ */
+public interface LdifArchiverStatsMBean {
+
+	int getQueueSize();
+
+	int getQueueCapacity();
+
+	long getArchivedCount();
+
+	long getFailedCount();
+
+	/**
+	 * @return Number of times a delete had to wait for room in the queue
+	 */
+	long getBackPressureCount();
+
+	String getCurrentArchive();
+
+}
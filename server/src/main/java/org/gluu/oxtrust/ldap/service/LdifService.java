@@ -12,21 +12,42 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.ejb.Stateless;
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import org.gluu.oxtrust.ldap.load.LdifImportStatus;
 import org.gluu.site.ldap.persistence.LdapEntryManager;
 import org.gluu.site.ldap.persistence.LdifDataUtility;
 import org.gluu.site.ldap.persistence.exception.LdapMappingException;
 import org.slf4j.Logger;
 
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.ChangeType;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Filter;
 import com.unboundid.ldap.sdk.LDAPConnection;
 import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
 import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultListener;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+import com.unboundid.ldif.LDIFChangeRecord;
+import com.unboundid.ldif.LDIFException;
 import com.unboundid.ldif.LDIFReader;
 import com.unboundid.ldif.LDIFWriter;
 
@@ -42,6 +63,14 @@ public class LdifService implements Serializable {
 
 	private static final long serialVersionUID = 6690460114767359078L;
 
+	// Number of records applied concurrently, each worker holding one connection
+	private static final int IMPORT_THREADS = 4;
+
+	// Maximum number of records read ahead of the ones applied
+	private static final int IMPORT_CHUNK_SIZE = 1000;
+
+	private static final int EXPORT_PAGE_SIZE = 100;
+
 	@Inject
 	private Logger log;
 
@@ -51,23 +80,159 @@ public class LdifService implements Serializable {
 	private AttributeService attributeService;
 
 	public ResultCode importLdifFileInLdap(InputStream is) throws LDAPException {
-		ResultCode result = ResultCode.UNAVAILABLE;
+		LdifImportStatus status = new LdifImportStatus();
+		importLdifFileInLdap(is, status);
 
-		LDAPConnection connection = ldapEntryManager.getLdapOperationService().getConnection();
+		if (status.getFailedCount() > 0) {
+			log.error("Failed to import {} of {} LDIF records: {}", status.getFailedCount(), status.getReadCount(), status.getErrors());
+		}
+
+		return status.getResultCode();
+	}
+
+	/**
+	 * Imports an LDIF file. Records are read incrementally and applied by a bounded pool of connections. Up to
+	 * {@link #IMPORT_CHUNK_SIZE} records are read at a time, and applied by order of DN depth (parents before children,
+	 * or children first for deletes). A chunk ends early when a DN repeats, so that changes of an entry keep the order of
+	 * the file. A modify DN record is applied on its own, after the records before it and before the ones after it, as
+	 * it changes DNs of the entries those refer to. Records which fail don't stop the import, they are reported in the
+	 * status
+	 *
+	 * @param is
+	 *            LDIF file
+	 * @param status
+	 *            Receives progress and errors of import
+	 */
+	public void importLdifFileInLdap(InputStream is, LdifImportStatus status) {
+		ExecutorService executor = Executors.newFixedThreadPool(IMPORT_THREADS);
+		LDIFReader importLdifReader = new LDIFReader(is);
+
+		int recordNumber = 0;
 		try {
-			LdifDataUtility ldifDataUtility = LdifDataUtility.instance();
-			LDIFReader importLdifReader = new LDIFReader(is);
+			List<PendingRecord> chunk = new ArrayList<PendingRecord>();
+			Set<DN> chunkDns = new HashSet<DN>();
+			boolean chunkDeletes = false;
+			while (true) {
+				LDIFChangeRecord record;
+				recordNumber++;
+				try {
+					record = importLdifReader.readChangeRecord(true);
+				} catch (LDIFException ex) {
+					status.addError(recordNumber, null, ResultCode.DECODING_ERROR, ex.getMessage());
+					if (ex.mayContinueReading()) {
+						continue;
+					}
+					break;
+				}
 
-			result = ldifDataUtility.importLdifFile(connection, importLdifReader);
-			importLdifReader.close();
-		} catch (Exception ex) {
-			log.error("Failed to import ldif file: ", ex);
+				if (record == null) {
+					break;
+				}
+				status.incrementReadCount();
+
+				DN dn;
+				try {
+					dn = record.getParsedDN();
+				} catch (LDAPException ex) {
+					status.addError(recordNumber, record.getDN(), ex.getResultCode(), ex.getMessage());
+					continue;
+				}
+
+				if (ChangeType.MODIFY_DN.equals(record.getChangeType())) {
+					applyChunk(chunk, chunkDeletes, executor, status);
+					applyChunk(Collections.singletonList(new PendingRecord(recordNumber, dn, record)), false, executor, status);
+					chunk = new ArrayList<PendingRecord>();
+					chunkDns.clear();
+					continue;
+				}
+
+				boolean delete = ChangeType.DELETE.equals(record.getChangeType());
+				if ((chunk.size() >= IMPORT_CHUNK_SIZE) || (!chunk.isEmpty() && (delete != chunkDeletes)) || chunkDns.contains(dn)) {
+					applyChunk(chunk, chunkDeletes, executor, status);
+					chunk = new ArrayList<PendingRecord>();
+					chunkDns.clear();
+				}
+
+				chunkDeletes = delete;
+				chunk.add(new PendingRecord(recordNumber, dn, record));
+				chunkDns.add(dn);
+			}
+
+			applyChunk(chunk, chunkDeletes, executor, status);
+		} catch (IOException ex) {
+			log.error("Failed to read ldif file: ", ex);
+			status.addError(recordNumber, null, ResultCode.LOCAL_ERROR, "Failed to read file: " + ex.getMessage());
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			status.addError(recordNumber, null, ResultCode.USER_CANCELED, "Import was interrupted");
 		} finally {
-			ldapEntryManager.getLdapOperationService().releaseConnection(connection);
+			executor.shutdownNow();
+			try {
+				importLdifReader.close();
+			} catch (IOException ex) {
+				log.debug("Failed to close ldif file", ex);
+			}
 		}
+	}
 
-		return result;
+	/**
+	 * Applies records level by level. Records of a level are split among the workers, and all of them complete before
+	 * the next level starts
+	 */
+	private void applyChunk(List<PendingRecord> chunk, boolean deletes, ExecutorService executor, final LdifImportStatus status)
+			throws InterruptedException {
+		TreeMap<Integer, List<PendingRecord>> levels = new TreeMap<Integer, List<PendingRecord>>(
+				deletes ? Collections.<Integer> reverseOrder() : null);
+		for (PendingRecord record : chunk) {
+			int depth = record.getDn().getRDNs().length;
+			List<PendingRecord> level = levels.get(depth);
+			if (level == null) {
+				level = new ArrayList<PendingRecord>();
+				levels.put(depth, level);
+			}
+			level.add(record);
+		}
 
+		for (List<PendingRecord> level : levels.values()) {
+			int workers = Math.min(IMPORT_THREADS, level.size());
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(workers);
+			for (int i = 0; i < workers; i++) {
+				final List<PendingRecord> records = level.subList(level.size() * i / workers, level.size() * (i + 1) / workers);
+				tasks.add(new Callable<Void>() {
+					public Void call() throws Exception {
+						applyRecords(records, status);
+						return null;
+					}
+				});
+			}
+			executor.invokeAll(tasks);
+		}
+	}
+
+	void applyRecords(List<PendingRecord> records, LdifImportStatus status) {
+		LDAPConnection connection;
+		try {
+			connection = ldapEntryManager.getLdapOperationService().getConnection();
+		} catch (LDAPException ex) {
+			for (PendingRecord record : records) {
+				status.addError(record.getNumber(), record.getRecord().getDN(), ex.getResultCode(), "Failed to get connection: " + ex.getMessage());
+			}
+			return;
+		}
+
+		try {
+			for (PendingRecord record : records) {
+				try {
+					record.getRecord().processChange(connection);
+					status.incrementProcessedCount();
+				} catch (LDAPException ex) {
+					log.debug("Failed to apply LDIF record {}", record.getRecord().getDN(), ex);
+					status.addError(record.getNumber(), record.getRecord().getDN(), ex.getResultCode(), ex.getMessage());
+				}
+			}
+		} finally {
+			ldapEntryManager.getLdapOperationService().releaseConnection(connection);
+		}
 	}
 
 	public ResultCode validateLdifFile(InputStream is, String dn) throws LDAPException {
@@ -88,31 +253,127 @@ public class LdifService implements Serializable {
 	
 	public void exportLDIFFile(List<String> checkedItems, OutputStream output)
 			throws LDAPException {
-		List<SearchResultEntry> result = null;
+		if ((checkedItems == null) || checkedItems.isEmpty()) {
+			return;
+		}
+
+		List<Filter> inumFilters = new ArrayList<Filter>(checkedItems.size());
+		for (String inum : checkedItems) {
+			inumFilters.add(Filter.createEqualityFilter("inum", inum));
+		}
+
+		exportLDIFFile(attributeService.getDnForAttribute(null), Filter.createORFilter(inumFilters), output);
+	}
+
+	/**
+	 * Writes the entries matching a filter to LDIF. Entries are requested in pages and written as they arrive, so
+	 * the size of the export doesn't affect memory usage
+	 *
+	 * @param baseDN
+	 *            Base DN of search
+	 * @param filter
+	 *            Filter of entries to export
+	 * @param output
+	 *            Stream to write to. It is flushed but not closed
+	 * @return Number of entries written
+	 */
+	public int exportLDIFFile(String baseDN, Filter filter, OutputStream output) throws LDAPException {
+		LdifEntryWriter entryWriter = new LdifEntryWriter(new LDIFWriter(output));
+
 		LDAPConnection connection = ldapEntryManager.getLdapOperationService().getConnection();
 		try {
-			LdifDataUtility ldifDataUtility = LdifDataUtility.instance();
-			result = ldifDataUtility.getAttributeResultEntryLDIF(connection,checkedItems, attributeService.getDnForAttribute(null));
-		} catch (Exception ex) {
-			log.error("Failed to export ldif file: ", ex);
+			ASN1OctetString cookie = null;
+			do {
+				SearchRequest searchRequest = new SearchRequest(entryWriter, baseDN, SearchScope.SUB, filter);
+				searchRequest.setControls(new SimplePagedResultsControl(EXPORT_PAGE_SIZE, cookie));
+
+				SearchResult searchResult = connection.search(searchRequest);
+				entryWriter.checkError();
+
+				SimplePagedResultsControl responseControl = SimplePagedResultsControl.get(searchResult);
+				cookie = ((responseControl != null) && responseControl.moreResultsToReturn()) ? responseControl.getCookie() : null;
+			} while (cookie != null);
+
+			entryWriter.flush();
+		} catch (IOException ex) {
+			throw new LdapMappingException("Error writing to file, try again", ex);
 		} finally {
 			ldapEntryManager.getLdapOperationService().releaseConnection(connection);
 		}
 
-		if (result != null && result.size() > 0) {
-			// Write all of the matching entries to LDIF.
-			LDIFWriter ldifWriter;
+		return entryWriter.getCount();
+	}
+
+	/**
+	 * Writes search result entries to LDIF as they are received
+	 */
+	private static class LdifEntryWriter implements SearchResultListener {
+
+		private static final long serialVersionUID = -3224581245796520165L;
+
+		private final transient LDIFWriter ldifWriter;
+		private int count;
+		private IOException error;
+
+		LdifEntryWriter(LDIFWriter ldifWriter) {
+			this.ldifWriter = ldifWriter;
+		}
+
+		public void searchEntryReturned(SearchResultEntry searchEntry) {
+			if (error != null) {
+				return;
+			}
+
 			try {
-				ldifWriter = new LDIFWriter(output);
-				for (SearchResultEntry entry : result) {
-					ldifWriter.writeEntry(entry);
-				}
+				ldifWriter.writeEntry(searchEntry);
+				count++;
+			} catch (IOException ex) {
+				error = ex;
+			}
+		}
+
+		public void searchReferenceReturned(SearchResultReference searchReference) {
+		}
 
-				ldifWriter.close();
-			} catch (IOException e) {
-				throw new LdapMappingException("Error writing to file, try again", e);
+		void checkError() throws IOException {
+			if (error != null) {
+				throw error;
 			}
 		}
+
+		void flush() throws IOException {
+			checkError();
+			ldifWriter.flush();
+		}
+
+		int getCount() {
+			return count;
+		}
+	}
+
+	static class PendingRecord {
+
+		private final int number;
+		private final DN dn;
+		private final LDIFChangeRecord record;
+
+		PendingRecord(int number, DN dn, LDIFChangeRecord record) {
+			this.number = number;
+			this.dn = dn;
+			this.record = record;
+		}
+
+		int getNumber() {
+			return number;
+		}
+
+		DN getDn() {
+			return dn;
+		}
+
+		LDIFChangeRecord getRecord() {
+			return record;
+		}
 	}
 
 }
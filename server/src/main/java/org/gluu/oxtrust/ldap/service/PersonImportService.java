@@ -0,0 +1,482 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.RandomStringUtils;
+import org.gluu.oxtrust.ldap.load.CsvRowReader;
+import org.gluu.oxtrust.ldap.load.PersonImportJob;
+import org.gluu.oxtrust.ldap.load.RowReader;
+import org.gluu.oxtrust.ldap.load.XlsRowReader;
+import org.gluu.oxtrust.ldap.load.XlsxRowReader;
+import org.gluu.oxtrust.model.GluuCustomPerson;
+import org.gluu.oxtrust.service.external.ExternalUpdateUserService;
+import org.gluu.site.ldap.persistence.AttributeData;
+import org.slf4j.Logger;
+import org.xdi.ldap.model.GluuBoolean;
+import org.xdi.ldap.model.GluuStatus;
+import org.xdi.model.GluuAttribute;
+import org.xdi.model.GluuAttributeDataType;
+import org.xdi.service.cdi.async.Asynchronous;
+import org.xdi.util.StringHelper;
+
+/**
+ * Imports persons from CSV and Excel files in background. Files are read one row at a time; rows are validated and
+ * checked for uid and mail uniqueness in batches (one LDAP search per batch and attribute), and valid entries are added
+ * by a bounded pool of writers. Rows which can't be imported are recorded in the job for the error report
+ *
+ * @see PersonImportJob
+ */
+@ApplicationScoped
+@Named
+public class PersonImportService {
+
+	public static final String PERSON_PASSWORD_ATTRIBUTE = "userPassword";
+
+	private static final String[] PERSON_IMPORT_PERSON_LOCKUP_RETURN_ATTRIBUTES = { "uid", "mail" };
+
+	private static final String[] SUPPORTED_EXTENSIONS = { "csv", "xlsx", "xls" };
+
+	private static final int BATCH_SIZE = 200;
+	private static final int WRITER_THREADS = 4;
+
+	// Keeps the reader at most this number of entries ahead of the writers
+	private static final int WRITER_QUEUE_SIZE = 2 * BATCH_SIZE;
+
+	// Finished jobs are kept this long so that their results can still be checked
+	private static final long JOB_RETENTION_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private IPersonService personService;
+
+	@Inject
+	private OrganizationService organizationService;
+
+	@Inject
+	private ExternalUpdateUserService externalUpdateUserService;
+
+	private Map<String, PersonImportJob> jobs = new ConcurrentHashMap<String, PersonImportJob>();
+
+	public boolean isSupportedFile(String fileName) {
+		String extension = FilenameUtils.getExtension(fileName);
+		for (String supportedExtension : SUPPORTED_EXTENSIONS) {
+			if (supportedExtension.equalsIgnoreCase(extension)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Opens a reader suitable for the type of file, according to its extension
+	 */
+	public RowReader openReader(File file, String fileName) throws IOException {
+		String extension = FilenameUtils.getExtension(fileName).toLowerCase();
+		if ("csv".equals(extension)) {
+			InputStream is = new FileInputStream(file);
+			return new CsvRowReader(new InputStreamReader(is, "UTF-8"));
+		} else if ("xlsx".equals(extension)) {
+			return new XlsxRowReader(file);
+		} else if ("xls".equals(extension)) {
+			return new XlsRowReader(file);
+		}
+
+		throw new IOException(String.format("Unsupported type of file '%s'", fileName));
+	}
+
+	/**
+	 * Maps columns of the file to attributes, matching header cells to attribute display names
+	 *
+	 * @param header
+	 *            First row of file
+	 * @param attributes
+	 *            Attributes which can be imported
+	 * @return Map from column index to attribute
+	 */
+	public Map<Integer, GluuAttribute> getColumnAttributes(List<String> header, List<GluuAttribute> attributes) {
+		Map<String, GluuAttribute> attributesDisplayNameMap = new HashMap<String, GluuAttribute>();
+		for (GluuAttribute attribute : attributes) {
+			attributesDisplayNameMap.put(attribute.getDisplayName().toLowerCase(), attribute);
+		}
+
+		Map<Integer, GluuAttribute> result = new LinkedHashMap<Integer, GluuAttribute>();
+		if (header == null) {
+			return result;
+		}
+
+		for (int i = 0; i < header.size(); i++) {
+			String cellValue = header.get(i);
+			if (StringHelper.isEmpty(cellValue)) {
+				continue;
+			}
+
+			GluuAttribute attribute = attributesDisplayNameMap.get(cellValue.trim().toLowerCase());
+			if ((attribute != null) && !result.containsValue(attribute)) {
+				result.put(i, attribute);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return Mandatory attributes which are not mapped to any column
+	 */
+	public List<GluuAttribute> getMissingAttributes(Map<Integer, GluuAttribute> columnAttributes, List<GluuAttribute> attributes) {
+		List<GluuAttribute> result = new ArrayList<GluuAttribute>();
+		for (GluuAttribute attribute : attributes) {
+			if (attribute.isRequred() && !columnAttributes.containsValue(attribute)) {
+				result.add(attribute);
+			}
+		}
+
+		return result;
+	}
+
+	public PersonImportJob createJob(String fileName, File file, List<GluuAttribute> attributes) {
+		long expiration = System.currentTimeMillis() - JOB_RETENTION_MILLIS;
+		for (PersonImportJob finishedJob : jobs.values()) {
+			if ((finishedJob.getEndDate() != null) && (finishedJob.getEndDate().getTime() < expiration)) {
+				jobs.remove(finishedJob.getId());
+			}
+		}
+
+		PersonImportJob job = new PersonImportJob(fileName, file, attributes);
+		jobs.put(job.getId(), job);
+
+		return job;
+	}
+
+	public PersonImportJob getJob(String id) {
+		return (id == null) ? null : jobs.get(id);
+	}
+
+	/**
+	 * Forgets a job, cancelling it if it's still running
+	 */
+	public void removeJob(String id) {
+		PersonImportJob job = getJob(id);
+		if (job != null) {
+			job.cancel();
+			jobs.remove(id);
+		}
+	}
+
+	/**
+	 * Runs the import described by the job. The file of the job is removed when the import finishes
+	 */
+	@Asynchronous
+	public void importPersons(PersonImportJob job) {
+		job.start();
+		log.info("Starting import of persons from file '{}'", job.getFileName());
+
+		ThreadPoolExecutor writers = new ThreadPoolExecutor(WRITER_THREADS, WRITER_THREADS, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(WRITER_QUEUE_SIZE), new ThreadPoolExecutor.CallerRunsPolicy());
+		RowReader reader = null;
+		try {
+			if (!organizationService.isAllowPersonModification()) {
+				job.finish(PersonImportJob.Status.FAILED, "Person modification is not allowed");
+				return;
+			}
+
+			reader = openReader(job.getFile(), job.getFileName());
+			Map<Integer, GluuAttribute> columnAttributes = getColumnAttributes(reader.readRow(), job.getAttributes());
+			List<GluuAttribute> missingAttributes = getMissingAttributes(columnAttributes, job.getAttributes());
+			if (!missingAttributes.isEmpty()) {
+				job.finish(PersonImportJob.Status.FAILED, "Required columns are missing: " + getDisplayNames(missingAttributes));
+				return;
+			}
+
+			boolean generatePassword = isGeneratePassword(job.getAttributes());
+			Set<String> uids = new HashSet<String>();
+			Set<String> mails = new HashSet<String>();
+
+			Map<Integer, GluuCustomPerson> batch = new LinkedHashMap<Integer, GluuCustomPerson>();
+			List<String> row;
+			while (!job.isCancelRequested() && ((row = reader.readRow()) != null)) {
+				if (isEmptyRow(row)) {
+					continue;
+				}
+
+				job.incrementReadCount();
+				GluuCustomPerson person = convertRowToPerson(job, reader.getRowNumber(), row, columnAttributes, generatePassword);
+				if (person != null) {
+					batch.put(reader.getRowNumber(), person);
+				}
+
+				if (batch.size() >= BATCH_SIZE) {
+					addPersons(job, batch, uids, mails, writers);
+					batch = new LinkedHashMap<Integer, GluuCustomPerson>();
+				}
+			}
+			if (!job.isCancelRequested()) {
+				addPersons(job, batch, uids, mails, writers);
+			}
+
+			writers.shutdown();
+			while (!writers.awaitTermination(1, TimeUnit.SECONDS)) {
+				if (job.isCancelRequested()) {
+					writers.shutdownNow();
+				}
+			}
+
+			if (job.isCancelRequested()) {
+				job.finish(PersonImportJob.Status.CANCELLED, "Import was cancelled");
+			} else {
+				job.finish(PersonImportJob.Status.COMPLETED, null);
+			}
+			log.info("Imported {} persons from file '{}', {} rows failed", job.getProcessedCount(), job.getFileName(), job.getFailedCount());
+		} catch (Exception ex) {
+			log.error("Failed to import persons from file '{}'", job.getFileName(), ex);
+			job.finish(PersonImportJob.Status.FAILED, ex.getMessage());
+		} finally {
+			writers.shutdownNow();
+			IOUtils.closeQuietly(reader);
+			FileUtils.deleteQuietly(job.getFile());
+		}
+	}
+
+	private GluuCustomPerson convertRowToPerson(PersonImportJob job, int rowNumber, List<String> row,
+			Map<Integer, GluuAttribute> columnAttributes, boolean generatePassword) throws Exception {
+		List<AttributeData> attributeDataList = new ArrayList<AttributeData>();
+		String password = null;
+		String status = null;
+		boolean valid = true;
+		for (Map.Entry<Integer, GluuAttribute> columnAttribute : columnAttributes.entrySet()) {
+			GluuAttribute attribute = columnAttribute.getValue();
+			int col = columnAttribute.getKey();
+			String cellValue = (col < row.size()) ? row.get(col).trim() : null;
+			if (StringHelper.isEmpty(cellValue)) {
+				if (attribute.isRequred()) {
+					job.addError(rowNumber, null, String.format("Empty '%s' not allowed", attribute.getDisplayName()));
+					valid = false;
+				}
+				continue;
+			}
+
+			String ldapValue = getTypedValue(attribute, cellValue);
+			if (StringHelper.isEmpty(ldapValue)) {
+				job.addError(rowNumber, null, String.format("Invalid value '%s' in column '%s'", cellValue, attribute.getDisplayName()));
+				valid = false;
+				continue;
+			}
+
+			if (PERSON_PASSWORD_ATTRIBUTE.equalsIgnoreCase(attribute.getName())) {
+				password = ldapValue;
+			} else if ("gluuStatus".equalsIgnoreCase(attribute.getName())) {
+				status = ldapValue;
+			}
+			attributeDataList.add(new AttributeData(attribute.getName(), ldapValue));
+		}
+
+		if (!valid) {
+			return null;
+		}
+
+		List<GluuCustomPerson> persons = personService.createEntities(Collections.singletonMap(Integer.toString(rowNumber), attributeDataList));
+		if (persons.isEmpty()) {
+			job.addError(rowNumber, null, "Failed to convert row to person");
+			return null;
+		}
+
+		GluuCustomPerson person = persons.get(0);
+		// Duplicates are detected by uid, so rows without one cannot be imported even if the attribute is optional
+		if (StringHelper.isEmpty(person.getUid())) {
+			job.addError(rowNumber, null, "Empty uid not allowed");
+			return null;
+		}
+
+		if (password != null) {
+			person.setUserPassword(password);
+		} else if (generatePassword) {
+			person.setUserPassword(RandomStringUtils.randomAlphanumeric(16));
+		}
+		if (status != null) {
+			person.setStatus(GluuStatus.getByValue(status));
+		}
+
+		if (StringHelper.isEmpty(person.getCommonName())) {
+			person.setCommonName(person.getGivenName() + " " + person.getSurname());
+		} else {
+			person.setCommonName(person.getCommonName() + " " + person.getGivenName() + " " + person.getSurname());
+		}
+		person.setDisplayName(person.getCommonName());
+		person.setIname(personService.generateInameForNewPerson(person.getUid()));
+
+		return person;
+	}
+
+	/**
+	 * Checks a batch of persons for duplicates in the file and in the directory, and hands over the valid ones to writers
+	 */
+	private void addPersons(final PersonImportJob job, Map<Integer, GluuCustomPerson> batch, Set<String> uids, Set<String> mails,
+			ThreadPoolExecutor writers) throws Exception {
+		Map<Integer, GluuCustomPerson> candidates = new LinkedHashMap<Integer, GluuCustomPerson>();
+		List<String> candidateUids = new ArrayList<String>();
+		List<String> candidateMails = new ArrayList<String>();
+		for (Map.Entry<Integer, GluuCustomPerson> entry : batch.entrySet()) {
+			GluuCustomPerson person = entry.getValue();
+			if (!uids.add(person.getUid().toLowerCase())) {
+				job.addError(entry.getKey(), person.getUid(), "Duplicate uid in file");
+				continue;
+			}
+
+			String mail = person.getMail();
+			if (StringHelper.isNotEmpty(mail)) {
+				if (!mails.add(mail.toLowerCase())) {
+					job.addError(entry.getKey(), person.getUid(), String.format("Duplicate mail '%s' in file", mail));
+					continue;
+				}
+				candidateMails.add(mail);
+			}
+
+			candidates.put(entry.getKey(), person);
+			candidateUids.add(person.getUid());
+		}
+
+		if (candidates.isEmpty()) {
+			return;
+		}
+
+		Set<String> existingUids = new HashSet<String>();
+		for (GluuCustomPerson person : personService.findPersonsByUids(candidateUids, PERSON_IMPORT_PERSON_LOCKUP_RETURN_ATTRIBUTES)) {
+			if (StringHelper.isNotEmpty(person.getUid())) {
+				existingUids.add(person.getUid().toLowerCase());
+			}
+		}
+
+		Set<String> existingMails = new HashSet<String>();
+		if (!candidateMails.isEmpty()) {
+			for (GluuCustomPerson person : personService.findPersonsByMailids(candidateMails, PERSON_IMPORT_PERSON_LOCKUP_RETURN_ATTRIBUTES)) {
+				if (StringHelper.isNotEmpty(person.getMail())) {
+					existingMails.add(person.getMail().toLowerCase());
+				}
+			}
+		}
+
+		for (Map.Entry<Integer, GluuCustomPerson> entry : candidates.entrySet()) {
+			final int rowNumber = entry.getKey();
+			final GluuCustomPerson person = entry.getValue();
+			if (existingUids.contains(person.getUid().toLowerCase())) {
+				job.addError(rowNumber, person.getUid(), "Person with this uid already exists");
+			} else if (StringHelper.isNotEmpty(person.getMail()) && existingMails.contains(person.getMail().toLowerCase())) {
+				job.addError(rowNumber, person.getUid(), String.format("Person with mail '%s' already exists", person.getMail()));
+			} else {
+				writers.execute(new Runnable() {
+					public void run() {
+						addPerson(job, rowNumber, person);
+					}
+				});
+			}
+		}
+	}
+
+	private void addPerson(PersonImportJob job, int rowNumber, GluuCustomPerson person) {
+		if (job.isCancelRequested()) {
+			return;
+		}
+
+		try {
+			personService.addCustomObjectClass(person);
+
+			String inum = personService.generateInumForNewPerson();
+			person.setDn(personService.getDnForPerson(inum));
+			person.setInum(inum);
+
+			boolean runScript = externalUpdateUserService.isEnabled();
+			if (runScript) {
+				externalUpdateUserService.executeExternalAddUserMethods(person);
+			}
+
+			personService.addValidatedPerson(person);
+
+			if (runScript) {
+				externalUpdateUserService.executeExternalPostAddUserMethods(person);
+			}
+
+			job.incrementProcessedCount();
+			log.debug("Added new person: {}", person.getUid());
+		} catch (Exception ex) {
+			log.debug("Failed to add new person: {}", person.getUid(), ex);
+			job.addError(rowNumber, person.getUid(), "Failed to add person: " + ex.getMessage());
+		}
+	}
+
+	private boolean isGeneratePassword(List<GluuAttribute> attributes) {
+		for (GluuAttribute attribute : attributes) {
+			if (PERSON_PASSWORD_ATTRIBUTE.equalsIgnoreCase(attribute.getName()) && !attribute.isRequred()) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private boolean isEmptyRow(List<String> row) {
+		for (String value : row) {
+			if ((value != null) && (value.trim().length() > 0)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private String getTypedValue(GluuAttribute attribute, String value) {
+		if (GluuAttributeDataType.STRING.equals(attribute.getDataType())) {
+			return value;
+		} else if (GluuAttributeDataType.BOOLEAN.equals(attribute.getDataType())) {
+			GluuBoolean gluuBoolean = GluuBoolean.getByValue(value);
+			if (gluuBoolean != null) {
+				return gluuBoolean.toString();
+			}
+		}
+
+		return null;
+	}
+
+	private String getDisplayNames(List<GluuAttribute> attributes) {
+		StringBuilder sb = new StringBuilder();
+		for (GluuAttribute attribute : attributes) {
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append('\'').append(attribute.getDisplayName()).append('\'');
+		}
+
+		return sb.toString();
+	}
+
+}
@@ -9,9 +9,9 @@ package org.gluu.oxtrust.ldap.service;
 import static org.gluu.oxtrust.ldap.service.AppInitializer.LDAP_ENTRY_MANAGER_NAME;
 
 import java.io.Serializable;
-import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
@@ -31,11 +31,17 @@ import org.gluu.site.ldap.persistence.AttributeData;
 import org.gluu.site.ldap.persistence.LdapEntryManager;
 import org.slf4j.Logger;
 import org.xdi.config.oxtrust.AppConfiguration;
+import org.xdi.ldap.model.SortOrder;
+import org.xdi.ldap.model.VirtualListViewResponse;
 import org.xdi.util.ArrayHelper;
-import org.xdi.util.INumGenerator;
 import org.xdi.util.StringHelper;
 
 import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModificationType;
+import com.unboundid.util.StaticUtils;
 
 /**
  * Provides operations with persons
@@ -63,6 +69,15 @@ public class PersonService implements Serializable, IPersonService {
     @Inject
     private OrganizationService organizationService;
 
+    @Inject
+    private IdGenService idGenService;
+
+    @Inject
+    private PersonTypeaheadIndex personTypeaheadIndex;
+
+    @Inject
+    private EntityCountService entityCountService;
+
     private List<GluuCustomAttribute> mandatoryAttributes;
 
     /* (non-Javadoc)
@@ -101,11 +116,24 @@ public class PersonService implements Serializable, IPersonService {
         if (persons == null || persons.size() == 0) {
             person.setCreationDate(new Date());
             ldapEntryManager.persist(person);
+            entityCountService.personAdded();
+            personTypeaheadIndex.update(person);
         } else {
             throw new DuplicateEntryException("Duplicate UID value: " + person.getUid());
         }
     }
 
+    /* (non-Javadoc)
+     * @see org.gluu.oxtrust.ldap.service.IPersonService#addValidatedPerson(org.gluu.oxtrust.model.GluuCustomPerson)
+     */
+    @Override
+    public void addValidatedPerson(GluuCustomPerson person) throws Exception {
+        person.setCreationDate(new Date());
+        ldapEntryManager.persist(person);
+        entityCountService.personAdded();
+        personTypeaheadIndex.update(person);
+    }
+
     /* (non-Javadoc)
      * @see org.gluu.oxtrust.ldap.service.IPersonService#updatePerson(org.gluu.oxtrust.model.GluuCustomPerson)
      */
@@ -113,6 +141,39 @@ public class PersonService implements Serializable, IPersonService {
     public void updatePerson(GluuCustomPerson person) {
         person.setUpdatedAt(new Date());
         ldapEntryManager.merge(person);
+        personTypeaheadIndex.update(person);
+    }
+
+    /* (non-Javadoc)
+     * @see org.gluu.oxtrust.ldap.service.IPersonService#updatePersonAttributes(org.gluu.oxtrust.model.GluuCustomPerson, java.util.Collection)
+     */
+    @Override
+    public void updatePersonAttributes(GluuCustomPerson person, Collection<String> attributeNames) throws LDAPException {
+        person.setUpdatedAt(new Date());
+
+        List<Modification> modifications = new ArrayList<Modification>();
+        modifications.add(new Modification(ModificationType.REPLACE, "updatedAt", StaticUtils.encodeGeneralizedTime(person.getUpdatedAt())));
+        for (String attributeName : attributeNames) {
+            List<String> values = new ArrayList<String>();
+            String[] attributeValues = person.getAttributeArray(attributeName);
+            if (attributeValues != null) {
+                for (String value : attributeValues) {
+                    if (StringHelper.isNotEmpty(value)) {
+                        values.add(value);
+                    }
+                }
+            }
+            // Replacing with no values removes the attribute, whether it's present or not
+            modifications.add(new Modification(ModificationType.REPLACE, attributeName, values.toArray(new String[values.size()])));
+        }
+
+        LDAPConnection connection = ldapEntryManager.getLdapOperationService().getConnection();
+        try {
+            connection.modify(person.getDn(), modifications);
+        } finally {
+            ldapEntryManager.getLdapOperationService().releaseConnection(connection);
+        }
+        personTypeaheadIndex.update(person);
     }
 
     /* (non-Javadoc)
@@ -122,6 +183,8 @@ public class PersonService implements Serializable, IPersonService {
     public void removePerson(GluuCustomPerson person) {
         // Remove person
         ldapEntryManager.removeWithSubtree(person.getDn());
+        entityCountService.personRemoved();
+        personTypeaheadIndex.remove(person);
     }
 
     /* (non-Javadoc)
@@ -146,6 +209,47 @@ public class PersonService implements Serializable, IPersonService {
      */
     @Override
     public List<GluuCustomPerson> searchPersons(String pattern) {
+        Filter searchFilter = createSubstringSearchFilter(pattern);
+
+        List<GluuCustomPerson> result = ldapEntryManager.findEntries(getDnForPerson(null), GluuCustomPerson.class, searchFilter, 0);
+
+        return result;
+    }
+
+    /* (non-Javadoc)
+     * @see org.gluu.oxtrust.ldap.service.IPersonService#searchPersons(java.lang.String, boolean, int, int, int, org.xdi.ldap.model.VirtualListViewResponse, java.lang.String[])
+     */
+    @Override
+    public List<GluuCustomPerson> searchPersons(String pattern, boolean substring, int startIndex, int count,
+            int sizeLimit, VirtualListViewResponse vlvResponse, String[] returnAttributes) {
+        Filter searchFilter = substring ? createSubstringSearchFilter(pattern) : createPrefixSearchFilter(pattern);
+
+        List<GluuCustomPerson> result = ldapEntryManager.findEntriesSearchSearchResult(getDnForPerson(null), GluuCustomPerson.class,
+                searchFilter, startIndex, count, sizeLimit, OxTrustConstants.displayName, SortOrder.ASCENDING, vlvResponse, returnAttributes);
+
+        return result;
+    }
+
+    private Filter createPrefixSearchFilter(String pattern) {
+        if (StringHelper.isEmpty(pattern)) {
+            return Filter.createPresenceFilter(OxTrustConstants.inum);
+        }
+
+        Filter uidFilter = Filter.createSubstringFilter(OxTrustConstants.uid, pattern, null, null);
+        Filter mailFilter = Filter.createSubstringFilter(OxTrustConstants.mail, pattern, null, null);
+        Filter nameFilter = Filter.createSubstringFilter(OxTrustConstants.displayName, pattern, null, null);
+        Filter inameFilter = Filter.createSubstringFilter(OxTrustConstants.iname, pattern, null, null);
+        Filter ppidFilter = Filter.createEqualityFilter(OxTrustConstants.ppid, pattern);
+        Filter inumFilter = Filter.createEqualityFilter(OxTrustConstants.inum, pattern);
+
+        return Filter.createORFilter(uidFilter, mailFilter, nameFilter, inameFilter, ppidFilter, inumFilter);
+    }
+
+    private Filter createSubstringSearchFilter(String pattern) {
+        if (StringHelper.isEmpty(pattern)) {
+            return Filter.createPresenceFilter(OxTrustConstants.inum);
+        }
+
         String[] targetArray = new String[] { pattern };
         Filter uidFilter = Filter.createSubstringFilter(OxTrustConstants.uid, null, targetArray, null);
         Filter mailFilter = Filter.createSubstringFilter(OxTrustConstants.mail, null, targetArray, null);
@@ -153,11 +257,8 @@ public class PersonService implements Serializable, IPersonService {
         Filter inameFilter = Filter.createSubstringFilter(OxTrustConstants.iname, null, targetArray, null);
         Filter ppidFilter = Filter.createSubstringFilter(OxTrustConstants.ppid, null, targetArray, null);
         Filter inumFilter = Filter.createSubstringFilter(OxTrustConstants.inum, null, targetArray, null);
-        Filter searchFilter = Filter.createORFilter(uidFilter, mailFilter, nameFilter, inameFilter, ppidFilter, inumFilter);
-
-        List<GluuCustomPerson> result = ldapEntryManager.findEntries(getDnForPerson(null), GluuCustomPerson.class, searchFilter, 0);
 
-        return result;
+        return Filter.createORFilter(uidFilter, mailFilter, nameFilter, inameFilter, ppidFilter, inumFilter);
     }
 
     /* (non-Javadoc)
@@ -344,27 +445,19 @@ public class PersonService implements Serializable, IPersonService {
      */
     @Override
     public String generateInumForNewPerson() {
-        GluuCustomPerson person = null;
-        String newInum = null;
-
-        do {
-            newInum = generateInumForNewPersonImpl();
-            String newDn = getDnForPerson(newInum);
-            person = new GluuCustomPerson();
-            person.setDn(newDn);
-        } while (containsPerson(person));
-        return newInum;
-    }
-
-    /**
-     * Generate new inum for person
-     *
-     * @return New inum for person
-     * @throws Exception
-     */
-    private String generateInumForNewPersonImpl() {
         String orgInum = organizationService.getInumForOrganization();
-        return orgInum + OxTrustConstants.inumDelimiter + OxTrustConstants.INUM_PERSON_OBJECTTYPE + OxTrustConstants.inumDelimiter + generateInum();
+        String newInum = idGenService.generateId(orgInum, OxTrustConstants.INUM_PERSON_OBJECTTYPE);
+
+        // Inums supplied by an id generation script are not guaranteed to be unique
+        if (idGenService.isIdGeneratorScriptEnabled()) {
+            GluuCustomPerson person = new GluuCustomPerson();
+            person.setDn(getDnForPerson(newInum));
+            while (containsPerson(person)) {
+                newInum = idGenService.generateId(orgInum, OxTrustConstants.INUM_PERSON_OBJECTTYPE);
+                person.setDn(getDnForPerson(newInum));
+            }
+        }
+        return newInum;
     }
 
     /* (non-Javadoc)
@@ -375,23 +468,6 @@ public class PersonService implements Serializable, IPersonService {
         return String.format("%s*person*%s", appConfiguration.getOrgIname(), uid);
     }
 
-    private String generateInum() {
-        String inum = "";
-        while (true) {
-            inum = INumGenerator.generate(4);
-            try {
-                BigInteger value = new BigInteger(inum.replace(".", ""), 16);
-                if (value.doubleValue() < 7.0) {
-                    continue;
-                }
-            } catch (Exception ex) {
-                log.error("Error generating inum: ", ex);
-            }
-            break;
-        }
-        return inum;
-    }
-
     /* (non-Javadoc)
      * @see org.gluu.oxtrust.ldap.service.IPersonService#getDnForPerson(java.lang.String)
      */
@@ -0,0 +1,660 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.gluu.oxtrust.config.ConfigurationFactory;
+import org.gluu.oxtrust.model.GluuCustomPerson;
+import org.gluu.oxtrust.util.OxTrustConstants;
+import org.gluu.site.ldap.persistence.LdapEntryManager;
+import org.slf4j.Logger;
+import org.xdi.ldap.model.GluuStatus;
+import org.xdi.util.StringHelper;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultListener;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+
+/**
+ * Optional in-memory index used by person pickers to search persons by uid, display name and mail without querying
+ * LDAP. Patterns of 3 characters or more match anywhere in these attributes (trigram index), shorter patterns match
+ * their beginning.
+ * <p>The index is disabled unless <code>personTypeaheadIndexEnabled=true</code> is set in the LDAP configuration
+ * properties. It is loaded in background on first use, kept up to date by {@link PersonService} and reloaded every
+ * <code>personTypeaheadIndexRefreshMinutes</code> (default 60) to pick up changes made by other means, eg. cache refresh.
+ * If it grows over <code>personTypeaheadIndexMaxMemoryMb</code> (default 64) it's dropped and searches go to LDAP
+ * until the next reload fits in memory again.
+ * While the index isn't available {@link #searchPersons(String, int, int)} returns null.</p>
+ */
+@ApplicationScoped
+@Named
+public class PersonTypeaheadIndex {
+
+	private static final String ENABLED_PROPERTY = "personTypeaheadIndexEnabled";
+	private static final String MAX_MEMORY_PROPERTY = "personTypeaheadIndexMaxMemoryMb";
+	private static final String REFRESH_PROPERTY = "personTypeaheadIndexRefreshMinutes";
+
+	private static final int DEFAULT_MAX_MEMORY_MB = 64;
+	private static final int DEFAULT_REFRESH_MINUTES = 60;
+
+	private static final int LOAD_PAGE_SIZE = 1000;
+
+	private static final String[] INDEX_ATTRIBUTES = new String[] { OxTrustConstants.inum, OxTrustConstants.uid,
+			OxTrustConstants.displayName, OxTrustConstants.mail, OxTrustConstants.iname, OxTrustConstants.gluuStatus };
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private LdapEntryManager ldapEntryManager;
+
+	@Inject
+	private OrganizationService organizationService;
+
+	@Inject
+	private ConfigurationFactory configurationFactory;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	// Guarded by lock
+	private Index index;
+	private long loadTime;
+	private boolean loading;
+	private boolean overMemoryLimit;
+
+	// Changes received while the index is loading. They are applied once it's loaded. Guarded by lock
+	private final List<GluuCustomPerson> pendingChanges = new ArrayList<GluuCustomPerson>();
+
+	public boolean isEnabled() {
+		return Boolean.parseBoolean(configurationFactory.getLdapConfiguration().getString(ENABLED_PROPERTY, null));
+	}
+
+	/**
+	 * Search persons whose uid, display name or mail contain the pattern (or start with it, if it's shorter than 3
+	 * characters)
+	 *
+	 * @param pattern
+	 *            Pattern
+	 * @param startIndex
+	 *            Index (starting at 0) of first result to return
+	 * @param count
+	 *            Maximum count of results to return
+	 * @return Page of persons with the attributes shown in pickers, or null if the index isn't available
+	 */
+	public Page searchPersons(String pattern, int startIndex, int count) {
+		if (StringHelper.isEmpty(pattern) || !isEnabled()) {
+			return null;
+		}
+
+		if (!isLoaded()) {
+			return null;
+		}
+
+		String organizationDn = organizationService.getDnForOrganization();
+
+		lock.readLock().lock();
+		try {
+			if (index == null) {
+				return null;
+			}
+
+			Page page = new Page();
+			int[] docs = index.search(pattern.toLowerCase(), startIndex, count, page);
+			for (int doc : docs) {
+				page.persons.add(index.toPerson(doc, organizationDn));
+			}
+
+			return page;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds a person to the index or replaces it
+	 */
+	public void update(GluuCustomPerson person) {
+		if ((person == null) || StringHelper.isEmpty(person.getInum())) {
+			return;
+		}
+
+		lock.writeLock().lock();
+		try {
+			if (loading) {
+				pendingChanges.add(person);
+			}
+
+			if (index != null) {
+				index.remove(person.getInum());
+				index.add(person.getInum(), person.getUid(), person.getDisplayName(), person.getMail(), person.getIname(),
+						(person.getStatus() == null) ? null : person.getStatus().getValue());
+				// Every update leaves the previous document of the person behind
+				compactIndex();
+				checkIndexSize();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a person from the index
+	 */
+	public void remove(GluuCustomPerson person) {
+		if ((person == null) || StringHelper.isEmpty(person.getInum())) {
+			return;
+		}
+
+		lock.writeLock().lock();
+		try {
+			if (loading) {
+				GluuCustomPerson removed = new GluuCustomPerson();
+				removed.setInum(person.getInum());
+				pendingChanges.add(removed);
+			}
+
+			if (index != null) {
+				index.remove(person.getInum());
+				compactIndex();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return True if the index can be searched. Starts loading it if it wasn't loaded yet or is out of date
+	 */
+	private boolean isLoaded() {
+		long refreshMillis = TimeUnit.MINUTES.toMillis(getIntProperty(REFRESH_PROPERTY, DEFAULT_REFRESH_MINUTES));
+
+		boolean loaded;
+		lock.writeLock().lock();
+		try {
+			loaded = index != null;
+			if (loading) {
+				return loaded;
+			}
+
+			// An index dropped for its size is retried after the refresh interval too, persons may have been removed since
+			if ((loadTime > 0) && (System.currentTimeMillis() - loadTime < refreshMillis)) {
+				return loaded;
+			}
+
+			loading = true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		Thread loader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				load();
+			}
+		}, "person-typeahead-index");
+		loader.setDaemon(true);
+		loader.start();
+
+		return loaded;
+	}
+
+	private void load() {
+		long maxBytes = getIntProperty(MAX_MEMORY_PROPERTY, DEFAULT_MAX_MEMORY_MB) * 1024L * 1024L;
+		long start = System.currentTimeMillis();
+
+		Index newIndex = null;
+		try {
+			newIndex = loadIndex(maxBytes);
+			if (newIndex == null) {
+				log.warn("Person typeahead index is bigger than {} MB, pickers will search LDAP. Increase {} to enable it",
+						maxBytes / 1024 / 1024, MAX_MEMORY_PROPERTY);
+			} else {
+				log.info("Loaded person typeahead index with {} persons in {} ms, about {} KB", newIndex.size(),
+						System.currentTimeMillis() - start, newIndex.getEstimatedBytes() / 1024);
+			}
+		} catch (Exception ex) {
+			log.error("Failed to load person typeahead index", ex);
+		}
+
+		lock.writeLock().lock();
+		try {
+			if (newIndex != null) {
+				for (GluuCustomPerson person : pendingChanges) {
+					newIndex.remove(person.getInum());
+					if (person.getUid() != null) {
+						newIndex.add(person.getInum(), person.getUid(), person.getDisplayName(), person.getMail(), person.getIname(),
+								(person.getStatus() == null) ? null : person.getStatus().getValue());
+					}
+				}
+				this.index = newIndex;
+				this.overMemoryLimit = false;
+				compactIndex();
+				checkIndexSize();
+			} else if (this.overMemoryLimit) {
+				this.index = null;
+			}
+			// After a failure the next attempt is made after the refresh interval as well
+			this.loadTime = System.currentTimeMillis();
+			this.pendingChanges.clear();
+			this.loading = false;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return New index with all persons, or null if it would take more than maxBytes
+	 */
+	private Index loadIndex(long maxBytes) throws Exception {
+		final Index newIndex = new Index();
+
+		String personsDn = String.format("ou=people,%s", organizationService.getDnForOrganization());
+		Filter filter = Filter.createPresenceFilter(OxTrustConstants.inum);
+
+		SearchResultListener listener = new SearchResultListener() {
+
+			private static final long serialVersionUID = 5380766387419254816L;
+
+			@Override
+			public void searchEntryReturned(SearchResultEntry entry) {
+				newIndex.add(entry.getAttributeValue(OxTrustConstants.inum), entry.getAttributeValue(OxTrustConstants.uid),
+						entry.getAttributeValue(OxTrustConstants.displayName), entry.getAttributeValue(OxTrustConstants.mail),
+						entry.getAttributeValue(OxTrustConstants.iname), entry.getAttributeValue(OxTrustConstants.gluuStatus));
+			}
+
+			@Override
+			public void searchReferenceReturned(SearchResultReference reference) {
+			}
+		};
+
+		LDAPConnection connection = ldapEntryManager.getLdapOperationService().getConnection();
+		try {
+			ASN1OctetString cookie = null;
+			do {
+				SearchRequest searchRequest = new SearchRequest(listener, personsDn, SearchScope.SUB, filter, INDEX_ATTRIBUTES);
+				searchRequest.setControls(new SimplePagedResultsControl(LOAD_PAGE_SIZE, cookie));
+
+				SearchResult searchResult = connection.search(searchRequest);
+				if (newIndex.getEstimatedBytes() > maxBytes) {
+					lock.writeLock().lock();
+					try {
+						this.overMemoryLimit = true;
+					} finally {
+						lock.writeLock().unlock();
+					}
+					return null;
+				}
+
+				SimplePagedResultsControl responseControl = SimplePagedResultsControl.get(searchResult);
+				cookie = ((responseControl != null) && responseControl.moreResultsToReturn()) ? responseControl.getCookie() : null;
+			} while (cookie != null);
+		} finally {
+			ldapEntryManager.getLdapOperationService().releaseConnection(connection);
+		}
+
+		return newIndex;
+	}
+
+	// Has to be called with write lock held
+	private void compactIndex() {
+		if ((index != null) && index.needsCompaction()) {
+			index = index.compact();
+		}
+	}
+
+	// Has to be called with write lock held
+	private void checkIndexSize() {
+		long maxBytes = getIntProperty(MAX_MEMORY_PROPERTY, DEFAULT_MAX_MEMORY_MB) * 1024L * 1024L;
+		if ((index != null) && (index.getEstimatedBytes() > maxBytes)) {
+			log.warn("Person typeahead index grew bigger than {} MB, pickers will search LDAP. Increase {} to enable it",
+					maxBytes / 1024 / 1024, MAX_MEMORY_PROPERTY);
+			this.index = null;
+			this.overMemoryLimit = true;
+		}
+	}
+
+	private int getIntProperty(String name, int defaultValue) {
+		return StringHelper.toInteger(configurationFactory.getLdapConfiguration().getString(name, null), defaultValue);
+	}
+
+	/**
+	 * Page of search results
+	 */
+	public static class Page {
+
+		private int totalResults;
+		private final List<GluuCustomPerson> persons = new ArrayList<GluuCustomPerson>();
+
+		/**
+		 * @return Number of persons matching the pattern
+		 */
+		public int getTotalResults() {
+			return totalResults;
+		}
+
+		public List<GluuCustomPerson> getPersons() {
+			return persons;
+		}
+
+	}
+
+	/**
+	 * Index data. Values of a person are kept in parallel arrays under a document number. Every time a person is added it
+	 * gets a new document number, so posting lists are kept sorted just by appending to them. Not thread safe
+	 */
+	static class Index {
+
+		// Rough sizes used to estimate memory usage
+		private static final int STRING_OVERHEAD = 40;
+		private static final int DOCUMENT_OVERHEAD = 48;
+		private static final int GRAM_OVERHEAD = 48;
+
+		// Keys of 1 and 2 character prefixes are marked, so they don't collide with trigrams
+		private static final long PREFIX_MARK = 1L << 62;
+
+		private String[] inums = new String[1024];
+		private String[] uids = new String[1024];
+		private String[] displayNames = new String[1024];
+		private String[] mails = new String[1024];
+		private String[] inames = new String[1024];
+		private String[] statuses = new String[1024];
+		private int documentCount;
+		private int removedCount;
+
+		private final Map<String, Integer> documentsByInum = new HashMap<String, Integer>();
+
+		// Open addressing hash table from gram key to posting list. Key 0 marks a free slot
+		private long[] gramKeys = new long[4096];
+		private int[][] postings = new int[4096][];
+		private int[] postingSizes = new int[4096];
+		private int gramCount;
+
+		private long estimatedBytes;
+
+		public int size() {
+			return documentCount - removedCount;
+		}
+
+		public long getEstimatedBytes() {
+			return estimatedBytes;
+		}
+
+		public void add(String inum, String uid, String displayName, String mail, String iname, String status) {
+			if (StringHelper.isEmpty(inum)) {
+				return;
+			}
+
+			if (documentCount == inums.length) {
+				int capacity = documentCount * 2;
+				inums = Arrays.copyOf(inums, capacity);
+				uids = Arrays.copyOf(uids, capacity);
+				displayNames = Arrays.copyOf(displayNames, capacity);
+				mails = Arrays.copyOf(mails, capacity);
+				inames = Arrays.copyOf(inames, capacity);
+				statuses = Arrays.copyOf(statuses, capacity);
+			}
+
+			int doc = documentCount++;
+			inums[doc] = inum;
+			uids[doc] = uid;
+			displayNames[doc] = displayName;
+			mails[doc] = mail;
+			inames[doc] = iname;
+			statuses[doc] = status;
+			documentsByInum.put(inum, doc);
+
+			estimatedBytes += DOCUMENT_OVERHEAD + sizeOf(inum) * 2 + sizeOf(uid) + sizeOf(displayName) + sizeOf(mail)
+					+ sizeOf(iname) + sizeOf(status);
+
+			addGrams(uid, doc);
+			addGrams(displayName, doc);
+			addGrams(mail, doc);
+		}
+
+		public void remove(String inum) {
+			Integer doc = documentsByInum.remove(inum);
+			if (doc == null) {
+				return;
+			}
+
+			estimatedBytes -= sizeOf(inums[doc]) * 2 + sizeOf(uids[doc]) + sizeOf(displayNames[doc]) + sizeOf(mails[doc])
+					+ sizeOf(inames[doc]) + sizeOf(statuses[doc]);
+
+			// Posting lists keep the document number until the next compaction
+			inums[doc] = null;
+			uids[doc] = null;
+			displayNames[doc] = null;
+			mails[doc] = null;
+			inames[doc] = null;
+			statuses[doc] = null;
+			removedCount++;
+		}
+
+		public boolean needsCompaction() {
+			return (removedCount > 1000) && (removedCount > documentCount / 2);
+		}
+
+		/**
+		 * @return New index with the persons of this one, without removed documents
+		 */
+		public Index compact() {
+			Index result = new Index();
+			for (int doc = 0; doc < documentCount; doc++) {
+				if (inums[doc] != null) {
+					result.add(inums[doc], uids[doc], displayNames[doc], mails[doc], inames[doc], statuses[doc]);
+				}
+			}
+
+			return result;
+		}
+
+		/**
+		 * @param pattern
+		 *            Lower case pattern
+		 * @param page
+		 *            Receives total number of results
+		 * @return Document numbers of requested page of results
+		 */
+		public int[] search(String pattern, int startIndex, int count, Page page) {
+			int slot;
+			boolean prefix = pattern.length() < 3;
+			if (prefix) {
+				slot = findSlot(gramKey(pattern, 0, pattern.length()));
+			} else {
+				// All trigrams of pattern have to be in a matching value, so checking the shortest posting list is enough
+				slot = -1;
+				for (int i = 0; i + 3 <= pattern.length(); i++) {
+					int gramSlot = findSlot(gramKey(pattern, i, 3));
+					if ((gramSlot == -1) || (gramKeys[gramSlot] == 0)) {
+						slot = -1;
+						break;
+					}
+
+					if ((slot == -1) || (postingSizes[gramSlot] < postingSizes[slot])) {
+						slot = gramSlot;
+					}
+				}
+			}
+
+			if ((slot == -1) || (gramKeys[slot] == 0)) {
+				return new int[0];
+			}
+
+			int[] posting = postings[slot];
+			int[] result = new int[Math.max(Math.min(count, postingSizes[slot]), 0)];
+			int resultCount = 0;
+			int matchCount = 0;
+			for (int i = 0; i < postingSizes[slot]; i++) {
+				int doc = posting[i];
+				if ((inums[doc] == null) || !matches(doc, pattern, prefix)) {
+					continue;
+				}
+
+				if ((matchCount >= startIndex) && (resultCount < result.length)) {
+					result[resultCount++] = doc;
+				}
+				matchCount++;
+			}
+			page.totalResults = matchCount;
+
+			return Arrays.copyOf(result, resultCount);
+		}
+
+		public GluuCustomPerson toPerson(int doc, String organizationDn) {
+			GluuCustomPerson person = new GluuCustomPerson();
+			person.setDn(String.format("inum=%s,ou=people,%s", inums[doc], organizationDn));
+			person.setInum(inums[doc]);
+			person.setUid(uids[doc]);
+			person.setDisplayName(displayNames[doc]);
+			person.setMail(mails[doc]);
+			person.setIname(inames[doc]);
+			if (statuses[doc] != null) {
+				person.setStatus(GluuStatus.getByValue(statuses[doc]));
+			}
+
+			return person;
+		}
+
+		private boolean matches(int doc, String pattern, boolean prefix) {
+			return contains(uids[doc], pattern, prefix) || contains(displayNames[doc], pattern, prefix)
+					|| contains(mails[doc], pattern, prefix);
+		}
+
+		private boolean contains(String value, String pattern, boolean prefix) {
+			if (value == null) {
+				return false;
+			}
+
+			int last = prefix ? 0 : value.length() - pattern.length();
+			for (int i = 0; i <= last; i++) {
+				if (value.regionMatches(true, i, pattern, 0, pattern.length())) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		private void addGrams(String value, int doc) {
+			if (StringHelper.isEmpty(value)) {
+				return;
+			}
+
+			String lowerValue = value.toLowerCase();
+			for (int length = 1; length <= Math.min(2, lowerValue.length()); length++) {
+				addPosting(gramKey(lowerValue, 0, length), doc);
+			}
+
+			for (int i = 0; i + 3 <= lowerValue.length(); i++) {
+				addPosting(gramKey(lowerValue, i, 3), doc);
+			}
+		}
+
+		private long gramKey(String value, int start, int length) {
+			long key = 0;
+			for (int i = start; i < start + length; i++) {
+				key = (key << 16) | value.charAt(i);
+			}
+
+			if (length < 3) {
+				key |= PREFIX_MARK | ((long) length << 48);
+			} else {
+				// Keeps key from being 0
+				key |= 1L << 48;
+			}
+
+			return key;
+		}
+
+		private void addPosting(long key, int doc) {
+			int slot = findSlot(key);
+			if (gramKeys[slot] == 0) {
+				gramKeys[slot] = key;
+				postings[slot] = new int[2];
+				gramCount++;
+				estimatedBytes += GRAM_OVERHEAD + 8;
+			}
+
+			int size = postingSizes[slot];
+			int[] posting = postings[slot];
+			if ((size > 0) && (posting[size - 1] == doc)) {
+				// Gram appears more than once in the values of this person
+				return;
+			}
+
+			if (size == posting.length) {
+				posting = Arrays.copyOf(posting, size + (size >> 1) + 1);
+				postings[slot] = posting;
+				estimatedBytes += 4 * (posting.length - size);
+			}
+			posting[size] = doc;
+			postingSizes[slot] = size + 1;
+
+			if (gramCount * 4 > gramKeys.length * 3) {
+				rehash();
+			}
+		}
+
+		/**
+		 * @return Slot of key, or free slot where key should be added
+		 */
+		private int findSlot(long key) {
+			int mask = gramKeys.length - 1;
+			int slot = (int) ((key ^ (key >>> 29) ^ (key >>> 47)) * 0x9E3779B1) & mask;
+			while ((gramKeys[slot] != 0) && (gramKeys[slot] != key)) {
+				slot = (slot + 1) & mask;
+			}
+
+			return slot;
+		}
+
+		private void rehash() {
+			long[] oldKeys = gramKeys;
+			int[][] oldPostings = postings;
+			int[] oldSizes = postingSizes;
+
+			int capacity = oldKeys.length * 2;
+			estimatedBytes += 16L * (capacity - oldKeys.length);
+			gramKeys = new long[capacity];
+			postings = new int[capacity][];
+			postingSizes = new int[capacity];
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != 0) {
+					int slot = findSlot(oldKeys[i]);
+					gramKeys[slot] = oldKeys[i];
+					postings[slot] = oldPostings[i];
+					postingSizes[slot] = oldSizes[i];
+				}
+			}
+		}
+
+		private static int sizeOf(String value) {
+			return (value == null) ? 0 : STRING_OVERHEAD + 2 * value.length();
+		}
+
+	}
+
+}
@@ -21,7 +21,6 @@ import org.gluu.oxtrust.model.OxAuthScope;
 import org.gluu.oxtrust.util.OxTrustConstants;
 import org.gluu.site.ldap.persistence.LdapEntryManager;
 import org.xdi.oxauth.model.common.ScopeType;
-import org.xdi.util.INumGenerator;
 import org.xdi.util.StringHelper;
 
 import com.unboundid.ldap.sdk.Filter;
@@ -41,6 +40,8 @@ public class ScopeService implements Serializable {
 	private LdapEntryManager ldapEntryManager;	
 	@Inject
 	private OrganizationService organizationService;
+	@Inject
+	private IdGenService idGenService;
 
 	// @Inject
 	// private Logger log;
@@ -118,14 +119,18 @@ public class ScopeService implements Serializable {
 	 * @return New inum for scope
 	 */
 	public String generateInumForNewScope() throws Exception {
-		OxAuthScope scope = new OxAuthScope();
-		String newInum = null;
-		do {
-			newInum = generateInumForNewScopeImpl();
-			String newDn = getDnForScope(newInum);
-			scope.setDn(newDn);
-		} while (ldapEntryManager.contains(scope));
-
+		String orgInum = organizationService.getInumForOrganization();
+		String newInum = idGenService.generateId(orgInum, "0009");
+
+		// Inums supplied by an id generation script are not guaranteed to be unique
+		if (idGenService.isIdGeneratorScriptEnabled()) {
+			OxAuthScope scope = new OxAuthScope();
+			scope.setDn(getDnForScope(newInum));
+			while (ldapEntryManager.contains(scope)) {
+				newInum = idGenService.generateId(orgInum, "0009");
+				scope.setDn(getDnForScope(newInum));
+			}
+		}
 		return newInum;
 	}
 
@@ -153,18 +158,6 @@ public class ScopeService implements Serializable {
 		return result;
 	}
 
-	/**
-	 * Generate new inum for Scope
-	 * 
-	 * @return New inum for Scope
-	 * @throws Exception
-	 */
-	private String generateInumForNewScopeImpl() throws Exception {
-		String orgInum = organizationService.getInumForOrganization();
-		return orgInum + OxTrustConstants.inumDelimiter + "0009" + OxTrustConstants.inumDelimiter + INumGenerator.generate(2);
-
-	}
-
 	/**
 	 * returns a list of all scopes
 	 * 
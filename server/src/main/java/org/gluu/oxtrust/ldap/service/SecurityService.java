@@ -63,7 +63,7 @@ public class SecurityService implements Serializable {
 		// userRoles.add(GluuUserRole.OWNER);
 		// }
 
-		if (groupService.isMemberOrOwner(managerGroupDn, personDN)) {
+		if (groupService.isMemberOrOwner(new String[] { managerGroupDn }, user)) {
 			userRoles.add(GluuUserRole.MANAGER);
 		}
 
@@ -17,8 +17,10 @@ import javax.inject.Inject;
 import javax.inject.Named;
 
 import org.gluu.oxtrust.config.ConfigurationFactory;
+import org.gluu.oxtrust.ldap.service.EntityCountService.EntityCount;
 import org.gluu.oxtrust.model.GluuAppliance;
 import org.gluu.oxtrust.service.cdi.event.StatusCheckerDailyEvent;
+import org.gluu.site.ldap.persistence.LdapEntryManager;
 import org.gluu.site.ldap.persistence.exception.LdapMappingException;
 import org.slf4j.Logger;
 import org.xdi.config.oxtrust.AppConfiguration;
@@ -26,6 +28,8 @@ import org.xdi.service.cdi.event.Scheduled;
 import org.xdi.service.timer.event.TimerEvent;
 import org.xdi.service.timer.schedule.TimerSchedule;
 
+import com.unboundid.ldap.sdk.LDAPConnection;
+
 @ApplicationScoped
 @Named("statusCheckerDaily")
 public class StatusCheckerDaily {
@@ -43,13 +47,16 @@ public class StatusCheckerDaily {
 	private ApplianceService applianceService;
 
 	@Inject
-	private IGroupService groupService;
+	private EntityCountService entityCountService;
 
 	@Inject
-	private IPersonService personService;
+	private CentralLdapService centralLdapService;
 
 	@Inject
-	private CentralLdapService centralLdapService;
+	private OrganizationService organizationService;
+
+	@Inject
+	private LdapEntryManager ldapEntryManager;
 
 	@Inject
 	private ConfigurationFactory configurationFactory;
@@ -142,12 +149,42 @@ public class StatusCheckerDaily {
 
 	private void setLdapAttributes(GluuAppliance appliance) {
 		log.debug("Setting ldap attributes");
-		int groupCount = groupService.countGroups();
-		int personCount = personService.countPersons();
+		appliance.setGluuDSStatus(Boolean.toString(isLdapAvailable()));
+
+		if ((entityCountService.getGroupCount() == null) || (entityCountService.getPersonCount() == null)) {
+			entityCountService.reconcile();
+		}
+
+		// Counts which are still unknown keep the values stored in appliance
+		EntityCount groupCount = entityCountService.getGroupCount();
+		if (groupCount != null) {
+			appliance.setGroupCount(String.valueOf(groupCount.getCount()));
+		}
 
-		appliance.setGroupCount(String.valueOf(groupCount));
-		appliance.setPersonCount(String.valueOf(personCount)); 
-		appliance.setGluuDSStatus(Boolean.toString(groupCount > 0 && personCount > 0));
+		EntityCount personCount = entityCountService.getPersonCount();
+		if (personCount != null) {
+			appliance.setPersonCount(String.valueOf(personCount.getCount()));
+		}
+	}
+
+	/**
+	 * Reads the organization entry with base scope. Unlike counting persons and groups, it takes the same time
+	 * whatever the size of the directory
+	 */
+	private boolean isLdapAvailable() {
+		LDAPConnection connection = null;
+		try {
+			connection = ldapEntryManager.getLdapOperationService().getConnection();
+			// No attributes are requested, only existence of entry matters
+			return connection.getEntry(organizationService.getDnForOrganization(), "1.1") != null;
+		} catch (Exception ex) {
+			log.error("Failed to read organization entry from LDAP server", ex);
+			return false;
+		} finally {
+			if (connection != null) {
+				ldapEntryManager.getLdapOperationService().releaseConnection(connection);
+			}
+		}
 	}
 
 	private String toIntString(Number number) {
@@ -13,8 +13,8 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
@@ -40,6 +40,14 @@ public class GluuCustomPerson extends User
 
     private transient boolean selected;
 
+    // Position of attributes in customAttributes by lower case name. It's built on first lookup and
+    // trusted while customAttributes is the same list with the same size. Lookups which find another
+    // attribute at the indexed position rebuild it. Code which puts a new attribute in the list in place
+    // has to call invalidateAttributeIndex()
+    private transient Map<String, Integer> attributeIndex;
+    private transient List<GluuCustomAttribute> indexedAttributes;
+    private transient int indexedSize;
+
     private String sourceServerName;
 
     @LdapAttribute(name = "gluuWhitePagesListed")
@@ -148,11 +156,9 @@ public class GluuCustomPerson extends User
 
     public List<String> getMemberOf() {
         String[] value = {};
-        for (GluuCustomAttribute attribute : customAttributes) {
-            if (attribute.getName().equalsIgnoreCase("memberOf")) {
-                value = attribute.getValues();
-                break;
-            }
+        GluuCustomAttribute attribute = getGluuCustomAttribute("memberOf");
+        if (attribute != null) {
+            value = attribute.getValues();
         }
         return Arrays.asList(value);
     }
@@ -185,27 +191,24 @@ public class GluuCustomPerson extends User
         return getAttribute("preferredLanguage");
     }
 
+    /**
+     * @return Position of attribute in custom attributes list, or size of list if there is no such attribute
+     */
     public int getAttributeIndex(String attributeName) {
-        int idx = 0;
-        for (GluuCustomAttribute attribute : customAttributes) {
-            if (attribute.getName().equalsIgnoreCase(attributeName)) {
-                return idx;
-            }
-            idx++;
-        }
+        int idx = findAttribute(attributeName);
 
-        return idx;
+        return (idx == -1) ? customAttributes.size() : idx;
     }
 
     public String getAttribute(String attributeName) {
-        String value = null;
-        for (GluuCustomAttribute attribute : customAttributes) {
-            if (attribute.getName().equalsIgnoreCase(attributeName)) {
-                value = attribute.getValue();
-                break;
-            }
-        }
-        return value;
+        GluuCustomAttribute attribute = getGluuCustomAttribute(attributeName);
+
+        return (attribute == null) ? null : attribute.getValue();
+    }
+
+    @Override
+    public String[] getAttributes(String attributeName) {
+        return getAttributeArray(attributeName);
     }
 
     public String[] getAttributeArray(String attributeName) {
@@ -219,38 +222,94 @@ public class GluuCustomPerson extends User
     }
 
     public GluuCustomAttribute getGluuCustomAttribute(String attributeName) {
-        for (GluuCustomAttribute gluuCustomAttribute : customAttributes) {
-            if (gluuCustomAttribute.getName().equalsIgnoreCase(attributeName)) {
-                return gluuCustomAttribute;
-            }
-        }
+        int idx = findAttribute(attributeName);
 
-        return null;
+        return (idx == -1) ? null : customAttributes.get(idx);
     }
 
     public void setAttribute(String attributeName, String attributeValue) {
-        GluuCustomAttribute attribute = new GluuCustomAttribute(attributeName, 
-                                                                attributeValue);
-        customAttributes.remove(attribute);
-        customAttributes.add(attribute);
+        setAttribute(new GluuCustomAttribute(attributeName, attributeValue));
     }
 
     public void setAttribute(String attributeName, String[] attributeValue) {
-        GluuCustomAttribute attribute = new GluuCustomAttribute(attributeName, 
-                                                                attributeValue);
-        customAttributes.remove(attribute);
-        customAttributes.add(attribute);
+        setAttribute(new GluuCustomAttribute(attributeName, attributeValue));
+    }
+
+    /**
+     * Replaces the attribute with the same name, or adds it at the end of the list
+     */
+    @Override
+    public void setAttribute(GluuCustomAttribute attribute) {
+        int idx = findAttribute(attribute.getName());
+        if (idx == -1) {
+            customAttributes.add(attribute);
+            if (attributeIndex != null) {
+                attributeIndex.put(attribute.getName().toLowerCase(Locale.ENGLISH), customAttributes.size() - 1);
+                indexedSize = customAttributes.size();
+            }
+        } else {
+            customAttributes.set(idx, attribute);
+        }
     }
 
     public void removeAttribute(String attributeName) {
-        for (Iterator<GluuCustomAttribute> it = customAttributes.iterator(); 
-                                                                it.hasNext();) {
-            GluuCustomAttribute attribute = (GluuCustomAttribute) it.next();
-            if (attribute.getName().equalsIgnoreCase(attributeName)) {
-                it.remove();
-                break;
+        int idx = findAttribute(attributeName);
+        if (idx != -1) {
+            customAttributes.remove(idx);
+            // Following attributes moved
+            attributeIndex = null;
+        }
+    }
+
+    /**
+     * @return Position of first attribute with this name (ignoring case) in custom attributes list, or -1
+     */
+    private int findAttribute(String attributeName) {
+        if (attributeName == null) {
+            return -1;
+        }
+
+        String key = attributeName.toLowerCase(Locale.ENGLISH);
+        if ((attributeIndex == null) || (indexedAttributes != customAttributes) || (indexedSize != customAttributes.size())) {
+            buildAttributeIndex();
+        }
+
+        Integer idx = attributeIndex.get(key);
+        if ((idx != null) && attributeName.equalsIgnoreCase(customAttributes.get(idx).getName())) {
+            return idx;
+        }
+
+        if (idx == null) {
+            return -1;
+        }
+
+        // List was changed without changing its size
+        buildAttributeIndex();
+        idx = attributeIndex.get(key);
+
+        return (idx == null) ? -1 : idx;
+    }
+
+    /**
+     * Discards the positions of attributes kept for lookups. Needed after attributes of the list returned by
+     * {@link #getCustomAttributes()} are replaced in place by attributes with other names
+     */
+    public void invalidateAttributeIndex() {
+        this.attributeIndex = null;
+    }
+
+    private void buildAttributeIndex() {
+        Map<String, Integer> index = new HashMap<String, Integer>(Math.max(16, customAttributes.size() * 2));
+        for (int i = 0; i < customAttributes.size(); i++) {
+            String name = customAttributes.get(i).getName();
+            if ((name != null) && !index.containsKey(name.toLowerCase(Locale.ENGLISH))) {
+                index.put(name.toLowerCase(Locale.ENGLISH), i);
             }
         }
+
+        this.attributeIndex = index;
+        this.indexedAttributes = customAttributes;
+        this.indexedSize = customAttributes.size();
     }
 
     @Override
@@ -0,0 +1,5 @@
+package org.gluu.oxtrust.service.cdi.event;
+
+public class EntityCountReconcileEvent {
+
+}
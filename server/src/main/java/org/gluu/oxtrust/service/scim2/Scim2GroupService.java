@@ -32,6 +32,8 @@ import javax.inject.Named;
 import java.io.Serializable;
 import java.util.*;
 
+import static org.gluu.oxtrust.service.scim2.ScimMetricsService.Stage.*;
+
 /**
  * @author Val Pecaoco
  * Re-engineered by jgomer on 2017-10-18.
@@ -61,6 +63,18 @@ public class Scim2GroupService implements Serializable {
     @Inject
     private LdapEntryManager ldapEntryManager;
 
+    @Inject
+    private ScimCursorService cursorService;
+
+    @Inject
+    private ScimCountCache countCache;
+
+    @Inject
+    private ScimETagService etagService;
+
+    @Inject
+    private ScimMetricsService metricsService;
+
     private void transferAttributesToGroup(GroupResource res, GluuGroup group, String usersUrl) {
 
         //externalId (so oxTrustExternalId) not part of LDAP schema
@@ -115,6 +129,7 @@ public class Scim2GroupService implements Serializable {
         meta.setResourceType(ScimResourceUtil.getType(res.getClass()));
         meta.setCreated(gluuGroup.getAttribute("oxTrustMetaCreated"));
         meta.setLastModified(gluuGroup.getAttribute("oxTrustMetaLastModified"));
+        meta.setVersion(etagService.getVersion(etagService.getETag(gluuGroup)));
         meta.setLocation(gluuGroup.getAttribute("oxTrustMetaLocation"));
         if (meta.getLocation()==null)
             meta.setLocation(groupsUrl + "/" + gluuGroup.getInum());
@@ -130,7 +145,7 @@ public class Scim2GroupService implements Serializable {
             for (String dn : memberDNs){
                 GluuCustomPerson person=null;
                 try{
-                    person=personService.getPersonByDn(dn);
+                    person=personService.findPersonByDn(dn, "inum", "displayName");
                 }
                 catch (Exception e){
                     log.warn("Wrong member entry {} found in group {}", dn, gluuGroup.getDisplayName());
@@ -163,34 +178,48 @@ public class Scim2GroupService implements Serializable {
         log.info("Preparing to create group {}", groupName);
 
         GluuGroup gluuGroup=new GluuGroup();
+        long start=System.nanoTime();
         transferAttributesToGroup(group, gluuGroup, usersUrl);
+        metricsService.recordStage(MAPPING, start);
         assignComputedAttributesToGroup(gluuGroup);
 
         String location= groupsUrl + "/" + gluuGroup.getInum();
         gluuGroup.setAttribute("oxTrustMetaLocation", location);
 
         log.info("Persisting group {}", groupName);
+        start=System.nanoTime();
         groupService.addGroup(gluuGroup);
+        countCache.invalidate(GluuGroup.class);
 
         group.getMeta().setLocation(location);
         //We are ignoring the id value received (group.getId())
         group.setId(gluuGroup.getInum());
         syncMemberAttributeInPerson(gluuGroup.getDn(), null, gluuGroup.getMembers());
+        metricsService.recordStage(LDAP, start);
 
         return gluuGroup;
 
     }
 
-    public Pair<GluuGroup, GroupResource> updateGroup(String id, GroupResource group, String groupsUrl, String usersUrl) throws Exception {
+    /**
+     * Replaces the information of a group with the contents of the resource passed
+     * @param gluuGroup Group entry, as read from LDAP
+     * @param group Resource with the new contents
+     * @param groupsUrl Base URL of groups endpoint
+     * @param usersUrl Base URL of users endpoint
+     * @return The group entry after the update, and its SCIM representation
+     */
+    public Pair<GluuGroup, GroupResource> updateGroup(GluuGroup gluuGroup, GroupResource group, String groupsUrl, String usersUrl) throws Exception {
 
-        GluuGroup gluuGroup = groupService.getGroupByInum(id);    //This is never null (see decorator involved)
         GroupResource tmpGroup=new GroupResource();
+        long start=System.nanoTime();
         transferAttributesToGroupResource(gluuGroup, tmpGroup, groupsUrl, usersUrl);
 
         long now=System.currentTimeMillis();
         tmpGroup.getMeta().setLastModified(ISODateTimeFormat.dateTime().withZoneUTC().print(now));
 
         tmpGroup=(GroupResource) ScimResourceUtil.transferToResourceReplace(group, tmpGroup, extService.getResourceExtensions(group.getClass()));
+        metricsService.recordStage(MAPPING, start);
         replaceGroupInfo(gluuGroup, tmpGroup, usersUrl);
 
         return new Pair<GluuGroup, GroupResource>(gluuGroup, tmpGroup);
@@ -198,20 +227,49 @@ public class Scim2GroupService implements Serializable {
     }
 
     public void replaceGroupInfo(GluuGroup gluuGroup, GroupResource group, String usersUrl) throws Exception{
+        replaceGroupInfo(gluuGroup, group, usersUrl, true);
+    }
+
+    /**
+     * Replaces the information found in gluuGroup with the contents of group and updates LDAP
+     * @param syncMembers Whether the memberOf attribute of the people added to or removed from the group have to be
+     *                    updated. Callers that know the membership was not altered can pass false to save the lookups
+     */
+    public void replaceGroupInfo(GluuGroup gluuGroup, GroupResource group, String usersUrl, boolean syncMembers) throws Exception{
 
         List<String> olderMembers=new ArrayList<String>();
         if (gluuGroup.getMembers()!=null)
             olderMembers.addAll(gluuGroup.getMembers());
 
+        long start=System.nanoTime();
         transferAttributesToGroup(group, gluuGroup, usersUrl);
+        metricsService.recordStage(MAPPING, start);
+
         log.debug("replaceGroupInfo. Updating group info in LDAP");
+        start=System.nanoTime();
         groupService.updateGroup(gluuGroup);
-        syncMemberAttributeInPerson(gluuGroup.getDn(), olderMembers, gluuGroup.getMembers());
+        if (syncMembers)
+            syncMemberAttributeInPerson(gluuGroup.getDn(), olderMembers, gluuGroup.getMembers());
+        metricsService.recordStage(LDAP, start);
+        //The entry just written holds the new contents of the group
+        group.getMeta().setVersion(etagService.getVersion(etagService.getETag(gluuGroup)));
 
     }
 
     public List<BaseScimResource> searchGroups(String filter, String sortBy, SortOrder sortOrder, int startIndex, int count,
                                                VirtualListViewResponse vlvResponse, String groupsUrl, String usersUrl, int maxCount) throws Exception{
+        return searchGroups(filter, sortBy, sortOrder, startIndex, count, vlvResponse, groupsUrl, usersUrl, maxCount, null);
+    }
+
+    /**
+     * Searches groups using VLV
+     * @param ldapAttributes LDAP attributes to retrieve for every entry (see
+     * {@link org.gluu.oxtrust.service.scim2.serialization.ScimResourceSerializer#getLdapReturnAttributes(Class, String, String)
+     * getLdapReturnAttributes}). If null, all attributes are retrieved
+     */
+    public List<BaseScimResource> searchGroups(String filter, String sortBy, SortOrder sortOrder, int startIndex, int count,
+                                               VirtualListViewResponse vlvResponse, String groupsUrl, String usersUrl, int maxCount,
+                                               String[] ldapAttributes) throws Exception{
 
         Filter ldapFilter=scimFilterParserService.createLdapFilter(filter, "inum=*", GroupResource.class);
         //Transform scim attribute to LDAP attribute
@@ -220,24 +278,95 @@ public class Scim2GroupService implements Serializable {
         log.info("Executing search for groups using: ldapfilter '{}', sortBy '{}', sortOrder '{}', startIndex '{}', count '{}'",
                 ldapFilter.toString(), sortBy, sortOrder.getValue(), startIndex, count);
 
+        long start=System.nanoTime();
         List<GluuGroup> list=ldapEntryManager.findEntriesSearchSearchResult(groupService.getDnForGroup(null),
-                GluuGroup.class, ldapFilter, startIndex, count, maxCount, sortBy, sortOrder, vlvResponse, null);
+                GluuGroup.class, ldapFilter, startIndex, count, maxCount, sortBy, sortOrder, vlvResponse, ldapAttributes);
+        metricsService.recordStage(LDAP, start);
         List<BaseScimResource> resources=new ArrayList<BaseScimResource>();
 
+        start=System.nanoTime();
         for (GluuGroup group: list){
             GroupResource scimGroup=new GroupResource();
             transferAttributesToGroupResource(group, scimGroup, groupsUrl, usersUrl);
+            //Tags can only be computed from complete entries (see ScimETagService)
+            if (ldapAttributes!=null)
+                scimGroup.getMeta().setVersion(null);
             //TODO: Delete this IF in the future - added for backwards compatibility with SCIM-Client <= 3.1.2.
             if (scimGroup.getMembers()==null)
                 scimGroup.setMembers(new HashSet<Member>());
 
             resources.add(scimGroup);
         }
+        metricsService.recordStage(MAPPING, start);
         log.info ("Found {} matching entries - returning {}", vlvResponse.getTotalResults(), list.size());
         return resources;
 
     }
 
+    /**
+     * Searches groups in cursor mode (see {@link ScimCursorService}). Results are returned in directory order
+     * @param filter A SCIM filter expression (may be null)
+     * @param cursor Empty string for the first page, otherwise the cursor returned with the previous page
+     * @param count Maximum number of resources to return
+     * @param groupsUrl Base URL of groups endpoint
+     * @param usersUrl Base URL of users endpoint
+     * @param ldapAttributes LDAP attributes to retrieve for every entry. If null, all attributes are retrieved
+     * @return A page of GroupResource objects
+     * @throws Exception If the filter or cursor are invalid or the search fails
+     */
+    public ScimCursorService.Page<BaseScimResource> searchGroups(String filter, String cursor, int count, String groupsUrl,
+                                                                 String usersUrl, String[] ldapAttributes) throws Exception{
+
+        Filter ldapFilter=scimFilterParserService.createLdapFilter(filter, "inum=*", GroupResource.class);
+        log.info("Executing cursor search for groups using: ldapfilter '{}', count '{}'", ldapFilter.toString(), count);
+
+        long start=System.nanoTime();
+        ScimCursorService.Page<GluuGroup> page=cursorService.search(cursor, GluuGroup.class, groupService.getDnForGroup(null),
+                ldapFilter, count, ldapAttributes);
+        metricsService.recordStage(LDAP, start);
+        List<BaseScimResource> resources=new ArrayList<BaseScimResource>();
+
+        start=System.nanoTime();
+        for (GluuGroup group: page.getEntries()){
+            GroupResource scimGroup=new GroupResource();
+            transferAttributesToGroupResource(group, scimGroup, groupsUrl, usersUrl);
+            //Tags can only be computed from complete entries (see ScimETagService)
+            if (ldapAttributes!=null)
+                scimGroup.getMeta().setVersion(null);
+            //TODO: Delete this IF in the future - added for backwards compatibility with SCIM-Client <= 3.1.2.
+            if (scimGroup.getMembers()==null)
+                scimGroup.setMembers(new HashSet<Member>());
+
+            resources.add(scimGroup);
+        }
+        metricsService.recordStage(MAPPING, start);
+        return new ScimCursorService.Page<BaseScimResource>(resources, page.getTotalResults(), page.getStartIndex(), page.getNextCursor());
+
+    }
+
+    /**
+     * Computes the number of groups matching the SCIM filter passed. No attribute data is retrieved from LDAP, and recent
+     * results are served from {@link ScimCountCache} when it is enabled
+     * @param filter A SCIM filter expression (may be null)
+     * @return Number of matching entries
+     * @throws Exception If the filter is invalid or the search fails
+     */
+    public int countGroups(String filter) throws Exception{
+
+        Filter ldapFilter=scimFilterParserService.createLdapFilter(filter, "inum=*", GroupResource.class);
+        Integer total=countCache.get(GluuGroup.class, ldapFilter);
+
+        if (total==null) {
+            log.info("Counting groups using: ldapfilter '{}'", ldapFilter.toString());
+            long start=System.nanoTime();
+            total=ldapEntryManager.countEntries(groupService.getDnForGroup(null), GluuGroup.class, ldapFilter);
+            metricsService.recordStage(LDAP, start);
+            countCache.put(GluuGroup.class, ldapFilter, total);
+        }
+        return total;
+
+    }
+
     private void syncMemberAttributeInPerson(String groupDn, List<String> beforeMemberDns, List<String> afterMemberDns){
 
         log.debug("syncMemberAttributeInPerson. Updating memberOf attribute in user LDAP entries");
@@ -49,12 +49,47 @@ public class Scim2PatchService {
     @Inject
     private ExtensionService extService;
 
+    private ObjectMapper mapper=new ObjectMapper();
+
+    /**
+     * Applies a sequence of PATCH operations to a resource. All operations are applied upon a single mutable tree (generic
+     * map) representation of the resource, which is converted back to a resource object only once at the end
+     * @param resource Resource to patch. It is not modified
+     * @param operations Operations to apply, in order
+     * @return A pair consisting of the patched resource, and the set of attributes targeted by the operations. Attributes
+     * are given as top-level attribute names, or in the form <code>urn.attribute</code> for extended attributes (only
+     * the <code>urn</code> is given if the extension as a whole was targeted)
+     * @throws Exception If any of the operations is invalid (see {@link #applyPatchOperation(BaseScimResource, PatchOperation)})
+     */
+    public Pair<BaseScimResource, Set<String>> applyPatchOperations(BaseScimResource resource, List<PatchOperation> operations)
+            throws Exception{
+
+        Class<? extends BaseScimResource> clazz=resource.getClass();
+        List<Extension> extensions=extService.getResourceExtensions(clazz);
+        List<String> extensionUrns=extService.getUrnsOfExtensions(clazz);
+
+        Map<String, Object> tree=mapper.convertValue(resource, new TypeReference<Map<String, Object>>(){});
+        Set<String> touched=new HashSet<String>();
+
+        for (PatchOperation operation : operations) {
+            applyPatchOperation(tree, clazz, operation, extensions, extensionUrns);
+            touched.addAll(getTouchedAttributes(operation, extensionUrns));
+        }
+        log.debug("applyPatchOperations. Attributes touched: {}", touched);
+
+        return new Pair<BaseScimResource, Set<String>>(mapper.convertValue(tree, clazz), touched);
+
+    }
+
     public BaseScimResource applyPatchOperation(BaseScimResource resource, PatchOperation operation) throws Exception{
+        return applyPatchOperations(resource, Collections.singletonList(operation)).getFirst();
+    }
+
+    private void applyPatchOperation(Map<String, Object> tree, Class<? extends BaseScimResource> clazz, PatchOperation operation,
+                                     List<Extension> extensions, List<String> extensionUrns) throws Exception{
 
-        BaseScimResource result=null;
         Map<String, Object> genericMap=null;
         PatchOperationType opType=operation.getType();
-        Class<? extends BaseScimResource> clazz=resource.getClass();
         String path = operation.getPath();
 
         log.debug("applyPatchOperation of type {}", opType);
@@ -74,88 +109,104 @@ public class Scim2PatchService {
                     i=path.lastIndexOf("].");
                     String subAttribute= i==-1 ? "" : path.substring(i+2);
                     //Abort earlier
-                    return applyPatchOperationWithValueFilter(resource, operation, valSelFilter, attribute, subAttribute);
+                    applyPatchOperationWithValueFilter(tree, clazz, operation, valSelFilter, attribute, subAttribute);
+                    return;
                 }
             }
         }
 
-        if (!opType.equals(PatchOperationType.REMOVE)) {
-            Object value = operation.getValue();
-            List<String> extensionUrns=extService.getUrnsOfExtensions(clazz);
+        if (opType.equals(PatchOperationType.REMOVE)) {
+            ScimResourceUtil.deleteFromMap(tree, clazz, path, extensions);
+            return;
+        }
 
-            if (value instanceof Map)
-                genericMap = IntrospectUtil.strObjMap(value);
-            else{
-                //It's an atomic value or an array
-                if (StringUtils.isEmpty(path))
-                    throw new SCIMException("Value(s) supplied for resource not parseable");
+        Object value = operation.getValue();
+        if (value instanceof Map)
+            genericMap = IntrospectUtil.strObjMap(value);
+        else{
+            //It's an atomic value or an array
+            if (StringUtils.isEmpty(path))
+                throw new SCIMException("Value(s) supplied for resource not parseable");
 
-                //Create a simple map and trim the last part of path
-                String subPaths[] = ScimResourceUtil.splitPath(path, extensionUrns);
-                genericMap = Collections.singletonMap(subPaths[subPaths.length - 1], value);
+            //Create a simple map and trim the last part of path
+            String subPaths[] = ScimResourceUtil.splitPath(path, extensionUrns);
+            genericMap = Collections.singletonMap(subPaths[subPaths.length - 1], value);
 
-                if (subPaths.length == 1)
-                    path = "";
-                else
-                    path = path.substring(0, path.lastIndexOf("."));
-            }
+            if (subPaths.length == 1)
+                path = "";
+            else
+                path = path.substring(0, path.lastIndexOf("."));
+        }
 
-            if (StringUtils.isNotEmpty(path)){
-                //Visit backwards creating a composite map
-                String subPaths[] = ScimResourceUtil.splitPath(path, extensionUrns);
-                for (int i = subPaths.length - 1; i >= 0; i--) {
+        if (StringUtils.isNotEmpty(path)){
+            //Visit backwards creating a composite map
+            String subPaths[] = ScimResourceUtil.splitPath(path, extensionUrns);
+            for (int i = subPaths.length - 1; i >= 0; i--) {
 
-                    //Create a string consisting of all subpaths until the i-th
-                    StringBuilder sb=new StringBuilder();
-                    for (int j=0;j<=i;j++)
-                        sb.append(subPaths[j]).append(".");
+                //Create a string consisting of all subpaths until the i-th
+                StringBuilder sb=new StringBuilder();
+                for (int j=0;j<=i;j++)
+                    sb.append(subPaths[j]).append(".");
 
-                    Attribute annot = IntrospectUtil.getFieldAnnotation(sb.substring(0, sb.length()-1), clazz, Attribute.class);
-                    boolean multivalued=!(annot==null || annot.multiValueClass().equals(NullType.class));
+                Attribute annot = IntrospectUtil.getFieldAnnotation(sb.substring(0, sb.length()-1), clazz, Attribute.class);
+                boolean multivalued=!(annot==null || annot.multiValueClass().equals(NullType.class));
 
-                    Map<String, Object> genericBiggerMap = new HashMap<String, Object>();
-                    genericBiggerMap.put(subPaths[i], multivalued ? Collections.singletonList(genericMap) : genericMap);
-                    genericMap = genericBiggerMap;
-                }
+                Map<String, Object> genericBiggerMap = new HashMap<String, Object>();
+                genericBiggerMap.put(subPaths[i], multivalued ? Collections.singletonList(genericMap) : genericMap);
+                genericMap = genericBiggerMap;
             }
-
-            log.debug("applyPatchOperation. Generating a ScimResource from generic map: {}", genericMap.toString());
         }
 
-        //Try parse genericMap as an instance of the resource
-        ObjectMapper mapper = new ObjectMapper();
-        BaseScimResource alter=opType.equals(PatchOperationType.REMOVE) ? resource : mapper.convertValue(genericMap, clazz);
-        List<Extension> extensions=extService.getResourceExtensions(clazz);
+        log.debug("applyPatchOperation. Generating a ScimResource from generic map: {}", genericMap.toString());
+        //Parsing the (small) value as an instance of the resource validates it and normalizes its representation
+        BaseScimResource alter=mapper.convertValue(genericMap, clazz);
+        Map<String, Object> alterMap=mapper.convertValue(alter, new TypeReference<Map<String, Object>>(){});
+
+        ScimResourceUtil.transferToMap(alterMap, tree, clazz, extensions, opType.equals(PatchOperationType.REPLACE));
+
+    }
+
+    private Set<String> getTouchedAttributes(PatchOperation operation, List<String> extensionUrns){
 
-        switch (operation.getType()){
-            case REPLACE:
-                result=ScimResourceUtil.transferToResourceReplace(alter, resource, extensions);
-                break;
-            case ADD:
-                result=ScimResourceUtil.transferToResourceAdd(alter, resource, extensions);
-                break;
-            case REMOVE:
-                result=ScimResourceUtil.deleteFromResource(alter, operation.getPath(), extensions);
-                break;
+        Set<String> attributes=new HashSet<String>();
+        String path=operation.getPath();
+
+        if (StringUtils.isNotEmpty(path)) {
+            int i=path.indexOf("[");
+            String subPaths[]=ScimResourceUtil.splitPath(i==-1 ? path : path.substring(0, i), extensionUrns);
+
+            if (extensionUrns.contains(subPaths[0]) && subPaths.length>1)
+                attributes.add(subPaths[0] + "." + subPaths[1]);
+            else
+                attributes.add(subPaths[0]);
+        }
+        else
+        if (operation.getValue() instanceof Map) {
+            Map<String, Object> map=IntrospectUtil.strObjMap(operation.getValue());
+
+            for (String key : map.keySet()) {
+                if (extensionUrns.contains(key) && map.get(key) instanceof Map)
+                    for (String subKey : IntrospectUtil.strObjMap(map.get(key)).keySet())
+                        attributes.add(key + "." + subKey);
+                else
+                    attributes.add(key);
+            }
         }
-        return result;
+        return attributes;
 
     }
 
-    private BaseScimResource applyPatchOperationWithValueFilter(BaseScimResource resource, PatchOperation operation,
-                                                                String valSelFilter, String attribute, String subAttribute)
-            throws SCIMException, InvalidAttributeValueException {
+    private void applyPatchOperationWithValueFilter(Map<String, Object> tree, Class<? extends BaseScimResource> cls,
+                                                    PatchOperation operation, String valSelFilter, String attribute,
+                                                    String subAttribute) throws SCIMException, InvalidAttributeValueException {
 
         String path=operation.getPath();
-        ObjectMapper mapper=new ObjectMapper();
-        Class<? extends BaseScimResource> cls=resource.getClass();
-        Map<String, Object> resourceAsMap=mapper.convertValue(resource, new TypeReference<Map<String, Object>>(){});
         List<Map<String, Object>> list;
 
         Attribute attrAnnot=IntrospectUtil.getFieldAnnotation(attribute, cls, Attribute.class);
         if (attrAnnot!=null){
             if (!attrAnnot.multiValueClass().equals(NullType.class) && attrAnnot.type().equals(AttributeDefinition.Type.COMPLEX)){
-                Object colObject=resourceAsMap.get(attribute);
+                Object colObject=tree.get(attribute);
                 list = colObject==null ? null : new ArrayList<Map<String, Object>>((Collection<Map<String, Object>>) colObject);
             }
             else
@@ -201,9 +252,8 @@ public class Scim2PatchService {
                         applyPartialUpdate(attribute, subAttribute, list, index, operation.getValue(), cls);
                 }
 
-                log.trace("New {} list is:\n{}", attribute, mapper.writeValueAsString(list));
-                resourceAsMap.put(attribute, list.size()==0 ? null : list);
-                resource=mapper.convertValue(resourceAsMap, cls);
+                log.trace("New {} list is:\n{}", attribute, list);
+                tree.put(attribute, list.size()==0 ? null : list);
             }
             catch (InvalidAttributeValueException ei){
                 throw ei;
@@ -214,7 +264,6 @@ public class Scim2PatchService {
                 throw new SCIMException(e.getMessage(), e);
             }
         }
-        return resource;
 
     }
 
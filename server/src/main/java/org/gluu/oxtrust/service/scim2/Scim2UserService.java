@@ -19,6 +19,7 @@ import org.codehaus.jackson.map.ObjectMapper;
 import org.gluu.oxtrust.ldap.service.IGroupService;
 import org.gluu.oxtrust.ldap.service.IPersonService;
 import org.gluu.oxtrust.ldap.service.MemberService;
+import org.gluu.oxtrust.model.GluuCustomAttribute;
 import org.gluu.oxtrust.model.GluuCustomPerson;
 import org.gluu.oxtrust.model.GluuGroup;
 import org.gluu.oxtrust.model.scim2.BaseScimResource;
@@ -30,6 +31,7 @@ import org.gluu.oxtrust.model.scim2.util.IntrospectUtil;
 import org.gluu.oxtrust.service.antlr.scimFilter.ScimFilterParserService;
 import org.gluu.oxtrust.service.antlr.scimFilter.util.FilterUtil;
 import org.gluu.oxtrust.service.external.ExternalScimService;
+import org.gluu.oxtrust.service.scim2.serialization.ScimResourceSerializer;
 import org.gluu.oxtrust.util.ServiceUtil;
 import org.gluu.oxtrust.model.scim2.util.ScimResourceUtil;
 import org.gluu.oxtrust.ws.rs.scim2.GroupWebService;
@@ -42,6 +44,7 @@ import org.xdi.ldap.model.SortOrder;
 import org.xdi.ldap.model.VirtualListViewResponse;
 import org.xdi.util.Pair;
 
+import static org.gluu.oxtrust.service.scim2.ScimMetricsService.Stage.*;
 import static org.xdi.ldap.model.GluuBoolean.*;
 
 /**
@@ -77,6 +80,9 @@ public class Scim2UserService implements Serializable {
     @Inject
     private ExternalScimService externalScimService;
 
+    @Inject
+    private ScimMetricsService metricsService;
+
     @Inject
     private ServiceUtil serviceUtil;
 
@@ -89,6 +95,18 @@ public class Scim2UserService implements Serializable {
     @Inject
     private LdapEntryManager ldapEntryManager;
 
+    @Inject
+    private ScimCursorService cursorService;
+
+    @Inject
+    private ScimCountCache countCache;
+
+    @Inject
+    private ScimETagService etagService;
+
+    @Inject
+    private ScimResourceSerializer resourceSerializer;
+
     private String[] getComplexMultivaluedAsArray(List items){
 
         String array[]=null;
@@ -250,6 +268,7 @@ public class Scim2UserService implements Serializable {
         meta.setResourceType(ScimResourceUtil.getType(res.getClass()));
         meta.setCreated(person.getAttribute("oxTrustMetaCreated"));
         meta.setLastModified(person.getAttribute("oxTrustMetaLastModified"));
+        meta.setVersion(etagService.getVersion(etagService.getETag(person)));
         meta.setLocation(person.getAttribute("oxTrustMetaLocation"));
         if (meta.getLocation()==null)
             meta.setLocation(url + "/" + person.getInum());
@@ -284,8 +303,9 @@ public class Scim2UserService implements Serializable {
         res.setLocale(person.getAttribute("locale"));
         res.setTimezone(person.getTimezone());
 
-        res.setActive(Boolean.valueOf(person.getAttribute("oxTrustActive"))
-                || GluuBoolean.getByValue(person.getAttribute("gluuStatus")).isBooleanValue());
+        //gluuStatus may be absent when only a subset of attributes was retrieved
+        GluuBoolean status=GluuBoolean.getByValue(person.getAttribute("gluuStatus"));
+        res.setActive(Boolean.valueOf(person.getAttribute("oxTrustActive")) || (status!=null && status.isBooleanValue()));
         res.setPassword(person.getUserPassword());
 
         res.setEmails(getAttributeListValue(person, Email.class, "oxTrustEmail"));
@@ -300,7 +320,7 @@ public class Scim2UserService implements Serializable {
 
             for (String groupDN : listOfGroups) {
                 try {
-                    GluuGroup gluuGroup = groupService.getGroupByDn(groupDN);
+                    GluuGroup gluuGroup = groupService.findGroupByDn(groupDN, "inum", "displayName");
 
                     Group group = new Group();
                     group.setValue(gluuGroup.getInum());
@@ -401,15 +421,20 @@ public class Scim2UserService implements Serializable {
         //There is no need to check attributes mutability in this case as there are no original attributes
         //(the resource does not exist yet)
         GluuCustomPerson gluuPerson=new GluuCustomPerson();
+        long start=System.nanoTime();
         transferAttributesToPerson(user, gluuPerson);
+        metricsService.recordStage(MAPPING, start);
         assignComputedAttributesToPerson(gluuPerson);
 
         String location=url + "/" + gluuPerson.getInum();
         gluuPerson.setAttribute("oxTrustMetaLocation", location);
 
         log.info("Persisting user {}", userName);
+        start=System.nanoTime();
         personService.addCustomObjectClass(gluuPerson);
         personService.addPerson(gluuPerson);
+        metricsService.recordStage(LDAP, start);
+        countCache.invalidate(GluuCustomPerson.class);
 
         user.getMeta().setLocation(location);
         //We are ignoring the id value received (user.getId())
@@ -418,17 +443,25 @@ public class Scim2UserService implements Serializable {
         return gluuPerson;
     }
 
-    public Pair<GluuCustomPerson, UserResource> updateUser(String id, UserResource user, String url) throws InvalidAttributeValueException {
+    /**
+     * Replaces the information of a user with the contents of the resource passed
+     * @param gluuPerson Person entry of the user, as read from LDAP
+     * @param user Resource with the new contents
+     * @param url Base URL of users endpoint
+     * @return The person entry after the update, and its SCIM representation
+     */
+    public Pair<GluuCustomPerson, UserResource> updateUser(GluuCustomPerson gluuPerson, UserResource user, String url) throws InvalidAttributeValueException {
 
-        GluuCustomPerson gluuPerson = personService.getPersonByInum(id);    //This is never null (see decorator involved)
         UserResource tmpUser=new UserResource();
 
+        long start=System.nanoTime();
         transferAttributesToUserResource(gluuPerson, tmpUser, url);
 
         long now=System.currentTimeMillis();
         tmpUser.getMeta().setLastModified(ISODateTimeFormat.dateTime().withZoneUTC().print(now));
 
         tmpUser=(UserResource) ScimResourceUtil.transferToResourceReplace(user, tmpUser, extService.getResourceExtensions(user.getClass()));
+        metricsService.recordStage(MAPPING, start);
         replacePersonInfo(gluuPerson, tmpUser);
 
         return new Pair<GluuCustomPerson, UserResource>(gluuPerson, tmpUser);
@@ -437,29 +470,129 @@ public class Scim2UserService implements Serializable {
 
     public void replacePersonInfo(GluuCustomPerson gluuPerson, UserResource user){
 
+        long start=System.nanoTime();
         transferAttributesToPerson(user, gluuPerson);
         writeCommonName(gluuPerson);
+        metricsService.recordStage(MAPPING, start);
 
         log.debug("replacePersonInfo. Updating person info in LDAP");
+        start=System.nanoTime();
         personService.addCustomObjectClass(gluuPerson);
         personService.updatePerson(gluuPerson);
+        metricsService.recordStage(LDAP, start);
+        //The entry just written holds the new contents of the user
+        user.getMeta().setVersion(etagService.getVersion(etagService.getETag(gluuPerson)));
+
+    }
+
+    /**
+     * Replaces the information found in gluuPerson with the contents of user, writing to LDAP only the attributes the
+     * SCIM attributes passed are stored in (no lookup of the entry takes place). If the mapping of the resource altered
+     * any other attribute, the whole entry is merged as in {@link #replacePersonInfo(GluuCustomPerson, UserResource)}
+     * @param gluuPerson Person entry of the user, as read from LDAP
+     * @param user Resource with the new contents
+     * @param touched SCIM attributes which may have changed (see
+     * {@link Scim2PatchService#applyPatchOperations(BaseScimResource, List) applyPatchOperations})
+     */
+    public void replacePersonInfo(GluuCustomPerson gluuPerson, UserResource user, Set<String> touched) throws Exception{
+
+        String ldapAttrs[]=resourceSerializer.getLdapReturnAttributes(UserResource.class, StringUtils.join(touched, ","), null);
+        if (ldapAttrs==null) {
+            replacePersonInfo(gluuPerson, user);
+            return;
+        }
+
+        Set<String> targets=new HashSet<String>();
+        for (String attr : ldapAttrs)
+            targets.add(attr.toLowerCase());
+        //cn is derived from the name, and the timestamp is updated along with any change
+        targets.add("cn");
+        targets.add("oxtrustmetalastmodified");
+
+        long start=System.nanoTime();
+        Map<String, List<String>> before=getAttributeValues(gluuPerson);
+        String objectClasses[]=gluuPerson.getCustomObjectClasses();
+
+        transferAttributesToPerson(user, gluuPerson);
+        writeCommonName(gluuPerson);
+        personService.addCustomObjectClass(gluuPerson);
+
+        Map<String, List<String>> after=getAttributeValues(gluuPerson);
+        Set<String> changed=new HashSet<String>(after.keySet());
+        changed.addAll(before.keySet());
+        for (Iterator<String> it=changed.iterator(); it.hasNext(); ) {
+            String name=it.next();
+            List<String> values=after.get(name);
+            if (values==null ? before.get(name)==null : values.equals(before.get(name)))
+                it.remove();
+        }
+        metricsService.recordStage(MAPPING, start);
+
+        start=System.nanoTime();
+        if (targets.containsAll(changed) && Arrays.equals(objectClasses, gluuPerson.getCustomObjectClasses())) {
+            log.debug("replacePersonInfo. Updating attributes {} of person in LDAP", changed);
+            personService.updatePersonAttributes(gluuPerson, changed);
+        }
+        else {
+            log.debug("replacePersonInfo. Attributes {} changed, merging person info in LDAP", changed);
+            personService.updatePerson(gluuPerson);
+        }
+        metricsService.recordStage(LDAP, start);
+        //The entry just written holds the new contents of the user
+        user.getMeta().setVersion(etagService.getVersion(etagService.getETag(gluuPerson)));
+
+    }
+
+    /**
+     * Collects the non-empty values of the custom attributes of a person by lower case attribute name
+     */
+    private Map<String, List<String>> getAttributeValues(GluuCustomPerson person){
+
+        Map<String, List<String>> map=new HashMap<String, List<String>>();
+        for (GluuCustomAttribute attribute : person.getCustomAttributes()) {
+            String name=attribute.getName()==null ? null : attribute.getName().toLowerCase();
+            if (name!=null && attribute.getValues()!=null && !map.containsKey(name)) {
+                List<String> values=new ArrayList<String>();
+                for (String value : attribute.getValues())
+                    if (StringUtils.isNotEmpty(value))
+                        values.add(value);
+                if (values.size()>0)
+                    map.put(name, values);
+            }
+        }
+        return map;
 
     }
 
     public void deleteUser(GluuCustomPerson gluuPerson) throws Exception {
 
         String dn = gluuPerson.getDn();
+        long start=System.nanoTime();
         if (gluuPerson.getMemberOf()!= null && gluuPerson.getMemberOf().size()>0) {
             log.info("Removing user {} from groups", gluuPerson.getUid());
             serviceUtil.deleteUserFromGroup(gluuPerson, dn);
         }
         log.info("Removing user entry {}", dn);
         personService.removePerson(gluuPerson);
+        metricsService.recordStage(LDAP, start);
+        countCache.invalidate(GluuCustomPerson.class);
 
     }
 
     public List<BaseScimResource> searchUsers(String filter, String sortBy, SortOrder sortOrder, int startIndex, int count,
                                               VirtualListViewResponse vlvResponse, String url, int maxCount) throws Exception{
+        return searchUsers(filter, sortBy, sortOrder, startIndex, count, vlvResponse, url, maxCount, null);
+    }
+
+    /**
+     * Searches users using VLV
+     * @param ldapAttributes LDAP attributes to retrieve for every entry (see
+     * {@link org.gluu.oxtrust.service.scim2.serialization.ScimResourceSerializer#getLdapReturnAttributes(Class, String, String)
+     * getLdapReturnAttributes}). If null, all attributes are retrieved
+     */
+    public List<BaseScimResource> searchUsers(String filter, String sortBy, SortOrder sortOrder, int startIndex, int count,
+                                              VirtualListViewResponse vlvResponse, String url, int maxCount,
+                                              String[] ldapAttributes) throws Exception{
 
         Filter ldapFilter=scimFilterParserService.createLdapFilter(filter, "inum=*", UserResource.class);
         //Transform scim attribute to LDAP attribute
@@ -468,18 +601,84 @@ public class Scim2UserService implements Serializable {
         log.info("Executing search for users using: ldapfilter '{}', sortBy '{}', sortOrder '{}', startIndex '{}', count '{}'",
                 ldapFilter.toString(), sortBy, sortOrder.getValue(), startIndex, count);
 
+        long start=System.nanoTime();
         List<GluuCustomPerson> list=ldapEntryManager.findEntriesSearchSearchResult(personService.getDnForPerson(null),
-                GluuCustomPerson.class, ldapFilter, startIndex, count, maxCount, sortBy, sortOrder, vlvResponse, null);
+                GluuCustomPerson.class, ldapFilter, startIndex, count, maxCount, sortBy, sortOrder, vlvResponse, ldapAttributes);
+        metricsService.recordStage(LDAP, start);
         List<BaseScimResource> resources=new ArrayList<BaseScimResource>();
 
+        start=System.nanoTime();
         for (GluuCustomPerson person : list){
             UserResource scimUsr=new UserResource();
             transferAttributesToUserResource(person, scimUsr, url);
+            //Tags can only be computed from complete entries (see ScimETagService)
+            if (ldapAttributes!=null)
+                scimUsr.getMeta().setVersion(null);
             resources.add(scimUsr);
         }
+        metricsService.recordStage(MAPPING, start);
         log.info ("Found {} matching entries - returning {}", vlvResponse.getTotalResults(), list.size());
         return resources;
 
     }
 
+    /**
+     * Searches users in cursor mode (see {@link ScimCursorService}). Results are returned in directory order
+     * @param filter A SCIM filter expression (may be null)
+     * @param cursor Empty string for the first page, otherwise the cursor returned with the previous page
+     * @param count Maximum number of resources to return
+     * @param url Base URL of users endpoint
+     * @param ldapAttributes LDAP attributes to retrieve for every entry. If null, all attributes are retrieved
+     * @return A page of UserResource objects
+     * @throws Exception If the filter or cursor are invalid or the search fails
+     */
+    public ScimCursorService.Page<BaseScimResource> searchUsers(String filter, String cursor, int count, String url,
+                                                                String[] ldapAttributes) throws Exception{
+
+        Filter ldapFilter=scimFilterParserService.createLdapFilter(filter, "inum=*", UserResource.class);
+        log.info("Executing cursor search for users using: ldapfilter '{}', count '{}'", ldapFilter.toString(), count);
+
+        long start=System.nanoTime();
+        ScimCursorService.Page<GluuCustomPerson> page=cursorService.search(cursor, GluuCustomPerson.class,
+                personService.getDnForPerson(null), ldapFilter, count, ldapAttributes);
+        metricsService.recordStage(LDAP, start);
+        List<BaseScimResource> resources=new ArrayList<BaseScimResource>();
+
+        start=System.nanoTime();
+        for (GluuCustomPerson person : page.getEntries()){
+            UserResource scimUsr=new UserResource();
+            transferAttributesToUserResource(person, scimUsr, url);
+            //Tags can only be computed from complete entries (see ScimETagService)
+            if (ldapAttributes!=null)
+                scimUsr.getMeta().setVersion(null);
+            resources.add(scimUsr);
+        }
+        metricsService.recordStage(MAPPING, start);
+        return new ScimCursorService.Page<BaseScimResource>(resources, page.getTotalResults(), page.getStartIndex(), page.getNextCursor());
+
+    }
+
+    /**
+     * Computes the number of users matching the SCIM filter passed. No attribute data is retrieved from LDAP, and recent
+     * results are served from {@link ScimCountCache} when it is enabled
+     * @param filter A SCIM filter expression (may be null)
+     * @return Number of matching entries
+     * @throws Exception If the filter is invalid or the search fails
+     */
+    public int countUsers(String filter) throws Exception{
+
+        Filter ldapFilter=scimFilterParserService.createLdapFilter(filter, "inum=*", UserResource.class);
+        Integer total=countCache.get(GluuCustomPerson.class, ldapFilter);
+
+        if (total==null) {
+            log.info("Counting users using: ldapfilter '{}'", ldapFilter.toString());
+            long start=System.nanoTime();
+            total=ldapEntryManager.countEntries(personService.getDnForPerson(null), GluuCustomPerson.class, ldapFilter);
+            metricsService.recordStage(LDAP, start);
+            countCache.put(GluuCustomPerson.class, ldapFilter, total);
+        }
+        return total;
+
+    }
+
 }
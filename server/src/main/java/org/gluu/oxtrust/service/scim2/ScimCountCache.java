@@ -0,0 +1,180 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+package org.gluu.oxtrust.service.scim2;
+
+import com.unboundid.ldap.sdk.Filter;
+import org.gluu.oxtrust.config.ConfigurationFactory;
+import org.slf4j.Logger;
+import org.xdi.util.StringHelper;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An optional, short-lived cache of the number of entries matching an LDAP filter. Keys are made of the type of entry
+ * and the normalized form of the filter, so that filters differing only in case or spacing of attribute names share an
+ * entry. This is aimed at clients polling <code>totalResults</code> (ie. <code>count=0</code> searches) frequently.
+ * <p>The cache is disabled unless <code>scimCountCacheEnabled=true</code> is set in the LDAP configuration properties.
+ * Counts are kept for <code>scimCountCacheTtlSeconds</code> (default 30). Entries of a given type are discarded whenever
+ * this server adds or removes an entry of that type; changes made elsewhere (eg. in another node of a cluster) become
+ * visible after the TTL elapses.</p>
+ */
+@ApplicationScoped
+@Named
+public class ScimCountCache {
+
+    static final String ENABLED_PROPERTY = "scimCountCacheEnabled";
+    static final String TTL_PROPERTY = "scimCountCacheTtlSeconds";
+
+    static final int DEFAULT_TTL_SECONDS = 30;
+    static final int MAX_ENTRIES = 500;
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    private ConfigurationFactory configurationFactory;
+
+    private boolean enabled;
+    private long ttl;
+    private int maxEntries = MAX_ENTRIES;
+
+    //Insertion-ordered: since all entries share the same TTL, expired ones are always at the head
+    private final LinkedHashMap<String, CachedCount> counts = new LinkedHashMap<String, CachedCount>() {
+
+        private static final long serialVersionUID = -2379134283650853071L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedCount> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    @PostConstruct
+    public void init() {
+
+        boolean enabled = Boolean.parseBoolean(configurationFactory.getLdapConfiguration().getString(ENABLED_PROPERTY, null));
+        int ttlSeconds = StringHelper.toInteger(configurationFactory.getLdapConfiguration().getString(TTL_PROPERTY, null),
+                DEFAULT_TTL_SECONDS);
+        configure(enabled, TimeUnit.SECONDS.toMillis(ttlSeconds), MAX_ENTRIES);
+
+        if (enabled)
+            log.info("SCIM count cache enabled, counts are kept for {} seconds", ttlSeconds);
+
+    }
+
+    void configure(boolean enabled, long ttl, int maxEntries) {
+
+        synchronized (counts) {
+            this.enabled = enabled && ttl > 0;
+            this.ttl = ttl;
+            this.maxEntries = maxEntries;
+            counts.clear();
+        }
+
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the cached number of entries matching the filter
+     * @param entryClass Type of entries counted
+     * @param filter LDAP filter
+     * @return The count, or null if the cache is disabled, or the count is not cached or has expired
+     */
+    public Integer get(Class<?> entryClass, Filter filter) {
+
+        if (!enabled)
+            return null;
+
+        String key = getKey(entryClass, filter);
+        synchronized (counts) {
+            purgeExpired();
+            CachedCount cached = counts.get(key);
+            if (cached != null) {
+                log.trace("Count cache hit for {}", key);
+                return cached.value;
+            }
+        }
+        return null;
+
+    }
+
+    public void put(Class<?> entryClass, Filter filter, int value) {
+
+        if (!enabled)
+            return;
+
+        CachedCount cached = new CachedCount();
+        cached.value = value;
+        cached.expiresAt = currentTimeMillis() + ttl;
+
+        String key = getKey(entryClass, filter);
+        synchronized (counts) {
+            //Re-insert so that the entry moves to the tail of the map
+            counts.remove(key);
+            counts.put(key, cached);
+        }
+
+    }
+
+    /**
+     * Discards all counts cached for the type of entry passed
+     * @param entryClass Type of entries
+     */
+    public void invalidate(Class<?> entryClass) {
+
+        if (!enabled)
+            return;
+
+        String prefix = entryClass.getName() + "|";
+        synchronized (counts) {
+            for (Iterator<String> it = counts.keySet().iterator(); it.hasNext(); )
+                if (it.next().startsWith(prefix))
+                    it.remove();
+        }
+
+    }
+
+    int size() {
+        synchronized (counts) {
+            return counts.size();
+        }
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private String getKey(Class<?> entryClass, Filter filter) {
+        return entryClass.getName() + "|" + filter.toNormalizedString();
+    }
+
+    private void purgeExpired() {
+
+        long now = currentTimeMillis();
+        for (Iterator<CachedCount> it = counts.values().iterator(); it.hasNext(); ) {
+            if (it.next().expiresAt > now)
+                break;
+            it.remove();
+        }
+
+    }
+
+    private static class CachedCount {
+        int value;
+        long expiresAt;
+    }
+
+}
@@ -0,0 +1,352 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+package org.gluu.oxtrust.service.scim2;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.*;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang.StringUtils;
+import org.gluu.oxtrust.exception.InvalidCursorException;
+import org.gluu.site.ldap.persistence.AttributeData;
+import org.gluu.site.ldap.persistence.LdapEntryManager;
+import org.gluu.site.ldap.persistence.annotation.LdapObjectClass;
+import org.slf4j.Logger;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Supports cursor-based pagination of SCIM searches. Every page is obtained by means of an LDAP simple paged results
+ * control: the cookie returned by the directory server is kept in a short-lived, size-bounded store under an opaque
+ * random identifier which is handed to the client as <code>nextCursor</code>. Unlike VLV-based searches (see
+ * {@link Scim2UserService#searchUsers(String, String, org.xdi.ldap.model.SortOrder, int, int,
+ * org.xdi.ldap.model.VirtualListViewResponse, String, int) searchUsers}), the cost of fetching a page does not depend
+ * on how deep into the result set the page is.
+ * <p>Cursors are single-use: a new identifier is issued with every page.</p>
+ * <p>Directory servers bind paged results cookies to the connection that issued them, so a cursor owns a dedicated
+ * connection (not taken from the pool) that is used for all its pages. The connection is closed when the last page is
+ * served, or when the cursor expires or is evicted from the store. That's why the number of open cursors is kept
+ * low.</p>
+ */
+@ApplicationScoped
+@Named
+public class ScimCursorService {
+
+    static final int MAX_CURSORS = 100;
+    static final long CURSOR_TTL = TimeUnit.MINUTES.toMillis(10);
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    private LdapEntryManager ldapEntryManager;
+
+    private SecureRandom random = new SecureRandom();
+
+    //Insertion-ordered: since all cursors share the same TTL, expired ones are always at the head
+    private final LinkedHashMap<String, CursorState> cursors = new LinkedHashMap<String, CursorState>() {
+
+        private static final long serialVersionUID = 4208737428611873151L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CursorState> eldest) {
+            if (size() <= MAX_CURSORS)
+                return false;
+
+            released.add(eldest.getValue());
+            return true;
+        }
+    };
+
+    //Cursors removed from the store whose connections have to be closed. Guarded by cursors
+    private final List<CursorState> released = new ArrayList<CursorState>();
+
+    /**
+     * Retrieves a page of entries matching the filter supplied
+     * @param cursor An empty string to get the first page, or a cursor issued previously for the same query
+     * @param entryClass Class of the entries to build
+     * @param baseDn Base DN of the search (subtree scope is employed)
+     * @param filter LDAP filter to apply. Object classes of <code>entryClass</code> are added automatically
+     * @param pageSize Maximum number of entries to return
+     * @param returnAttributes LDAP attributes to retrieve. If null, all user attributes are retrieved
+     * @return A Page with the entries found, the total number of matches and the cursor to use for the next page (if any)
+     * @throws InvalidCursorException If the cursor passed is unknown, expired, or was issued for a different query
+     * @throws Exception If the search fails
+     */
+    public <T> Page<T> search(String cursor, Class<T> entryClass, String baseDn, Filter filter, int pageSize,
+                              String[] returnAttributes) throws Exception {
+
+        String filterStr = filter.toString();
+        CursorState state = null;
+
+        if (StringUtils.isNotEmpty(cursor)) {
+            state = takeCursor(cursor);
+
+            if (state == null)
+                throw new InvalidCursorException("Cursor '" + cursor + "' is unknown or has expired");
+            if (!state.entryClass.equals(entryClass) || !state.filter.equals(filterStr)) {
+                closeConnection(state.connection);
+                throw new InvalidCursorException("Cursor '" + cursor + "' was not issued for this query");
+            }
+        }
+
+        LDAPConnection connection = state == null ? openConnection() : state.connection;
+        boolean keepConnection = false;
+        try {
+            Page<T> page = search(state, connection, entryClass, baseDn, filter, pageSize, returnAttributes);
+            keepConnection = page.getNextCursor() != null;
+            return page;
+        }
+        finally {
+            if (!keepConnection)
+                closeConnection(connection);
+        }
+
+    }
+
+    private <T> Page<T> search(CursorState state, LDAPConnection connection, Class<T> entryClass, String baseDn,
+                               Filter filter, int pageSize, String[] returnAttributes) throws Exception {
+
+        ASN1OctetString cookie = state == null ? null : new ASN1OctetString(state.cookie);
+        SearchRequest request = new SearchRequest(baseDn, SearchScope.SUB, withObjectClasses(filter, entryClass),
+                returnAttributes == null ? new String[]{ SearchRequest.ALL_USER_ATTRIBUTES } : returnAttributes);
+        request.addControl(new SimplePagedResultsControl(pageSize, cookie));
+
+        SearchResult result = executeSearch(connection, request);
+
+        SimplePagedResultsControl response = SimplePagedResultsControl.get(result);
+        Map<String, List<AttributeData>> entriesAttributes = new LinkedHashMap<String, List<AttributeData>>();
+
+        for (SearchResultEntry entry : result.getSearchEntries()) {
+            List<AttributeData> attributes = new ArrayList<AttributeData>();
+            for (Attribute attribute : entry.getAttributes())
+                attributes.add(new AttributeData(attribute.getName(), attribute.getValues()));
+
+            entriesAttributes.put(entry.getDN(), attributes);
+        }
+        List<T> entries = createEntities(entryClass, entriesAttributes);
+
+        int total;
+        int startIndex;
+        if (state == null) {
+            //Servers may omit the estimate. In that case we count only once, in the first page
+            total = response != null && response.getSize() > 0 ? response.getSize() :
+                    countEntries(baseDn, entryClass, filter);
+            startIndex = 1;
+        }
+        else {
+            total = state.total;
+            startIndex = state.offset;
+        }
+
+        String nextCursor = null;
+        if (response != null && response.moreResultsToReturn()) {
+            CursorState next = new CursorState();
+            next.cookie = response.getCookie().getValue();
+            next.connection = connection;
+            next.entryClass = entryClass;
+            next.filter = filter.toString();
+            next.total = total;
+            next.offset = startIndex + entries.size();
+            nextCursor = putCursor(next);
+        }
+        log.debug("Cursor search under {} returned {} entries. Next cursor is {}", baseDn, entries.size(), nextCursor);
+
+        return new Page<T>(entries, total, startIndex, nextCursor);
+
+    }
+
+    @PreDestroy
+    public void destroy() {
+
+        synchronized (cursors) {
+            released.addAll(cursors.values());
+            cursors.clear();
+        }
+        closeReleased();
+
+    }
+
+    /**
+     * Opens a connection authenticated like the ones of the pool, but which is not part of it
+     */
+    LDAPConnection openConnection() throws LDAPException {
+
+        LDAPConnection pooled = ldapEntryManager.getLdapOperationService().getConnection();
+        LDAPConnection connection;
+        BindRequest bindRequest;
+        try {
+            connection = new LDAPConnection(pooled.getSocketFactory(), pooled.getConnectionOptions().duplicate(),
+                    pooled.getConnectedAddress(), pooled.getConnectedPort());
+            bindRequest = pooled.getLastBindRequest();
+        }
+        finally {
+            ldapEntryManager.getLdapOperationService().releaseConnection(pooled);
+        }
+
+        if (bindRequest != null) {
+            try {
+                connection.bind(bindRequest.duplicate());
+            }
+            catch (LDAPException e) {
+                connection.close();
+                throw e;
+            }
+        }
+        return connection;
+
+    }
+
+    void closeConnection(LDAPConnection connection) {
+        connection.close();
+    }
+
+    SearchResult executeSearch(LDAPConnection connection, SearchRequest request) throws LDAPException {
+        return connection.search(request);
+    }
+
+    <T> List<T> createEntities(Class<T> entryClass, Map<String, List<AttributeData>> entriesAttributes) {
+        return ldapEntryManager.createEntities(entryClass, entriesAttributes);
+    }
+
+    int countEntries(String baseDn, Class<?> entryClass, Filter filter) {
+        return ldapEntryManager.countEntries(baseDn, entryClass, filter);
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private Filter withObjectClasses(Filter filter, Class<?> entryClass) {
+
+        List<Filter> filters = new ArrayList<Filter>();
+        LdapObjectClass objectClass = entryClass.getAnnotation(LdapObjectClass.class);
+
+        if (objectClass != null)
+            for (String value : objectClass.values())
+                filters.add(Filter.createEqualityFilter("objectClass", value));
+
+        if (filters.isEmpty())
+            return filter;
+
+        filters.add(filter);
+        return Filter.createANDFilter(filters);
+
+    }
+
+    private String putCursor(CursorState state) {
+
+        byte[] bytes = new byte[24];
+        random.nextBytes(bytes);
+        String id = Base64.encodeBase64URLSafeString(bytes);
+        state.expiresAt = currentTimeMillis() + CURSOR_TTL;
+
+        synchronized (cursors) {
+            purgeExpired();
+            cursors.put(id, state);
+        }
+        closeReleased();
+        return id;
+
+    }
+
+    private CursorState takeCursor(String id) {
+
+        CursorState state;
+        synchronized (cursors) {
+            purgeExpired();
+            state = cursors.remove(id);
+        }
+        closeReleased();
+        return state;
+
+    }
+
+    private void purgeExpired() {
+
+        long now = currentTimeMillis();
+        for (Iterator<CursorState> it = cursors.values().iterator(); it.hasNext(); ) {
+            CursorState state = it.next();
+            if (state.expiresAt > now)
+                break;
+
+            it.remove();
+            released.add(state);
+        }
+
+    }
+
+    private void closeReleased() {
+
+        List<CursorState> states;
+        synchronized (cursors) {
+            if (released.isEmpty())
+                return;
+
+            states = new ArrayList<CursorState>(released);
+            released.clear();
+        }
+        //Closing sends an unbind, which is better done outside the lock
+        for (CursorState state : states)
+            closeConnection(state.connection);
+
+    }
+
+    private static class CursorState {
+        byte[] cookie;
+        LDAPConnection connection;
+        Class<?> entryClass;
+        String filter;
+        int total;
+        int offset;
+        long expiresAt;
+    }
+
+    /**
+     * A page of results obtained in cursor mode
+     */
+    public static class Page<T> {
+
+        private List<T> entries;
+        private int totalResults;
+        private int startIndex;
+        private String nextCursor;
+
+        public Page(List<T> entries, int totalResults, int startIndex, String nextCursor) {
+            this.entries = entries;
+            this.totalResults = totalResults;
+            this.startIndex = startIndex;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<T> getEntries() {
+            return entries;
+        }
+
+        public int getTotalResults() {
+            return totalResults;
+        }
+
+        public int getStartIndex() {
+            return startIndex;
+        }
+
+        /**
+         * @return The cursor to pass to obtain the next page, or null if this is the last page
+         */
+        public String getNextCursor() {
+            return nextCursor;
+        }
+
+    }
+
+}
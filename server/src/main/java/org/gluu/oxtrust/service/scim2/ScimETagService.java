@@ -0,0 +1,162 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+package org.gluu.oxtrust.service.scim2;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang.StringUtils;
+import org.gluu.oxtrust.model.GluuCustomAttribute;
+import org.gluu.oxtrust.model.GluuCustomPerson;
+import org.gluu.oxtrust.model.GluuGroup;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Computes the (weak) entity tags of SCIM resources (see section 3.14 of RFC 7644) and evaluates them against the values
+ * of <code>If-Match</code>/<code>If-None-Match</code> headers.
+ * <p>A tag is made of the <code>oxTrustMetaLastModified</code> value SCIM writes keep, plus a fingerprint of the
+ * contents of the LDAP entry (attribute names and values, regardless of their order). The fingerprint also reflects
+ * changes made outside SCIM, even several ones in the same second.</p>
+ * <p>Tags are computed from LDAP entries directly, so that conditional requests can be answered before any mapping to
+ * SCIM resources takes place. Since no operational attribute is involved, the tag of an entry about to be modified can
+ * be obtained from the entry read for the modification, and the tag after the modification from the entry just
+ * written: no additional lookups are needed. On the other hand, the entry must have been read with all its attributes:
+ * a single resource requested with <code>attributes</code> or <code>excludedAttributes</code> is still read in full,
+ * and the entries of a search restricted that way are listed without <code>meta.version</code>.</p>
+ */
+@ApplicationScoped
+@Named
+public class ScimETagService {
+
+    private static final String LAST_MODIFIED_ATTRIBUTE="oxTrustMetaLastModified";
+
+    private static final int DIGEST_LENGTH = 16;
+
+    //Written, but never returned when the entry is read
+    private static final String PASSWORD_ATTRIBUTE="userPassword";
+
+    /**
+     * Computes the tag of a person entry
+     * @param person Person as retrieved from LDAP with all its attributes, or as just written to LDAP
+     * @return Opaque value of the tag (without quotes or weakness indicator), as expected by {@link #matches(String, String)}
+     */
+    public String getETag(GluuCustomPerson person) {
+
+        Map<String, List<String>> contents=new TreeMap<String, List<String>>();
+        addAttributes(contents, person.getCustomAttributes());
+        return buildTag(contents);
+
+    }
+
+    /**
+     * Computes the tag of a group entry
+     * @param group Group as retrieved from LDAP with all its attributes, or as just written to LDAP
+     * @return Opaque value of the tag (without quotes or weakness indicator), as expected by {@link #matches(String, String)}
+     */
+    public String getETag(GluuGroup group) {
+
+        Map<String, List<String>> contents=new TreeMap<String, List<String>>();
+        //Attributes mapped to fields of GluuGroup are not part of its custom attributes
+        addValues(contents, "displayName", group.getDisplayName());
+        addValues(contents, "description", group.getDescription());
+        addValues(contents, "owner", group.getOwner());
+        if (group.getMembers()!=null)
+            addValues(contents, "member", group.getMembers().toArray(new String[0]));
+        addValues(contents, "c", group.getCountryName());
+        addValues(contents, "o", group.getOrganization());
+        addValues(contents, "seeAlso", group.getSeeAlso());
+        if (group.getStatus()!=null)
+            addValues(contents, "gluuStatus", group.getStatus().getValue());
+        if (group.getVisibility()!=null)
+            addValues(contents, "gluuGroupVisibility", group.getVisibility().getValue());
+        addAttributes(contents, group.getCustomAttributes());
+        return buildTag(contents);
+
+    }
+
+    /**
+     * Returns the value for <code>meta.version</code> in a resource whose entity tag is the one passed
+     * @param etag Opaque value of tag
+     * @return A string such as <code>W/"..."</code>
+     */
+    public String getVersion(String etag) {
+        return "W/\"" + etag + "\"";
+    }
+
+    /**
+     * Determines whether a tag matches any of the tags listed in an <code>If-Match</code> or <code>If-None-Match</code>
+     * header. Comparison is weak, that is, the <code>W/</code> indicator is not taken into account
+     * @param header Value of the header (eg. <code>W/"abc", "def"</code> or <code>*</code>)
+     * @param etag Opaque value of tag
+     * @return True if the header contains the tag passed or is <code>*</code>
+     */
+    public boolean matches(String header, String etag) {
+
+        for (String item : header.split(",")) {
+            String value = item.trim();
+            if (value.equals("*"))
+                return true;
+            if (value.startsWith("W/"))
+                value = value.substring(2);
+
+            if (StringUtils.strip(value, "\"").equals(etag))
+                return true;
+        }
+        return false;
+
+    }
+
+    private void addAttributes(Map<String, List<String>> contents, List<GluuCustomAttribute> attributes) {
+        if (attributes!=null)
+            for (GluuCustomAttribute attribute : attributes)
+                addValues(contents, attribute.getName(), attribute.getValues());
+    }
+
+    private void addValues(Map<String, List<String>> contents, String name, String... values) {
+
+        //Names returned by the server may differ in case from the ones written, and values may come in any order. Empty
+        //values are not stored
+        if (name==null || values==null || name.equalsIgnoreCase(PASSWORD_ATTRIBUTE))
+            return;
+
+        String key=name.toLowerCase();
+        for (String value : values)
+            if (StringUtils.isNotEmpty(value)) {
+                List<String> list=contents.get(key);
+                if (list==null) {
+                    list=new ArrayList<String>();
+                    contents.put(key, list);
+                }
+                list.add(value);
+            }
+
+    }
+
+    private String buildTag(Map<String, List<String>> contents) {
+
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, List<String>> entry : contents.entrySet()) {
+            List<String> values=entry.getValue();
+            Collections.sort(values);
+
+            sb.append(entry.getKey()).append('=');
+            for (String value : values)
+                sb.append(value.length()).append(':').append(value);
+            sb.append(';');
+        }
+
+        List<String> lastModified=contents.get(LAST_MODIFIED_ATTRIBUTE.toLowerCase());
+        String prefix = lastModified == null ? "0" : lastModified.get(0).replaceAll("[^0-9A-Za-z]", "");
+        return prefix + "-" + DigestUtils.md5Hex(sb.toString()).substring(0, DIGEST_LENGTH);
+
+    }
+
+}
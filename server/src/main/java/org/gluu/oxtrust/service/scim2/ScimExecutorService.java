@@ -0,0 +1,342 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+package org.gluu.oxtrust.service.scim2;
+
+import org.gluu.oxtrust.config.ConfigurationFactory;
+import org.gluu.oxtrust.ws.rs.scim2.BaseScimWebService;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+import org.slf4j.Logger;
+import org.xdi.util.StringHelper;
+import org.xdi.util.properties.FileConfiguration;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.control.RequestContextController;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the thread pools used by the SCIM service to run work concurrently. Pools are created lazily (one per name) and
+ * are bounded both in number of threads and in the size of their work queues.
+ * <p>There are two kinds of pools: worker pools (see {@link #getExecutor(String)}) used to split the work of a single
+ * request, and request pools (see {@link #submit(String, AsyncResponse, Callable)}) used to run whole requests off the
+ * container threads. Request pools reject work when their queue is full, and the request is answered with a 503.
+ * Statistics of request pools are published over JMX as <code>org.gluu.oxtrust:type=ScimExecutor,name=...</code></p>
+ * <p>Only bulk requests and <code>POST /.search</code> go through request pools. The Users, Groups and FidoDevices
+ * endpoints are synchronous, since their signatures are shared with the client interfaces of the scim module.</p>
+ * <p>Request pools can be tuned with the following LDAP configuration properties:
+ * <code>scimRequestPoolsEnabled</code> (default true; when false, requests are processed in the container thread as
+ * usual), <code>scimBulkRequestsPoolSize</code>/<code>scimBulkRequestsQueueSize</code> (default 4/16) and
+ * <code>scimSearchRequestsPoolSize</code>/<code>scimSearchRequestsQueueSize</code> (default 8/64).</p>
+ */
+@ApplicationScoped
+@Named
+public class ScimExecutorService {
+
+    public static final String SEARCH_POOL = "search";
+
+    public static final String BULK_REQUESTS_POOL = "bulk-requests";
+    public static final String SEARCH_REQUESTS_POOL = "search-requests";
+
+    private static final int DEFAULT_POOL_SIZE = 8;
+    private static final int DEFAULT_QUEUE_SIZE = 64;
+
+    //Bulk requests are long-running and hold many LDAP connections, so fewer are admitted at a time
+    private static final int BULK_POOL_SIZE = 4;
+    private static final int BULK_QUEUE_SIZE = 16;
+
+    private static final int RETRY_AFTER_SECONDS = 5;
+
+    static final String ENABLED_PROPERTY = "scimRequestPoolsEnabled";
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    private ConfigurationFactory configurationFactory;
+
+    @Inject
+    private Instance<RequestContextController> requestContextControllers;
+
+    @Inject
+    private ScimMetricsService metricsService;
+
+    private Map<String, ThreadPoolExecutor> executors = new ConcurrentHashMap<String, ThreadPoolExecutor>();
+
+    private Map<String, PoolStats> requestExecutors = new ConcurrentHashMap<String, PoolStats>();
+
+    private boolean requestPoolsEnabled = true;
+
+    private Map<String, int[]> requestPoolSizes = new HashMap<String, int[]>();
+
+    @PostConstruct
+    public void init() {
+
+        FileConfiguration ldapConfiguration = configurationFactory.getLdapConfiguration();
+        requestPoolsEnabled = !"false".equalsIgnoreCase(ldapConfiguration.getString(ENABLED_PROPERTY, null));
+
+        requestPoolSizes.put(BULK_REQUESTS_POOL, new int[]{
+                StringHelper.toInteger(ldapConfiguration.getString("scimBulkRequestsPoolSize", null), BULK_POOL_SIZE),
+                StringHelper.toInteger(ldapConfiguration.getString("scimBulkRequestsQueueSize", null), BULK_QUEUE_SIZE) });
+        requestPoolSizes.put(SEARCH_REQUESTS_POOL, new int[]{
+                StringHelper.toInteger(ldapConfiguration.getString("scimSearchRequestsPoolSize", null), DEFAULT_POOL_SIZE),
+                StringHelper.toInteger(ldapConfiguration.getString("scimSearchRequestsQueueSize", null), DEFAULT_QUEUE_SIZE) });
+
+        if (!requestPoolsEnabled)
+            log.info("SCIM request pools are disabled, bulk and search requests are processed in container threads");
+
+    }
+
+    /**
+     * Returns the pool associated to the name passed, creating it if needed
+     * @param name Name of the pool
+     * @return A ThreadPoolExecutor. When its queue is full, the submitting thread runs the task itself
+     */
+    public ExecutorService getExecutor(String name) {
+
+        ThreadPoolExecutor executor = executors.get(name);
+        if (executor == null) {
+            synchronized (executors) {
+                executor = executors.get(name);
+                if (executor == null) {
+                    executor = new ThreadPoolExecutor(DEFAULT_POOL_SIZE, DEFAULT_POOL_SIZE, 60, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<Runnable>(DEFAULT_QUEUE_SIZE), new NamedThreadFactory(name),
+                            new ThreadPoolExecutor.CallerRunsPolicy());
+                    executor.allowCoreThreadTimeOut(true);
+                    executors.put(name, executor);
+                    log.info("Created SCIM thread pool '{}' with {} threads", name, DEFAULT_POOL_SIZE);
+                }
+            }
+        }
+        return executor;
+
+    }
+
+    /**
+     * Wraps a task so that it can be run by a thread of a worker pool: the JAX-RS context data of the calling thread
+     * (eg. request headers) is made available to the task, and a CDI request context is active while it runs. Time
+     * spent by the task in measured stages is attributed to the operation of the calling thread.
+     * <p>The request context of the task is a new one, not the one of the request being processed: request scoped
+     * beans used by the task are fresh instances which know nothing of that request. Tasks may use application scoped
+     * beans and the dependent beans (eg. web services) injected in the caller; anything else they need from the request
+     * has to be computed by the caller and passed to them. When the pool is saturated, the caller runs the task itself
+     * and its own request context is left untouched.</p>
+     * @param task Task to wrap. This method must be called from the thread processing the request
+     * @return A Callable to submit to an executor
+     */
+    public <T> Callable<T> contextual(final Callable<T> task) {
+
+        final Map<Class<?>, Object> contextData = new HashMap<Class<?>, Object>(ResteasyProviderFactory.getContextDataMap());
+        final String operation = metricsService.getCurrentOperation();
+
+        return new Callable<T>() {
+            public T call() throws Exception {
+                RequestContextController controller = requestContextControllers.get();
+                String previous = metricsService.getCurrentOperation();
+                ResteasyProviderFactory.pushContextDataMap(contextData);
+                //False when a request context is already active, eg. when the task runs in the submitting thread
+                boolean activated = controller.activate();
+                metricsService.setCurrentOperation(operation);
+                try {
+                    return task.call();
+                }
+                finally {
+                    metricsService.setCurrentOperation(previous);
+                    if (activated)
+                        controller.deactivate();
+                    ResteasyProviderFactory.removeContextDataLevel();
+                    requestContextControllers.destroy(controller);
+                }
+            }
+        };
+
+    }
+
+    /**
+     * Runs the processing of a request in the request pool whose name is passed, and resumes the suspended response
+     * with the outcome. If the pool cannot admit more work, the response is resumed right away with a 503 error. When
+     * request pools are disabled, the task is run by the calling thread
+     * @param poolName Name of request pool (eg. {@link #BULK_REQUESTS_POOL})
+     * @param asyncResponse Suspended response
+     * @param task Processing of the request. The response it returns is written from the pool thread, so any
+     *             streamed output is also produced there
+     */
+    public void submit(String poolName, final AsyncResponse asyncResponse, final Callable<Response> task) {
+
+        final Callable<Response> resumingTask = new Callable<Response>() {
+            public Response call() throws Exception {
+                Response response;
+                try {
+                    response = task.call();
+                }
+                catch (Exception e) {
+                    log.error(e.getMessage(), e);
+                    response = BaseScimWebService.getErrorResponse(Response.Status.INTERNAL_SERVER_ERROR, "Unexpected error: " + e.getMessage());
+                }
+                asyncResponse.resume(response);
+                return response;
+            }
+        };
+
+        if (!requestPoolsEnabled) {
+            try {
+                resumingTask.call();
+            }
+            catch (Exception e) {
+                //Failures of the task are already turned into error responses, so this is a failure to resume
+                log.error(e.getMessage(), e);
+            }
+            return;
+        }
+
+        try {
+            getRequestExecutor(poolName).submit(contextual(resumingTask));
+        }
+        catch (RejectedExecutionException e) {
+            log.warn("SCIM request pool '{}' is saturated, rejecting request", poolName);
+            Response response = BaseScimWebService.getErrorResponse(Response.Status.SERVICE_UNAVAILABLE,
+                    "Too many concurrent requests, try again later");
+            asyncResponse.resume(Response.fromResponse(response).header("Retry-After", RETRY_AFTER_SECONDS).build());
+        }
+
+    }
+
+    private ExecutorService getRequestExecutor(String name) {
+
+        PoolStats stats = requestExecutors.get(name);
+        if (stats == null) {
+            synchronized (requestExecutors) {
+                stats = requestExecutors.get(name);
+                if (stats == null) {
+                    int sizes[] = requestPoolSizes.get(name);
+                    int poolSize = sizes == null ? DEFAULT_POOL_SIZE : Math.max(1, sizes[0]);
+                    int queueSize = sizes == null ? DEFAULT_QUEUE_SIZE : Math.max(1, sizes[1]);
+
+                    stats = new PoolStats(queueSize);
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<Runnable>(queueSize), new NamedThreadFactory(name), stats);
+                    executor.allowCoreThreadTimeOut(true);
+                    stats.executor = executor;
+
+                    registerMBean(name, stats);
+                    requestExecutors.put(name, stats);
+                    log.info("Created SCIM request pool '{}' with {} threads and queue of {}", name, poolSize, queueSize);
+                }
+            }
+        }
+        return stats.executor;
+
+    }
+
+    private void registerMBean(String name, PoolStats stats) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("org.gluu.oxtrust:type=ScimExecutor,name=" + name);
+            if (!server.isRegistered(objectName))
+                server.registerMBean(new StandardMBean(stats, ScimExecutorStatsMBean.class), objectName);
+        }
+        catch (Exception e) {
+            log.warn("Failed to register statistics of pool {} in JMX", name);
+            log.debug(e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+
+        for (ExecutorService executor : executors.values())
+            executor.shutdownNow();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (String name : requestExecutors.keySet()) {
+            requestExecutors.get(name).executor.shutdownNow();
+            try {
+                ObjectName objectName = new ObjectName("org.gluu.oxtrust:type=ScimExecutor,name=" + name);
+                if (server.isRegistered(objectName))
+                    server.unregisterMBean(objectName);
+            }
+            catch (Exception e) {
+                log.debug(e.getMessage());
+            }
+        }
+
+    }
+
+    /**
+     * Statistics of a request pool. It also acts as the pool's rejection handler
+     */
+    public static class PoolStats implements ScimExecutorStatsMBean, RejectedExecutionHandler {
+
+        private ThreadPoolExecutor executor;
+        private final int queueCapacity;
+        private final AtomicLong rejected = new AtomicLong();
+
+        PoolStats(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("Queue of pool is full");
+        }
+
+        public int getPoolSize() {
+            return executor.getPoolSize();
+        }
+
+        public int getActiveCount() {
+            return executor.getActiveCount();
+        }
+
+        public int getQueueSize() {
+            return executor.getQueue().size();
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public long getCompletedTaskCount() {
+            return executor.getCompletedTaskCount();
+        }
+
+        public long getRejectedCount() {
+            return rejected.get();
+        }
+
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        NamedThreadFactory(String name) {
+            prefix = "scim-" + name + "-";
+        }
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+}
@@ -0,0 +1,25 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+package org.gluu.oxtrust.service.scim2;
+
+/**
+ * JMX view of the statistics of a SCIM request pool (see {@link ScimExecutorService})
+ */
+public interface ScimExecutorStatsMBean {
+
+    int getPoolSize();
+
+    int getActiveCount();
+
+    int getQueueSize();
+
+    int getQueueCapacity();
+
+    long getCompletedTaskCount();
+
+    long getRejectedCount();
+
+}
@@ -0,0 +1,191 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+package org.gluu.oxtrust.service.scim2;
+
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import org.slf4j.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps latency and throughput metrics of the SCIM service. Metrics are named <code>scim.&lt;endpoint&gt;.&lt;operation&gt;</code>
+ * (eg. <code>scim.Users.create</code>) and are:
+ * <ul>
+ *     <li>a timer with the duration of requests,</li>
+ *     <li>a meter per status family of responses (eg. <code>scim.Users.create.2xx</code>),</li>
+ *     <li>a timer per processing stage (LDAP work, mapping and serialization, eg. <code>scim.Users.create.ldap</code>)</li>
+ * </ul>
+ * <p>Requests are recorded by {@link org.gluu.oxtrust.service.scim2.interceptor.ScimMetricsInterceptor}, which also
+ * sets the operation that stages measured in the same thread are attributed to. Metrics are published over JMX in
+ * domain <code>org.gluu.oxtrust.scim</code>, and in text form by {@link #getTextReport()}.</p>
+ */
+@ApplicationScoped
+@Named
+public class ScimMetricsService {
+
+    public enum Stage {
+        LDAP, MAPPING, SERIALIZATION;
+
+        public String getName() {
+            return name().toLowerCase();
+        }
+    }
+
+    private static final String PREFIX = "scim";
+    private static final String JMX_DOMAIN = "org.gluu.oxtrust.scim";
+
+    //Stages measured when no request is being processed in the current thread are accounted here
+    private static final String UNATTRIBUTED = MetricRegistry.name(PREFIX, "unattributed", "none");
+
+    private static final double[] QUANTILES = {0.5, 0.75, 0.95, 0.99};
+
+    @Inject
+    private Logger log;
+
+    private MetricRegistry registry = new MetricRegistry();
+
+    private JmxReporter jmxReporter;
+
+    private ThreadLocal<String> currentOperation = new ThreadLocal<String>();
+
+    @PostConstruct
+    public void init() {
+        jmxReporter = JmxReporter.forRegistry(registry).inDomain(JMX_DOMAIN)
+                .convertDurationsTo(TimeUnit.MILLISECONDS).convertRatesTo(TimeUnit.SECONDS).build();
+        jmxReporter.start();
+        log.info("SCIM metrics are published in JMX domain {}", JMX_DOMAIN);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        jmxReporter.stop();
+    }
+
+    /**
+     * Builds the name under which the metrics of an operation are kept
+     * @param endpoint Name of endpoint (eg. Users)
+     * @param operation Name of operation (eg. create)
+     * @return Metric name
+     */
+    public String getOperationName(String endpoint, String operation) {
+        return MetricRegistry.name(PREFIX, endpoint, operation);
+    }
+
+    /**
+     * Returns the operation stages measured in the current thread are attributed to
+     * @return A name as returned by {@link #getOperationName(String, String)}, or null
+     */
+    public String getCurrentOperation() {
+        return currentOperation.get();
+    }
+
+    /**
+     * Sets the operation stages measured in the current thread are attributed to
+     * @param operation A name as returned by {@link #getOperationName(String, String)}. Pass null to clear
+     */
+    public void setCurrentOperation(String operation) {
+        if (operation == null)
+            currentOperation.remove();
+        else
+            currentOperation.set(operation);
+    }
+
+    /**
+     * Records the processing of a request
+     * @param operation A name as returned by {@link #getOperationName(String, String)}
+     * @param start Value of {@link System#nanoTime()} when processing started
+     * @param status HTTP status code of the response
+     */
+    public void recordRequest(String operation, long start, int status) {
+        registry.timer(operation).update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        registry.meter(MetricRegistry.name(operation, (status / 100) + "xx")).mark();
+    }
+
+    /**
+     * Records the time spent in a processing stage on behalf of the operation being executed in the current thread
+     * @param stage Stage
+     * @param start Value of {@link System#nanoTime()} when the stage started
+     */
+    public void recordStage(Stage stage, long start) {
+        String operation = currentOperation.get();
+        String name = MetricRegistry.name(operation == null ? UNATTRIBUTED : operation, stage.getName());
+        registry.timer(name).update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    public MetricRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Renders current metrics in the Prometheus text exposition format. Durations are expressed in seconds
+     * @return A string
+     */
+    public String getTextReport() {
+
+        StringBuilder sb = new StringBuilder();
+        StringBuilder stages = new StringBuilder();
+        StringBuilder statuses = new StringBuilder();
+
+        for (Map.Entry<String, Timer> entry : registry.getTimers().entrySet()) {
+            String[] parts = entry.getKey().split("\\.");
+            Timer timer = entry.getValue();
+
+            if (parts.length == 3)
+                appendSummary(sb, "scim_request_duration_seconds", labels(parts[1], parts[2]), timer);
+            else if (parts.length == 4)
+                appendSummary(stages, "scim_stage_duration_seconds", labels(parts[1], parts[2]) + ",stage=\"" + parts[3] + "\"", timer);
+        }
+
+        for (Map.Entry<String, Meter> entry : registry.getMeters().entrySet()) {
+            String[] parts = entry.getKey().split("\\.");
+            if (parts.length == 4)
+                statuses.append("scim_requests_total{").append(labels(parts[1], parts[2])).append(",status=\"")
+                        .append(parts[3]).append("\"} ").append(entry.getValue().getCount()).append('\n');
+        }
+
+        StringBuilder report = new StringBuilder();
+        report.append("# HELP scim_request_duration_seconds Time taken to process SCIM requests\n");
+        report.append("# TYPE scim_request_duration_seconds summary\n").append(sb);
+        report.append("# HELP scim_requests_total Number of SCIM requests processed by status family of response\n");
+        report.append("# TYPE scim_requests_total counter\n").append(statuses);
+        report.append("# HELP scim_stage_duration_seconds Time spent in LDAP work, mapping and serialization\n");
+        report.append("# TYPE scim_stage_duration_seconds summary\n").append(stages);
+
+        return report.toString();
+
+    }
+
+    private String labels(String endpoint, String operation) {
+        return "endpoint=\"" + endpoint + "\",operation=\"" + operation + "\"";
+    }
+
+    private void appendSummary(StringBuilder sb, String metric, String labels, Timer timer) {
+
+        Snapshot snapshot = timer.getSnapshot();
+        for (double quantile : QUANTILES)
+            sb.append(metric).append('{').append(labels).append(",quantile=\"").append(quantile).append("\"} ")
+                    .append(toSeconds(snapshot.getValue(quantile))).append('\n');
+
+        sb.append(metric).append("_count{").append(labels).append("} ").append(timer.getCount()).append('\n');
+
+    }
+
+    private String toSeconds(double nanos) {
+        return String.format(Locale.US, "%.6f", nanos / TimeUnit.SECONDS.toNanos(1));
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+package org.gluu.oxtrust.service.scim2;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.gluu.oxtrust.service.OpenIdService;
+import org.jboss.resteasy.client.ClientExecutor;
+import org.jboss.resteasy.client.core.executors.ApacheHttpClient4Executor;
+import org.slf4j.Logger;
+import org.xdi.oxauth.client.ClientInfoClient;
+import org.xdi.oxauth.client.ClientInfoResponse;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validates the access tokens presented to the SCIM service when it runs in test mode. Validation is done by calling the
+ * client info endpoint of oxAuth using a pooled HTTP client. Tokens found to be valid are remembered for a short time
+ * (they are keyed by a hash, the tokens themselves are not stored); invalid tokens are not remembered.
+ */
+@ApplicationScoped
+@Named
+public class TestModeTokenService {
+
+    private static final int MAX_ENTRIES = 1000;
+    private static final long TOKEN_TTL = TimeUnit.SECONDS.toMillis(30);
+
+    private static final int POOL_MAX_TOTAL = 50;
+    private static final int POOL_MAX_PER_ROUTE = 50;
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    private OpenIdService openIdService;
+
+    private CloseableHttpClient httpClient;
+    private ClientExecutor clientExecutor;
+
+    //Insertion-ordered: since all entries share the same TTL, expired ones are always at the head
+    private final LinkedHashMap<String, Long> validTokens = new LinkedHashMap<String, Long>() {
+
+        private static final long serialVersionUID = -6064513931837391532L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    @PostConstruct
+    public void init() {
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(POOL_MAX_TOTAL);
+        connectionManager.setDefaultMaxPerRoute(POOL_MAX_PER_ROUTE);
+
+        httpClient = HttpClients.custom().setConnectionManager(connectionManager).build();
+        clientExecutor = new ApacheHttpClient4Executor(httpClient);
+
+    }
+
+    @PreDestroy
+    public void destroy() {
+        try {
+            httpClient.close();
+        }
+        catch (IOException e) {
+            log.debug(e.getMessage());
+        }
+    }
+
+    /**
+     * Determines whether an access token is valid
+     * @param token Access token (without "Bearer" prefix)
+     * @return Null if the token is valid, otherwise a description of the error found
+     */
+    public String validate(String token) {
+
+        String key = DigestUtils.sha256Hex(token);
+        long now = System.currentTimeMillis();
+
+        synchronized (validTokens) {
+            purgeExpired(now);
+            if (validTokens.containsKey(key)) {
+                log.trace("Token found in cache of valid tokens");
+                return null;
+            }
+        }
+
+        //ClientInfoClient instances hold per-call state, so only the underlying HTTP client is shared
+        ClientInfoClient clientInfoClient = new ClientInfoClient(openIdService.getOpenIdConfiguration().getClientInfoEndpoint());
+        clientInfoClient.setExecutor(clientExecutor);
+        ClientInfoResponse clientInfoResponse = clientInfoClient.execClientInfo(token);
+
+        if (clientInfoResponse.getErrorType() != null)
+            return clientInfoResponse.getErrorDescription() == null ? clientInfoResponse.getErrorType().toString() :
+                    clientInfoResponse.getErrorDescription();
+
+        synchronized (validTokens) {
+            validTokens.remove(key);
+            validTokens.put(key, now + TOKEN_TTL);
+        }
+        return null;
+
+    }
+
+    private void purgeExpired(long now) {
+
+        for (Iterator<Long> it = validTokens.values().iterator(); it.hasNext(); ) {
+            if (it.next() > now)
+                break;
+            it.remove();
+        }
+
+    }
+
+}
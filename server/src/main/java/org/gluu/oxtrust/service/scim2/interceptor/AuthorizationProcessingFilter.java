@@ -7,14 +7,12 @@ package org.gluu.oxtrust.service.scim2.interceptor;
 
 import org.apache.commons.lang.StringUtils;
 import org.gluu.oxtrust.exception.UmaProtectionException;
-import org.gluu.oxtrust.ldap.service.JsonConfigurationService;
-import org.gluu.oxtrust.service.OpenIdService;
+import org.gluu.oxtrust.service.scim2.TestModeTokenService;
 import org.gluu.oxtrust.service.uma.ScimUmaProtectionService;
 import org.gluu.oxtrust.service.uma.UmaPermissionService;
 import org.gluu.oxtrust.ws.rs.scim2.BaseScimWebService;
 import org.slf4j.Logger;
-import org.xdi.oxauth.client.ClientInfoClient;
-import org.xdi.oxauth.client.ClientInfoResponse;
+import org.xdi.config.oxtrust.AppConfiguration;
 import org.xdi.oxauth.model.uma.wrapper.Token;
 import org.xdi.util.Pair;
 
@@ -41,10 +39,10 @@ public class AuthorizationProcessingFilter implements ContainerRequestFilter {
     private Logger log;
 
     @Inject
-    private JsonConfigurationService jsonConfigurationService;
+    private AppConfiguration appConfiguration;
 
     @Inject
-    private OpenIdService openIdService;
+    private TestModeTokenService testModeTokenService;
 
     @Inject
     private ScimUmaProtectionService scimUmaProtectionService;
@@ -75,7 +73,8 @@ public class AuthorizationProcessingFilter implements ContainerRequestFilter {
         log.info("Authorization header {} found", StringUtils.isEmpty(authorization) ? "not" : "");
 
         try {
-            if (jsonConfigurationService.getOxTrustappConfiguration().isScimTestMode()) {
+            //Configuration snapshot is kept up to date by ConfigurationFactory, so no LDAP lookup is needed here
+            if (appConfiguration.isScimTestMode()) {
                 log.info("SCIM Test Mode is ACTIVE");
                 authorizationResponse = processTestModeAuthorization(authorization);
             }
@@ -109,13 +108,10 @@ public class AuthorizationProcessingFilter implements ContainerRequestFilter {
             token=token.replaceFirst("Bearer\\s+","");
             log.debug("Validating token {}", token);
 
-            String clientInfoEndpoint=openIdService.getOpenIdConfiguration().getClientInfoEndpoint();
-            ClientInfoClient clientInfoClient = new ClientInfoClient(clientInfoEndpoint);
-            ClientInfoResponse clientInfoResponse = clientInfoClient.execClientInfo(token);
-
-            if (clientInfoResponse.getErrorType()!=null) {
+            String error=testModeTokenService.validate(token);
+            if (error!=null) {
                 response=BaseScimWebService.getErrorResponse(Status.UNAUTHORIZED, "Invalid token "+ token);
-                log.debug("Error validating access token: {}", clientInfoResponse.getErrorDescription());
+                log.debug("Error validating access token: {}", error);
             }
         }
         else{
@@ -49,7 +49,14 @@ public class GroupWebServiceDecorator extends BaseScimWebService implements IGro
     private Response validateExistenceOfGroup(String id){
 
         Response response=null;
-        GluuGroup group = StringUtils.isEmpty(id) ? null : groupService.getGroupByInum(id);
+        GluuGroup group=null;
+        try {
+            if (StringUtils.isNotEmpty(id))
+                group = groupService.findGroupByDn(groupService.getDnForGroup(id), "inum");
+        }
+        catch (Exception e){
+            log.debug(e.getMessage());
+        }
 
         if (group==null) {
             log.info("Group with inum {} not found", id);
@@ -198,8 +205,10 @@ public class GroupWebServiceDecorator extends BaseScimWebService implements IGro
             //searchReq.getSortBy() is not null since we are providing userName as default
             if (!isAttributeRecognized(GroupResource.class, searchReq.getSortBy()))
                 response = getErrorResponse(Response.Status.BAD_REQUEST, ErrorScimType.INVALID_PATH, "sortBy parameter value not recognized");
-            else
+            else {
+                searchReq.setCursor(searchRequest.getCursor());
                 response = service.searchGroupsPost(searchReq);
+            }
         }
         return response;
 
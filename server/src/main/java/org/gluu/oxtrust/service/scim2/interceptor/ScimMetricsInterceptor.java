@@ -0,0 +1,234 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+package org.gluu.oxtrust.service.scim2.interceptor;
+
+import org.gluu.oxtrust.service.scim2.ScimMetricsService;
+import org.slf4j.Logger;
+
+import javax.annotation.Priority;
+import javax.inject.Inject;
+import javax.interceptor.AroundInvoke;
+import javax.interceptor.Interceptor;
+import javax.interceptor.InvocationContext;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.Path;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.Response;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.gluu.oxtrust.ws.rs.scim2.BaseScimWebService.SEARCH_SUFFIX;
+
+/**
+ * Records the duration and response status of calls to SCIM endpoints. The endpoint name is taken from the {@link Path}
+ * of the class (eg. Users) and the operation (create, get, replace, patch, delete, search, bulk) from the HTTP method and
+ * path of the method invoked. Methods which are not resource methods are not measured.
+ * <p>For asynchronous resource methods, the request is recorded when its response is resumed.</p>
+ */
+/*
+ * Runs before ReferenceURIInterceptor so that its work is accounted in the measurement
+ */
+@ScimMetered
+@Interceptor
+@Priority(Interceptor.Priority.APPLICATION)
+public class ScimMetricsInterceptor {
+
+    //Marks methods that are not resource methods in the cache of operation names
+    private static final String NONE = "";
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    private ScimMetricsService metricsService;
+
+    private Map<Method, String> operations = new ConcurrentHashMap<Method, String>();
+
+    @AroundInvoke
+    public Object measure(InvocationContext ctx) throws Exception {
+
+        String operation = getOperation(ctx.getMethod());
+        if (operation.equals(NONE))
+            return ctx.proceed();
+
+        long start = System.nanoTime();
+        String previous = metricsService.getCurrentOperation();
+        metricsService.setCurrentOperation(operation);
+        try {
+            Object[] params = ctx.getParameters();
+            for (int i = 0; i < params.length; i++) {
+                if (params[i] instanceof AsyncResponse) {
+                    params[i] = new MeteredAsyncResponse((AsyncResponse) params[i], operation, start);
+                    ctx.setParameters(params);
+                    return ctx.proceed();
+                }
+            }
+
+            Object result = ctx.proceed();
+            metricsService.recordRequest(operation, start, result instanceof Response ? ((Response) result).getStatus() : 200);
+            return result;
+        }
+        catch (Exception e) {
+            metricsService.recordRequest(operation, start, getStatus(e));
+            throw e;
+        }
+        finally {
+            metricsService.setCurrentOperation(previous);
+        }
+
+    }
+
+    private String getOperation(Method method) {
+
+        String operation = operations.get(method);
+        if (operation == null) {
+            operation = computeOperation(method);
+            log.trace("Operation of method {} is '{}'", method.getName(), operation);
+            operations.put(method, operation);
+        }
+        return operation;
+
+    }
+
+    private String computeOperation(Method method) {
+
+        String httpMethod = null;
+        for (Annotation annotation : method.getAnnotations()) {
+            HttpMethod meta = annotation.annotationType().getAnnotation(HttpMethod.class);
+            if (meta != null)
+                httpMethod = meta.value();
+        }
+        Path classPath = method.getDeclaringClass().getAnnotation(Path.class);
+        if (httpMethod == null || classPath == null)
+            return NONE;
+
+        String path = classPath.value();
+        String endpoint = path.substring(path.lastIndexOf("/") + 1);
+        Path methodPath = method.getAnnotation(Path.class);
+        String operation;
+
+        if (endpoint.equals(SEARCH_SUFFIX)) {
+            endpoint = "Root";
+            operation = "search";
+        }
+        else if (endpoint.equals("Bulk"))
+            operation = "bulk";
+        else if (httpMethod.equals(HttpMethod.GET))
+            operation = methodPath == null ? "search" : "get";
+        else if (httpMethod.equals(HttpMethod.POST))
+            operation = methodPath != null && methodPath.value().equals(SEARCH_SUFFIX) ? "search" : "create";
+        else if (httpMethod.equals(HttpMethod.PUT))
+            operation = "replace";
+        else if (httpMethod.equals(HttpMethod.DELETE))
+            operation = "delete";
+        else
+            operation = httpMethod.toLowerCase();
+
+        return metricsService.getOperationName(endpoint, operation);
+
+    }
+
+    private static int getStatus(Throwable t) {
+        return t instanceof WebApplicationException && ((WebApplicationException) t).getResponse() != null ?
+                ((WebApplicationException) t).getResponse().getStatus() : 500;
+    }
+
+    /**
+     * Delegates to the AsyncResponse supplied by the container and records the request when it is resumed or cancelled
+     */
+    private class MeteredAsyncResponse implements AsyncResponse {
+
+        private final AsyncResponse delegate;
+        private final String operation;
+        private final long start;
+        private final AtomicBoolean recorded = new AtomicBoolean();
+
+        MeteredAsyncResponse(AsyncResponse delegate, String operation, long start) {
+            this.delegate = delegate;
+            this.operation = operation;
+            this.start = start;
+        }
+
+        private void record(int status) {
+            if (recorded.compareAndSet(false, true))
+                metricsService.recordRequest(operation, start, status);
+        }
+
+        //The container writes the response in the thread resuming it, so recording after resuming accounts streamed output
+        public boolean resume(Object response) {
+            boolean resumed = delegate.resume(response);
+            record(response instanceof Response ? ((Response) response).getStatus() : 200);
+            return resumed;
+        }
+
+        public boolean resume(Throwable response) {
+            boolean resumed = delegate.resume(response);
+            record(getStatus(response));
+            return resumed;
+        }
+
+        public boolean cancel() {
+            record(Response.Status.SERVICE_UNAVAILABLE.getStatusCode());
+            return delegate.cancel();
+        }
+
+        public boolean cancel(int retryAfter) {
+            record(Response.Status.SERVICE_UNAVAILABLE.getStatusCode());
+            return delegate.cancel(retryAfter);
+        }
+
+        public boolean cancel(Date retryAfter) {
+            record(Response.Status.SERVICE_UNAVAILABLE.getStatusCode());
+            return delegate.cancel(retryAfter);
+        }
+
+        public boolean isSuspended() {
+            return delegate.isSuspended();
+        }
+
+        public boolean isCancelled() {
+            return delegate.isCancelled();
+        }
+
+        public boolean isDone() {
+            return delegate.isDone();
+        }
+
+        public boolean setTimeout(long time, TimeUnit unit) {
+            return delegate.setTimeout(time, unit);
+        }
+
+        public void setTimeoutHandler(TimeoutHandler handler) {
+            delegate.setTimeoutHandler(handler);
+        }
+
+        public Collection<Class<?>> register(Class<?> callback) {
+            return delegate.register(callback);
+        }
+
+        public Map<Class<?>, Collection<Class<?>>> register(Class<?> callback, Class<?>... callbacks) {
+            return delegate.register(callback, callbacks);
+        }
+
+        public Collection<Class<?>> register(Object callback) {
+            return delegate.register(callback);
+        }
+
+        public Map<Class<?>, Collection<Class<?>>> register(Object callback, Object... callbacks) {
+            return delegate.register(callback, callbacks);
+        }
+
+    }
+
+}
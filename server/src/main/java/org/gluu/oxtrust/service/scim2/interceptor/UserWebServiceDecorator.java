@@ -50,7 +50,14 @@ public class UserWebServiceDecorator extends BaseScimWebService implements IUser
     private Response validateExistenceOfUser(String id){
 
         Response response=null;
-        GluuCustomPerson person = StringUtils.isEmpty(id) ? null : personService.getPersonByInum(id);
+        GluuCustomPerson person=null;
+        try {
+            if (StringUtils.isNotEmpty(id))
+                person = personService.findPersonByDn(personService.getDnForPerson(id), "inum");
+        }
+        catch (Exception e){
+            log.debug(e.getMessage());
+        }
 
         if (person==null) {
             log.info("Person with inum {} not found", id);
@@ -191,8 +198,10 @@ public class UserWebServiceDecorator extends BaseScimWebService implements IUser
             //searchReq.getSortBy() is not null since we are providing userName as default
             if (!isAttributeRecognized(UserResource.class, searchReq.getSortBy()))
                 response = getErrorResponse(Response.Status.BAD_REQUEST, ErrorScimType.INVALID_PATH, "sortBy parameter value not recognized");
-            else
+            else {
+                searchReq.setCursor(searchRequest.getCursor());
                 response = service.searchUsersPost(searchReq);
+            }
         }
         return response;
 
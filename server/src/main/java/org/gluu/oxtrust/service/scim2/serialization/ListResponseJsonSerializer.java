@@ -7,7 +7,6 @@ package org.gluu.oxtrust.service.scim2.serialization;
 
 import org.apache.logging.log4j.LogManager;
 import org.codehaus.jackson.JsonGenerator;
-import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.map.JsonSerializer;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.map.SerializerProvider;
@@ -17,6 +16,7 @@ import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by jgomer on 2017-10-01.
@@ -31,7 +31,7 @@ public class ListResponseJsonSerializer extends JsonSerializer<ListResponse> {
     private String excludeAttributes;
     private boolean skipResults;
 
-    private List<JsonNode> jsonResources;
+    private List<Map<String, Object>> projectedResources;
 
     //why not to inject the resource serializer instead of passing it as parameter? weld simply does not like it!
     public ListResponseJsonSerializer(ScimResourceSerializer serializer){
@@ -45,8 +45,13 @@ public class ListResponseJsonSerializer extends JsonSerializer<ListResponse> {
         this.skipResults=skipResults;
     }
 
-    public void setJsonResources(List<JsonNode> resources){
-        this.jsonResources=resources;
+    /**
+     * Supplies resources that were already projected (see {@link ScimResourceSerializer#project(BaseScimResource, String, String)}).
+     * These are used only when the ListResponse being serialized carries no resources of its own
+     * @param resources List of projected resources
+     */
+    public void setProjectedResources(List<Map<String, Object>> resources){
+        this.projectedResources=resources;
     }
 
     @Override
@@ -69,18 +74,19 @@ public class ListResponseJsonSerializer extends JsonSerializer<ListResponse> {
                 jGen.writeArrayFieldStart("Resources");
 
                 if (listResponse.getResources().size()>0)
-                    for (BaseScimResource resource : listResponse.getResources()) {
-                        JsonNode jsonResource = mapper.readTree(resourceSerializer.serialize(resource, attributes, excludeAttributes));
-                        jGen.writeTree(jsonResource);
-                    }
+                    for (BaseScimResource resource : listResponse.getResources())
+                        mapper.writeValue(jGen, resourceSerializer.project(resource, attributes, excludeAttributes));
                 else
-                if (jsonResources != null)
-                    for (JsonNode node : jsonResources)
-                        jGen.writeTree(node);
+                if (projectedResources != null)
+                    for (Map<String, Object> resource : projectedResources)
+                        mapper.writeValue(jGen, resource);
 
                 jGen.writeEndArray();
             }
 
+            if (listResponse.getNextCursor()!=null)
+                jGen.writeStringField("nextCursor", listResponse.getNextCursor());
+
             jGen.writeEndObject();
         }
         catch (Exception e) {
@@ -12,9 +12,12 @@ import org.codehaus.jackson.type.TypeReference;
 import org.gluu.oxtrust.model.scim2.BaseScimResource;
 import org.gluu.oxtrust.model.scim2.ListResponse;
 import org.gluu.oxtrust.model.scim2.extensions.Extension;
+import org.gluu.oxtrust.model.scim2.group.GroupResource;
+import org.gluu.oxtrust.model.scim2.user.UserResource;
 import org.gluu.oxtrust.model.scim2.util.IntrospectUtil;
 import org.gluu.oxtrust.model.scim2.util.ScimResourceUtil;
 import org.gluu.oxtrust.service.scim2.ExtensionService;
+import org.gluu.oxtrust.service.scim2.ScimMetricsService;
 import org.slf4j.Logger;
 
 import javax.ejb.Stateless;
@@ -35,8 +38,35 @@ public class ScimResourceSerializer {
     @Inject
     private ExtensionService extService;
 
+    @Inject
+    private ScimMetricsService metricsService;
+
     private ObjectMapper mapper=new ObjectMapper();
 
+    /*
+     * LDAP attributes read when building a resource that are not (or not entirely) captured by @StoreReference annotations.
+     * Keys are top-level SCIM attribute names
+     */
+    private static final Map<Class<? extends BaseScimResource>, Map<String, String[]>> extraLdapAttrs;
+
+    static {
+        String metaAttrs[]=new String[]{"oxTrustMetaCreated", "oxTrustMetaLastModified", "oxTrustMetaLocation"};
+
+        Map<String, String[]> userAttrs=new HashMap<String, String[]>();
+        userAttrs.put("meta", metaAttrs);
+        userAttrs.put("active", new String[]{"oxTrustActive", "gluuStatus"});
+        userAttrs.put("emails", new String[]{"oxTrustEmail"});
+        userAttrs.put("nickName", new String[]{"nickname"});
+        userAttrs.put("groups", new String[]{"memberOf"});
+
+        Map<String, String[]> groupAttrs=new HashMap<String, String[]>();
+        groupAttrs.put("meta", metaAttrs);
+
+        extraLdapAttrs=new HashMap<Class<? extends BaseScimResource>, Map<String, String[]>>();
+        extraLdapAttrs.put(UserResource.class, userAttrs);
+        extraLdapAttrs.put(GroupResource.class, groupAttrs);
+    }
+
     private Set<String> expandAttributesPaths(String attributes, String defaultSchemaUrn, List<String> schemas, SortedSet<String> attribs) {
 
         Set<String> set=new HashSet<String>();
@@ -191,12 +221,20 @@ public class ScimResourceSerializer {
 
     }
 
-    public String serialize(BaseScimResource resource, String attributes, String exclusions) throws Exception{
+    /**
+     * Computes the representation of a resource that results from applying the attributes/excludedAttributes projection
+     * passed. The output can be written straight to a JSON generator, no string (de)serialization is involved
+     * @param resource Resource to project
+     * @param attributes Value of attributes query param (may be null)
+     * @param exclusions Value of excludedAttributes query param (may be null)
+     * @return A map whose keys follow the order of fields in the resource class
+     */
+    public LinkedHashMap<String, Object> project(BaseScimResource resource, String attributes, String exclusions){
 
         SortedSet<String> include =new TreeSet<String>();
         Class<? extends BaseScimResource> resourceClass=resource.getClass();
         buildIncludeSet(include, resourceClass, new ArrayList<String>(resource.getSchemas()), attributes, exclusions);
-        log.debug("serialize. Attributes to include: {}", include);
+        log.debug("project. Attributes to include: {}", include);
 
         //Do generic serialization. This works for any POJO (not only subclasses of BaseScimResource)
         Map<String, Object> map = mapper.convertValue(resource, new TypeReference<Map<String, Object>>(){});
@@ -204,7 +242,77 @@ public class ScimResourceSerializer {
         LinkedHashMap<String, Object> newMap=new LinkedHashMap<String, Object>();
         traverse("", map, newMap, include);
 
-        String result=mapper.writeValueAsString(newMap);
+        return newMap;
+
+    }
+
+    /**
+     * Translates the attributes/excludedAttributes projection passed into the list of LDAP attributes that are needed to
+     * build the resource. This allows to retrieve from the directory only what will end up in the response
+     * @param resourceClass Type of resource (only Users and Groups are supported)
+     * @param attributes Value of attributes query param (may be null)
+     * @param exclusions Value of excludedAttributes query param (may be null)
+     * @return An array of LDAP attribute names, or null if all attributes have to be retrieved
+     */
+    public String[] getLdapReturnAttributes(Class<? extends BaseScimResource> resourceClass, String attributes, String exclusions){
+
+        Map<String, String[]> extraAttrs=extraLdapAttrs.get(resourceClass);
+        if ((attributes==null && exclusions==null) || extraAttrs==null)
+            return null;
+
+        List<Extension> extensions=extService.getResourceExtensions(resourceClass);
+        List<String> schemas=new ArrayList<String>();
+        schemas.add(ScimResourceUtil.getDefaultSchemaUrn(resourceClass));
+        for (Extension ext : extensions)
+            schemas.add(ext.getUrn());
+
+        SortedSet<String> include=new TreeSet<String>();
+        buildIncludeSet(include, resourceClass, schemas, attributes, exclusions);
+
+        Map<String, String> refs=IntrospectUtil.storeRefs.get(resourceClass);
+        Set<String> ldapAttrs=new HashSet<String>();
+        ldapAttrs.add("inum");
+        ldapAttrs.add("objectClass");
+
+        for (String path : include){
+            boolean extended=false;
+
+            for (Extension ext : extensions) {
+                if (path.equals(ext.getUrn()))
+                    ldapAttrs.addAll(ext.getFields().keySet());
+                else
+                if (path.startsWith(ext.getUrn() + "."))
+                    ldapAttrs.add(path.substring(ext.getUrn().length() + 1));
+                else
+                    continue;
+
+                extended=true;
+                break;
+            }
+
+            if (!extended) {
+                //Work at the level of top-level attributes: the mapping of subattributes may depend on their siblings
+                int i=path.indexOf(".");
+                String top=i==-1 ? path : path.substring(0, i);
+
+                for (String key : refs.keySet())
+                    if (key.equals(top) || key.startsWith(top + "."))
+                        ldapAttrs.add(refs.get(key));
+
+                if (extraAttrs.containsKey(top))
+                    ldapAttrs.addAll(Arrays.asList(extraAttrs.get(top)));
+            }
+        }
+        log.debug("getLdapReturnAttributes. LDAP attributes to retrieve: {}", ldapAttrs);
+        return ldapAttrs.toArray(new String[ldapAttrs.size()]);
+
+    }
+
+    public String serialize(BaseScimResource resource, String attributes, String exclusions) throws Exception{
+
+        long start=System.nanoTime();
+        String result=mapper.writeValueAsString(project(resource, attributes, exclusions));
+        metricsService.recordStage(ScimMetricsService.Stage.SERIALIZATION, start);
         log.debug("serialize. Output is {}", result);
 
         return result;
@@ -0,0 +1,229 @@
+package org.gluu.oxtrust.service.uma;
+
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.xdi.oxauth.model.uma.RptIntrospectionResponse;
+
+/**
+ * Keeps the results of RPT introspection requests for a short time, so that clients sending the same token in a row
+ * do not cause a round trip to oxAuth per request. Tokens are never stored: entries are keyed by a SHA-256 hash of the
+ * RPT together with the PAT of the resource server that introspected it, as the response depends on the permissions
+ * of that resource server.
+ * <p>Positive results are kept for at most {@link #POSITIVE_TTL} and never beyond the expiration time of the token.
+ * Negative results (inactive tokens) are kept for {@link #NEGATIVE_TTL}. Failed requests are not cached at all, so
+ * an outage of oxAuth does not turn into clients being refused once it is over.</p>
+ * <p>Hit and miss counters are published over JMX as <code>org.gluu.oxtrust:type=RptIntrospectionCache</code>.</p>
+ */
+@ApplicationScoped
+@Named("rptIntrospectionCache")
+public class RptIntrospectionCache implements RptIntrospectionCacheMBean {
+
+	public static final long POSITIVE_TTL = TimeUnit.SECONDS.toMillis(60);
+	public static final long NEGATIVE_TTL = TimeUnit.SECONDS.toMillis(5);
+
+	private static final int MAX_ENTRIES = 10000;
+	private static final String OBJECT_NAME = "org.gluu.oxtrust:type=RptIntrospectionCache";
+
+	@Inject
+	private Logger log;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	// Insertion-ordered: the eldest entries are dropped first when the cache is full
+	private final LinkedHashMap<String, CachedResult> results = new LinkedHashMap<String, CachedResult>() {
+
+		private static final long serialVersionUID = 6219021347584013367L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	@PostConstruct
+	public void init() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(this, name);
+			}
+		} catch (Exception ex) {
+			log.warn("Failed to register RPT introspection cache statistics in JMX", ex);
+		}
+	}
+
+	@PreDestroy
+	public void destroy() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (Exception ex) {
+			log.debug("Failed to unregister RPT introspection cache statistics from JMX", ex);
+		}
+	}
+
+	/**
+	 * Looks up the introspection result of a token
+	 *
+	 * @param patToken PAT used to introspect the token
+	 * @param rptToken Token
+	 * @return Null if there is no (valid) cached result. Otherwise, an object holding the introspection response
+	 *         (see {@link CachedResult#getResponse()})
+	 */
+	public CachedResult get(String patToken, String rptToken) {
+		String key = getKey(patToken, rptToken);
+		long now = currentTimeMillis();
+
+		synchronized (results) {
+			CachedResult cached = results.get(key);
+			if ((cached != null) && (cached.expiresAt <= now)) {
+				results.remove(key);
+				cached = null;
+			}
+
+			if (cached == null) {
+				misses.incrementAndGet();
+			} else {
+				hits.incrementAndGet();
+			}
+
+			return cached;
+		}
+	}
+
+	/**
+	 * Stores the response of an introspection request
+	 *
+	 * @param patToken PAT used to introspect the token
+	 * @param rptToken Token introspected
+	 * @param response Response obtained. Null (no response, ie. the request failed) is not cached
+	 */
+	public void put(String patToken, String rptToken, RptIntrospectionResponse response) {
+		if (response == null) {
+			return;
+		}
+
+		long now = currentTimeMillis();
+		long expiresAt;
+
+		if (!response.getActive()) {
+			response = null;
+			expiresAt = now + NEGATIVE_TTL;
+		} else {
+			expiresAt = now + POSITIVE_TTL;
+			if (response.getExpiresAt() != null) {
+				expiresAt = Math.min(expiresAt, response.getExpiresAt().getTime());
+			}
+		}
+
+		if (expiresAt <= now) {
+			return;
+		}
+
+		CachedResult cached = new CachedResult(response, expiresAt);
+		String key = getKey(patToken, rptToken);
+		synchronized (results) {
+			purgeExpired(now);
+			results.remove(key);
+			results.put(key, cached);
+		}
+	}
+
+	public void clear() {
+		synchronized (results) {
+			results.clear();
+		}
+	}
+
+	@Override
+	public long getHits() {
+		return hits.get();
+	}
+
+	@Override
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return Ratio of lookups that were served from the cache, or 0 if no lookups took place yet
+	 */
+	@Override
+	public double getHitRate() {
+		long h = hits.get();
+		long total = h + misses.get();
+
+		return (total == 0) ? 0 : ((double) h) / total;
+	}
+
+	@Override
+	public int getSize() {
+		synchronized (results) {
+			return results.size();
+		}
+	}
+
+	long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	private String getKey(String patToken, String rptToken) {
+		// Length prefixed, so that no two pairs of tokens are hashed from the same string
+		return DigestUtils.sha256Hex(patToken.length() + ":" + patToken + rptToken);
+	}
+
+	private void purgeExpired(long now) {
+		// Entries have different lifetimes, so only a prefix of expired entries is dropped here. The rest expire on
+		// lookup or are evicted as the eldest
+		for (Iterator<CachedResult> it = results.values().iterator(); it.hasNext();) {
+			if (it.next().expiresAt > now) {
+				break;
+			}
+			it.remove();
+		}
+
+		if (log.isTraceEnabled()) {
+			log.trace("RPT introspection cache size: {}, hit rate: {}", results.size(), getHitRate());
+		}
+	}
+
+	public static class CachedResult {
+
+		private final RptIntrospectionResponse response;
+		private final long expiresAt;
+
+		CachedResult(RptIntrospectionResponse response, long expiresAt) {
+			this.response = response;
+			this.expiresAt = expiresAt;
+		}
+
+		/**
+		 * @return Introspection response, or null if the token was inactive
+		 */
+		public RptIntrospectionResponse getResponse() {
+			return response;
+		}
+
+	}
+
+}
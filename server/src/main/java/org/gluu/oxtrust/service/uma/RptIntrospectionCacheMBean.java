@@ -0,0 +1,16 @@
+package org.gluu.oxtrust.service.uma;
+
+/**
+ * JMX view of {@link RptIntrospectionCache} statistics
+ */
+public interface RptIntrospectionCacheMBean {
+
+	long getHits();
+
+	long getMisses();
+
+	double getHitRate();
+
+	int getSize();
+
+}
@@ -65,6 +65,9 @@ public class UmaPermissionService implements Serializable {
 	@Inject
 	private AppInitializer appInitializer;
 
+	@Inject
+	private RptIntrospectionCache rptIntrospectionCache;
+
 	private org.xdi.oxauth.client.uma.UmaPermissionService permissionService;
 	private UmaRptIntrospectionService rptStatusService;
 
@@ -145,12 +148,20 @@ public class UmaPermissionService implements Serializable {
     }
 
 	private RptIntrospectionResponse getStatusResponse(Token patToken, String rptToken) {
+		RptIntrospectionCache.CachedResult cached = rptIntrospectionCache.get(patToken.getAccessToken(), rptToken);
+		if (cached != null) {
+			log.trace("Using cached RPT status");
+			return cached.getResponse();
+		}
+
 		String authorization = "Bearer " + patToken.getAccessToken();
 
 		// Determine RPT token to status
         RptIntrospectionResponse rptStatusResponse = null;
 		try {
 			rptStatusResponse = this.rptStatusService.requestRptStatus(authorization, rptToken, "");
+			// Failed requests (exception or no response) are not cached, so they are retried next time
+			rptIntrospectionCache.put(patToken.getAccessToken(), rptToken, rptStatusResponse);
 		} catch (Exception ex) {
 			log.error("Failed to determine RPT status", ex);
 			ex.printStackTrace();
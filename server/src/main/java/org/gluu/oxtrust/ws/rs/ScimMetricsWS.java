@@ -0,0 +1,44 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ws.rs;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.gluu.oxtrust.service.scim2.ScimMetricsService;
+import org.gluu.oxtrust.service.scim2.interceptor.ScimAuthorization;
+
+import com.wordnik.swagger.annotations.Api;
+import com.wordnik.swagger.annotations.ApiOperation;
+
+/**
+ * This class implements the endpoint at which latency and throughput metrics of the SCIM service can be scraped. Output
+ * follows the Prometheus text exposition format. The same metrics are available over JMX (domain org.gluu.oxtrust.scim).
+ * Access requires the same authorization as SCIM endpoints
+ */
+@Named("scimMetricsRestWebService")
+@Path("/scim-metrics")
+@Api(value = "/scim-metrics", description = "Latency and throughput metrics of the SCIM service")
+public class ScimMetricsWS {
+
+    @Inject
+    private ScimMetricsService metricsService;
+
+    @GET
+    @Produces({MediaType.TEXT_PLAIN})
+    @ScimAuthorization
+    @ApiOperation(value = "Provides metrics of the SCIM service per endpoint and operation", response = String.class)
+    public Response getMetrics() {
+        return Response.ok(metricsService.getTextReport()).type("text/plain; version=0.0.4").build();
+    }
+
+}
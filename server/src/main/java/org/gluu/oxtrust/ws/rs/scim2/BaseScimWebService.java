@@ -20,6 +20,8 @@ import org.gluu.oxtrust.model.scim2.util.ResourceValidator;
 import org.gluu.oxtrust.model.scim2.util.ScimResourceUtil;
 import org.gluu.oxtrust.service.external.ExternalScimService;
 import org.gluu.oxtrust.service.scim2.ExtensionService;
+import org.gluu.oxtrust.service.scim2.ScimETagService;
+import org.gluu.oxtrust.service.scim2.ScimMetricsService;
 import org.gluu.oxtrust.service.scim2.serialization.ListResponseJsonSerializer;
 import org.gluu.oxtrust.service.scim2.serialization.ScimResourceSerializer;
 import org.joda.time.format.ISODateTimeFormat;
@@ -28,8 +30,11 @@ import org.xdi.config.oxtrust.AppConfiguration;
 import org.xdi.ldap.model.SortOrder;
 
 import javax.inject.Inject;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.*;
@@ -60,14 +65,37 @@ public class BaseScimWebService {
     @Inject
     ExternalScimService externalScimService;
 
+    @Inject
+    ScimETagService etagService;
+
+    @Inject
+    ScimMetricsService metricsService;
+
+    @Context
+    HttpHeaders httpHeaders;
+
+    @Context
+    UriInfo uriInfo;
+
     public static final String SEARCH_SUFFIX = ".search";
 
     String endpointUrl;
 
+    //Whether If-Match and If-None-Match headers of the request are honored
+    private boolean conditionalRequests=true;
+
     public String getEndpointUrl() {
         return endpointUrl;
     }
 
+    /**
+     * Makes this instance ignore the conditional headers of the request being processed. Used when the service is
+     * invoked on behalf of another request (e.g. the operations of a bulk request), whose headers do not apply
+     */
+    void disableConditionalRequests() {
+        conditionalRequests=false;
+    }
+
     public static Response getErrorResponse(Response.Status status, String detail) {
         return getErrorResponse(status.getStatusCode(), null, detail);
     }
@@ -95,10 +123,55 @@ public class BaseScimWebService {
     }
 
     String getValueFromHeaders(HttpHeaders headers, String name){
+        //headers are not injected when the service is invoked outside a JAX-RS request
+        if (headers==null)
+            return null;
         List<String> values=headers.getRequestHeaders().get(name);
         return (values==null || values.size()==0) ? null : values.get(0);
     }
 
+    String getQueryParam(String name){
+        //uriInfo is not injected when the service is invoked outside a JAX-RS request
+        return uriInfo==null ? null : uriInfo.getQueryParameters().getFirst(name);
+    }
+
+    boolean isIfMatchPresent(){
+        return conditionalRequests && getValueFromHeaders(httpHeaders, HttpHeaders.IF_MATCH)!=null;
+    }
+
+    /**
+     * Evaluates the If-None-Match header of the request being processed against the tag of the resource requested
+     * @param etag Current tag of the resource (see {@link ScimETagService})
+     * @return A 304 response if the header matches the tag, or null if the request has to be processed normally
+     */
+    Response getNotModifiedResponse(String etag){
+
+        String header=conditionalRequests ? getValueFromHeaders(httpHeaders, HttpHeaders.IF_NONE_MATCH) : null;
+        if (header!=null && etagService.matches(header, etag)) {
+            log.debug("Resource with tag {} has not been modified", etag);
+            return Response.notModified(new EntityTag(etag, true)).build();
+        }
+        return null;
+
+    }
+
+    /**
+     * Evaluates the If-Match header of the request being processed against the tag of the resource to be modified
+     * @param etag Current tag of the resource (see {@link ScimETagService})
+     * @return A 412 response if the header does not match the tag, or null if the request has to be processed normally
+     */
+    Response getPreconditionFailedResponse(String etag){
+
+        String header=conditionalRequests ? getValueFromHeaders(httpHeaders, HttpHeaders.IF_MATCH) : null;
+        if (header!=null && !etagService.matches(header, etag)) {
+            log.info("Resource version {} does not match {}", etag, header);
+            return getErrorResponse(Response.Status.PRECONDITION_FAILED, "Resource has been modified. Current version is "
+                    + etagService.getVersion(etag));
+        }
+        return null;
+
+    }
+
     protected boolean isAttributeRecognized(Class<? extends BaseScimResource> cls, String attribute){
 
         boolean valid;
@@ -187,16 +260,25 @@ public class BaseScimWebService {
 
     String getListResponseSerialized(int total, int startIndex, List<BaseScimResource> resources, String attrsList,
                                      String excludedAttrsList, boolean ignoreResults) throws IOException{
+        return getListResponseSerialized(total, startIndex, resources, attrsList, excludedAttrsList, ignoreResults, null);
+    }
+
+    String getListResponseSerialized(int total, int startIndex, List<BaseScimResource> resources, String attrsList,
+                                     String excludedAttrsList, boolean ignoreResults, String nextCursor) throws IOException{
 
         ListResponse listResponse = new ListResponse(startIndex, resources.size(), total);
         listResponse.setResources(resources);
+        listResponse.setNextCursor(nextCursor);
 
         ObjectMapper mapper = new ObjectMapper();
         SimpleModule module = new SimpleModule("ListResponseModule", Version.unknownVersion());
         module.addSerializer(ListResponse.class, new ListResponseJsonSerializer(resourceSerializer, attrsList, excludedAttrsList, ignoreResults));
         mapper.registerModule(module);
 
-        return mapper.writeValueAsString(listResponse);
+        long start=System.nanoTime();
+        String json=mapper.writeValueAsString(listResponse);
+        metricsService.recordStage(ScimMetricsService.Stage.SERIALIZATION, start);
+        return json;
 
     }
 
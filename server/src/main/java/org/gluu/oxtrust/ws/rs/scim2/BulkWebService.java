@@ -9,26 +9,43 @@ import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.ws.rs.*;
-import javax.ws.rs.core.Context;
-import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import com.wordnik.swagger.annotations.*;
 import org.apache.commons.lang.StringUtils;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonProcessingException;
+import org.codehaus.jackson.JsonToken;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.ObjectNode;
+import org.codehaus.jackson.node.TextNode;
 import org.gluu.oxtrust.model.scim2.ErrorScimType;
 import org.gluu.oxtrust.model.scim2.patch.PatchRequest;
 import org.gluu.oxtrust.model.scim2.bulk.BulkOperation;
-import org.gluu.oxtrust.model.scim2.bulk.BulkRequest;
 import org.gluu.oxtrust.model.scim2.bulk.BulkResponse;
 import org.gluu.oxtrust.model.scim2.fido.FidoDeviceResource;
 import org.gluu.oxtrust.model.scim2.group.GroupResource;
 import org.gluu.oxtrust.model.scim2.user.UserResource;
+import org.gluu.oxtrust.service.scim2.ScimExecutorService;
 import org.gluu.oxtrust.service.scim2.interceptor.ScimAuthorization;
+import org.gluu.oxtrust.service.scim2.interceptor.ScimMetered;
 import org.xdi.util.Pair;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -40,19 +57,33 @@ import static org.gluu.oxtrust.ws.rs.scim2.BulkWebService.Verb.*;
 
 /**
  * SCIM Bulk Endpoint Implementation
- * 
+ *
  * @author Rahat ALi Date: 05.08.2015
  * Re-engineered by jgomer on 2017-11-23.
  */
+/*
+ * The request body is read with a streaming parser, one operation at a time: every operation is parsed as a tree (its
+ * data is never turned into a string), validated, handed to the target web service and its result written to the
+ * response before the next one is read. Neither the whole request nor the whole BulkResponse is ever materialized, and
+ * the size of the body is checked as its bytes are read.
+ * As a consequence:
+ * - The 200 status is sent before the first operation runs. Only problems found before that point (e.g. a body that is
+ *   not a JSON object, or that has no operations) get an error status. An invalid operation gets an error result of its
+ *   own, and if the rest of the body turns out to be too large or malformed, this is reported as the result of one
+ *   last operation with no method nor bulkId, and processing stops
+ * - failOnErrors is only honored if it comes before the Operations array in the body (SCIM-Client sends it that way)
+ * Every operation result is still built in full by the target web service before it is written
+ */
 @Named("scim2BulkEndpoint")
 @Path("/scim/v2/Bulk")
+@ScimMetered
 @Api(value = "/v2/Bulk", description = "SCIM 2.0 Bulk Endpoint (https://tools.ietf.org/html/rfc7644#section-3.7)",
         authorizations = {@Authorization(value = "Authorization", type = "uma") })
 public class BulkWebService extends BaseScimWebService {
 
     enum Verb {POST, PUT, PATCH, DELETE}    //HTTP methods involved in bulk requests
 
-    private final Pattern bulkIdPattern= Pattern.compile("bulkId:(\\w+)");
+    private static final Pattern bulkIdPattern= Pattern.compile("bulkId:(\\w+)");
 
     private List<Verb> availableMethods;
     private ObjectMapper mapper=new ObjectMapper();
@@ -71,8 +102,8 @@ public class BulkWebService extends BaseScimWebService {
     @Inject
     private FidoDeviceWebService fidoDeviceWS;
 
-    @Context
-    private HttpHeaders httpHeaders;
+    @Inject
+    private ScimExecutorService executorService;
 
     @javax.ws.rs.POST
     @Consumes({MEDIA_TYPE_SCIM_JSON, MediaType.APPLICATION_JSON})
@@ -80,187 +111,331 @@ public class BulkWebService extends BaseScimWebService {
     @HeaderParam("Accept") @DefaultValue(MEDIA_TYPE_SCIM_JSON)
     @ScimAuthorization
     @ApiOperation(value = "Bulk Operations", notes = "Bulk Operations (https://tools.ietf.org/html/rfc7644#section-3.7)", response = BulkResponse.class)
-    public Response processBulkOperations(@ApiParam(value = "BulkRequest", required = true) BulkRequest request){
+    public void processBulkOperations(@ApiParam(value = "BulkRequest", required = true) final InputStream body,
+                                      @Suspended AsyncResponse asyncResponse){
+
+        //Bulk requests are processed (and their responses written) in a pool of their own, so that a burst of them
+        //cannot exhaust the container threads. When the pool is saturated, a 503 is returned
+        executorService.submit(ScimExecutorService.BULK_REQUESTS_POOL, asyncResponse, new Callable<Response>() {
+            public Response call() {
+                return processBulkOperations(body);
+            }
+        });
+
+    }
+
+    private Response processBulkOperations(InputStream body){
+
+        int contentLen;
+        try{
+            contentLen=Integer.valueOf(getValueFromHeaders(httpHeaders, "Content-Length"));
+        }
+        catch (Exception e){
+            contentLen=0;   //Unknown: the limit is enforced as the body is being read
+        }
+        if (contentLen > MAX_BULK_PAYLOAD_SIZE)
+            return getErrorResponse(REQUEST_ENTITY_TOO_LARGE, payloadExceededMessage());
+
+        Response response;
+        final JsonParser parser;
+        final int failOnErrors;
+        try {
+            parser=mapper.getJsonFactory().createJsonParser(new LimitedInputStream(body, MAX_BULK_PAYLOAD_SIZE));
+            Pair<Response, Integer> pair=readRequestStart(parser);
+            response=pair.getFirst();
+            failOnErrors=pair.getSecond();
+        }
+        catch (PayloadTooLargeException e){
+            return getErrorResponse(REQUEST_ENTITY_TOO_LARGE, payloadExceededMessage());
+        }
+        catch (Exception e){
+            log.error(e.getMessage(), e);
+            return getErrorResponse(BAD_REQUEST, ErrorScimType.INVALID_SYNTAX, e.getMessage());
+        }
 
-        Response response=prepareRequest(request, getValueFromHeaders(httpHeaders, "Content-Length"));
         if (response==null) {
             log.debug("Executing web service method. processBulkOperations");
 
-            int i, errors=0;
-            List<BulkOperation> operations=request.getOperations();
-            List<BulkOperation> responseOperations=new ArrayList<BulkOperation>();
-            Map<String, String> processedBulkIds=new HashMap<String, String>();
-
-            for (i=0;i<operations.size() && errors<request.getFailOnErrors();i++){
-
-                BulkOperation operation=operations.get(i);
-                BulkOperation operationResponse=new BulkOperation();
-                Response subResponse;
-
-                String method=operation.getMethod();
-                String bulkId=operation.getBulkId();
-                try {
-                    String path=operation.getPath();
-                    BaseScimWebService service=getWSForPath(path);
-                    String fragment=getFragment(path, service, processedBulkIds);
-                    Verb verb = Verb.valueOf(method);
-
-                    String data=operation.getDataStr();
-                    if (!verb.equals(DELETE))
-                        data = replaceBulkIds(data, processedBulkIds);
-
-                    Pair<Response, String> pair=execute(verb, service, data, fragment);
-                    String idCreated=pair.getSecond();
-                    subResponse=pair.getFirst();
-                    int status=subResponse.getStatus();
-
-                    if (familyOf(status).equals(SUCCESSFUL)) {
-                        if (!verb.equals(DELETE)) {
-                            if (verb.equals(POST)) {  //Update bulkIds
-                                processedBulkIds.put(bulkId, idCreated);
-                                fragment=idCreated;
-                            }
-                            String loc=service.getEndpointUrl() + "/" + fragment;
-                            operationResponse.setLocation(loc);
-                        }
+            StreamingOutput stream=new StreamingOutput() {
+                public void write(OutputStream output) throws IOException {
+                    try {
+                        writeBulkResponse(output, parser, failOnErrors);
                     }
-                    else {
-                        operationResponse.setResponse(subResponse.getEntity());
-                        errors+= familyOf(status).equals(CLIENT_ERROR) || familyOf(status).equals(SERVER_ERROR) ? 1 : 0;
+                    finally {
+                        parser.close();
                     }
-
-                    subResponse.close();
-                    operationResponse.setStatus(Integer.toString(status));
                 }
-                catch (Exception e) {
-                    log.error(e.getMessage(), e);
-                    subResponse=getErrorResponse(BAD_REQUEST, ErrorScimType.INVALID_SYNTAX, e.getMessage());
+            };
+            response=Response.ok(stream).build();
+        }
+        else
+            closeQuietly(parser);
 
-                    operationResponse.setStatus(Integer.toString(BAD_REQUEST.getStatusCode()));
-                    operationResponse.setResponse(subResponse.getEntity());
-                    errors++;
-                }
+        return response;
+
+    }
 
-                operationResponse.setBulkId(bulkId);
-                operationResponse.setMethod(method);
+    private void writeBulkResponse(OutputStream output, JsonParser parser, int failOnErrors) throws IOException{
 
-                responseOperations.add(operationResponse);
+        JsonGenerator jGen=mapper.getJsonFactory().createJsonGenerator(output, JsonEncoding.UTF8);
+        jGen.writeStartObject();
 
-                log.debug("Operation {} processed with status {}. Method {}, Accumulated errors {}", i+1, operationResponse.getStatus(), method, errors);
-            }
+        jGen.writeArrayFieldStart("schemas");
+        jGen.writeString(BULK_RESPONSE_SCHEMA_ID);
+        jGen.writeEndArray();
+
+        jGen.writeArrayFieldStart("Operations");
+
+        int i, errors=0;
+        Map<String, String> processedBulkIds=new HashMap<String, String>();
+
+        for (i=0; errors<failOnErrors; i++){
 
+            BulkOperation operationResponse;
+            boolean stop=false;
             try {
-                BulkResponse bulkResponse=new BulkResponse();
-                bulkResponse.setOperations(responseOperations);
+                JsonNode operation=readOperation(parser, i);
+                if (operation==null)
+                    break;
 
-                String json = mapper.writeValueAsString(bulkResponse);
-                response=Response.ok(json).build();
+                operationResponse=processOperation(operation, processedBulkIds);
             }
-            catch (Exception e){
-                log.error(e.getMessage(), e);
-                response=getErrorResponse(INTERNAL_SERVER_ERROR, e.getMessage());
+            catch (PayloadTooLargeException e) {
+                operationResponse=getReadErrorOperation(getErrorResponse(REQUEST_ENTITY_TOO_LARGE, e.getMessage()));
+                stop=true;
             }
+            catch (JsonProcessingException e) {
+                operationResponse=getReadErrorOperation(getErrorResponse(BAD_REQUEST, ErrorScimType.INVALID_SYNTAX, e.getMessage()));
+                stop=true;
+            }
+
+            int status=Integer.valueOf(operationResponse.getStatus());
+            errors+= familyOf(status).equals(CLIENT_ERROR) || familyOf(status).equals(SERVER_ERROR) ? 1 : 0;
+
+            //Send this result to the client right away
+            jGen.writeObject(operationResponse);
+            jGen.flush();
+
+            log.debug("Operation {} processed with status {}. Method {}, Accumulated errors {}", i+1, operationResponse.getStatus(),
+                    operationResponse.getMethod(), errors);
+            if (stop)
+                break;
         }
-        return response;
+
+        jGen.writeEndArray();
+        jGen.writeEndObject();
+        jGen.close();
 
     }
 
-    private Response prepareRequest(BulkRequest request, String contentLength){
+    private BulkOperation processOperation(JsonNode operation, Map<String, String> processedBulkIds){
+
+        BulkOperation operationResponse=new BulkOperation();
+        Response subResponse=prepareOperation(operation);
+
+        String method=textValue(operation, "method");
+        String bulkId=textValue(operation, "bulkId");
+        if (subResponse!=null) {
+            operationResponse.setStatus(Integer.toString(subResponse.getStatus()));
+            operationResponse.setResponse(subResponse.getEntity());
+        }
+        else
+        try {
+            String path=textValue(operation, "path");
+            BaseScimWebService service=getWSForPath(path);
+            String fragment=getFragment(path, service, processedBulkIds);
+            Verb verb = Verb.valueOf(method);
+
+            JsonNode data=operation.get("data");
+            if (!verb.equals(DELETE))
+                data = replaceBulkIds(data, processedBulkIds);
+
+            Pair<Response, String> pair=execute(verb, service, data, fragment);
+            String idCreated=pair.getSecond();
+            subResponse=pair.getFirst();
+            int status=subResponse.getStatus();
+
+            if (familyOf(status).equals(SUCCESSFUL)) {
+                if (!verb.equals(DELETE)) {
+                    if (verb.equals(POST)) {  //Update bulkIds
+                        processedBulkIds.put(bulkId, idCreated);
+                        fragment=idCreated;
+                    }
+                    String loc=service.getEndpointUrl() + "/" + fragment;
+                    operationResponse.setLocation(loc);
+                }
+            }
+            else
+                operationResponse.setResponse(subResponse.getEntity());
+
+            subResponse.close();
+            operationResponse.setStatus(Integer.toString(status));
+        }
+        catch (Exception e) {
+            log.error(e.getMessage(), e);
+            subResponse=getErrorResponse(BAD_REQUEST, ErrorScimType.INVALID_SYNTAX, e.getMessage());
+
+            operationResponse.setStatus(Integer.toString(BAD_REQUEST.getStatusCode()));
+            operationResponse.setResponse(subResponse.getEntity());
+        }
+
+        operationResponse.setBulkId(bulkId);
+        operationResponse.setMethod(method);
+        return operationResponse;
+
+    }
+
+    /**
+     * Builds the result reported when the rest of the request body cannot be read. Since the response status was sent
+     * before the first operation ran, the problem is reported as if it were the result of one more operation (with no
+     * method nor bulkId), and processing stops there
+     */
+    private BulkOperation getReadErrorOperation(Response error){
+
+        BulkOperation operationResponse=new BulkOperation();
+        operationResponse.setStatus(Integer.toString(error.getStatus()));
+        operationResponse.setResponse(error.getEntity());
+        return operationResponse;
+
+    }
+
+    /**
+     * Reads the bulk request body up to the first operation. Problems found here are still answered with an error
+     * status; from there on, operations are read and run one at a time (see {@link #readOperation(JsonParser, int)})
+     * @param parser Parser of the request body
+     * @return A Pair with an error response (null if the request is OK so far) and the failOnErrors value to use
+     * @throws Exception If the body is not syntactically valid JSON
+     */
+    private Pair<Response, Integer> readRequestStart(JsonParser parser) throws Exception{
 
         Response response=null;
+        Integer failOnErrors=null;
+        boolean operationsFound=false;
 
-        if (request.getFailOnErrors()==null)
-            request.setFailOnErrors(MAX_BULK_OPERATIONS);
+        if (parser.nextToken() != JsonToken.START_OBJECT)
+            throw new Exception("Bulk request body is expected to be a JSON object");
 
-        List<BulkOperation> operations=request.getOperations();
+        while (!operationsFound && parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
 
-        if (operations==null || operations.size()==0)
+            //"operations" is kept for backwards compatibility with SCIM-Client <= 3.1.2 (see BulkBase class)
+            if ((field.equals("Operations") || field.equals("operations")) && token == JsonToken.START_ARRAY)
+                //Leave the parser at the first operation
+                operationsFound = parser.nextToken() != JsonToken.END_ARRAY;
+            else
+            if (field.equals("failOnErrors") && token.isNumeric())
+                failOnErrors = parser.getIntValue();
+            else
+                parser.skipChildren();
+        }
+
+        if (!operationsFound)
             response=getErrorResponse(BAD_REQUEST, ErrorScimType.INVALID_VALUE, "No operations supplied");
-        else {
 
-            int contentLen;
-            try{
-//log.debug("CONT LEN {}", contentLength);
-                contentLen=Integer.valueOf(contentLength);
-            }
-            catch (Exception e){
-                contentLen=MAX_BULK_PAYLOAD_SIZE;
-            }
+        return new Pair<Response, Integer>(response, failOnErrors==null ? MAX_BULK_OPERATIONS : failOnErrors);
+
+    }
 
-            boolean payloadExceeded=contentLen > MAX_BULK_PAYLOAD_SIZE;
-            boolean operationsExceeded=operations.size() > MAX_BULK_OPERATIONS;
-            StringBuilder sb=new StringBuilder();
+    /**
+     * Reads the next operation of the Operations array
+     * @param parser Parser of the request body, positioned at the first token of the operation or at the end of the array
+     * @param index 0-based index of the operation
+     * @return The operation as a tree, or null if there are no more operations. The parser is left at the first token
+     * of the operation that follows
+     * @throws PayloadTooLargeException If the operation exceeds the limits of bulk requests
+     * @throws JsonProcessingException If the body is not syntactically valid JSON
+     */
+    private JsonNode readOperation(JsonParser parser, int index) throws IOException{
+
+        if (parser.getCurrentToken() == JsonToken.END_ARRAY)
+            return null;
+        if (index == MAX_BULK_OPERATIONS)
+            throw new PayloadTooLargeException("The number of operations exceed the maxOperations value (" + MAX_BULK_OPERATIONS + "). ");
 
-            if (payloadExceeded)
-                sb.append("The size of the bulk operation exceeds the maxPayloadSize (").
-                        append(MAX_BULK_PAYLOAD_SIZE).append(" bytes). ");
-            if (operationsExceeded)
-                sb.append("The number of operations exceed the maxOperations value (").
-                        append(MAX_BULK_OPERATIONS).append("). ");
+        JsonNode operation = parser.readValueAsTree();
+        if (parser.nextToken() == null)
+            throw new JsonParseException("Unexpected end of bulk request body", parser.getCurrentLocation());
+        return operation;
 
-            if (sb.length()>0)
-                response=getErrorResponse(REQUEST_ENTITY_TOO_LARGE, sb.toString());
+    }
+
+    private void closeQuietly(JsonParser parser){
+        try {
+            parser.close();
         }
-        if (response==null) {
-            try {
+        catch (IOException e){
+            log.debug(e.getMessage());
+        }
+    }
 
-                for (BulkOperation operation : operations) {
+    private static String payloadExceededMessage(){
+        return "The size of the bulk operation exceeds the maxPayloadSize (" + MAX_BULK_PAYLOAD_SIZE + " bytes). ";
+    }
 
-                    if (operation==null)
-                        throw new Exception("An operation passed was found to be null");
+    private Response prepareOperation(JsonNode operation){
 
-                    String path = operation.getPath();
-                    if (StringUtils.isEmpty(path))
-                        throw new Exception("path parameter is required");
+        Response response=null;
+        try {
+            if (operation==null || !operation.isObject())
+                throw new Exception("An operation passed was found to be null");
 
-                    path=adjustPath(path);
-                    operation.setPath(path);
+            ObjectNode node=(ObjectNode) operation;
+            String path = textValue(node, "path");
+            if (StringUtils.isEmpty(path))
+                throw new Exception("path parameter is required");
 
-                    String method = operation.getMethod();
-                    if (StringUtils.isNotEmpty(method)) {
-                        method = method.toUpperCase();
-                        operation.setMethod(method);
-                    }
+            path=adjustPath(path);
+            node.put("path", path);
 
-                    Verb verb = Verb.valueOf(method);
-                    if (!availableMethods.contains(verb))
-                        throw new Exception("method not recognized: " + method);
-
-                    //Check if path passed is consistent with respect to method:
-                    List<String> availableEndpoints=Arrays.asList(usersEndpoint, groupsEndpoint, fidodevicesEndpoint);
-                    boolean consistent = false;
-                    for (String endpoint : availableEndpoints) {
-                        if (verb.equals(POST))
-                            consistent = path.equals(endpoint);
-                        else   //Checks if there is something after the additional slash
-                            consistent = path.startsWith(endpoint + "/") && (path.length() > endpoint.length() + 1);
-
-                        if (consistent)
-                            break;
-                    }
-                    if (!consistent)
-                        throw new Exception("path parameter is not consistent with method " + method);
-
-                    //Check if bulkId must be present
-                    String bulkId = operation.getBulkId();
-                    if (StringUtils.isEmpty(bulkId) && verb.equals(POST))
-                        throw new Exception("bulkId parameter is required for method " + method);
-
-                    //Check if data must be present
-                    String data=operation.getDataStr();
-                    List<Verb> dataMethods=Arrays.asList(POST, PUT, PATCH);
-                    if (dataMethods.contains(verb) && StringUtils.isEmpty(data))
-                        throw new Exception("data parameter is required for method " + method);
-                }
+            String method = textValue(node, "method");
+            if (StringUtils.isNotEmpty(method)) {
+                method = method.toUpperCase();
+                node.put("method", method);
             }
-            catch (Exception e) {
-                response=getErrorResponse(BAD_REQUEST, ErrorScimType.INVALID_SYNTAX, e.getMessage());
+
+            Verb verb = Verb.valueOf(method);
+            if (!availableMethods.contains(verb))
+                throw new Exception("method not recognized: " + method);
+
+            //Check if path passed is consistent with respect to method:
+            List<String> availableEndpoints=Arrays.asList(usersEndpoint, groupsEndpoint, fidodevicesEndpoint);
+            boolean consistent = false;
+            for (String endpoint : availableEndpoints) {
+                if (verb.equals(POST))
+                    consistent = path.equals(endpoint);
+                else   //Checks if there is something after the additional slash
+                    consistent = path.startsWith(endpoint + "/") && (path.length() > endpoint.length() + 1);
+
+                if (consistent)
+                    break;
             }
+            if (!consistent)
+                throw new Exception("path parameter is not consistent with method " + method);
+
+            //Check if bulkId must be present
+            String bulkId = textValue(node, "bulkId");
+            if (StringUtils.isEmpty(bulkId) && verb.equals(POST))
+                throw new Exception("bulkId parameter is required for method " + method);
+
+            //Check if data must be present
+            JsonNode data=node.get("data");
+            List<Verb> dataMethods=Arrays.asList(POST, PUT, PATCH);
+            if (dataMethods.contains(verb) && (data==null || data.isNull()))
+                throw new Exception("data parameter is required for method " + method);
+        }
+        catch (Exception e) {
+            response=getErrorResponse(BAD_REQUEST, ErrorScimType.INVALID_SYNTAX, e.getMessage());
         }
         return response;
 
     }
 
+    private String textValue(JsonNode node, String field){
+        JsonNode value=node.get(field);
+        return (value==null || value.isNull()) ? null : value.asText();
+    }
+
     private BaseScimWebService getWSForPath(String path){
         if (path.startsWith(usersEndpoint))
             return userWS;
@@ -284,7 +459,7 @@ public class BulkWebService extends BaseScimWebService {
         return replaceBulkIds(frag, idsMap);
     }
 
-    private String replaceBulkIds(String str, Map<String, String> idsMap) throws Exception{
+    static String replaceBulkIds(String str, Map<String, String> idsMap) throws Exception{
 
         Matcher m=bulkIdPattern.matcher(str);
         StringBuffer sb = new StringBuffer();
@@ -304,7 +479,52 @@ public class BulkWebService extends BaseScimWebService {
 
     }
 
-    private Pair<Response, String> execute(Verb verb, BaseScimWebService ws, String data, String fragment) {
+    /**
+     * Replaces bulkId references found in the textual values of the tree passed (the tree is modified in place)
+     * @param node Root of the tree to inspect
+     * @param idsMap Mapping of bulkIds to ids of resources already created
+     * @return The same node received
+     * @throws Exception If an unknown bulkId is referenced
+     */
+    static JsonNode replaceBulkIds(JsonNode node, Map<String, String> idsMap) throws Exception{
+
+        if (node!=null) {
+            if (node.isObject()) {
+                ObjectNode objNode = (ObjectNode) node;
+                List<String> fields = new ArrayList<String>();
+                for (Iterator<String> it = objNode.getFieldNames(); it.hasNext(); )
+                    fields.add(it.next());
+
+                for (String field : fields) {
+                    JsonNode value = objNode.get(field);
+                    if (value.isTextual())
+                        objNode.put(field, replaceBulkIds(value.getTextValue(), idsMap));
+                    else
+                        replaceBulkIds(value, idsMap);
+                }
+            }
+            else
+            if (node.isArray()) {
+                ArrayNode arrNode = (ArrayNode) node;
+                for (int i = 0; i < arrNode.size(); i++) {
+                    JsonNode value = arrNode.get(i);
+                    if (value.isTextual())
+                        arrNode.set(i, TextNode.valueOf(replaceBulkIds(value.getTextValue(), idsMap)));
+                    else
+                        replaceBulkIds(value, idsMap);
+                }
+            }
+        }
+        return node;
+
+    }
+
+    private String getCreatedId(Response response) throws Exception{
+        //Responses of POST in bulk only contain the id attribute (see calls in execute method)
+        return mapper.readTree(response.getEntity().toString()).get("id").getTextValue();
+    }
+
+    private Pair<Response, String> execute(Verb verb, BaseScimWebService ws, JsonNode data, String fragment) {
 
         Response response=null;
         String idCreated=null;
@@ -326,10 +546,8 @@ public class BulkWebService extends BaseScimWebService {
                     case POST:
                         user=mapper.readValue(data, UserResource.class);
                         response=userWS.createUser(user, "id", null);
-                        if (CREATED.getStatusCode()==response.getStatus()) {
-                            user = mapper.readValue(response.getEntity().toString(), UserResource.class);
-                            idCreated = user.getId();
-                        }
+                        if (CREATED.getStatusCode()==response.getStatus())
+                            idCreated = getCreatedId(response);
                         break;
                 }
 
@@ -350,10 +568,8 @@ public class BulkWebService extends BaseScimWebService {
                     case POST:
                         group=mapper.readValue(data, GroupResource.class);
                         response=groupWS.createGroup(group, "id", null);
-                        if (CREATED.getStatusCode()==response.getStatus()) {
-                            group = mapper.readValue(response.getEntity().toString(), GroupResource.class);
-                            idCreated = group.getId();
-                        }
+                        if (CREATED.getStatusCode()==response.getStatus())
+                            idCreated = getCreatedId(response);
                         break;
                 }
 
@@ -390,10 +606,75 @@ public class BulkWebService extends BaseScimWebService {
         endpointUrl=appConfiguration.getBaseEndpoint() + BulkWebService.class.getAnnotation(Path.class).value();
         availableMethods= Arrays.asList(Verb.values());
 
+        //Conditional headers sent along the bulk request do not refer to the resources of its operations
+        userWS.disableConditionalRequests();
+        groupWS.disableConditionalRequests();
+
         usersEndpoint=userWS.getEndpointUrl();
         groupsEndpoint=groupWS.getEndpointUrl();
         fidodevicesEndpoint=fidoDeviceWS.getEndpointUrl();
         commonWsEndpointPrefix=usersEndpoint.substring(0, usersEndpoint.lastIndexOf("/"));
     }
 
+    /**
+     * Signals that a bulk request exceeds the limits advertised in the service provider configuration
+     */
+    static class PayloadTooLargeException extends IOException {
+
+        PayloadTooLargeException(String message) {
+            super(message);
+        }
+
+    }
+
+    /**
+     * Counts the bytes read from a stream, and fails as soon as they exceed a limit. This way a request body that is too
+     * large is rejected without being read (or buffered) in full, regardless of the Content-Length header
+     */
+    static class LimitedInputStream extends FilterInputStream {
+
+        private final long limit;
+        private long count;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit=limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b=super.read();
+            if (b!=-1)
+                count(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte b[], int off, int len) throws IOException {
+            int n=super.read(b, off, len);
+            if (n>0)
+                count(n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped=super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void count(long n) throws PayloadTooLargeException {
+            count+=n;
+            if (count>limit)
+                throw new PayloadTooLargeException(payloadExceededMessage());
+        }
+
+    }
+
 }
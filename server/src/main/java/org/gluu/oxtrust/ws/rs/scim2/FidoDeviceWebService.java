@@ -18,7 +18,9 @@ import org.gluu.oxtrust.model.scim2.util.DateUtil;
 import org.gluu.oxtrust.model.scim2.util.ScimResourceUtil;
 import org.gluu.oxtrust.service.antlr.scimFilter.ScimFilterParserService;
 import org.gluu.oxtrust.service.antlr.scimFilter.util.FilterUtil;
+import org.gluu.oxtrust.service.scim2.ScimCountCache;
 import org.gluu.oxtrust.service.scim2.interceptor.ScimAuthorization;
+import org.gluu.oxtrust.service.scim2.interceptor.ScimMetered;
 import org.gluu.oxtrust.service.scim2.interceptor.RefAdjusted;
 import org.gluu.site.ldap.persistence.LdapEntryManager;
 import org.joda.time.format.ISODateTimeFormat;
@@ -50,6 +52,7 @@ import static org.gluu.oxtrust.model.scim2.Constants.*;
  */
 @Named("scim2FidoDeviceEndpoint")
 @Path("/scim/v2/FidoDevices")
+@ScimMetered
 public class FidoDeviceWebService extends BaseScimWebService implements IFidoDeviceWebService {
 
     @Inject
@@ -64,6 +67,9 @@ public class FidoDeviceWebService extends BaseScimWebService implements IFidoDev
     @Inject
     private LdapEntryManager ldapEntryManager;
 
+    @Inject
+    private ScimCountCache countCache;
+
     @POST
     @Consumes({MEDIA_TYPE_SCIM_JSON, MediaType.APPLICATION_JSON})
     @Produces({MEDIA_TYPE_SCIM_JSON + UTF8_CHARSET_FRAGMENT, MediaType.APPLICATION_JSON + UTF8_CHARSET_FRAGMENT})
@@ -182,6 +188,7 @@ public class FidoDeviceWebService extends BaseScimWebService implements IFidoDev
             GluuCustomFidoDevice device = fidoDeviceService.getGluuCustomFidoDeviceById(null, id);
             if (device != null) {
                 fidoDeviceService.removeGluuCustomFidoDevice(device);
+                countCache.invalidate(GluuCustomFidoDevice.class);
                 response = Response.noContent().build();
             }
             else
@@ -214,10 +221,17 @@ public class FidoDeviceWebService extends BaseScimWebService implements IFidoDev
         try {
             log.debug("Executing web service method. searchDevices");
 
-            VirtualListViewResponse vlv = new VirtualListViewResponse();
-            List<BaseScimResource> resources = searchDevices(filter, sortBy, SortOrder.getByValue(sortOrder), startIndex, count, vlv, endpointUrl);
+            String json;
+            if (count==0)
+                //Only the total is requested: no need to retrieve entries
+                json = getListResponseSerialized(countDevices(filter), startIndex, new ArrayList<BaseScimResource>(), attrsList,
+                        excludedAttrsList, true);
+            else {
+                VirtualListViewResponse vlv = new VirtualListViewResponse();
+                List<BaseScimResource> resources = searchDevices(filter, sortBy, SortOrder.getByValue(sortOrder), startIndex, count, vlv, endpointUrl);
 
-            String json = getListResponseSerialized(vlv.getTotalResults(), startIndex, resources, attrsList, excludedAttrsList, count==0);
+                json = getListResponseSerialized(vlv.getTotalResults(), startIndex, resources, attrsList, excludedAttrsList, false);
+            }
             response=Response.ok(json).location(new URI(endpointUrl)).build();
         }
         catch (SCIMException e){
@@ -327,7 +341,7 @@ public class FidoDeviceWebService extends BaseScimWebService implements IFidoDev
         return deviceDn.substring(deviceDn.indexOf("inum=")+5);
     }
 
-    private List<BaseScimResource> searchDevices(String filter, String sortBy, SortOrder sortOrder, int startIndex,
+    public List<BaseScimResource> searchDevices(String filter, String sortBy, SortOrder sortOrder, int startIndex,
                                                     int count, VirtualListViewResponse vlvResponse, String url) throws Exception {
 
         Filter ldapFilter=scimFilterParserService.createLdapFilter(filter, "oxId=*", FidoDeviceResource.class);
@@ -351,6 +365,27 @@ public class FidoDeviceWebService extends BaseScimWebService implements IFidoDev
 
     }
 
+    /**
+     * Computes the number of fido devices matching the SCIM filter passed. No attribute data is retrieved from LDAP, and
+     * recent results are served from {@link ScimCountCache} when it is enabled
+     * @param filter A SCIM filter expression (may be null)
+     * @return Number of matching entries
+     * @throws Exception If the filter is invalid or the search fails
+     */
+    public int countDevices(String filter) throws Exception{
+
+        Filter ldapFilter=scimFilterParserService.createLdapFilter(filter, "oxId=*", FidoDeviceResource.class);
+        Integer total=countCache.get(GluuCustomFidoDevice.class, ldapFilter);
+
+        if (total==null) {
+            log.info("Counting fido devices using: ldapfilter '{}'", ldapFilter.toString());
+            total=ldapEntryManager.countEntries(fidoDeviceService.getDnForFidoDevice(null, null), GluuCustomFidoDevice.class, ldapFilter);
+            countCache.put(GluuCustomFidoDevice.class, ldapFilter, total);
+        }
+        return total;
+
+    }
+
     @Path("{id}")
     @PATCH
     @Consumes({MEDIA_TYPE_SCIM_JSON, MediaType.APPLICATION_JSON})
@@ -10,6 +10,8 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.management.InvalidAttributeValueException;
 import javax.ws.rs.*;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
@@ -17,16 +19,19 @@ import com.wordnik.swagger.annotations.Api;
 import com.wordnik.swagger.annotations.ApiOperation;
 import com.wordnik.swagger.annotations.ApiParam;
 import com.wordnik.swagger.annotations.Authorization;
+import org.gluu.oxtrust.exception.InvalidCursorException;
 import org.gluu.oxtrust.ldap.service.IGroupService;
 import org.gluu.oxtrust.model.GluuGroup;
 import org.gluu.oxtrust.model.exception.SCIMException;
 import org.gluu.oxtrust.model.scim2.*;
 import org.gluu.oxtrust.model.scim2.group.GroupResource;
-import org.gluu.oxtrust.model.scim2.patch.PatchOperation;
 import org.gluu.oxtrust.model.scim2.patch.PatchRequest;
 import org.gluu.oxtrust.service.scim2.Scim2GroupService;
 import org.gluu.oxtrust.service.scim2.Scim2PatchService;
+import org.gluu.oxtrust.service.scim2.ScimCountCache;
+import org.gluu.oxtrust.service.scim2.ScimCursorService;
 import org.gluu.oxtrust.service.scim2.interceptor.ScimAuthorization;
+import org.gluu.oxtrust.service.scim2.interceptor.ScimMetered;
 import org.gluu.oxtrust.service.scim2.interceptor.RefAdjusted;
 import org.joda.time.format.ISODateTimeFormat;
 import org.xdi.ldap.model.SortOrder;
@@ -34,9 +39,12 @@ import org.xdi.ldap.model.VirtualListViewResponse;
 import org.xdi.util.Pair;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import static org.gluu.oxtrust.model.scim2.Constants.*;
+import static org.gluu.oxtrust.service.scim2.ScimMetricsService.Stage.*;
 
 /**
  * Implementation of /Groups endpoint. Methods here are intercepted and/or decorated.
@@ -48,6 +56,7 @@ import static org.gluu.oxtrust.model.scim2.Constants.*;
  */
 @Named("scim2GroupEndpoint")
 @Path("/scim/v2/Groups")
+@ScimMetered
 @Api(value = "/v2/Groups", description = "SCIM 2.0 Group Endpoint (https://tools.ietf.org/html/rfc7644#section-3.2)",
         authorizations = {@Authorization(value = "Authorization", type = "uma")})
 public class GroupWebService extends BaseScimWebService implements IGroupWebService {
@@ -64,6 +73,9 @@ public class GroupWebService extends BaseScimWebService implements IGroupWebServ
     @Inject
     private Scim2PatchService scim2PatchService;
 
+    @Inject
+    private ScimCountCache countCache;
+
     @POST
     @Consumes({MEDIA_TYPE_SCIM_JSON, MediaType.APPLICATION_JSON})
     @Produces({MEDIA_TYPE_SCIM_JSON + UTF8_CHARSET_FRAGMENT, MediaType.APPLICATION_JSON + UTF8_CHARSET_FRAGMENT})
@@ -115,11 +127,23 @@ public class GroupWebService extends BaseScimWebService implements IGroupWebServ
             log.debug("Executing web service method. getGroupById");
 
             GroupResource group=new GroupResource();
-            GluuGroup gluuGroup=groupService.getGroupByInum(id);  //gluuGroup is not null (check associated decorator method)
-            scim2GroupService.transferAttributesToGroupResource(gluuGroup, group, endpointUrl, userWebService.getEndpointUrl());
-
-            String json=resourceSerializer.serialize(group, attrsList, excludedAttrsList);
-            response=Response.ok(new URI(group.getMeta().getLocation())).entity(json).build();
+            //The whole entry is read: the tag of the resource is computed from its contents (see ScimETagService)
+            //gluuGroup is not null (check associated decorator method)
+            long start=System.nanoTime();
+            GluuGroup gluuGroup=groupService.getGroupByInum(id);
+            metricsService.recordStage(LDAP, start);
+
+            //Answer conditional requests before any mapping or serialization takes place
+            String etag=etagService.getETag(gluuGroup);
+            response=getNotModifiedResponse(etag);
+            if (response==null) {
+                start=System.nanoTime();
+                scim2GroupService.transferAttributesToGroupResource(gluuGroup, group, endpointUrl, userWebService.getEndpointUrl());
+                metricsService.recordStage(MAPPING, start);
+
+                String json=resourceSerializer.serialize(group, attrsList, excludedAttrsList);
+                response=Response.ok(new URI(group.getMeta().getLocation())).entity(json).tag(new EntityTag(etag, true)).build();
+            }
         }
         catch (Exception e){
             log.error("Failure at getGroupById method", e);
@@ -151,7 +175,16 @@ public class GroupWebService extends BaseScimWebService implements IGroupWebServ
         Response response;
         try {
             log.debug("Executing web service method. updateGroup");
-            Pair<GluuGroup, GroupResource> pair=scim2GroupService.updateGroup(id, group, endpointUrl, userWebService.getEndpointUrl());
+            long start=System.nanoTime();
+            GluuGroup gluuGroup=groupService.getGroupByInum(id);  //group is not null (check associated decorator method)
+            metricsService.recordStage(LDAP, start);
+
+            if (isIfMatchPresent()) {
+                Response preconditionFailed=getPreconditionFailedResponse(etagService.getETag(gluuGroup));
+                if (preconditionFailed!=null)
+                    return preconditionFailed;
+            }
+            Pair<GluuGroup, GroupResource> pair=scim2GroupService.updateGroup(gluuGroup, group, endpointUrl, userWebService.getEndpointUrl());
 
             // For custom script: update group
             if (externalScimService.isEnabled()) {
@@ -160,7 +193,8 @@ public class GroupWebService extends BaseScimWebService implements IGroupWebServ
 
             GroupResource updatedResource=pair.getSecond();
             String json=resourceSerializer.serialize(updatedResource, attrsList, excludedAttrsList);
-            response=Response.ok(new URI(updatedResource.getMeta().getLocation())).entity(json).build();
+            response=Response.ok(new URI(updatedResource.getMeta().getLocation())).entity(json)
+                    .header(HttpHeaders.ETAG, updatedResource.getMeta().getVersion()).build();
         }
         catch (InvalidAttributeValueException e){
             log.error(e.getMessage());
@@ -187,13 +221,22 @@ public class GroupWebService extends BaseScimWebService implements IGroupWebServ
             log.debug("Executing web service method. deleteGroup");
             GluuGroup group=groupService.getGroupByInum(id);  //group cannot be null (check associated decorator method)
 
+            if (isIfMatchPresent()) {
+                Response preconditionFailed=getPreconditionFailedResponse(etagService.getETag(group));
+                if (preconditionFailed!=null)
+                    return preconditionFailed;
+            }
+
             // For custom script: delete group. Execute before actual deletion
             if (externalScimService.isEnabled()) {
                 externalScimService.executeScimDeleteGroupMethods(group);
             }
 
             log.info("Removing group and updating user's entries");
+            long start=System.nanoTime();
             groupService.removeGroup(group);
+            metricsService.recordStage(LDAP, start);
+            countCache.invalidate(GluuGroup.class);
 
             response=Response.noContent().build();
         }
@@ -220,17 +263,44 @@ public class GroupWebService extends BaseScimWebService implements IGroupWebServ
             @QueryParam(QUERY_PARAM_ATTRIBUTES) String attrsList,
             @QueryParam(QUERY_PARAM_EXCLUDED_ATTRS) String excludedAttrsList) {
 
+        //The cursor is not part of the method signature so that IGroupWebService remains compatible with existing clients
+        return searchGroups(filter, startIndex, count, sortBy, sortOrder, attrsList, excludedAttrsList, getQueryParam(QUERY_PARAM_CURSOR));
+
+    }
+
+    private Response searchGroups(String filter, Integer startIndex, Integer count, String sortBy, String sortOrder, String attrsList,
+                        String excludedAttrsList, String cursor){
+
         Response response;
         try {
             log.debug("Executing web service method. searchGroups");
 
-            VirtualListViewResponse vlv = new VirtualListViewResponse();
-            List<BaseScimResource> resources = scim2GroupService.searchGroups(filter, sortBy, SortOrder.getByValue(sortOrder),
-                    startIndex, count, vlv, endpointUrl, userWebService.getEndpointUrl(), getMaxCount());
+            String json;
+            String ldapAttrs[] = resourceSerializer.getLdapReturnAttributes(GroupResource.class, attrsList, excludedAttrsList);
+            if (count==0)
+                //Only the total is requested: no need to retrieve entries
+                json = getListResponseSerialized(scim2GroupService.countGroups(filter), startIndex, new ArrayList<BaseScimResource>(),
+                        attrsList, excludedAttrsList, true);
+            else
+            if (cursor!=null) {
+                ScimCursorService.Page<BaseScimResource> page = scim2GroupService.searchGroups(filter, cursor, count, endpointUrl,
+                        userWebService.getEndpointUrl(), ldapAttrs);
+                json = getListResponseSerialized(page.getTotalResults(), page.getStartIndex(), page.getEntries(), attrsList,
+                        excludedAttrsList, false, page.getNextCursor());
+            }
+            else {
+                VirtualListViewResponse vlv = new VirtualListViewResponse();
+                List<BaseScimResource> resources = scim2GroupService.searchGroups(filter, sortBy, SortOrder.getByValue(sortOrder),
+                        startIndex, count, vlv, endpointUrl, userWebService.getEndpointUrl(), getMaxCount(), ldapAttrs);
 
-            String json = getListResponseSerialized(vlv.getTotalResults(), startIndex, resources, attrsList, excludedAttrsList, count==0);
+                json = getListResponseSerialized(vlv.getTotalResults(), startIndex, resources, attrsList, excludedAttrsList, false);
+            }
             response=Response.ok(json).location(new URI(endpointUrl)).build();
         }
+        catch (InvalidCursorException e){
+            log.error(e.getMessage());
+            response=getErrorResponse(Response.Status.BAD_REQUEST, ErrorScimType.INVALID_CURSOR, e.getMessage());
+        }
         catch (SCIMException e){
             log.error(e.getMessage(), e);
             response=getErrorResponse(Response.Status.BAD_REQUEST, ErrorScimType.INVALID_FILTER, e.getMessage());
@@ -258,7 +328,8 @@ public class GroupWebService extends BaseScimWebService implements IGroupWebServ
         //Calling searchGroups here does not provoke that method's interceptor/decorator being called (only this one's)
         URI uri=null;
         Response response = searchGroups(searchRequest.getFilter(), searchRequest.getStartIndex(), searchRequest.getCount(),
-                searchRequest.getSortBy(), searchRequest.getSortOrder(), searchRequest.getAttributesStr(), searchRequest.getExcludedAttributesStr());
+                searchRequest.getSortBy(), searchRequest.getSortOrder(), searchRequest.getAttributesStr(), searchRequest.getExcludedAttributesStr(),
+                searchRequest.getCursor());
 
         try {
             uri = new URI(endpointUrl + "/" + SEARCH_SUFFIX);
@@ -292,31 +363,46 @@ public class GroupWebService extends BaseScimWebService implements IGroupWebServ
             GroupResource group=new GroupResource();
             GluuGroup gluuGroup=groupService.getGroupByInum(id);  //group is not null (check associated decorator method)
 
+            if (isIfMatchPresent()) {
+                Response preconditionFailed=getPreconditionFailedResponse(etagService.getETag(gluuGroup));
+                if (preconditionFailed!=null)
+                    return preconditionFailed;
+            }
+
             //Fill group instance with all info from gluuGroup
             scim2GroupService.transferAttributesToGroupResource(gluuGroup, group, endpointUrl, usersUrl);
 
-            //Apply patches one by one in sequence
-            for (PatchOperation po : request.getOperations())
-                group=(GroupResource) scim2PatchService.applyPatchOperation(group, po);
+            //Apply patches in sequence upon a single representation of the group
+            Pair<BaseScimResource, Set<String>> patched=scim2PatchService.applyPatchOperations(group, request.getOperations());
+            group=(GroupResource) patched.getFirst();
 
             //Throws exception if final representation does not pass overall validation
             log.debug("patchGroup. Revising final resource representation still passes validations");
             executeDefaultValidation(group);
 
-            //Update timestamp
-            String now=ISODateTimeFormat.dateTime().withZoneUTC().print(System.currentTimeMillis());
-            group.getMeta().setLastModified(now);
-
-            //Replaces the information found in gluuGroup with the contents of group
-            scim2GroupService.replaceGroupInfo(gluuGroup, group, usersUrl);
-
-            // For custom script: update group
-            if (externalScimService.isEnabled()) {
-                externalScimService.executeScimUpdateGroupMethods(gluuGroup);
+            Set<String> touched=patched.getSecond();
+            if (touched.isEmpty()) {
+                log.debug("patchGroup. No attributes were targeted by the operations, skipping update");
+                group.getMeta().setVersion(etagService.getVersion(etagService.getETag(gluuGroup)));
+            }
+            else {
+                //Update timestamp
+                String now=ISODateTimeFormat.dateTime().withZoneUTC().print(System.currentTimeMillis());
+                group.getMeta().setLastModified(now);
+
+                //Replaces the information found in gluuGroup with the contents of group. Members of the group need to
+                //be synced only if the membership was targeted
+                scim2GroupService.replaceGroupInfo(gluuGroup, group, usersUrl, touched.contains("members"));
+
+                // For custom script: update group
+                if (externalScimService.isEnabled()) {
+                    externalScimService.executeScimUpdateGroupMethods(gluuGroup);
+                }
             }
 
             String json=resourceSerializer.serialize(group, attrsList, excludedAttrsList);
-            response=Response.ok(new URI(group.getMeta().getLocation())).entity(json).build();
+            response=Response.ok(new URI(group.getMeta().getLocation())).entity(json)
+                    .header(HttpHeaders.ETAG, group.getMeta().getVersion()).build();
         }
         catch (InvalidAttributeValueException e){
             log.error(e.getMessage(), e);
@@ -7,37 +7,51 @@ package org.gluu.oxtrust.ws.rs.scim2;
 
 import com.wordnik.swagger.annotations.ApiOperation;
 import com.wordnik.swagger.annotations.ApiParam;
-import org.codehaus.jackson.JsonNode;
+import org.apache.commons.lang.StringUtils;
 import org.codehaus.jackson.Version;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.map.module.SimpleModule;
+import org.gluu.oxtrust.model.exception.SCIMException;
+import org.gluu.oxtrust.model.scim2.BaseScimResource;
 import org.gluu.oxtrust.model.scim2.ListResponse;
 import org.gluu.oxtrust.model.scim2.SearchRequest;
 import org.gluu.oxtrust.model.scim2.fido.FidoDeviceResource;
 import org.gluu.oxtrust.model.scim2.group.GroupResource;
 import org.gluu.oxtrust.model.scim2.user.UserResource;
 import org.gluu.oxtrust.model.scim2.util.ScimResourceUtil;
+import org.gluu.oxtrust.service.scim2.Scim2GroupService;
+import org.gluu.oxtrust.service.scim2.Scim2UserService;
+import org.gluu.oxtrust.service.scim2.ScimExecutorService;
+import org.gluu.oxtrust.service.scim2.ScimMetricsService;
 import org.gluu.oxtrust.service.scim2.interceptor.ScimAuthorization;
+import org.gluu.oxtrust.service.scim2.interceptor.ScimMetered;
 import org.gluu.oxtrust.service.scim2.interceptor.RefAdjusted;
 import org.gluu.oxtrust.service.scim2.serialization.ListResponseJsonSerializer;
+import org.xdi.ldap.model.SortOrder;
+import org.xdi.ldap.model.VirtualListViewResponse;
 import org.xdi.util.Pair;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import static org.gluu.oxtrust.model.scim2.Constants.*;
 
-import static javax.ws.rs.core.Response.Status.OK;
-
 /**
  * Implementation of the /.search endpoint for the root URL of the service
  *
@@ -45,6 +59,7 @@ import static javax.ws.rs.core.Response.Status.OK;
  */
 @Named
 @Path("/scim/v2/.search")
+@ScimMetered
 public class SearchResourcesWebService extends BaseScimWebService {
 
     @Inject
@@ -56,12 +71,25 @@ public class SearchResourcesWebService extends BaseScimWebService {
     @Inject
     private FidoDeviceWebService fidoWS;
 
-    private ObjectMapper mapper=null;
+    @Inject
+    private Scim2UserService scim2UserService;
+
+    @Inject
+    private Scim2GroupService scim2GroupService;
+
+    @Inject
+    private ScimExecutorService executorService;
 
     private int NUM_RESOURCE_TYPES;
 
     private Class resourceClasses[];
 
+    private String defaultSortAttributes[];
+
+    private String usersEndpoint;
+    private String groupsEndpoint;
+    private String fidoDevicesEndpoint;
+
     @POST
     @Consumes({MEDIA_TYPE_SCIM_JSON, MediaType.APPLICATION_JSON})
     @Produces({MEDIA_TYPE_SCIM_JSON + UTF8_CHARSET_FRAGMENT, MediaType.APPLICATION_JSON + UTF8_CHARSET_FRAGMENT})
@@ -69,7 +97,20 @@ public class SearchResourcesWebService extends BaseScimWebService {
     @ScimAuthorization
     @RefAdjusted
     @ApiOperation(value = "General search POST /.search", notes = "Returns a list of resources (https://tools.ietf.org/html/rfc7644#section-3.4.3)", response = ListResponse.class)
-    public Response search(@ApiParam(value = "SearchRequest", required = true) SearchRequest searchRequest) {
+    public void search(@ApiParam(value = "SearchRequest", required = true) final SearchRequest searchRequest,
+                       @Suspended AsyncResponse asyncResponse) {
+
+        //Searches spanning all resource types are expensive, so they are admitted through a bounded pool (a 503 is
+        //returned when it is saturated). This pool is different from the one computeResults splits work into
+        executorService.submit(ScimExecutorService.SEARCH_REQUESTS_POOL, asyncResponse, new Callable<Response>() {
+            public Response call() {
+                return search(searchRequest);
+            }
+        });
+
+    }
+
+    private Response search(SearchRequest searchRequest) {
 
         SearchRequest searchReq = new SearchRequest();
         Response response = prepareSearchRequest(searchRequest.getSchemas(), searchRequest.getFilter(), searchRequest.getSortBy(),
@@ -84,13 +125,13 @@ public class SearchResourcesWebService extends BaseScimWebService {
             else{
             */
             try {
-                List<JsonNode> resources = new ArrayList<JsonNode>();
+                List<Map<String, Object>> resources = new ArrayList<Map<String, Object>>();
                 Pair<Integer, Integer> totals = computeResults(searchReq, resources);
 
                 ListResponseJsonSerializer custSerializer = new ListResponseJsonSerializer(resourceSerializer, searchReq.getAttributesStr(),
                         searchReq.getExcludedAttributesStr(), searchReq.getCount() == 0);
                 if (resources.size() > 0)
-                    custSerializer.setJsonResources(resources);
+                    custSerializer.setProjectedResources(resources);
 
                 ObjectMapper objmapper = new ObjectMapper();
                 SimpleModule module = new SimpleModule("ListResponseModule", Version.unknownVersion());
@@ -99,7 +140,9 @@ public class SearchResourcesWebService extends BaseScimWebService {
 
                 //Provide to constructor original start index, and totals calculated in computeResults call
                 ListResponse listResponse = new ListResponse(searchReq.getStartIndex(), totals.getFirst(), totals.getSecond());
+                long start = System.nanoTime();
                 String json = objmapper.writeValueAsString(listResponse);
+                metricsService.recordStage(ScimMetricsService.Stage.SERIALIZATION, start);
                 response = Response.ok(json).location(new URI(endpointUrl)).build();
             }
             catch (Exception e){
@@ -113,134 +156,221 @@ public class SearchResourcesWebService extends BaseScimWebService {
     }
 
     /**
-     * Here we reuse every single POST search found in other web services, but handle serialization differently to a more
-     * manual approach for performance reasons. In the end, this saves us 3 deserializations and 3 serializations of
-     * multiple results packs.
+     * Here we reuse the searches of the other web services, but handle serialization differently to a more manual
+     * approach for performance reasons: resources found are projected straight into maps (no serialization and
+     * deserialization of result packs takes place).
+     * Totals per resource type are computed with count queries issued concurrently; then only the types whose results
+     * fall into the requested page are searched (also concurrently).
      * Result set as a whole will not be sorted by sortBy param but every group of resources (by resource type) will be
      * sorted as such
      * @param searchRequest
      * @param resources
      * @return
      */
-    private Pair<Integer, Integer> computeResults(SearchRequest searchRequest, List<JsonNode> resources) throws Exception{
+    private Pair<Integer, Integer> computeResults(final SearchRequest searchRequest, List<Map<String, Object>> resources) throws Exception{
 
         int i;
-        int totalInPage=0, totalResults=0, skip=0;
-        boolean resultsAvailable=false;
-
-        Integer startIndex_=searchRequest.getStartIndex();
-        JsonNode tree=null;
-
-        //THIS ALGORITHM IS CONTRIVED, IF YOU CHANGE IT ENSURE TEST CASES STILL PASS...
-
-        //Move forward to skip the searches that might have no results and find the first one starting at index = searchRequest.getStartIndex()
-        for (i=0; i< NUM_RESOURCE_TYPES && !resultsAvailable; i++) {
-            tree=getListResponseTree(i, searchRequest);
-
-            if (tree!=null) {
-                totalResults += tree.get("totalResults").asInt();
+        int totalResults=0;
+        ExecutorService executor=executorService.getExecutor(ScimExecutorService.SEARCH_POOL);
+
+        //Tasks run in a request context of their own (see ScimExecutorService#contextual), so whatever they need from
+        //the request being processed is worked out here and passed to them
+        final String filter=searchRequest.getFilter();
+        final SortOrder sortOrder=SortOrder.getByValue(searchRequest.getSortOrder());
+        final int maxCount=getMaxCount();
+        final String sortBy[]=new String[NUM_RESOURCE_TYPES];
+        for (i=0; i< NUM_RESOURCE_TYPES; i++)
+            sortBy[i]=getSortBy(i, searchRequest);
+
+        final String ldapAttributes[][]=new String[NUM_RESOURCE_TYPES][];
+        ldapAttributes[0]=resourceSerializer.getLdapReturnAttributes(UserResource.class, searchRequest.getAttributesStr(),
+                searchRequest.getExcludedAttributesStr());
+        ldapAttributes[1]=resourceSerializer.getLdapReturnAttributes(GroupResource.class, searchRequest.getAttributesStr(),
+                searchRequest.getExcludedAttributesStr());
+
+        //Compute totals of every resource type
+        List<Future<Integer>> counts=new ArrayList<Future<Integer>>();
+        for (i=0; i< NUM_RESOURCE_TYPES; i++) {
+            final int index=i;
+            counts.add(executor.submit(executorService.contextual(new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    return countResources(index, filter, sortBy[index]);
+                }
+            })));
+        }
 
-                if (totalResults>0){
+        int totals[]=new int[NUM_RESOURCE_TYPES];
+        for (i=0; i< NUM_RESOURCE_TYPES; i++) {
+            totals[i] = getResult(counts.get(i));
+            totalResults += totals[i];
+        }
 
-                    if (totalResults>=startIndex_) {
-                        resultsAvailable = tree.get("itemsPerPage") != null;    //when null, it means searchRequest.getCount() was zero or empty page
+        //Determine which slice of every resource type falls into the requested page
+        int slices[][]=getPageSlices(totals, searchRequest.getStartIndex(), searchRequest.getCount());
+        List<Future<List<BaseScimResource>>> pages=new ArrayList<Future<List<BaseScimResource>>>();
 
-                        if (searchRequest.getStartIndex()==1)
-                            skip=startIndex_ - (totalResults - tree.get("totalResults").asInt()) - 1;
+        for (i=0; i< NUM_RESOURCE_TYPES; i++) {
+            if (slices[i]==null)
+                pages.add(null);
+            else{
+                final int index=i;
+                final int startIndex=slices[i][0];
+                final int count=slices[i][1];
+                pages.add(executor.submit(executorService.contextual(new Callable<List<BaseScimResource>>() {
+                    public List<BaseScimResource> call() throws Exception {
+                        return searchResources(index, filter, sortBy[index], sortOrder, startIndex, count, maxCount,
+                                ldapAttributes[index]);
                     }
-                    searchRequest.setStartIndex(1);     //Adjust startindex of subsequent searches to 1
-                }
+                })));
             }
         }
 
-        if (resultsAvailable){
-
-            //Accumulate till we have searchRequest.getCount() results or exhaust data
-
-            Iterator<JsonNode> iterator = tree.get("Resources").getElements();
-            while (iterator.hasNext() && totalInPage < searchRequest.getCount()){
-                if (skip==0) {
-                    totalInPage++;
-                    resources.add(iterator.next());
-                }
-                else{
-                    skip--;
-                    iterator.next();
-                }
+        //Accumulate results keeping the order of resource types
+        for (Future<List<BaseScimResource>> page : pages) {
+            if (page!=null) {
+                List<BaseScimResource> list = getResult(page);
+                long start = System.nanoTime();
+                for (BaseScimResource resource : list)
+                    resources.add(resourceSerializer.project(resource, searchRequest.getAttributesStr(), searchRequest.getExcludedAttributesStr()));
+                metricsService.recordStage(ScimMetricsService.Stage.SERIALIZATION, start);
             }
+        }
 
-            while (i< NUM_RESOURCE_TYPES && totalInPage < searchRequest.getCount()){
+        return new Pair<Integer, Integer>(resources.size(), totalResults);
 
-                resultsAvailable=false;
-                tree = getListResponseTree(i, searchRequest);
-                if (tree!=null) {
-                    totalResults += tree.get("totalResults").asInt();
+    }
 
-                    if (tree.get("totalResults").asInt() > 0)
-                        resultsAvailable = tree.get("itemsPerPage")!=null;
-                }
+    /**
+     * Works out which part of every resource type falls into a page of the concatenation of all resource types
+     * @param totals Number of results of every resource type
+     * @param startIndex 1-based index of the first result of the page
+     * @param count Size of the page
+     * @return For every resource type, an array with the 1-based index of its first result in the page and the number
+     * of its results in the page; or null if the resource type contributes no results to the page
+     */
+    static int[][] getPageSlices(int totals[], int startIndex, int count){
 
-                if (resultsAvailable) {
-                    for (iterator = tree.get("Resources").getElements();
-                         iterator.hasNext() && totalInPage < searchRequest.getCount();
-                         totalInPage++)
-                        resources.add(iterator.next());
-                }
+        int slices[][]=new int[totals.length][];
+        int offset=startIndex-1;
+        int remaining=count;
 
-                i++;
-            }
-
-            //Continue the remainder of searches to just compute final value for totalResults
-            while (i< NUM_RESOURCE_TYPES){
-                tree = getListResponseTree(i, searchRequest);
-                if (tree!=null)
-                    totalResults += tree.get("totalResults").asInt();
-                i++;
+        for (int i=0; i<totals.length; i++) {
+            if (offset >= totals[i] || remaining==0)
+                offset -= Math.min(offset, totals[i]);
+            else{
+                slices[i]=new int[]{ offset+1, Math.min(remaining, totals[i]-offset) };
+                remaining-=slices[i][1];
+                offset=0;
             }
         }
+        return slices;
+
+    }
 
-        //Revert startIndex to original
-        searchRequest.setStartIndex(startIndex_);
-        return new Pair<Integer, Integer>(totalInPage, totalResults);
+    /**
+     * Waits for the outcome of a task, rethrowing the exception the task failed with (if any)
+     */
+    private <T> T getResult(Future<T> future) throws Exception{
+
+        try {
+            return future.get();
+        }
+        catch (ExecutionException e){
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
 
     }
 
     /**
-     * Returns a JsonNode with the response obtained from sending a POST to a search method given the SearchRequest passed
-     * @param index Determines the concrete search method to be executed: (0 - user; 1 - group; 2 - fido device)
+     * Returns the sort attribute to use for the resource type passed, or null if the attribute supplied in the request
+     * is not applicable to such type
+     * @param index Determines the resource type: (0 - user; 1 - group; 2 - fido device)
      * @param searchRequest
      * @return
      */
-    private JsonNode getListResponseTree(int index, SearchRequest searchRequest){
+    private String getSortBy(int index, SearchRequest searchRequest){
 
-        try {
-            log.debug("getListResponseTree. Resource type is: {}", ScimResourceUtil.getType(resourceClasses[index]));
-
-            Response r = null;
-            switch (index) {
-                case 0:
-                    r = userWS.searchUsersPost(searchRequest);
-                    break;
-                case 1:
-                    r = groupWS.searchGroupsPost(searchRequest);
-                    break;
-                case 2:
-                    r = fidoWS.searchDevicesPost(searchRequest);
-                    break;
-            }
+        String sortBy=searchRequest.getSortBy();
+        if (StringUtils.isEmpty(sortBy))
+            sortBy=defaultSortAttributes[index];
 
-            if (r.getStatus()!=OK.getStatusCode())
-                throw new Exception("Intermediate POST search returned " + r.getStatus());
+        return isAttributeRecognized(resourceClasses[index], sortBy) ? sortBy : null;
 
-            //readEntity does not work here since data is not backed by an input stream, so we just get the raw entity
-            String jsonStr = r.getEntity().toString();
-            return mapper.readTree(jsonStr);
+    }
+
+    /**
+     * Returns the number of resources matching the filter in the SearchRequest passed. A filter not applicable to the
+     * resource type is treated as if no results were found
+     * @param index Determines the resource type: (0 - user; 1 - group; 2 - fido device)
+     * @param filter SCIM filter of the search (may be null)
+     * @param sortBy Sort attribute for the resource type (see {@link #getSortBy(int, SearchRequest)})
+     * @return
+     * @throws Exception If counting fails for any other reason
+     */
+    private int countResources(int index, String filter, String sortBy) throws Exception{
+
+        int total=0;
+        log.debug("countResources. Resource type is: {}", ScimResourceUtil.getType(resourceClasses[index]));
+
+        if (sortBy==null)
+            log.info("sortBy parameter value not recognized for resource type {}", ScimResourceUtil.getType(resourceClasses[index]));
+        else {
+            try {
+                switch (index) {
+                    case 0:
+                        total = scim2UserService.countUsers(filter);
+                        break;
+                    case 1:
+                        total = scim2GroupService.countGroups(filter);
+                        break;
+                    case 2:
+                        total = fidoWS.countDevices(filter);
+                        break;
+                }
+            }
+            catch (SCIMException e){
+                log.info("Filter not applicable to resource type {}: {}", ScimResourceUtil.getType(resourceClasses[index]), e.getMessage());
+            }
         }
-        catch (Exception e){
-            log.error("Error in getListResponseTree {}", e.getMessage());
-            log.error(e.getMessage(), e);
-            return null;
+        return total;
+
+    }
+
+    /**
+     * Returns the resources obtained from running a search given the SearchRequest passed
+     * @param index Determines the concrete search to be executed: (0 - user; 1 - group; 2 - fido device)
+     * @param filter SCIM filter of the search (may be null)
+     * @param sortBy Sort attribute for the resource type (see {@link #getSortBy(int, SearchRequest)})
+     * @param sortOrder
+     * @param startIndex 1-based index of the first result to return
+     * @param count Maximum number of results to return
+     * @param maxCount Maximum number of results the server returns in a page
+     * @param ldapAttributes LDAP attributes to retrieve, or null for all of them (not applicable to fido devices)
+     * @return
+     * @throws Exception If the search fails
+     */
+    private List<BaseScimResource> searchResources(int index, String filter, String sortBy, SortOrder sortOrder, int startIndex,
+                                                   int count, int maxCount, String ldapAttributes[]) throws Exception{
+
+        List<BaseScimResource> list=Collections.emptyList();
+        log.debug("searchResources. Resource type is: {}", ScimResourceUtil.getType(resourceClasses[index]));
+
+        VirtualListViewResponse vlv = new VirtualListViewResponse();
+
+        switch (index) {
+            case 0:
+                list = scim2UserService.searchUsers(filter, sortBy, sortOrder, startIndex, count, vlv, usersEndpoint, maxCount,
+                        ldapAttributes);
+                break;
+            case 1:
+                list = scim2GroupService.searchGroups(filter, sortBy, sortOrder, startIndex, count, vlv, groupsEndpoint,
+                        usersEndpoint, maxCount, ldapAttributes);
+                break;
+            case 2:
+                list = fidoWS.searchDevices(filter, sortBy, sortOrder, startIndex, count, vlv, fidoDevicesEndpoint);
+                break;
         }
+        return list;
 
     }
 
@@ -248,11 +378,14 @@ public class SearchResourcesWebService extends BaseScimWebService {
     public void setup(){
         //Do not use getClass() here... a typical weld issue...
         endpointUrl=appConfiguration.getBaseEndpoint() + SearchResourcesWebService.class.getAnnotation(Path.class).value();
-        mapper=new ObjectMapper();
-
         //Do not alter the order of appearance
         resourceClasses=new Class[]{UserResource.class, GroupResource.class, FidoDeviceResource.class};
+        defaultSortAttributes=new String[]{"userName", "displayName", "id"};
         NUM_RESOURCE_TYPES =resourceClasses.length;
+
+        usersEndpoint=userWS.getEndpointUrl();
+        groupsEndpoint=groupWS.getEndpointUrl();
+        fidoDevicesEndpoint=fidoWS.getEndpointUrl();
     }
 
 }
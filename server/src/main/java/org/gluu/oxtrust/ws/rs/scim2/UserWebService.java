@@ -10,14 +10,16 @@ import com.wordnik.swagger.annotations.ApiOperation;
 import com.wordnik.swagger.annotations.ApiParam;
 import com.wordnik.swagger.annotations.Authorization;
 import org.gluu.oxtrust.ldap.service.IPersonService;
+import org.gluu.oxtrust.exception.InvalidCursorException;
 import org.gluu.oxtrust.model.GluuCustomPerson;
 import org.gluu.oxtrust.model.exception.SCIMException;
 import org.gluu.oxtrust.model.scim2.*;
-import org.gluu.oxtrust.model.scim2.patch.PatchOperation;
 import org.gluu.oxtrust.model.scim2.patch.PatchRequest;
 import org.gluu.oxtrust.model.scim2.util.ScimResourceUtil;
 import org.gluu.oxtrust.service.scim2.Scim2PatchService;
+import org.gluu.oxtrust.service.scim2.ScimCursorService;
 import org.gluu.oxtrust.service.scim2.interceptor.ScimAuthorization;
+import org.gluu.oxtrust.service.scim2.interceptor.ScimMetered;
 import org.gluu.oxtrust.service.scim2.interceptor.RefAdjusted;
 import org.gluu.oxtrust.model.scim2.user.UserResource;
 import org.gluu.oxtrust.service.scim2.Scim2UserService;
@@ -31,13 +33,18 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.management.InvalidAttributeValueException;
 import javax.ws.rs.*;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import static org.gluu.oxtrust.model.scim2.Constants.*;
+import static org.gluu.oxtrust.service.scim2.ScimMetricsService.Stage.*;
 
 /**
  * Implementation of /Users endpoint. Methods here are intercepted and/or decorated.
@@ -49,6 +56,7 @@ import static org.gluu.oxtrust.model.scim2.Constants.*;
  */
 @Named
 @Path("/scim/v2/Users")
+@ScimMetered
 @Api(value = "/v2/Users", description = "SCIM 2.0 User Endpoint (https://tools.ietf.org/html/rfc7644#section-3.2)",
         authorizations = {@Authorization(value = "Authorization", type = "uma")})
 public class UserWebService extends BaseScimWebService implements IUserWebService {
@@ -114,11 +122,23 @@ public class UserWebService extends BaseScimWebService implements IUserWebServic
         try {
             log.debug("Executing web service method. getUserById");
             UserResource user=new UserResource();
-            GluuCustomPerson person=personService.getPersonByInum(id);  //person is not null (check associated decorator method)
-            scim2UserService.transferAttributesToUserResource(person, user, endpointUrl);
-
-            String json=resourceSerializer.serialize(user, attrsList, excludedAttrsList);
-            response=Response.ok(new URI(user.getMeta().getLocation())).entity(json).build();
+            //The whole entry is read: the tag of the resource is computed from its contents (see ScimETagService)
+            //person is not null (check associated decorator method)
+            long start=System.nanoTime();
+            GluuCustomPerson person=personService.getPersonByInum(id);
+            metricsService.recordStage(LDAP, start);
+
+            //Answer conditional requests before any mapping or serialization takes place
+            String etag=etagService.getETag(person);
+            response=getNotModifiedResponse(etag);
+            if (response==null) {
+                start=System.nanoTime();
+                scim2UserService.transferAttributesToUserResource(person, user, endpointUrl);
+                metricsService.recordStage(MAPPING, start);
+
+                String json=resourceSerializer.serialize(user, attrsList, excludedAttrsList);
+                response=Response.ok(new URI(user.getMeta().getLocation())).entity(json).tag(new EntityTag(etag, true)).build();
+            }
         }
         catch (Exception e){
             log.error("Failure at getUserById method", e);
@@ -151,7 +171,16 @@ public class UserWebService extends BaseScimWebService implements IUserWebServic
         Response response;
         try {
             log.debug("Executing web service method. updateUser");
-            Pair<GluuCustomPerson, UserResource> pair=scim2UserService.updateUser(id, user, endpointUrl);
+            long start=System.nanoTime();
+            GluuCustomPerson person=personService.getPersonByInum(id);  //person is not null (check associated decorator method)
+            metricsService.recordStage(LDAP, start);
+
+            if (isIfMatchPresent()) {
+                Response preconditionFailed=getPreconditionFailedResponse(etagService.getETag(person));
+                if (preconditionFailed!=null)
+                    return preconditionFailed;
+            }
+            Pair<GluuCustomPerson, UserResource> pair=scim2UserService.updateUser(person, user, endpointUrl);
 
             // For custom script: update user
             if (externalScimService.isEnabled()) {
@@ -160,7 +189,8 @@ public class UserWebService extends BaseScimWebService implements IUserWebServic
 
             UserResource updatedResource=pair.getSecond();
             String json=resourceSerializer.serialize(updatedResource, attrsList, excludedAttrsList);
-            response=Response.ok(new URI(updatedResource.getMeta().getLocation())).entity(json).build();
+            response=Response.ok(new URI(updatedResource.getMeta().getLocation())).entity(json)
+                    .header(HttpHeaders.ETAG, updatedResource.getMeta().getVersion()).build();
         }
         catch (InvalidAttributeValueException e){
             log.error(e.getMessage());
@@ -187,6 +217,12 @@ public class UserWebService extends BaseScimWebService implements IUserWebServic
             log.debug("Executing web service method. deleteUser");
             GluuCustomPerson person=personService.getPersonByInum(id);  //person cannot be null (check associated decorator method)
 
+            if (isIfMatchPresent()) {
+                Response preconditionFailed=getPreconditionFailedResponse(etagService.getETag(person));
+                if (preconditionFailed!=null)
+                    return preconditionFailed;
+            }
+
             // For custom script: delete user. Execute before actual deletion
             if (externalScimService.isEnabled()) {
                 externalScimService.executeScimDeleteUserMethods(person);
@@ -218,17 +254,43 @@ public class UserWebService extends BaseScimWebService implements IUserWebServic
             @QueryParam(QUERY_PARAM_ATTRIBUTES) String attrsList,
             @QueryParam(QUERY_PARAM_EXCLUDED_ATTRS) String excludedAttrsList){
 
+        //The cursor is not part of the method signature so that IUserWebService remains compatible with existing clients
+        return searchUsers(filter, startIndex, count, sortBy, sortOrder, attrsList, excludedAttrsList, getQueryParam(QUERY_PARAM_CURSOR));
+
+    }
+
+    private Response searchUsers(String filter, Integer startIndex, Integer count, String sortBy, String sortOrder, String attrsList,
+                        String excludedAttrsList, String cursor){
+
         Response response;
         try {
             log.debug("Executing web service method. searchUsers");
 
-            VirtualListViewResponse vlv = new VirtualListViewResponse();
-            List<BaseScimResource> resources = scim2UserService.searchUsers(filter, sortBy, SortOrder.getByValue(sortOrder),
-                    startIndex, count, vlv, endpointUrl, getMaxCount());
+            String json;
+            String ldapAttrs[] = resourceSerializer.getLdapReturnAttributes(UserResource.class, attrsList, excludedAttrsList);
+            if (count==0)
+                //Only the total is requested: no need to retrieve entries
+                json = getListResponseSerialized(scim2UserService.countUsers(filter), startIndex, new ArrayList<BaseScimResource>(),
+                        attrsList, excludedAttrsList, true);
+            else
+            if (cursor!=null) {
+                ScimCursorService.Page<BaseScimResource> page = scim2UserService.searchUsers(filter, cursor, count, endpointUrl, ldapAttrs);
+                json = getListResponseSerialized(page.getTotalResults(), page.getStartIndex(), page.getEntries(), attrsList,
+                        excludedAttrsList, false, page.getNextCursor());
+            }
+            else {
+                VirtualListViewResponse vlv = new VirtualListViewResponse();
+                List<BaseScimResource> resources = scim2UserService.searchUsers(filter, sortBy, SortOrder.getByValue(sortOrder),
+                        startIndex, count, vlv, endpointUrl, getMaxCount(), ldapAttrs);
 
-            String json = getListResponseSerialized(vlv.getTotalResults(), startIndex, resources, attrsList, excludedAttrsList, count==0);
+                json = getListResponseSerialized(vlv.getTotalResults(), startIndex, resources, attrsList, excludedAttrsList, false);
+            }
             response=Response.ok(json).location(new URI(endpointUrl)).build();
         }
+        catch (InvalidCursorException e){
+            log.error(e.getMessage());
+            response=getErrorResponse(Response.Status.BAD_REQUEST, ErrorScimType.INVALID_CURSOR, e.getMessage());
+        }
         catch (SCIMException e){
             log.error(e.getMessage(), e);
             response=getErrorResponse(Response.Status.BAD_REQUEST, ErrorScimType.INVALID_FILTER, e.getMessage());
@@ -256,7 +318,8 @@ public class UserWebService extends BaseScimWebService implements IUserWebServic
         //Calling searchUsers here does not provoke that method's interceptor/decorator being called (only this one's)
         URI uri=null;
         Response response = searchUsers(searchRequest.getFilter(),searchRequest.getStartIndex(), searchRequest.getCount(),
-                searchRequest.getSortBy(), searchRequest.getSortOrder(), searchRequest.getAttributesStr(), searchRequest.getExcludedAttributesStr());
+                searchRequest.getSortBy(), searchRequest.getSortOrder(), searchRequest.getAttributesStr(), searchRequest.getExcludedAttributesStr(),
+                searchRequest.getCursor());
 
         try {
             uri = new URI(endpointUrl + "/" + SEARCH_SUFFIX);
@@ -288,32 +351,45 @@ public class UserWebService extends BaseScimWebService implements IUserWebServic
             UserResource user=new UserResource();
             GluuCustomPerson person=personService.getPersonByInum(id);  //person is not null (check associated decorator method)
 
+            if (isIfMatchPresent()) {
+                Response preconditionFailed=getPreconditionFailedResponse(etagService.getETag(person));
+                if (preconditionFailed!=null)
+                    return preconditionFailed;
+            }
+
             //Fill user instance with all info from person
             scim2UserService.transferAttributesToUserResource(person, user, endpointUrl);
 
-            //Apply patches one by one in sequence
-            for (PatchOperation po : request.getOperations())
-                user=(UserResource) scim2PatchService.applyPatchOperation(user, po);
+            //Apply patches in sequence upon a single representation of the user
+            Pair<BaseScimResource, Set<String>> patched=scim2PatchService.applyPatchOperations(user, request.getOperations());
+            user=(UserResource) patched.getFirst();
 
             //Throws exception if final representation does not pass overall validation
             log.debug("patchUser. Revising final resource representation still passes validations");
             executeDefaultValidation(user);
             ScimResourceUtil.adjustPrimarySubAttributes(user);
 
-            //Update timestamp
-            String now=ISODateTimeFormat.dateTime().withZoneUTC().print(System.currentTimeMillis());
-            user.getMeta().setLastModified(now);
-
-            //Replaces the information found in person with the contents of user
-            scim2UserService.replacePersonInfo(person, user);
-
-            // For custom script: update user
-            if (externalScimService.isEnabled()) {
-                externalScimService.executeScimUpdateUserMethods(person);
+            if (patched.getSecond().isEmpty()) {
+                log.debug("patchUser. No attributes were targeted by the operations, skipping update");
+                user.getMeta().setVersion(etagService.getVersion(etagService.getETag(person)));
+            }
+            else {
+                //Update timestamp
+                String now=ISODateTimeFormat.dateTime().withZoneUTC().print(System.currentTimeMillis());
+                user.getMeta().setLastModified(now);
+
+                //Replaces the information found in person with the contents of user
+                scim2UserService.replacePersonInfo(person, user, patched.getSecond());
+
+                // For custom script: update user
+                if (externalScimService.isEnabled()) {
+                    externalScimService.executeScimUpdateUserMethods(person);
+                }
             }
 
             String json=resourceSerializer.serialize(user, attrsList, excludedAttrsList);
-            response=Response.ok(new URI(user.getMeta().getLocation())).entity(json).build();
+            response=Response.ok(new URI(user.getMeta().getLocation())).entity(json)
+                    .header(HttpHeaders.ETAG, user.getMeta().getVersion()).build();
         }
         catch (InvalidAttributeValueException e){
             log.error(e.getMessage(), e);
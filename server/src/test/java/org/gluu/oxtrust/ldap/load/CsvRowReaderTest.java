@@ -0,0 +1,77 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.load;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit test of CsvRowReader
+ */
+public class CsvRowReaderTest {
+
+	@Test
+	public void testSimpleRows() throws IOException {
+		CsvRowReader reader = new CsvRowReader(new StringReader("uid,mail\njdoe,jdoe@example.com\n"));
+
+		assertEquals(reader.readRow(), Arrays.asList("uid", "mail"));
+		assertEquals(reader.getRowNumber(), 1);
+		assertEquals(reader.readRow(), Arrays.asList("jdoe", "jdoe@example.com"));
+		assertEquals(reader.getRowNumber(), 2);
+		assertNull(reader.readRow());
+		reader.close();
+	}
+
+	@Test
+	public void testQuotedValues() throws IOException {
+		CsvRowReader reader = new CsvRowReader(new StringReader("\"Doe, John\",\"say \"\"hi\"\"\",\"two\nlines\"\r\nnext"));
+
+		assertEquals(reader.readRow(), Arrays.asList("Doe, John", "say \"hi\"", "two\nlines"));
+		assertEquals(reader.readRow(), Arrays.asList("next"));
+		assertEquals(reader.getRowNumber(), 2);
+		assertNull(reader.readRow());
+		reader.close();
+	}
+
+	@Test
+	public void testEmptyValues() throws IOException {
+		CsvRowReader reader = new CsvRowReader(new StringReader(",jdoe,\r\n\r\n"));
+
+		assertEquals(reader.readRow(), Arrays.asList("", "jdoe", ""));
+		assertEquals(reader.readRow(), Arrays.asList(""));
+		assertNull(reader.readRow());
+		reader.close();
+	}
+
+	@Test
+	public void testByteOrderMarkAndSeparator() throws IOException {
+		CsvRowReader reader = new CsvRowReader(new StringReader("\uFEFFuid;mail\njdoe;\"a;b\""), ';');
+
+		assertEquals(reader.readRow(), Arrays.asList("uid", "mail"));
+		assertEquals(reader.readRow(), Arrays.asList("jdoe", "a;b"));
+		assertNull(reader.readRow());
+		reader.close();
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void testUnterminatedQuote() throws IOException {
+		CsvRowReader reader = new CsvRowReader(new StringReader("uid\n\"jdoe"));
+		try {
+			reader.readRow();
+			reader.readRow();
+		} finally {
+			reader.close();
+		}
+	}
+
+}
@@ -0,0 +1,113 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.load;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test of XlsxRowReader
+ */
+public class XlsxRowReaderTest {
+
+	private static final String WORKBOOK = "<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\""
+			+ " xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">"
+			+ "<sheets><sheet name=\"People\" sheetId=\"1\" r:id=\"rId2\"/></sheets></workbook>";
+
+	private static final String WORKBOOK_RELATIONSHIPS = "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+			+ "<Relationship Id=\"rId1\" Target=\"worksheets/sheet1.xml\"/>"
+			+ "<Relationship Id=\"rId2\" Target=\"worksheets/people.xml\"/></Relationships>";
+
+	private static final String SHARED_STRINGS = "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+			+ "<si><t>uid</t></si><si><t>mail</t></si>"
+			+ "<si><r><t>jd</t></r><r><t>oe</t></r><rPh><t>JD</t></rPh></si></sst>";
+
+	private static final String SHEET = "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>"
+			+ "<row r=\"1\"><c r=\"A1\" t=\"s\"><v>0</v></c><c r=\"B1\" t=\"s\"><v>1</v></c></row>"
+			+ "<row r=\"3\"><c r=\"A3\" t=\"s\"><v>2</v></c><c r=\"C3\" t=\"inlineStr\"><is><t>inline</t></is></c>"
+			+ "<c r=\"D3\"><v>42</v></c><c r=\"E3\" t=\"b\"><v>1</v></c></row>"
+			+ "</sheetData></worksheet>";
+
+	private File file;
+
+	@BeforeMethod
+	public void setUp() throws IOException {
+		file = File.createTempFile("people", ".xlsx");
+	}
+
+	@AfterMethod
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void testReadRows() throws IOException {
+		writeWorkbook("xl/workbook.xml", WORKBOOK, "xl/_rels/workbook.xml.rels", WORKBOOK_RELATIONSHIPS,
+				"xl/sharedStrings.xml", SHARED_STRINGS, "xl/worksheets/people.xml", SHEET);
+
+		XlsxRowReader reader = new XlsxRowReader(file);
+		try {
+			assertEquals(reader.readRow(), Arrays.asList("uid", "mail"));
+			assertEquals(reader.getRowNumber(), 1);
+
+			// Omitted cells are returned as empty values, and phonetic runs are ignored
+			assertEquals(reader.readRow(), Arrays.asList("jdoe", "", "inline", "42", "true"));
+			assertEquals(reader.getRowNumber(), 3);
+
+			assertNull(reader.readRow());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testDefaultSheet() throws IOException {
+		writeWorkbook("xl/worksheets/sheet1.xml", "<worksheet><sheetData><row><c><v>1</v></c></row><row><c><v>2</v></c></row></sheetData></worksheet>");
+
+		XlsxRowReader reader = new XlsxRowReader(file);
+		try {
+			assertEquals(reader.readRow(), Arrays.asList("1"));
+			assertEquals(reader.readRow(), Arrays.asList("2"));
+			assertEquals(reader.getRowNumber(), 2);
+			assertNull(reader.readRow());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void testMissingSheet() throws IOException {
+		writeWorkbook("xl/workbook.xml", WORKBOOK);
+
+		new XlsxRowReader(file);
+	}
+
+	private void writeWorkbook(String... entries) throws IOException {
+		ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file));
+		try {
+			for (int i = 0; i < entries.length; i += 2) {
+				zos.putNextEntry(new ZipEntry(entries[i]));
+				zos.write(entries[i + 1].getBytes("UTF-8"));
+				zos.closeEntry();
+			}
+		} finally {
+			zos.close();
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import static org.gluu.oxtrust.util.FieldInjector.inject;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test of EntityCountService
+ */
+public class EntityCountServiceTest {
+
+	private EntityCountService entityCountService;
+
+	private int personCount;
+	private int groupCount;
+	private boolean failCount;
+	// Executed while persons are counted
+	private Runnable duringCount;
+
+	@BeforeMethod
+	public void setUp() {
+		personCount = 10;
+		groupCount = 2;
+		failCount = false;
+		duringCount = null;
+
+		entityCountService = new EntityCountService();
+		inject(entityCountService, "log", LoggerFactory.getLogger(EntityCountService.class));
+		inject(entityCountService, "personService", service(IPersonService.class));
+		inject(entityCountService, "groupService", service(IGroupService.class));
+	}
+
+	@Test
+	public void testNotCountedYet() {
+		entityCountService.personAdded();
+
+		assertNull(entityCountService.getPersonCount());
+		assertNull(entityCountService.getGroupCount());
+	}
+
+	@Test
+	public void testReconcile() {
+		entityCountService.reconcile();
+
+		assertEquals(entityCountService.getPersonCount().getCount(), 10);
+		assertEquals(entityCountService.getGroupCount().getCount(), 2);
+		assertNotNull(entityCountService.getPersonCount().getCountDate());
+	}
+
+	@Test
+	public void testChangesAfterCount() {
+		// Changes made before the count are part of it
+		entityCountService.personAdded();
+		entityCountService.reconcile();
+
+		entityCountService.personAdded();
+		entityCountService.personAdded();
+		entityCountService.personRemoved();
+		entityCountService.groupRemoved();
+
+		assertEquals(entityCountService.getPersonCount().getCount(), 11);
+		assertEquals(entityCountService.getGroupCount().getCount(), 1);
+
+		// Next count replaces the adjusted value
+		personCount = 20;
+		entityCountService.reconcile();
+		assertEquals(entityCountService.getPersonCount().getCount(), 20);
+		assertEquals(entityCountService.getGroupCount().getCount(), 2);
+	}
+
+	@Test
+	public void testChangesDuringCount() {
+		duringCount = new Runnable() {
+			@Override
+			public void run() {
+				entityCountService.personAdded();
+			}
+		};
+		entityCountService.reconcile();
+
+		// The addition may be missing from the count, so it's applied on top of it
+		assertEquals(entityCountService.getPersonCount().getCount(), 11);
+	}
+
+	@Test
+	public void testCountIsNeverNegative() {
+		personCount = 0;
+		entityCountService.reconcile();
+		entityCountService.personRemoved();
+
+		assertEquals(entityCountService.getPersonCount().getCount(), 0);
+	}
+
+	@Test
+	public void testFailedCount() {
+		failCount = true;
+		entityCountService.reconcile();
+		assertNull(entityCountService.getPersonCount());
+
+		failCount = false;
+		entityCountService.reconcile();
+		assertEquals(entityCountService.getPersonCount().getCount(), 10);
+
+		// A failed count keeps the previous one
+		failCount = true;
+		entityCountService.personAdded();
+		entityCountService.reconcile();
+		assertEquals(entityCountService.getPersonCount().getCount(), 11);
+	}
+
+	private <T> T service(Class<T> type) {
+		Object service = Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (failCount) {
+					throw new IllegalStateException("LDAP server is down");
+				}
+
+				if ("countPersons".equals(method.getName())) {
+					if (duringCount != null) {
+						duringCount.run();
+					}
+					return personCount;
+				} else if ("countGroups".equals(method.getName())) {
+					return groupCount;
+				}
+
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+
+		return type.cast(service);
+	}
+
+}
@@ -0,0 +1,84 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import static org.gluu.oxtrust.util.FieldInjector.inject;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test of GroupMembershipCache
+ */
+public class GroupMembershipCacheTest {
+
+	private static final String PERSON_DN = "inum=@!1,ou=people,o=gluu";
+	private static final String GROUP1_DN = "inum=@!G1,ou=groups,o=gluu";
+	private static final String GROUP2_DN = "inum=@!G2,ou=groups,o=gluu";
+
+	private TestGroupMembershipCache cache;
+
+	@BeforeMethod
+	public void setUp() {
+		cache = new TestGroupMembershipCache();
+		inject(cache, "log", LoggerFactory.getLogger(GroupMembershipCache.class));
+		cache.configure(30000);
+	}
+
+	@Test
+	public void testExpiration() {
+		cache.put(new String[] { GROUP1_DN }, PERSON_DN, true);
+
+		cache.now += 29999;
+		assertEquals(cache.get(new String[] { GROUP1_DN }, PERSON_DN), Boolean.TRUE);
+
+		cache.now += 1;
+		assertNull(cache.get(new String[] { GROUP1_DN }, PERSON_DN));
+	}
+
+	@Test
+	public void testKeyIgnoresOrderAndCase() {
+		cache.put(new String[] { GROUP1_DN, GROUP2_DN }, PERSON_DN, false);
+
+		assertEquals(cache.get(new String[] { GROUP2_DN.toUpperCase(), GROUP1_DN }, PERSON_DN.toUpperCase()), Boolean.FALSE);
+		assertNull(cache.get(new String[] { GROUP1_DN }, PERSON_DN));
+		assertNull(cache.get(new String[] { GROUP1_DN, GROUP2_DN }, "inum=@!2,ou=people,o=gluu"));
+	}
+
+	@Test
+	public void testClear() {
+		cache.put(new String[] { GROUP1_DN }, PERSON_DN, true);
+		cache.clear();
+
+		assertNull(cache.get(new String[] { GROUP1_DN }, PERSON_DN));
+	}
+
+	@Test
+	public void testDisabled() {
+		cache.configure(0);
+		cache.put(new String[] { GROUP1_DN }, PERSON_DN, true);
+
+		assertFalse(cache.isEnabled());
+		assertNull(cache.get(new String[] { GROUP1_DN }, PERSON_DN));
+	}
+
+	private static class TestGroupMembershipCache extends GroupMembershipCache {
+
+		private long now = 1000000;
+
+		@Override
+		long currentTimeMillis() {
+			return now;
+		}
+
+	}
+
+}
@@ -0,0 +1,112 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import static org.gluu.oxtrust.util.FieldInjector.inject;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.gluu.oxtrust.model.GluuCustomPerson;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.unboundid.ldap.sdk.Filter;
+
+/**
+ * Unit test of the group membership checks of GroupService. LDAP isn't available, so searches are answered from the
+ * membership cache
+ */
+public class GroupServiceTest {
+
+	private static final String GROUPS_DN = "ou=groups,o=@!1111,o=gluu";
+	private static final String PERSON_DN = "inum=@!1111!0000!0001,ou=people,o=@!1111,o=gluu";
+
+	private GroupService groupService;
+	private GroupMembershipCache groupMembershipCache;
+
+	@BeforeMethod
+	public void setUp() {
+		groupMembershipCache = new GroupMembershipCache();
+		groupMembershipCache.configure(30000);
+
+		groupService = new GroupService();
+		inject(groupService, "log", LoggerFactory.getLogger(GroupService.class));
+		inject(groupService, "groupMembershipCache", groupMembershipCache);
+	}
+
+	@Test
+	public void testGroupInumsFilter() throws Exception {
+		List<String> otherGroupDNs = new ArrayList<String>();
+		Filter filter = groupService.createGroupInumsFilter(new String[] { "inum=@!1111!0003!0001," + GROUPS_DN, null, "",
+				"INUM=@!1111!0003!0002,OU=Groups,O=@!1111,O=gluu" }, GROUPS_DN, otherGroupDNs);
+
+		// One search covers all groups of the groups branch
+		assertEquals(filter, Filter.create("(|(inum=@!1111!0003!0001)(inum=@!1111!0003!0002))"));
+		assertTrue(otherGroupDNs.isEmpty());
+	}
+
+	@Test
+	public void testGroupsOutsideGroupsBranch() {
+		List<String> otherGroupDNs = new ArrayList<String>();
+		Filter filter = groupService.createGroupInumsFilter(new String[] { "inum=@!1111!0003!0001,ou=sub," + GROUPS_DN,
+				"cn=managers," + GROUPS_DN, "inum=@!1111!0003!0002+cn=x," + GROUPS_DN, "inum=@!2222!0003!0001,ou=groups,o=@!2222,o=gluu",
+				"not a DN" }, GROUPS_DN, otherGroupDNs);
+
+		assertNull(filter);
+		assertEquals(otherGroupDNs, Arrays.asList("inum=@!1111!0003!0001,ou=sub," + GROUPS_DN, "cn=managers," + GROUPS_DN,
+				"inum=@!1111!0003!0002+cn=x," + GROUPS_DN, "inum=@!2222!0003!0001,ou=groups,o=@!2222,o=gluu", "not a DN"));
+	}
+
+	@Test
+	public void testMemberOfShortcut() {
+		String[] groupDNs = new String[] { "inum=@!1111!0003!0001," + GROUPS_DN, "inum=@!1111!0003!0002," + GROUPS_DN };
+		// Search would say otherwise
+		groupMembershipCache.put(groupDNs, PERSON_DN, false);
+
+		GluuCustomPerson person = person(new String[] { "inum=@!1111!0003!0009," + GROUPS_DN,
+				"INUM=@!1111!0003!0002," + GROUPS_DN.toUpperCase() });
+		assertTrue(groupService.isMemberOrOwner(groupDNs, person));
+	}
+
+	@Test
+	public void testMemberOfFallsBackToSearch() {
+		String[] groupDNs = new String[] { "inum=@!1111!0003!0001," + GROUPS_DN };
+		// Person may still be an owner, which memberOf doesn't list
+		groupMembershipCache.put(groupDNs, PERSON_DN, true);
+
+		assertTrue(groupService.isMemberOrOwner(groupDNs, person(new String[] { "inum=@!1111!0003!0009," + GROUPS_DN })));
+		assertTrue(groupService.isMemberOrOwner(groupDNs, person(null)));
+
+		groupMembershipCache.put(groupDNs, PERSON_DN, false);
+		assertFalse(groupService.isMemberOrOwner(groupDNs, person(null)));
+	}
+
+	@Test
+	public void testEmptyArguments() {
+		assertFalse(groupService.isMemberOrOwner(new String[0], person(null)));
+		assertFalse(groupService.isMemberOrOwner(new String[] { "inum=@!1111!0003!0001," + GROUPS_DN }, (GluuCustomPerson) null));
+		assertFalse(groupService.isMemberOrOwner(new String[] { "inum=@!1111!0003!0001," + GROUPS_DN }, (String) null));
+	}
+
+	private GluuCustomPerson person(String[] memberOf) {
+		GluuCustomPerson person = new GluuCustomPerson();
+		person.setDn(PERSON_DN);
+		if (memberOf != null) {
+			person.setAttribute("memberOf", memberOf);
+		}
+
+		return person;
+	}
+
+}
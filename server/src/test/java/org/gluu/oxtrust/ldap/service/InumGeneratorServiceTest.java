@@ -0,0 +1,120 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import static org.gluu.oxtrust.util.FieldInjector.inject;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test of InumGeneratorService
+ */
+public class InumGeneratorServiceTest {
+
+	// 2017-10-20T10:10:10Z, ie. 0x59E9CB82 seconds
+	private static final long NOW = 1508494210000L;
+
+	private TestInumGeneratorService generator;
+
+	@BeforeMethod
+	public void setUp() {
+		System.setProperty(InumGeneratorService.NODE_PROPERTY, "1a2b");
+		generator = new TestInumGeneratorService();
+		inject(generator, "log", LoggerFactory.getLogger(InumGeneratorService.class));
+		generator.init();
+	}
+
+	@AfterMethod
+	public void tearDown() {
+		System.clearProperty(InumGeneratorService.NODE_PROPERTY);
+	}
+
+	@Test
+	public void testLayout() {
+		generator.now += 1000;
+		String value = generator.generate();
+
+		assertTrue(value.matches("[0-9A-F]{4}(\\.[0-9A-F]{4}){3}"), value);
+		assertEquals(generator.getNode(), 0x1A2B);
+		assertEquals(value, "1A2B.59E9.CB83.0000");
+	}
+
+	@Test
+	public void testSequence() {
+		generator.now += 1000;
+		assertEquals(generator.generate(), "1A2B.59E9.CB83.0000");
+		assertEquals(generator.generate(), "1A2B.59E9.CB83.0001");
+
+		// Sequence starts over in the next second
+		generator.now += 1000;
+		assertEquals(generator.generate(), "1A2B.59E9.CB84.0000");
+	}
+
+	@Test
+	public void testSequenceRollover() {
+		generator.now += 1000;
+		generator.generate();
+		inject(generator, "sequence", 0xFFFE);
+
+		assertEquals(generator.generate(), "1A2B.59E9.CB83.FFFF");
+		// The sequence is exhausted, so the timestamp is moved ahead instead of repeating values
+		assertEquals(generator.generate(), "1A2B.59E9.CB84.0000");
+		assertEquals(generator.generate(), "1A2B.59E9.CB84.0001");
+
+		// When the clock reaches the borrowed second, the sequence is not reset
+		generator.now += 1000;
+		assertEquals(generator.generate(), "1A2B.59E9.CB84.0002");
+	}
+
+	@Test
+	public void testUniqueness() {
+		Set<String> values = new HashSet<String>();
+		for (int i = 0; i < 200000; i++) {
+			values.add(generator.generate());
+		}
+
+		assertEquals(values.size(), 200000);
+	}
+
+	@Test
+	public void testDerivedNode() {
+		System.clearProperty(InumGeneratorService.NODE_PROPERTY);
+		TestInumGeneratorService other = new TestInumGeneratorService();
+		inject(other, "log", LoggerFactory.getLogger(InumGeneratorService.class));
+		other.init();
+
+		assertTrue((other.getNode() >= 0) && (other.getNode() <= 0xFFFF));
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void testInvalidNode() {
+		System.setProperty(InumGeneratorService.NODE_PROPERTY, "12345");
+		TestInumGeneratorService other = new TestInumGeneratorService();
+		inject(other, "log", LoggerFactory.getLogger(InumGeneratorService.class));
+		other.init();
+	}
+
+	private static class TestInumGeneratorService extends InumGeneratorService {
+
+		private long now = NOW;
+
+		@Override
+		long currentTimeMillis() {
+			return now;
+		}
+
+	}
+
+}
@@ -0,0 +1,136 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import static org.gluu.oxtrust.util.FieldInjector.inject;
+import static org.testng.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test of the lookup of archived entries of LdifArchiver
+ */
+public class LdifArchiverTest {
+
+	private static final String JDOE = "inum=1,ou=people,o=gluu";
+	private static final String ASMITH = "inum=2,ou=people,o=gluu";
+
+	private File storeDir;
+	private LdifArchiver archiver;
+
+	@BeforeMethod
+	public void setUp() throws IOException {
+		storeDir = File.createTempFile("ldif", "");
+		storeDir.delete();
+		storeDir.mkdirs();
+
+		archiver = new LdifArchiver();
+		inject(archiver, "log", LoggerFactory.getLogger(LdifArchiver.class));
+		inject(archiver, "storeDir", storeDir.getPath());
+	}
+
+	@AfterMethod
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(storeDir);
+	}
+
+	@Test
+	public void testClosedArchive() throws IOException {
+		byte[] archive = archive(true, JDOE, ASMITH, JDOE);
+		FileUtils.writeByteArrayToFile(new File(storeDir, "archive-1.ldif.gz"), archive);
+		index("archive-1.ldif.gz", JDOE, ASMITH, JDOE);
+
+		List<String[]> entries = archiver.findArchivedEntries(JDOE.toUpperCase());
+		assertEquals(entries.size(), 2);
+		assertEquals(entries.get(0), new String[] { "dn: " + JDOE, "uid: removed1" });
+		assertEquals(entries.get(1), new String[] { "dn: " + JDOE, "uid: removed3" });
+
+		assertEquals(archiver.findArchivedEntries("inum=3,ou=people,o=gluu").size(), 0);
+	}
+
+	@Test
+	public void testArchiveBeingWritten() throws IOException {
+		// Flushed, but without the gzip trailer
+		byte[] archive = archive(false, JDOE, ASMITH);
+		FileUtils.writeByteArrayToFile(new File(storeDir, "archive-1.ldif.gz"), archive);
+		index("archive-1.ldif.gz", JDOE, ASMITH);
+
+		assertEquals(archiver.findArchivedEntries(JDOE).size(), 1);
+		assertEquals(archiver.findArchivedEntries(ASMITH).get(0), new String[] { "dn: " + ASMITH, "uid: removed2" });
+	}
+
+	@Test
+	public void testTruncatedArchive() throws IOException {
+		FileUtils.writeByteArrayToFile(new File(storeDir, "archive-1.ldif.gz"), archive(true, JDOE));
+		int firstRecordEnd = archive(false, ASMITH).length;
+		byte[] archive = archive(false, ASMITH, JDOE);
+		// Cut in the last record
+		byte[] truncated = new byte[(firstRecordEnd + archive.length) / 2];
+		System.arraycopy(archive, 0, truncated, 0, truncated.length);
+		FileUtils.writeByteArrayToFile(new File(storeDir, "archive-2.ldif.gz"), truncated);
+		index("archive-1.ldif.gz", JDOE);
+		index("archive-2.ldif.gz", ASMITH, JDOE);
+
+		// Records read before the end are kept
+		assertEquals(archiver.findArchivedEntries(ASMITH).size(), 1);
+		List<String[]> entries = archiver.findArchivedEntries(JDOE);
+		assertEquals(entries.size(), 1);
+		assertEquals(entries.get(0), new String[] { "dn: " + JDOE, "uid: removed1" });
+	}
+
+	@Test
+	public void testEmptyArchive() throws IOException {
+		FileUtils.writeByteArrayToFile(new File(storeDir, "archive-1.ldif.gz"), new byte[0]);
+		FileUtils.writeByteArrayToFile(new File(storeDir, "archive-2.ldif.gz"), archive(true, JDOE));
+		index("archive-1.ldif.gz", JDOE);
+		index("archive-2.ldif.gz", JDOE);
+
+		assertEquals(archiver.findArchivedEntries(JDOE).size(), 1);
+	}
+
+	private byte[] archive(boolean close, String... dns) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		Writer writer = new OutputStreamWriter(new GZIPOutputStream(bos, true), "UTF-8");
+		for (int i = 0; i < dns.length; i++) {
+			writer.flush();
+			writer.write("# Removed " + i + "\ndn: " + dns[i] + "\nuid: removed" + (i + 1) + "\n\n");
+		}
+		if (close) {
+			writer.close();
+		} else {
+			writer.flush();
+		}
+
+		return bos.toByteArray();
+	}
+
+	private void index(String archive, String... dns) throws IOException {
+		OutputStream os = new FileOutputStream(new File(storeDir, "archive.index"), true);
+		try {
+			for (int i = 0; i < dns.length; i++) {
+				os.write((archive + "\t" + (i + 1) + "\t" + i + "\t" + dns[i] + "\n").getBytes("UTF-8"));
+			}
+		} finally {
+			os.close();
+		}
+	}
+
+}
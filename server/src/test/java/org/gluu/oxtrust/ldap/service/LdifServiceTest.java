@@ -0,0 +1,134 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import static org.gluu.oxtrust.util.FieldInjector.inject;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.gluu.oxtrust.ldap.load.LdifImportStatus;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test of the order in which LdifService applies imported records
+ */
+public class LdifServiceTest {
+
+	private static final String OU = "ou=people,o=gluu";
+	private static final String JDOE = "inum=1,ou=people,o=gluu";
+	private static final String ASMITH = "inum=2,ou=people,o=gluu";
+
+	private LdifService ldifService;
+	private LdifImportStatus status;
+
+	// Records applied, as "<change type> <dn>"
+	private List<String> applied;
+
+	@BeforeMethod
+	public void setUp() {
+		applied = Collections.synchronizedList(new ArrayList<String>());
+		status = new LdifImportStatus();
+
+		ldifService = new LdifService() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			void applyRecords(List<PendingRecord> records, LdifImportStatus status) {
+				for (PendingRecord record : records) {
+					applied.add(record.getRecord().getChangeType().getName() + " " + record.getRecord().getDN());
+					status.incrementProcessedCount();
+				}
+			}
+		};
+		inject(ldifService, "log", LoggerFactory.getLogger(LdifService.class));
+	}
+
+	@Test
+	public void testParentsFirst() throws Exception {
+		importLdif(add(JDOE), add(ASMITH), add(OU));
+
+		assertEquals(applied.size(), 3);
+		assertEquals(applied.get(0), "add " + OU);
+		assertEquals(status.getReadCount(), 3);
+		assertEquals(status.getProcessedCount(), 3);
+	}
+
+	@Test
+	public void testDeleteChildrenFirst() throws Exception {
+		importLdif(delete(OU), delete(JDOE), delete(ASMITH));
+
+		assertEquals(applied.size(), 3);
+		assertEquals(applied.get(2), "delete " + OU);
+	}
+
+	@Test
+	public void testRepeatedDn() throws Exception {
+		// The entry is changed before it's created if both records are applied together
+		importLdif(add(JDOE), modify(OU), modify(JDOE), add(OU));
+
+		assertEquals(applied.size(), 4);
+		assertBefore("add " + JDOE, "modify " + JDOE);
+		assertBefore("modify " + OU, "add " + OU);
+		// Records ahead of the repeated DN are still ordered by depth
+		assertBefore("modify " + OU, "add " + JDOE);
+	}
+
+	@Test
+	public void testChangeTypeSwitch() throws Exception {
+		importLdif(delete(JDOE), add(OU), add(ASMITH), delete(OU));
+
+		assertEquals(applied, Arrays.asList("delete " + JDOE, "add " + OU, "add " + ASMITH, "delete " + OU));
+	}
+
+	@Test
+	public void testModifyDn() throws Exception {
+		String moved = "inum=1,ou=groups,o=gluu";
+		importLdif(add(JDOE), modifyDn(JDOE, "ou=groups,o=gluu"), modify(moved), add(OU));
+
+		assertEquals(applied, Arrays.asList("add " + JDOE, "moddn " + JDOE, "add " + OU, "modify " + moved));
+	}
+
+	private void assertBefore(String first, String second) {
+		assertTrue(applied.indexOf(first) < applied.indexOf(second), first + " applied after " + second + ": " + applied);
+	}
+
+	private void importLdif(String... records) throws UnsupportedEncodingException {
+		StringBuilder ldif = new StringBuilder();
+		for (String record : records) {
+			ldif.append(record).append('\n');
+		}
+
+		ldifService.importLdifFileInLdap(new ByteArrayInputStream(ldif.toString().getBytes("UTF-8")), status);
+		assertEquals(status.getFailedCount(), 0, String.valueOf(status.getErrors()));
+	}
+
+	private String add(String dn) {
+		return "dn: " + dn + "\nchangetype: add\nobjectClass: top\n";
+	}
+
+	private String modify(String dn) {
+		return "dn: " + dn + "\nchangetype: modify\nreplace: description\ndescription: changed\n-\n";
+	}
+
+	private String delete(String dn) {
+		return "dn: " + dn + "\nchangetype: delete\n";
+	}
+
+	private String modifyDn(String dn, String newSuperior) {
+		return "dn: " + dn + "\nchangetype: moddn\nnewrdn: inum=1\ndeleteoldrdn: 1\nnewsuperior: " + newSuperior + "\n";
+	}
+
+}
@@ -0,0 +1,159 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.gluu.oxtrust.model.GluuCustomPerson;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.xdi.ldap.model.GluuStatus;
+
+/**
+ * Unit test of the index data of PersonTypeaheadIndex
+ */
+public class PersonTypeaheadIndexTest {
+
+	private PersonTypeaheadIndex.Index index;
+
+	@BeforeMethod
+	public void setUp() {
+		index = new PersonTypeaheadIndex.Index();
+		index.add("1", "jdoe", "John Doe", "john.doe@example.com", null, "active");
+		index.add("2", "asmith", "Alice Smith", "alice@example.com", null, "active");
+		index.add("3", "bjohnson", "Bob Johnson", "bob@test.org", null, "inactive");
+	}
+
+	@Test
+	public void testSubstringSearch() {
+		assertEquals(search("ohn"), list("1", "3"));
+		assertEquals(search("smith"), list("2"));
+		assertEquals(search("test.org"), list("3"));
+		assertEquals(search("xyz"), list());
+	}
+
+	@Test
+	public void testShortPatternMatchesPrefix() {
+		assertEquals(search("jd"), list("1"));
+		assertEquals(search("b"), list("3"));
+		// Not at the beginning of any value
+		assertEquals(search("oh"), list());
+	}
+
+	@Test
+	public void testUpperCaseValues() {
+		// Patterns are lower cased by the caller
+		assertEquals(search("alice smith"), list("2"));
+		assertEquals(search("al"), list("2"));
+	}
+
+	@Test
+	public void testPaging() {
+		for (int i = 0; i < 10; i++) {
+			index.add("page" + i, "user" + i, null, null, null, null);
+		}
+
+		PersonTypeaheadIndex.Page page = new PersonTypeaheadIndex.Page();
+		int[] docs = index.search("user", 4, 3, page);
+
+		assertEquals(page.getTotalResults(), 10);
+		assertEquals(docs.length, 3);
+		assertEquals(index.toPerson(docs[0], "o=gluu").getUid(), "user4");
+		assertEquals(index.toPerson(docs[2], "o=gluu").getUid(), "user6");
+	}
+
+	@Test
+	public void testRemove() {
+		long bytes = index.getEstimatedBytes();
+		index.remove("1");
+
+		assertEquals(index.size(), 2);
+		assertEquals(search("ohn"), list("3"));
+		assertTrue(index.getEstimatedBytes() < bytes);
+
+		// Unknown persons are ignored
+		index.remove("unknown");
+		assertEquals(index.size(), 2);
+	}
+
+	@Test
+	public void testReplace() {
+		index.remove("1");
+		index.add("1", "jroe", "John Roe", null, null, null);
+
+		assertEquals(index.size(), 3);
+		assertEquals(search("doe"), list());
+		assertEquals(search("roe"), list("1"));
+	}
+
+	@Test
+	public void testCompaction() {
+		for (int i = 0; i < 3000; i++) {
+			index.add("c" + i, "compact" + i, null, null, null, null);
+		}
+		for (int i = 0; i < 1000; i++) {
+			index.remove("c" + i);
+		}
+		// Removed documents have to be more than 1000 and more than half of all documents
+		assertFalse(index.needsCompaction());
+
+		for (int i = 1000; i < 2000; i++) {
+			index.remove("c" + i);
+		}
+		assertTrue(index.needsCompaction());
+
+		PersonTypeaheadIndex.Index compacted = index.compact();
+		assertEquals(compacted.size(), index.size());
+		assertFalse(compacted.needsCompaction());
+		assertTrue(compacted.getEstimatedBytes() < index.getEstimatedBytes());
+
+		index = compacted;
+		PersonTypeaheadIndex.Page page = new PersonTypeaheadIndex.Page();
+		index.search("compact", 0, 10, page);
+		assertEquals(page.getTotalResults(), 1000);
+		assertEquals(search("ohn"), list("1", "3"));
+	}
+
+	@Test
+	public void testToPerson() {
+		PersonTypeaheadIndex.Page page = new PersonTypeaheadIndex.Page();
+		int[] docs = index.search("jdoe", 0, 10, page);
+		GluuCustomPerson person = index.toPerson(docs[0], "o=gluu");
+
+		assertEquals(person.getDn(), "inum=1,ou=people,o=gluu");
+		assertEquals(person.getInum(), "1");
+		assertEquals(person.getDisplayName(), "John Doe");
+		assertEquals(person.getMail(), "john.doe@example.com");
+		assertEquals(person.getStatus(), GluuStatus.ACTIVE);
+	}
+
+	private List<String> search(String pattern) {
+		PersonTypeaheadIndex.Page page = new PersonTypeaheadIndex.Page();
+		List<String> inums = new ArrayList<String>();
+		for (int doc : index.search(pattern, 0, 100, page)) {
+			inums.add(index.toPerson(doc, "o=gluu").getInum());
+		}
+		assertEquals(page.getTotalResults(), inums.size());
+
+		return inums;
+	}
+
+	private List<String> list(String... inums) {
+		List<String> result = new ArrayList<String>();
+		for (String inum : inums) {
+			result.add(inum);
+		}
+
+		return result;
+	}
+
+}
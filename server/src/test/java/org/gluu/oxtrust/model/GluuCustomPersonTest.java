@@ -0,0 +1,117 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.model;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test of the attribute lookups of GluuCustomPerson
+ */
+public class GluuCustomPersonTest {
+
+	private GluuCustomPerson person;
+
+	@BeforeMethod
+	public void setUp() {
+		person = new GluuCustomPerson();
+		person.setAttribute("uid", "jdoe");
+		person.setAttribute("givenName", "John");
+		person.setAttribute("mail", new String[] { "jdoe@example.com", "john@example.com" });
+	}
+
+	@Test
+	public void testLookupIgnoresCase() {
+		assertEquals(person.getAttribute("GIVENNAME"), "John");
+		assertEquals(person.getAttributeArray("Mail"), new String[] { "jdoe@example.com", "john@example.com" });
+		assertEquals(person.getAttributes("mail").length, 2);
+		assertEquals(person.getAttributeIndex("givenname"), 1);
+		assertNull(person.getAttribute("sn"));
+		assertNull(person.getAttribute(null));
+		assertEquals(person.getAttributeIndex("sn"), 3);
+	}
+
+	@Test
+	public void testSetAttributeReplacesInPlace() {
+		person.setAttribute("GivenName", "Johnny");
+
+		assertEquals(person.getCustomAttributes().size(), 3);
+		assertEquals(person.getAttributeIndex("givenName"), 1);
+		assertEquals(person.getAttribute("givenName"), "Johnny");
+
+		person.setAttribute("sn", "Doe");
+		assertEquals(person.getAttributeIndex("sn"), 3);
+		assertEquals(person.getAttribute("SN"), "Doe");
+	}
+
+	@Test
+	public void testRemoveAttribute() {
+		person.removeAttribute("uid");
+
+		assertNull(person.getAttribute("uid"));
+		// Following attributes moved up
+		assertEquals(person.getAttributeIndex("givenName"), 0);
+		assertEquals(person.getAttribute("mail"), "jdoe@example.com");
+
+		person.removeAttribute("uid");
+		assertEquals(person.getCustomAttributes().size(), 2);
+	}
+
+	@Test
+	public void testListReplaced() {
+		assertEquals(person.getAttribute("uid"), "jdoe");
+
+		List<GluuCustomAttribute> attributes = new ArrayList<GluuCustomAttribute>();
+		attributes.add(new GluuCustomAttribute("sn", "Smith"));
+		attributes.add(new GluuCustomAttribute("uid", "asmith"));
+		person.setCustomAttributes(attributes);
+
+		assertEquals(person.getAttribute("uid"), "asmith");
+		assertEquals(person.getAttributeIndex("uid"), 1);
+		assertNull(person.getAttribute("givenName"));
+	}
+
+	@Test
+	public void testListChangedDirectly() {
+		assertEquals(person.getAttribute("mail"), "jdoe@example.com");
+
+		// Size changes
+		person.getCustomAttributes().remove(0);
+		assertEquals(person.getAttribute("givenName"), "John");
+		person.getCustomAttributes().add(0, new GluuCustomAttribute("sn", "Doe"));
+		assertEquals(person.getAttribute("sn"), "Doe");
+		assertEquals(person.getAttributeIndex("givenName"), 1);
+
+		// Same size, the new name is only found once the index is invalidated
+		person.getCustomAttributes().set(0, new GluuCustomAttribute("cn", "John Doe"));
+		assertNull(person.getAttribute("cn"));
+		person.invalidateAttributeIndex();
+		assertEquals(person.getAttribute("cn"), "John Doe");
+		assertNull(person.getAttribute("sn"));
+
+		// Same size, the old name is looked up first
+		person.getCustomAttributes().set(0, new GluuCustomAttribute("o", "Gluu"));
+		assertNull(person.getAttribute("cn"));
+		assertEquals(person.getAttribute("o"), "Gluu");
+	}
+
+	@Test
+	public void testDuplicateNames() {
+		person.getCustomAttributes().add(new GluuCustomAttribute("UID", "other"));
+
+		// First attribute with the name wins, as with a scan of the list
+		assertEquals(person.getAttribute("uid"), "jdoe");
+		assertEquals(person.getAttributeIndex("uid"), 0);
+	}
+
+}
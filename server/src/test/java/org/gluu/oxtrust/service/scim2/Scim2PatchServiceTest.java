@@ -0,0 +1,166 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.service.scim2;
+
+import static org.gluu.oxtrust.util.FieldInjector.inject;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.gluu.oxtrust.model.scim2.BaseScimResource;
+import org.gluu.oxtrust.model.scim2.extensions.Extension;
+import org.gluu.oxtrust.model.scim2.patch.PatchOperation;
+import org.gluu.oxtrust.model.scim2.user.Email;
+import org.gluu.oxtrust.model.scim2.user.UserResource;
+import org.gluu.oxtrust.service.antlr.scimFilter.ScimFilterParserService;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.xdi.util.Pair;
+
+/**
+ * Unit test of Scim2PatchService.applyPatchOperations
+ */
+public class Scim2PatchServiceTest {
+
+	private Scim2PatchService patchService;
+
+	@BeforeMethod
+	public void setUp() {
+		ScimFilterParserService filterService = new ScimFilterParserService();
+		inject(filterService, "log", LoggerFactory.getLogger(ScimFilterParserService.class));
+
+		patchService = new Scim2PatchService();
+		inject(patchService, "log", LoggerFactory.getLogger(Scim2PatchService.class));
+		inject(patchService, "filterService", filterService);
+		inject(patchService, "extService", new ExtensionService() {
+			@Override
+			public List<Extension> getResourceExtensions(Class<? extends BaseScimResource> cls) {
+				return new ArrayList<Extension>();
+			}
+
+			@Override
+			public List<String> getUrnsOfExtensions(Class<? extends BaseScimResource> cls) {
+				return new ArrayList<String>();
+			}
+		});
+	}
+
+	@Test
+	public void testOperationsAppliedInOrder() throws Exception {
+		UserResource user = user();
+
+		Pair<BaseScimResource, Set<String>> patched = patchService.applyPatchOperations(user, Arrays.asList(
+				operation("replace", "displayName", "Jane Doe"),
+				operation("add", "emails", Arrays.asList(email("jane@home.org", "home"))),
+				operation("remove", "nickName", null)));
+
+		UserResource result = (UserResource) patched.getFirst();
+		assertEquals(result.getDisplayName(), "Jane Doe");
+		assertEquals(result.getEmails().size(), 2);
+		assertNull(result.getNickName());
+		assertEquals(result.getUserName(), "jdoe");
+
+		assertEquals(patched.getSecond(), new HashSet<String>(Arrays.asList("displayName", "emails", "nickName")));
+	}
+
+	@Test
+	public void testLaterOperationSeesEarlierOnes() throws Exception {
+		Pair<BaseScimResource, Set<String>> patched = patchService.applyPatchOperations(user(), Arrays.asList(
+				operation("add", "emails", Arrays.asList(email("jane@home.org", "home"))),
+				operation("remove", "emails[type eq \"work\"]", null)));
+
+		UserResource result = (UserResource) patched.getFirst();
+		assertEquals(result.getEmails().size(), 1);
+		assertEquals(result.getEmails().get(0).getValue(), "jane@home.org");
+		assertEquals(patched.getSecond(), new HashSet<String>(Arrays.asList("emails")));
+	}
+
+	@Test
+	public void testReplaceSubAttributeWithValueFilter() throws Exception {
+		UserResource result = (UserResource) patchService.applyPatchOperations(user(), Arrays.asList(
+				operation("replace", "emails[type eq \"work\"].value", "jane@work.org"))).getFirst();
+
+		assertEquals(result.getEmails().size(), 1);
+		assertEquals(result.getEmails().get(0).getValue(), "jane@work.org");
+		assertEquals(result.getEmails().get(0).getType(), "work");
+	}
+
+	@Test
+	public void testOperationWithoutPath() throws Exception {
+		Map<String, Object> value = new HashMap<String, Object>();
+		value.put("title", "Manager");
+		value.put("userType", "Employee");
+
+		Pair<BaseScimResource, Set<String>> patched = patchService.applyPatchOperations(user(), Arrays.asList(
+				operation("replace", null, value)));
+
+		UserResource result = (UserResource) patched.getFirst();
+		assertEquals(result.getTitle(), "Manager");
+		assertEquals(result.getUserType(), "Employee");
+		assertEquals(patched.getSecond(), new HashSet<String>(Arrays.asList("title", "userType")));
+	}
+
+	@Test
+	public void testResourceNotModified() throws Exception {
+		UserResource user = user();
+
+		patchService.applyPatchOperations(user, Arrays.asList(
+				operation("replace", "displayName", "Jane Doe"),
+				operation("remove", "emails", null)));
+
+		assertEquals(user.getDisplayName(), "John Doe");
+		assertEquals(user.getEmails().size(), 1);
+	}
+
+	@Test
+	public void testNoOperations() throws Exception {
+		Pair<BaseScimResource, Set<String>> patched = patchService.applyPatchOperations(user(), new ArrayList<PatchOperation>());
+
+		assertEquals(((UserResource) patched.getFirst()).getDisplayName(), "John Doe");
+		assertTrue(patched.getSecond().isEmpty());
+	}
+
+	private UserResource user() {
+		UserResource user = new UserResource();
+		user.setId("@!1111!0000!C3D4");
+		user.setUserName("jdoe");
+		user.setDisplayName("John Doe");
+		user.setNickName("johnny");
+
+		Email email = new Email();
+		email.setValue("jdoe@work.org");
+		email.setType(Email.Type.WORK);
+		user.setEmails(new ArrayList<Email>(Arrays.asList(email)));
+
+		return user;
+	}
+
+	private Map<String, Object> email(String value, String type) {
+		Map<String, Object> email = new HashMap<String, Object>();
+		email.put("value", value);
+		email.put("type", type);
+		return email;
+	}
+
+	private PatchOperation operation(String op, String path, Object value) {
+		PatchOperation operation = new PatchOperation();
+		operation.setOperation(op);
+		operation.setPath(path);
+		operation.setValue(value);
+		return operation;
+	}
+
+}
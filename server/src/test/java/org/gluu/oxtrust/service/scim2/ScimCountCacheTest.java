@@ -0,0 +1,116 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.service.scim2;
+
+import static org.gluu.oxtrust.util.FieldInjector.inject;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import org.gluu.oxtrust.model.GluuCustomPerson;
+import org.gluu.oxtrust.model.GluuGroup;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.unboundid.ldap.sdk.Filter;
+
+/**
+ * Unit test of ScimCountCache
+ */
+public class ScimCountCacheTest {
+
+	private static final long TTL = 30000;
+
+	private TestScimCountCache cache;
+
+	@BeforeMethod
+	public void setUp() {
+		cache = new TestScimCountCache();
+		inject(cache, "log", LoggerFactory.getLogger(ScimCountCache.class));
+		cache.configure(true, TTL, 3);
+	}
+
+	@Test
+	public void testHit() throws Exception {
+		cache.put(GluuCustomPerson.class, Filter.create("(uid=jdoe)"), 1);
+
+		// Same filter, written differently
+		assertEquals(cache.get(GluuCustomPerson.class, Filter.create("(UID=jdoe)")), Integer.valueOf(1));
+		assertNull(cache.get(GluuGroup.class, Filter.create("(uid=jdoe)")));
+	}
+
+	@Test
+	public void testExpiry() throws Exception {
+		Filter filter = Filter.create("(uid=*)");
+		cache.put(GluuCustomPerson.class, filter, 10);
+
+		cache.now += TTL - 1;
+		assertEquals(cache.get(GluuCustomPerson.class, filter), Integer.valueOf(10));
+
+		cache.now += 1;
+		assertNull(cache.get(GluuCustomPerson.class, filter));
+		assertEquals(cache.size(), 0);
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		for (int i = 0; i < 4; i++) {
+			cache.put(GluuCustomPerson.class, Filter.create("(uid=user" + i + ")"), i);
+		}
+
+		assertEquals(cache.size(), 3);
+		assertNull(cache.get(GluuCustomPerson.class, Filter.create("(uid=user0)")));
+		assertEquals(cache.get(GluuCustomPerson.class, Filter.create("(uid=user3)")), Integer.valueOf(3));
+	}
+
+	@Test
+	public void testPutMovesEntryToTail() throws Exception {
+		cache.put(GluuCustomPerson.class, Filter.create("(uid=user0)"), 0);
+		cache.put(GluuCustomPerson.class, Filter.create("(uid=user1)"), 1);
+		cache.put(GluuCustomPerson.class, Filter.create("(uid=user2)"), 2);
+		cache.put(GluuCustomPerson.class, Filter.create("(uid=user0)"), 0);
+		cache.put(GluuCustomPerson.class, Filter.create("(uid=user3)"), 3);
+
+		assertNull(cache.get(GluuCustomPerson.class, Filter.create("(uid=user1)")));
+		assertEquals(cache.get(GluuCustomPerson.class, Filter.create("(uid=user0)")), Integer.valueOf(0));
+	}
+
+	@Test
+	public void testInvalidate() throws Exception {
+		Filter filter = Filter.create("(displayName=admins)");
+		cache.put(GluuCustomPerson.class, filter, 1);
+		cache.put(GluuGroup.class, filter, 2);
+
+		cache.invalidate(GluuCustomPerson.class);
+
+		assertNull(cache.get(GluuCustomPerson.class, filter));
+		assertEquals(cache.get(GluuGroup.class, filter), Integer.valueOf(2));
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		cache.configure(false, TTL, 3);
+
+		Filter filter = Filter.create("(uid=*)");
+		cache.put(GluuCustomPerson.class, filter, 10);
+
+		assertNull(cache.get(GluuCustomPerson.class, filter));
+		assertEquals(cache.size(), 0);
+	}
+
+	private static class TestScimCountCache extends ScimCountCache {
+
+		private long now = 1000000;
+
+		@Override
+		long currentTimeMillis() {
+			return now;
+		}
+
+	}
+
+}
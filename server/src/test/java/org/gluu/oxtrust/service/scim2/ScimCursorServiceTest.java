@@ -0,0 +1,304 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.service.scim2;
+
+import static org.gluu.oxtrust.util.FieldInjector.inject;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.gluu.oxtrust.exception.InvalidCursorException;
+import org.gluu.site.ldap.persistence.AttributeData;
+import org.gluu.site.ldap.persistence.annotation.LdapObjectClass;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+
+/**
+ * Unit test of ScimCursorService. The directory server is simulated: paged results cookies hold the offset of the
+ * next page
+ */
+public class ScimCursorServiceTest {
+
+	private static final String BASE_DN = "ou=people,o=gluu";
+
+	private TestScimCursorService cursorService;
+	private Filter filter;
+
+	@BeforeMethod
+	public void setUp() throws Exception {
+		cursorService = new TestScimCursorService();
+		inject(cursorService, "log", LoggerFactory.getLogger(ScimCursorService.class));
+		filter = Filter.create("(uid=*)");
+	}
+
+	@Test
+	public void testPages() throws Exception {
+		ScimCursorService.Page<TestEntry> page = cursorService.search("", TestEntry.class, BASE_DN, filter, 2, null);
+		assertEquals(uids(page), Arrays.asList("user0", "user1"));
+		assertEquals(page.getTotalResults(), 5);
+		assertEquals(page.getStartIndex(), 1);
+		assertNotNull(page.getNextCursor());
+
+		page = cursorService.search(page.getNextCursor(), TestEntry.class, BASE_DN, filter, 2, null);
+		assertEquals(uids(page), Arrays.asList("user2", "user3"));
+		assertEquals(page.getStartIndex(), 3);
+
+		page = cursorService.search(page.getNextCursor(), TestEntry.class, BASE_DN, filter, 2, null);
+		assertEquals(uids(page), Arrays.asList("user4"));
+		assertEquals(page.getStartIndex(), 5);
+		assertEquals(page.getTotalResults(), 5);
+		assertNull(page.getNextCursor());
+	}
+
+	@Test
+	public void testPagesShareConnection() throws Exception {
+		ScimCursorService.Page<TestEntry> page = cursorService.search("", TestEntry.class, BASE_DN, filter, 2, null);
+		LDAPConnection connection = cursorService.lastConnection;
+		assertEquals(cursorService.openConnections(), 1);
+
+		page = cursorService.search(page.getNextCursor(), TestEntry.class, BASE_DN, filter, 2, null);
+		assertSame(cursorService.lastConnection, connection);
+		assertEquals(cursorService.openConnections(), 1);
+
+		// Closed with the last page
+		cursorService.search(page.getNextCursor(), TestEntry.class, BASE_DN, filter, 2, null);
+		assertSame(cursorService.lastConnection, connection);
+		assertEquals(cursorService.openConnections(), 0);
+	}
+
+	@Test
+	public void testSinglePageClosesConnection() throws Exception {
+		ScimCursorService.Page<TestEntry> page = cursorService.search("", TestEntry.class, BASE_DN, filter, 10, null);
+
+		assertNull(page.getNextCursor());
+		assertEquals(cursorService.opened.size(), 1);
+		assertEquals(cursorService.openConnections(), 0);
+	}
+
+	@Test
+	public void testExpiredCursorClosesConnection() throws Exception {
+		cursorService.search("", TestEntry.class, BASE_DN, filter, 2, null);
+
+		// Expired cursors are purged when another one is issued
+		cursorService.now += ScimCursorService.CURSOR_TTL;
+		cursorService.search("", TestEntry.class, BASE_DN, filter, 2, null);
+		assertEquals(cursorService.opened.size(), 2);
+		assertEquals(cursorService.openConnections(), 1);
+	}
+
+	@Test
+	public void testEvictedCursorClosesConnection() throws Exception {
+		String first = cursorService.search("", TestEntry.class, BASE_DN, filter, 2, null).getNextCursor();
+		for (int i = 0; i < ScimCursorService.MAX_CURSORS; i++) {
+			cursorService.search("", TestEntry.class, BASE_DN, filter, 2, null);
+		}
+
+		assertEquals(cursorService.openConnections(), ScimCursorService.MAX_CURSORS);
+		assertTrue(cursorService.closed.containsKey(cursorService.opened.get(0)));
+
+		try {
+			cursorService.search(first, TestEntry.class, BASE_DN, filter, 2, null);
+		} catch (InvalidCursorException ex) {
+			return;
+		}
+		throw new AssertionError("Evicted cursor was accepted");
+	}
+
+	@Test
+	public void testCursorOfOtherQueryClosesConnection() throws Exception {
+		String cursor = cursorService.search("", TestEntry.class, BASE_DN, filter, 2, null).getNextCursor();
+
+		try {
+			cursorService.search(cursor, TestEntry.class, BASE_DN, Filter.create("(mail=*)"), 2, null);
+		} catch (InvalidCursorException ex) {
+			assertEquals(cursorService.openConnections(), 0);
+			return;
+		}
+		throw new AssertionError("Cursor of other query was accepted");
+	}
+
+	@Test
+	public void testDestroyClosesConnections() throws Exception {
+		cursorService.search("", TestEntry.class, BASE_DN, filter, 2, null);
+		cursorService.search("", TestEntry.class, BASE_DN, filter, 2, null);
+
+		cursorService.destroy();
+		assertEquals(cursorService.openConnections(), 0);
+	}
+
+	@Test
+	public void testSearchRequest() throws Exception {
+		cursorService.search(null, TestEntry.class, BASE_DN, filter, 2, null);
+
+		SearchRequest request = cursorService.lastRequest;
+		assertEquals(request.getBaseDN(), BASE_DN);
+		assertEquals(request.getFilter(), Filter.create("(&(objectClass=top)(objectClass=gluuPerson)(uid=*))"));
+		assertEquals(request.getAttributeList(), Collections.singletonList(SearchRequest.ALL_USER_ATTRIBUTES));
+
+		cursorService.search(null, TestEntry.class, BASE_DN, filter, 2, new String[] { "uid", "mail" });
+		assertEquals(cursorService.lastRequest.getAttributeList(), Arrays.asList("uid", "mail"));
+	}
+
+	@Test
+	public void testCountWhenEstimateIsMissing() throws Exception {
+		cursorService.sendEstimate = false;
+
+		ScimCursorService.Page<TestEntry> page = cursorService.search("", TestEntry.class, BASE_DN, filter, 2, null);
+		assertEquals(page.getTotalResults(), 5);
+
+		// Total of first page is kept by the cursor
+		page = cursorService.search(page.getNextCursor(), TestEntry.class, BASE_DN, filter, 2, null);
+		assertEquals(page.getTotalResults(), 5);
+		assertEquals(cursorService.countCalls, 1);
+	}
+
+	@Test(expectedExceptions = InvalidCursorException.class)
+	public void testCursorIsSingleUse() throws Exception {
+		String cursor = cursorService.search("", TestEntry.class, BASE_DN, filter, 2, null).getNextCursor();
+		cursorService.search(cursor, TestEntry.class, BASE_DN, filter, 2, null);
+
+		cursorService.search(cursor, TestEntry.class, BASE_DN, filter, 2, null);
+	}
+
+	@Test(expectedExceptions = InvalidCursorException.class)
+	public void testCursorOfOtherQuery() throws Exception {
+		String cursor = cursorService.search("", TestEntry.class, BASE_DN, filter, 2, null).getNextCursor();
+
+		cursorService.search(cursor, TestEntry.class, BASE_DN, Filter.create("(mail=*)"), 2, null);
+	}
+
+	@Test(expectedExceptions = InvalidCursorException.class)
+	public void testExpiredCursor() throws Exception {
+		String cursor = cursorService.search("", TestEntry.class, BASE_DN, filter, 2, null).getNextCursor();
+
+		cursorService.now += ScimCursorService.CURSOR_TTL;
+		cursorService.search(cursor, TestEntry.class, BASE_DN, filter, 2, null);
+	}
+
+	@Test(expectedExceptions = InvalidCursorException.class)
+	public void testUnknownCursor() throws Exception {
+		cursorService.search("unknown", TestEntry.class, BASE_DN, filter, 2, null);
+	}
+
+	private List<String> uids(ScimCursorService.Page<TestEntry> page) {
+		List<String> uids = new ArrayList<String>();
+		for (TestEntry entry : page.getEntries()) {
+			uids.add(entry.uid);
+		}
+
+		return uids;
+	}
+
+	@LdapObjectClass(values = { "top", "gluuPerson" })
+	private static class TestEntry {
+
+		private String uid;
+
+	}
+
+	private static class TestScimCursorService extends ScimCursorService {
+
+		private static final int ENTRY_COUNT = 5;
+
+		private long now = 1000000;
+		private boolean sendEstimate = true;
+		private int countCalls;
+		private SearchRequest lastRequest;
+		private LDAPConnection lastConnection;
+		private List<LDAPConnection> opened = new ArrayList<LDAPConnection>();
+		private Map<LDAPConnection, Boolean> closed = new IdentityHashMap<LDAPConnection, Boolean>();
+
+		int openConnections() {
+			return opened.size() - closed.size();
+		}
+
+		@Override
+		LDAPConnection openConnection() {
+			LDAPConnection connection = new LDAPConnection();
+			opened.add(connection);
+
+			return connection;
+		}
+
+		@Override
+		void closeConnection(LDAPConnection connection) {
+			assertNull(closed.put(connection, Boolean.TRUE), "Connection closed twice");
+		}
+
+		@Override
+		SearchResult executeSearch(LDAPConnection connection, SearchRequest request) {
+			assertTrue(opened.contains(connection) && !closed.containsKey(connection));
+			this.lastConnection = connection;
+			this.lastRequest = request;
+
+			SimplePagedResultsControl control = (SimplePagedResultsControl) request
+					.getControl(SimplePagedResultsControl.PAGED_RESULTS_OID);
+			byte[] cookie = control.getCookie().getValue();
+			int offset = (cookie.length == 0) ? 0 : Integer.parseInt(new String(cookie));
+			int end = Math.min(offset + control.getSize(), ENTRY_COUNT);
+
+			List<SearchResultEntry> entries = new ArrayList<SearchResultEntry>();
+			for (int i = offset; i < end; i++) {
+				entries.add(new SearchResultEntry(String.format("inum=%d,%s", i, BASE_DN),
+						new Attribute[] { new Attribute("uid", "user" + i) }));
+			}
+
+			ASN1OctetString nextCookie = (end < ENTRY_COUNT) ? new ASN1OctetString(String.valueOf(end)) : new ASN1OctetString();
+			Control response = new SimplePagedResultsControl(sendEstimate ? ENTRY_COUNT : 0, nextCookie);
+
+			return new SearchResult(1, ResultCode.SUCCESS, null, null, null, entries, Collections.<SearchResultReference> emptyList(),
+					entries.size(), 0, new Control[] { response });
+		}
+
+		@Override
+		<T> List<T> createEntities(Class<T> entryClass, Map<String, List<AttributeData>> entriesAttributes) {
+			List<T> result = new ArrayList<T>();
+			for (List<AttributeData> attributes : entriesAttributes.values()) {
+				TestEntry entry = new TestEntry();
+				entry.uid = attributes.get(0).getValues()[0];
+				result.add(entryClass.cast(entry));
+			}
+
+			return result;
+		}
+
+		@Override
+		int countEntries(String baseDn, Class<?> entryClass, Filter filter) {
+			countCalls++;
+			return ENTRY_COUNT;
+		}
+
+		@Override
+		long currentTimeMillis() {
+			return now;
+		}
+
+	}
+
+}
@@ -0,0 +1,142 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.service.scim2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.gluu.oxtrust.model.GluuCustomPerson;
+import org.gluu.oxtrust.model.GluuGroup;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test of ScimETagService
+ */
+public class ScimETagServiceTest {
+
+	private static final String LAST_MODIFIED = "2017-10-20T10:10:10.000Z";
+
+	private ScimETagService etagService;
+
+	@BeforeMethod
+	public void setUp() {
+		etagService = new ScimETagService();
+	}
+
+	@Test
+	public void testModifiedPersonHasNewTag() {
+		GluuCustomPerson person = person();
+		String etag = etagService.getETag(person);
+		assertTrue(etag.startsWith("20171020T101010000Z-"));
+
+		// A change made outside SCIM leaves oxTrustMetaLastModified as it was
+		person.setAttribute("givenName", "Johnny");
+		String modified = etagService.getETag(person);
+		assertNotEquals(modified, etag);
+
+		// So does a second change in the same second
+		person.setAttribute("givenName", "John");
+		person.setAttribute("mail", "john@example.com");
+		assertNotEquals(etagService.getETag(person), modified);
+		assertNotEquals(etagService.getETag(person), etag);
+	}
+
+	@Test
+	public void testOrderAndCaseDoNotMatter() {
+		GluuCustomPerson person = person();
+		person.setAttribute("mail", new String[] { "jdoe@example.com", "john@example.com" });
+
+		GluuCustomPerson other = new GluuCustomPerson();
+		other.setAttribute("MAIL", new String[] { "john@example.com", "jdoe@example.com" });
+		other.setAttribute("givenname", "John");
+		other.setAttribute("UID", "jdoe");
+		other.setAttribute("oxtrustmetalastmodified", LAST_MODIFIED);
+
+		assertEquals(etagService.getETag(other), etagService.getETag(person));
+
+		// Values are not merged across attributes
+		other.setAttribute("givenname", "Joh");
+		other.setAttribute("UID", "njdoe");
+		assertNotEquals(etagService.getETag(other), etagService.getETag(person));
+	}
+
+	@Test
+	public void testUnreadValuesIgnored() {
+		GluuCustomPerson person = person();
+		String etag = etagService.getETag(person);
+
+		// Not stored by the server, so not present when the entry is read back
+		person.setAttribute("nickName", "");
+		person.setAttribute("title", new String[0]);
+		assertEquals(etagService.getETag(person), etag);
+
+		// Nor is the password returned
+		person.setAttribute("userPassword", "secret");
+		assertEquals(etagService.getETag(person), etag);
+	}
+
+	@Test
+	public void testGroupFields() {
+		GluuGroup group = group();
+		String etag = etagService.getETag(group);
+
+		group.setMembers(Arrays.asList("inum=2,ou=people,o=gluu", "inum=1,ou=people,o=gluu"));
+		String withMembers = etagService.getETag(group);
+		assertNotEquals(withMembers, etag);
+
+		group.setMembers(Arrays.asList("inum=1,ou=people,o=gluu", "inum=2,ou=people,o=gluu"));
+		assertEquals(etagService.getETag(group), withMembers);
+
+		group.setDescription("Administrators");
+		assertNotEquals(etagService.getETag(group), withMembers);
+
+		// Same values held by a custom attribute instead of the field
+		GluuGroup other = group();
+		other.setDisplayName(null);
+		other.setAttribute("displayName", "Admins");
+		assertEquals(etagService.getETag(other), etag);
+	}
+
+	@Test
+	public void testMissingLastModified() {
+		GluuCustomPerson person = new GluuCustomPerson();
+		person.setAttribute("uid", "jdoe");
+
+		assertTrue(etagService.getETag(person).startsWith("0-"));
+	}
+
+	@Test
+	public void testMatches() {
+		String etag = etagService.getETag(person());
+
+		assertTrue(etagService.matches(etagService.getVersion(etag), etag));
+		assertTrue(etagService.matches("\"abc\", \"" + etag + "\"", etag));
+		assertTrue(etagService.matches("*", etag));
+		assertFalse(etagService.matches("W/\"abc\"", etag));
+	}
+
+	private GluuCustomPerson person() {
+		GluuCustomPerson person = new GluuCustomPerson();
+		person.setAttribute("oxTrustMetaLastModified", LAST_MODIFIED);
+		person.setAttribute("uid", "jdoe");
+		person.setAttribute("givenName", "John");
+		return person;
+	}
+
+	private GluuGroup group() {
+		GluuGroup group = new GluuGroup();
+		group.setAttribute("oxTrustMetaLastModified", LAST_MODIFIED);
+		group.setDisplayName("Admins");
+		return group;
+	}
+
+}
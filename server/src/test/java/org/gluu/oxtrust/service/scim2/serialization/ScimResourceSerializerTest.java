@@ -0,0 +1,101 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.service.scim2.serialization;
+
+import static org.gluu.oxtrust.util.FieldInjector.inject;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.gluu.oxtrust.model.scim2.BaseScimResource;
+import org.gluu.oxtrust.model.scim2.extensions.Extension;
+import org.gluu.oxtrust.model.scim2.user.Group;
+import org.gluu.oxtrust.model.scim2.user.UserResource;
+import org.gluu.oxtrust.service.scim2.ExtensionService;
+import org.gluu.oxtrust.service.scim2.ScimMetricsService;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test of the LDAP attributes retrieved for a SCIM projection
+ */
+public class ScimResourceSerializerTest {
+
+	private ScimResourceSerializer serializer;
+
+	@BeforeMethod
+	public void setUp() {
+		serializer = new ScimResourceSerializer();
+		inject(serializer, "log", LoggerFactory.getLogger(ScimResourceSerializer.class));
+		inject(serializer, "metricsService", new ScimMetricsService());
+		inject(serializer, "extService", new ExtensionService() {
+			@Override
+			public List<Extension> getResourceExtensions(Class<? extends BaseScimResource> cls) {
+				return new ArrayList<Extension>();
+			}
+		});
+	}
+
+	@Test
+	public void testGroupsProjectionRetrievesMemberOf() {
+		List<String> attrs = Arrays.asList(serializer.getLdapReturnAttributes(UserResource.class, "groups", null));
+
+		assertTrue(attrs.contains("memberOf"), "memberOf not retrieved for groups: " + attrs);
+		assertTrue(attrs.contains("inum"));
+	}
+
+	@Test
+	public void testGroupsExcludedDoesNotRetrieveMemberOf() {
+		List<String> attrs = Arrays.asList(serializer.getLdapReturnAttributes(UserResource.class, null, "groups"));
+
+		assertFalse(attrs.contains("memberOf"), "memberOf retrieved although groups was excluded: " + attrs);
+	}
+
+	@Test
+	public void testAttributesWithoutStoreReference() {
+		// Attributes read by Scim2UserService.transferAttributesToUserResource under a different LDAP name
+		assertRetrieved("active", "oxTrustActive", "gluuStatus");
+		assertRetrieved("emails", "oxTrustEmail");
+		assertRetrieved("nickName", "nickname");
+		assertRetrieved("meta.lastModified", "oxTrustMetaLastModified");
+		assertRetrieved("name.formatted", "oxTrustNameFormatted", "givenName", "sn");
+	}
+
+	@Test
+	public void testGroupsSerialized() throws Exception {
+		Group group = new Group();
+		group.setValue("@!1111!0003!A1B2");
+		group.setDisplay("Managers");
+
+		UserResource user = new UserResource();
+		user.setId("@!1111!0000!C3D4");
+		user.setUserName("jdoe");
+		user.setGroups(Arrays.asList(group));
+
+		JsonNode json = new ObjectMapper().readTree(serializer.serialize(user, "groups", null));
+
+		assertFalse(json.has("userName"));
+		assertEquals(json.get("groups").size(), 1);
+		assertEquals(json.get("groups").get(0).get("value").getTextValue(), "@!1111!0003!A1B2");
+		assertEquals(json.get("groups").get(0).get("display").getTextValue(), "Managers");
+	}
+
+	private void assertRetrieved(String scimAttribute, String... ldapAttributes) {
+		List<String> attrs = Arrays.asList(serializer.getLdapReturnAttributes(UserResource.class, scimAttribute, null));
+		for (String ldapAttribute : ldapAttributes) {
+			assertTrue(attrs.contains(ldapAttribute), String.format("%s not retrieved for %s: %s", ldapAttribute, scimAttribute, attrs));
+		}
+	}
+
+}
@@ -0,0 +1,126 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.service.uma;
+
+import static org.gluu.oxtrust.util.FieldInjector.inject;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.Date;
+
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.xdi.oxauth.model.uma.RptIntrospectionResponse;
+
+/**
+ * Unit test of RptIntrospectionCache
+ */
+public class RptIntrospectionCacheTest {
+
+	private TestRptIntrospectionCache cache;
+
+	@BeforeMethod
+	public void setUp() {
+		cache = new TestRptIntrospectionCache();
+		inject(cache, "log", LoggerFactory.getLogger(RptIntrospectionCache.class));
+	}
+
+	@Test
+	public void testActiveToken() {
+		RptIntrospectionResponse response = response(true, null);
+		cache.put("pat", "rpt", response);
+
+		cache.now += RptIntrospectionCache.POSITIVE_TTL - 1;
+		assertSame(cache.get("pat", "rpt").getResponse(), response);
+
+		cache.now += 1;
+		assertNull(cache.get("pat", "rpt"));
+		assertEquals(cache.getHits(), 1);
+		assertEquals(cache.getMisses(), 1);
+	}
+
+	@Test
+	public void testTokenExpiration() {
+		cache.put("pat", "rpt", response(true, new Date(cache.now + 1000)));
+
+		cache.now += 1000;
+		assertNull(cache.get("pat", "rpt"));
+
+		// Tokens already expired are not stored
+		cache.put("pat", "rpt", response(true, new Date(cache.now)));
+		assertEquals(cache.getSize(), 0);
+	}
+
+	@Test
+	public void testInactiveToken() {
+		cache.put("pat", "rpt", response(false, null));
+
+		cache.now += RptIntrospectionCache.NEGATIVE_TTL - 1;
+		RptIntrospectionCache.CachedResult cached = cache.get("pat", "rpt");
+		assertNotNull(cached);
+		assertNull(cached.getResponse());
+
+		cache.now += 1;
+		assertNull(cache.get("pat", "rpt"));
+	}
+
+	@Test
+	public void testFailedRequest() {
+		cache.put("pat", "rpt", null);
+
+		assertNull(cache.get("pat", "rpt"));
+		assertEquals(cache.getSize(), 0);
+	}
+
+	@Test
+	public void testTokensAreKeptApart() {
+		RptIntrospectionResponse response = response(true, null);
+		cache.put("pat", "rpt1", response);
+
+		assertNull(cache.get("pat", "rpt2"));
+		assertSame(cache.get("pat", "rpt1").getResponse(), response);
+		assertEquals(cache.getHitRate(), 0.5);
+	}
+
+	@Test
+	public void testResourceServersAreKeptApart() {
+		RptIntrospectionResponse response = response(true, null);
+		cache.put("pat1", "rpt", response);
+
+		// Another resource server may not be granted the same permissions
+		assertNull(cache.get("pat2", "rpt"));
+		assertSame(cache.get("pat1", "rpt").getResponse(), response);
+
+		// Pairs of tokens are not mixed up when concatenated
+		cache.clear();
+		cache.put("pat", "1rpt", response);
+		assertNull(cache.get("pat1", "rpt"));
+		assertSame(cache.get("pat", "1rpt").getResponse(), response);
+	}
+
+	private RptIntrospectionResponse response(boolean active, Date expiresAt) {
+		RptIntrospectionResponse response = new RptIntrospectionResponse();
+		response.setActive(active);
+		response.setExpiresAt(expiresAt);
+		return response;
+	}
+
+	private static class TestRptIntrospectionCache extends RptIntrospectionCache {
+
+		private long now = 1000000;
+
+		@Override
+		long currentTimeMillis() {
+			return now;
+		}
+
+	}
+
+}
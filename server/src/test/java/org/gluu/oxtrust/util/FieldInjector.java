@@ -0,0 +1,36 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.util;
+
+import java.lang.reflect.Field;
+
+/**
+ * Sets fields normally populated by CDI, so that beans can be unit tested without a container
+ */
+public final class FieldInjector {
+
+	private FieldInjector() {
+	}
+
+	public static void inject(Object target, String fieldName, Object value) {
+		for (Class<?> cls = target.getClass(); cls != null; cls = cls.getSuperclass()) {
+			try {
+				Field field = cls.getDeclaredField(fieldName);
+				field.setAccessible(true);
+				field.set(target, value);
+				return;
+			} catch (NoSuchFieldException ex) {
+				// Try in super class
+			} catch (IllegalAccessException ex) {
+				throw new IllegalStateException(ex);
+			}
+		}
+
+		throw new IllegalArgumentException(String.format("Field '%s' not found in %s", fieldName, target.getClass()));
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ws.rs.scim2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test of the bulkId substitution and body size limit of BulkWebService
+ */
+public class BulkWebServiceTest {
+
+	private ObjectMapper mapper = new ObjectMapper();
+	private Map<String, String> ids;
+
+	@BeforeMethod
+	public void setUp() {
+		ids = new HashMap<String, String>();
+		ids.put("qwerty", "@!1111");
+		ids.put("ytrewq", "@!2222");
+	}
+
+	@Test
+	public void testReplaceInNestedValues() throws Exception {
+		JsonNode data = tree("{'displayName':'Tour Guides','members':[{'value':'bulkId:qwerty','type':'User'},"
+				+ "{'value':'bulkId:ytrewq'}],'meta':{'location':'/Users/bulkId:qwerty'},'count':2}");
+
+		JsonNode replaced = BulkWebService.replaceBulkIds(data, ids);
+
+		assertEquals(replaced, tree("{'displayName':'Tour Guides','members':[{'value':'@!1111','type':'User'},"
+				+ "{'value':'@!2222'}],'meta':{'location':'/Users/@!1111'},'count':2}"));
+	}
+
+	@Test
+	public void testReplaceInArrays() throws Exception {
+		JsonNode data = tree("{'Operations':[{'op':'add','path':'members','value':['bulkId:qwerty',['bulkId:ytrewq'],null]}]}");
+
+		BulkWebService.replaceBulkIds(data, ids);
+
+		assertEquals(data, tree("{'Operations':[{'op':'add','path':'members','value':['@!1111',['@!2222'],null]}]}"));
+	}
+
+	@Test
+	public void testSeveralReferencesInValue() throws Exception {
+		assertEquals(BulkWebService.replaceBulkIds("bulkId:qwerty and bulkId:ytrewq", ids), "@!1111 and @!2222");
+		assertEquals(BulkWebService.replaceBulkIds(tree("'bulkId'"), ids), tree("'bulkId'"));
+	}
+
+	@Test(expectedExceptions = Exception.class, expectedExceptionsMessageRegExp = "bulkId 'unknown' not recognized")
+	public void testUnknownBulkId() throws Exception {
+		BulkWebService.replaceBulkIds(tree("{'members':[{'value':'bulkId:unknown'}]}"), ids);
+	}
+
+	@Test
+	public void testLimitedInputStream() throws IOException {
+		InputStream is = new BulkWebService.LimitedInputStream(new ByteArrayInputStream(new byte[10]), 10);
+		assertEquals(is.read(new byte[8], 0, 8), 8);
+		assertEquals(is.read(), 0);
+		assertEquals(is.read(new byte[8], 0, 8), 1);
+		assertEquals(is.read(), -1);
+
+		is = new BulkWebService.LimitedInputStream(new ByteArrayInputStream(new byte[11]), 10);
+		is.skip(4);
+		try {
+			is.read(new byte[8], 0, 8);
+			fail("Limit exceeded");
+		} catch (BulkWebService.PayloadTooLargeException e) {
+			// The first bytes past the limit abort the read
+		}
+	}
+
+	@Test(expectedExceptions = BulkWebService.PayloadTooLargeException.class)
+	public void testParserAbortsOnLimit() throws IOException {
+		byte[] body = "{\"Operations\":[{\"method\":\"POST\",\"data\":{\"displayName\":\"A very long name\"}}]}".getBytes("UTF-8");
+		mapper.readTree(new BulkWebService.LimitedInputStream(new ByteArrayInputStream(body), 40));
+	}
+
+	private JsonNode tree(String json) throws IOException {
+		return mapper.readTree(json.replace('\'', '"'));
+	}
+
+}
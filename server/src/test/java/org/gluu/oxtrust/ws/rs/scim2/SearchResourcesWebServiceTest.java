@@ -0,0 +1,74 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2017, Gluu
+ */
+
+package org.gluu.oxtrust.ws.rs.scim2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit test of the split of root search pages among the user, group and FIDO device resource types
+ */
+public class SearchResourcesWebServiceTest {
+
+	private static final int[] TOTALS = { 5, 3, 2 };
+
+	@Test
+	public void testAllTypes() {
+		int[][] slices = SearchResourcesWebService.getPageSlices(TOTALS, 1, 10);
+
+		assertEquals(slices[0], new int[] { 1, 5 });
+		assertEquals(slices[1], new int[] { 1, 3 });
+		assertEquals(slices[2], new int[] { 1, 2 });
+	}
+
+	@Test
+	public void testPageAcrossTypes() {
+		int[][] slices = SearchResourcesWebService.getPageSlices(TOTALS, 4, 4);
+		assertEquals(slices[0], new int[] { 4, 2 });
+		assertEquals(slices[1], new int[] { 1, 2 });
+		assertNull(slices[2]);
+
+		slices = SearchResourcesWebService.getPageSlices(TOTALS, 7, 5);
+		assertNull(slices[0]);
+		assertEquals(slices[1], new int[] { 2, 2 });
+		assertEquals(slices[2], new int[] { 1, 2 });
+	}
+
+	@Test
+	public void testPageWithinType() {
+		int[][] slices = SearchResourcesWebService.getPageSlices(TOTALS, 6, 3);
+
+		assertNull(slices[0]);
+		assertEquals(slices[1], new int[] { 1, 3 });
+		assertNull(slices[2]);
+	}
+
+	@Test
+	public void testTypeWithoutResults() {
+		int[][] slices = SearchResourcesWebService.getPageSlices(new int[] { 2, 0, 3 }, 2, 3);
+
+		assertEquals(slices[0], new int[] { 2, 1 });
+		assertNull(slices[1]);
+		assertEquals(slices[2], new int[] { 1, 2 });
+	}
+
+	@Test
+	public void testEmptyPage() {
+		// Only totals are requested
+		for (int[] slice : SearchResourcesWebService.getPageSlices(TOTALS, 1, 0)) {
+			assertNull(slice);
+		}
+
+		// Past the last result
+		for (int[] slice : SearchResourcesWebService.getPageSlices(TOTALS, 11, 10)) {
+			assertNull(slice);
+		}
+	}
+
+}